@@ -28,11 +28,14 @@ package com.checkmarx.engine.aws;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.retry.annotation.EnableRetry;
 
+import com.checkmarx.engine.CxConfig;
 import com.checkmarx.engine.spring.CoreApplicationConfig;
+import com.checkmarx.engine.utils.ApiRateLimiter;
 
 /**
  * Spring Boot configuration
@@ -49,5 +52,11 @@ public class AwsApplicationConfig {
 	public AwsApplicationConfig() {
 		log.info("ctor()");
 	}
+	
+	@Bean
+	public ApiRateLimiter ec2RateLimiter(CxConfig config) {
+		return new ApiRateLimiter("aws-ec2", config.getCloudApiRequestsPerSecond(), config.getCloudApiBurst(), 
+				Ec2::isRequestLimitExceeded);
+	}
 
 }
@@ -13,8 +13,10 @@
  ******************************************************************************/
 package com.checkmarx.engine.aws;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
@@ -36,6 +38,71 @@ public interface AwsComputeClient {
     @NotNull
 	Instance launch(@NotBlank String name, @NotBlank String instanceType, @NotNull Map<String, String> tags) throws Exception;
 
+	/**
+	 * Launches an EC2 instance with the supplied parameters. 
+	 *  
+	 * @param name of instance
+	 * @param instanceType of EC2 instance, e.g. m4.large
+	 * @param tags to include with the instance
+	 * @param waitForRunning if false, returns as soon as the instance is requested; 
+	 * 			the instance may still be pending and have no IP address
+	 * @return the EC2 instance
+	 * @throws Exception 
+	 */
+    @NotNull
+	Instance launch(@NotBlank String name, @NotBlank String instanceType, @NotNull Map<String, String> tags, 
+			boolean waitForRunning) throws Exception;
+
+	/**
+	 * Launches an EC2 instance with the supplied parameters. 
+	 *  
+	 * @param name of instance
+	 * @param instanceType of EC2 instance, e.g. m4.large
+	 * @param tags to include with the instance
+	 * @param waitForRunning if false, returns as soon as the instance is requested; 
+	 * 			the instance may still be pending and have no IP address
+	 * @param spot if true, launches a spot instance, or an on-demand instance 
+	 * 			if spot capacity is unavailable
+	 * @return the EC2 instance
+	 * @throws Exception 
+	 */
+    @NotNull
+	Instance launch(@NotBlank String name, @NotBlank String instanceType, @NotNull Map<String, String> tags, 
+			boolean waitForRunning, boolean spot) throws Exception;
+
+	/**
+	 * Launches several EC2 instances of one type with a single request, then tags each
+	 * instance with its name.  Does not wait for the instances to leave the pending state.
+	 * <br/><br/>
+	 * EC2 may launch fewer instances than requested; instances that could not be named
+	 * are terminated and omitted.
+	 *  
+	 * @param names of the instances
+	 * @param instanceType of EC2 instance, e.g. m4.large
+	 * @param tags to include with every instance
+	 * @return the launched instances
+	 * @throws Exception 
+	 */
+    @NotNull
+	List<Instance> launch(@NotNull List<String> names, @NotBlank String instanceType, 
+			@NotNull Map<String, String> tags) throws Exception;
+
+	/**
+	 * Launches several EC2 instances of one type with a single request, as 
+	 * {@link #launch(List, String, Map)}.
+	 *  
+	 * @param names of the instances
+	 * @param instanceType of EC2 instance, e.g. m4.large
+	 * @param tags to include with every instance
+	 * @param spot if true, launches spot instances, or on-demand instances 
+	 * 			if spot capacity is unavailable
+	 * @return the launched instances
+	 * @throws Exception 
+	 */
+    @NotNull
+	List<Instance> launch(@NotNull List<String> names, @NotBlank String instanceType, 
+			@NotNull Map<String, String> tags, boolean spot) throws Exception;
+
 	/**
 	 * Starts an EC2 instance.
 	 *  
@@ -46,6 +113,17 @@ public interface AwsComputeClient {
     @NotNull
 	Instance start(@NotBlank String instanceId) throws InterruptedException, Exception;
 
+	/**
+	 * Starts an EC2 instance.
+	 *  
+	 * @param instanceId to start
+	 * @param waitForRunning if false, returns as soon as the start is requested
+	 * @throws InterruptedException if interrupted while waiting for instance to start
+	 * @throws Exception 
+	 */
+    @NotNull
+	Instance start(@NotBlank String instanceId, boolean waitForRunning) throws InterruptedException, Exception;
+
 	/**
 	 * Stops an EC2 instance
 	 * 
@@ -53,6 +131,16 @@ public interface AwsComputeClient {
 	 */
 	void stop(@NotBlank String instanceId);
 
+	/**
+	 * Hibernates an EC2 instance, keeping its memory on the root volume.  The default
+	 * stops the instance.
+	 * 
+	 * @param instanceId to hibernate
+	 */
+	default void hibernate(@NotBlank String instanceId) {
+		stop(instanceId);
+	}
+
 	/**
 	 * Terminates an EC2 instance.
 	 * 
@@ -77,6 +165,25 @@ public interface AwsComputeClient {
 	 */
     @NotNull
 	Instance describe(@NotBlank String instanceId);
+
+	/**
+	 * Describes EC2 instances with a single request.  Instances not yet known to EC2
+	 * are omitted rather than failing the request.
+	 * 
+	 * @param instanceIds to describe, at most {@code AwsConstants.MAX_DESCRIBE_INSTANCE_IDS}
+	 * @return the instances found
+	 */
+    @NotNull
+	List<Instance> describe(@NotNull Collection<String> instanceIds);
+	
+	/**
+	 * Finds spot instances EC2 has marked for interruption, or has already interrupted.
+	 * 
+	 * @param instanceIds of spot instances to check
+	 * @return the ids of the interrupted instances
+	 */
+    @NotNull
+	Set<String> findInterruptedSpotInstances(@NotNull Collection<String> instanceIds);
 	
 	/**
 	 * Updates the tags for the supplied EC2 instance.
@@ -88,6 +195,15 @@ public interface AwsComputeClient {
     @NotNull
     Instance updateTags(@NotNull Instance instance, @NotNull Tag... tags);
 	
+	/**
+	 * Sets the same tags on several EC2 instances with a single request, 
+	 * without describing the instances afterwards.
+	 * 
+	 * @param instanceIds to tag, at most {@code AwsConstants.MAX_TAG_RESOURCE_IDS}
+	 * @param tags the tags to set
+	 */
+	void createTags(@NotNull Collection<String> instanceIds, @NotNull Tag... tags);
+	
 	/**
 	 * Returns true if the EC2 instance is provisioned.  
 	 * Provisioned is defined as exists and not terminated or shutting down for termination.
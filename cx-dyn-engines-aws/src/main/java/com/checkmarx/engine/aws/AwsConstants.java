@@ -13,12 +13,54 @@
  ******************************************************************************/
 package com.checkmarx.engine.aws;
 
+import com.google.common.collect.ImmutableSet;
+
 public class AwsConstants {
 
 	public final static String NAME_TAG = "Name";
 
 	public static final long RETRY_DELAY = 10 * 1000; // ms
 	public static final int RETRY_ATTEMPTS = 2;
+	public static final double RETRY_MULTIPLIER = 2; // jittered, so retries of throttled requests spread out
+
+	public static final String REQUEST_LIMIT_EXCEEDED = "RequestLimitExceeded";
+	
+	/**
+	 * error codes of EC2 and SSM requests throttled by AWS
+	 */
+	public static final ImmutableSet<String> THROTTLING_CODES = ImmutableSet.of(
+			REQUEST_LIMIT_EXCEEDED, "Throttling", "ThrottlingException");
+	public static final int MAX_DESCRIBE_INSTANCE_IDS = 200;
+	public static final int MAX_TAG_RESOURCE_IDS = 200;
+	public static final String INSTANCE_NOT_FOUND = "InvalidInstanceID.NotFound";
+	
+	/**
+	 * RunInstances error codes for which the launch moves on to the next instance type and subnet
+	 */
+	public static final ImmutableSet<String> CAPACITY_ERROR_CODES = ImmutableSet.of(
+			"InsufficientInstanceCapacity", "InsufficientCapacity", "InsufficientFreeAddressesInSubnet", 
+			"Unsupported");
+	
+	public static final String SPOT_LIFECYCLE = "spot";
+	public static final String SPOT_ONE_TIME = "one-time";
+	public static final String SPOT_TERMINATE = "terminate";
+	
+	/**
+	 * RunInstances error codes for which a spot launch falls back to on-demand
+	 */
+	public static final ImmutableSet<String> SPOT_UNAVAILABLE_CODES = ImmutableSet.of(
+			"InsufficientInstanceCapacity", "InsufficientCapacity", "SpotMaxPriceTooLow", 
+			"MaxSpotInstanceCountExceeded", "UnfulfillableCapacity");
+	
+	/**
+	 * spot request status codes of instances EC2 is interrupting, or has interrupted
+	 */
+	public static final ImmutableSet<String> SPOT_INTERRUPTED_CODES = ImmutableSet.of(
+			"marked-for-termination", "marked-for-stop", "marked-for-hibernation",
+			"instance-terminated-by-price", "instance-terminated-no-capacity", 
+			"instance-terminated-capacity-oversubscribed");
+	public static final long MAX_POLLING_BACKOFF_SECS = 120;
+	public static final long MAX_TAG_WRITE_BACKOFF_SECS = 120;
 
 	//public final static long BILLING_INTERVAL_SECS = TimeUnit.MINUTES.toSeconds(60);
 	//public final static long BILLING_INTERVAL_SECS = TimeUnit.MINUTES.toSeconds(10); // for testing
@@ -14,10 +14,12 @@
 package com.checkmarx.engine.aws;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -35,6 +37,7 @@ import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.AmazonWebServiceResult;
 import com.amazonaws.services.ec2.AmazonEC2;
 import com.amazonaws.services.ec2.AmazonEC2ClientBuilder;
@@ -42,13 +45,18 @@ import com.amazonaws.services.ec2.model.CreateTagsRequest;
 import com.amazonaws.services.ec2.model.CreateTagsResult;
 import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
 import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.DescribeSpotInstanceRequestsRequest;
+import com.amazonaws.services.ec2.model.DescribeSpotInstanceRequestsResult;
 import com.amazonaws.services.ec2.model.Filter;
 import com.amazonaws.services.ec2.model.IamInstanceProfileSpecification;
 import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceMarketOptionsRequest;
 import com.amazonaws.services.ec2.model.InstanceNetworkInterfaceSpecification;
 import com.amazonaws.services.ec2.model.Reservation;
 import com.amazonaws.services.ec2.model.RunInstancesRequest;
 import com.amazonaws.services.ec2.model.RunInstancesResult;
+import com.amazonaws.services.ec2.model.SpotInstanceRequest;
+import com.amazonaws.services.ec2.model.SpotMarketOptions;
 import com.amazonaws.services.ec2.model.StartInstancesRequest;
 import com.amazonaws.services.ec2.model.StartInstancesResult;
 import com.amazonaws.services.ec2.model.Tag;
@@ -63,12 +71,16 @@ import com.amazonaws.services.simplesystemsmanagement.model.GetAutomationExecuti
 import com.amazonaws.services.simplesystemsmanagement.model.StartAutomationExecutionRequest;
 import com.amazonaws.services.simplesystemsmanagement.model.StartAutomationExecutionResult;
 import com.checkmarx.engine.aws.Ec2.InstanceState;
+import com.checkmarx.engine.aws.Ec2CapacityTracker.LaunchTarget;
+import com.checkmarx.engine.utils.ApiRateLimiter;
+import com.checkmarx.engine.utils.ApiRateLimiter.Priority;
 import com.checkmarx.engine.utils.TaskManager;
 import com.checkmarx.engine.utils.TimeoutTask;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 /**
  * Launches and terminates EC2 instances from a specified AMI image.
@@ -87,12 +99,26 @@ public class AwsEc2Client implements AwsComputeClient {
 
 	private final AwsEngineConfig config;
 	private final TaskManager taskManager;
+	private final Ec2CapacityTracker capacityTracker;
+	private final ApiRateLimiter rateLimiter;
 	
-	public AwsEc2Client(@NotNull AwsEngineConfig config, @NotNull TaskManager taskManager) {
-		this.client = AmazonEC2ClientBuilder.defaultClient();
-		this.ssmClient = AWSSimpleSystemsManagementClientBuilder.defaultClient();
+	public AwsEc2Client(@NotNull AwsEngineConfig config, @NotNull TaskManager taskManager, 
+			@NotNull ApiRateLimiter rateLimiter) {
+		this(AmazonEC2ClientBuilder.defaultClient(), AWSSimpleSystemsManagementClientBuilder.defaultClient(), 
+				config, taskManager, rateLimiter);
+	}
+	
+	/**
+	 * Used for test purposes only
+	 */
+	AwsEc2Client(@NotNull AmazonEC2 client, @NotNull AWSSimpleSystemsManagement ssmClient, 
+			@NotNull AwsEngineConfig config, @NotNull TaskManager taskManager, @NotNull ApiRateLimiter rateLimiter) {
+		this.client = client;
+		this.ssmClient = ssmClient;
 		this.config = config;
 		this.taskManager = taskManager;
+		this.capacityTracker = new Ec2CapacityTracker(config);
+		this.rateLimiter = rateLimiter;
 
 		log.info("ctor(): {}", this);
 	}
@@ -107,11 +133,34 @@ public class AwsEc2Client implements AwsComputeClient {
 	@Retryable(
 			value = { RuntimeException.class },
 			maxAttempts = AwsConstants.RETRY_ATTEMPTS,
-			backoff = @Backoff(delay = AwsConstants.RETRY_DELAY))
+			backoff = @Backoff(delay = AwsConstants.RETRY_DELAY, multiplier = AwsConstants.RETRY_MULTIPLIER, random = true))
 	@NotNull
 	public Instance launch(@NotBlank String name, @NotBlank String instanceType, 
 	        @NotNull Map<String,String> tags) throws Exception {
-		log.trace("launch(): name={}; instanceType={}", name, instanceType);
+		return launch(name, instanceType, tags, true);
+	}
+	
+	@Override
+	@Retryable(
+			value = { RuntimeException.class },
+			maxAttempts = AwsConstants.RETRY_ATTEMPTS,
+			backoff = @Backoff(delay = AwsConstants.RETRY_DELAY, multiplier = AwsConstants.RETRY_MULTIPLIER, random = true))
+	@NotNull
+	public Instance launch(@NotBlank String name, @NotBlank String instanceType, 
+	        @NotNull Map<String,String> tags, boolean waitForRunning) throws Exception {
+		return launch(name, instanceType, tags, waitForRunning, false);
+	}
+	
+	@Override
+	@Retryable(
+			value = { RuntimeException.class },
+			maxAttempts = AwsConstants.RETRY_ATTEMPTS,
+			backoff = @Backoff(delay = AwsConstants.RETRY_DELAY, multiplier = AwsConstants.RETRY_MULTIPLIER, random = true))
+	@NotNull
+	public Instance launch(@NotBlank String name, @NotBlank String instanceType, 
+	        @NotNull Map<String,String> tags, boolean waitForRunning, boolean spot) throws Exception {
+		log.trace("launch(): name={}; instanceType={}; waitForRunning={}; spot={}", 
+				name, instanceType, waitForRunning, spot);
 		
 		Instance instance = null;
 		String requestId = null;
@@ -120,14 +169,16 @@ public class AwsEc2Client implements AwsComputeClient {
 		try {
 
 			final RunInstancesRequest runRequest = createRunRequest(name, instanceType, tags);
-			RunInstancesResult result = client.runInstances(runRequest);
+			RunInstancesResult result = runInstances(runRequest, spot);
 			requestId = result.getSdkResponseMetadata().getRequestId();
 			instance = validateRunResult(result);
 			
 			final String instanceId = instance.getInstanceId();
 			
 			// wait until instance is running to populate IP addresses
-			instance = waitForPendingState(instanceId, null);
+			if (waitForRunning) {
+				instance = waitForPendingState(instanceId, null);
+			}
 			
 			success = true;
 			return instance;
@@ -155,12 +206,143 @@ public class AwsEc2Client implements AwsComputeClient {
         }
 	}
 
+	@Override
+	@NotNull
+	public List<Instance> launch(@NotNull List<String> names, @NotBlank String instanceType, 
+	        @NotNull Map<String,String> tags) throws Exception {
+		return launch(names, instanceType, tags, false);
+	}
+
+	@Override
+	@NotNull
+	public List<Instance> launch(@NotNull List<String> names, @NotBlank String instanceType, 
+	        @NotNull Map<String,String> tags, boolean spot) throws Exception {
+		log.trace("launch(): names={}; instanceType={}; spot={}", names, instanceType, spot);
+		
+		final List<Instance> launched = Lists.newArrayList();
+		String requestId = null;
+		boolean success = false;
+		final Stopwatch timer = Stopwatch.createStarted();
+		try {
+			// the Name tag differs per instance, so is added once the instances exist
+			final TagSpecification tagSpec = createTagSpec(tags);
+			final RunInstancesRequest runRequest = createRunRequest(tagSpec, instanceType, names.size());
+			final RunInstancesResult result = runInstances(runRequest, spot);
+			requestId = result.getSdkResponseMetadata().getRequestId();
+			
+			final List<Instance> instances = result.getReservation().getInstances();
+			for (int i = 0; i < instances.size(); i++) {
+				final Instance instance = instances.get(i);
+				final Instance named = nameInstance(instance, names.get(i));
+				if (named != null) {
+					launched.add(named);
+				}
+			}
+			success = true;
+			return launched;
+		} catch (AmazonClientException e) {
+			log.warn("Failed to launch EC2 instances; names={}; cause={}; message={}", names, e, e.getMessage());
+			throw new RuntimeException("Failed to launch EC2 instances", e);
+		} finally {
+			log.info("action={}, success={}; requested={}; launched={}; elapsedTime={}ms; requestId={}", 
+					"launchInstances", success, names.size(), launched.size(), 
+					timer.elapsed(TimeUnit.MILLISECONDS), requestId);
+		}
+	}
+	
+	/**
+	 * Tags a newly launched instance with its name.  An instance that cannot be named 
+	 * would not be found as an engine, so it is terminated.
+	 * 
+	 * @return the named instance, or <code>null</code> if tagging failed
+	 */
+	@Nullable
+	private Instance nameInstance(@NotNull Instance instance, @NotBlank String name) {
+		final String instanceId = instance.getInstanceId();
+		final Tag nameTag = createTag(AwsConstants.NAME_TAG, name);
+		try {
+			final CreateTagsRequest request = new CreateTagsRequest()
+					.withTags(nameTag)
+					.withResources(instanceId);
+			final CreateTagsResult result = rateLimiter.call(Priority.TAG, () -> client.createTags(request));
+			logResult(result, instanceId, "nameInstance", true);
+			
+			final List<Tag> instanceTags = Lists.newArrayList(nameTag);
+			if (instance.getTags() != null) {
+				instanceTags.addAll(instance.getTags());
+			}
+			return instance.withTags(instanceTags);
+		} catch (AmazonClientException e) {
+			log.warn("Failed to name EC2 instance; instanceId={}; name={}; cause={}; message={}", 
+					instanceId, name, e, e.getMessage());
+			safeTerminate(instanceId);
+			return null;
+		}
+	}
+
+	/**
+	 * Runs the request as a one-time spot request if <code>spot</code>; if EC2 has no spot 
+	 * capacity for the request, runs it again for on-demand instances.
+	 */
+	private RunInstancesResult runInstances(@NotNull RunInstancesRequest runRequest, boolean spot) {
+		final String instanceType = runRequest.getInstanceType();
+		if (!spot) return runInstances(runRequest, instanceType, false);
+		
+		final SpotMarketOptions spotOptions = new SpotMarketOptions()
+				.withSpotInstanceType(AwsConstants.SPOT_ONE_TIME)
+				.withInstanceInterruptionBehavior(AwsConstants.SPOT_TERMINATE);
+		if (!Strings.isNullOrEmpty(config.getSpotMaxPrice())) {
+			spotOptions.setMaxPrice(config.getSpotMaxPrice());
+		}
+		try {
+			return runInstances(runRequest.withInstanceMarketOptions(new InstanceMarketOptionsRequest()
+					.withMarketType(AwsConstants.SPOT_LIFECYCLE)
+					.withSpotOptions(spotOptions)), instanceType, true);
+		} catch (AmazonServiceException e) {
+			if (!AwsConstants.SPOT_UNAVAILABLE_CODES.contains(e.getErrorCode())) throw e;
+			log.warn("Spot capacity unavailable, launching on-demand; instanceType={}; errorCode={}; message={}", 
+					instanceType, e.getErrorCode(), e.getMessage());
+		}
+		return runInstances(runRequest.withInstanceMarketOptions(null), instanceType, false);
+	}
+	
+	/**
+	 * Runs the request in each of the instance type's launch targets in turn, skipping 
+	 * targets recently out of capacity, until EC2 has capacity for one.
+	 * 
+	 * @throws AmazonServiceException from the last target tried, if none has capacity
+	 */
+	private RunInstancesResult runInstances(@NotNull RunInstancesRequest runRequest, @NotBlank String instanceType, 
+			boolean spot) {
+		AmazonServiceException capacityError = null;
+		for (LaunchTarget target : capacityTracker.getLaunchTargets(instanceType, spot)) {
+			runRequest.setInstanceType(target.getInstanceType());
+			runRequest.getNetworkInterfaces().get(0).setSubnetId(Strings.emptyToNull(target.getSubnetId()));
+			try {
+				final RunInstancesResult result = rateLimiter.call(Priority.LAUNCH, () -> client.runInstances(runRequest));
+				capacityTracker.onLaunched(target, spot);
+				return result;
+			} catch (AmazonServiceException e) {
+				if (!AwsConstants.CAPACITY_ERROR_CODES.contains(e.getErrorCode())) throw e;
+				log.warn("EC2 capacity unavailable, trying next launch target; spot={}; errorCode={}; {}", 
+						spot, e.getErrorCode(), target);
+				capacityTracker.onCapacityError(target, spot);
+				capacityError = e;
+			}
+		}
+		throw capacityError;
+	}
+
 	@NotNull
 	private RunInstancesRequest createRunRequest(@NotBlank String name, @NotBlank String instanceType, @NotNull Map<String, String> tags) {
 		log.trace("createRunRequest(): name={}; instanceType={}", name, instanceType);
 
-		final TagSpecification tagSpec = createTagSpec(name, tags);
-		
+		return createRunRequest(createTagSpec(name, tags), instanceType, 1);
+	}
+	
+	@NotNull
+	private RunInstancesRequest createRunRequest(@NotNull TagSpecification tagSpec, @NotBlank String instanceType, 
+			int count) {
 		final InstanceNetworkInterfaceSpecification nic = new InstanceNetworkInterfaceSpecification();
 		nic.withDeviceIndex(0)
 			.withSubnetId(config.getSubnetId())
@@ -173,7 +355,7 @@ public class AwsEc2Client implements AwsComputeClient {
 			.withImageId(config.getImageId())
 			.withKeyName(config.getKeyName())
 			.withMinCount(1)
-			.withMaxCount(1)
+			.withMaxCount(count)
 			.withNetworkInterfaces(nic)
 			.withTagSpecifications(tagSpec);
 
@@ -188,8 +370,14 @@ public class AwsEc2Client implements AwsComputeClient {
 
 	@NotNull
 	private TagSpecification createTagSpec(@NotBlank String name, @NotNull Map<String, String> tags) {
-		final TagSpecification tagSpec = new TagSpecification();
+		final TagSpecification tagSpec = createTagSpec(tags);
 		tagSpec.getTags().add(createTag("Name", name));
+		return tagSpec;
+	}
+	
+	@NotNull
+	private TagSpecification createTagSpec(@NotNull Map<String, String> tags) {
+		final TagSpecification tagSpec = new TagSpecification();
 		for (Entry<String,String> tag: tags.entrySet()) {
 			tagSpec.getTags().add(createTag(tag.getKey(), tag.getValue()));
 		}
@@ -201,20 +389,30 @@ public class AwsEc2Client implements AwsComputeClient {
 	@Retryable(
 			value = { AmazonClientException.class },
 					maxAttempts = AwsConstants.RETRY_ATTEMPTS,
-					backoff = @Backoff(delay = AwsConstants.RETRY_DELAY))
+					backoff = @Backoff(delay = AwsConstants.RETRY_DELAY, multiplier = AwsConstants.RETRY_MULTIPLIER, random = true))
 	@NotNull
 	public Instance start(@NotBlank String instanceId) throws Exception {
-		log.trace("start(): instanceId={}", instanceId);
+		return start(instanceId, true);
+	}
+	
+	@Override
+	@Retryable(
+			value = { AmazonClientException.class },
+					maxAttempts = AwsConstants.RETRY_ATTEMPTS,
+					backoff = @Backoff(delay = AwsConstants.RETRY_DELAY, multiplier = AwsConstants.RETRY_MULTIPLIER, random = true))
+	@NotNull
+	public Instance start(@NotBlank String instanceId, boolean waitForRunning) throws Exception {
+		log.trace("start(): instanceId={}; waitForRunning={}", instanceId, waitForRunning);
 		
 		try {
 			final StartInstancesRequest request = new StartInstancesRequest();
 			request.withInstanceIds(instanceId);
 			
-			final StartInstancesResult result = client.startInstances(request);
+			final StartInstancesResult result = rateLimiter.call(Priority.LAUNCH, () -> client.startInstances(request));
 			final String requestId = result.getSdkResponseMetadata().getRequestId();
 			final int statusCode = result.getSdkHttpMetadata().getHttpStatusCode();
 		
-			final Instance instance = waitForPendingState(instanceId, null); 
+			final Instance instance = waitForRunning ? waitForPendingState(instanceId, null) : describe(instanceId); 
 			
 			log.info("action=startInstance; instanceId={}; requestId={}; status={}; {}", 
 					instanceId, requestId, statusCode, Ec2.print(instance));
@@ -261,33 +459,59 @@ public class AwsEc2Client implements AwsComputeClient {
 	@Retryable(
 			value = { RuntimeException.class },
 			maxAttempts = AwsConstants.RETRY_ATTEMPTS,
-			backoff = @Backoff(delay = AwsConstants.RETRY_DELAY))
+			backoff = @Backoff(delay = AwsConstants.RETRY_DELAY, multiplier = AwsConstants.RETRY_MULTIPLIER, random = true))
 	public void stop(@NotBlank String instanceId) {
 		log.trace("stop(): instanceId={}", instanceId);
+		runAutomation(config.getSsmAutomationDocument(), instanceId, "stop");
+	}
+
+	/**
+	 * Hibernates the instance with the <code>ssmHibernateDocument</code> automation document; 
+	 * stops the instance if no document is configured.
+	 */
+	@Override
+	@Retryable(
+			value = { RuntimeException.class },
+			maxAttempts = AwsConstants.RETRY_ATTEMPTS,
+			backoff = @Backoff(delay = AwsConstants.RETRY_DELAY, multiplier = AwsConstants.RETRY_MULTIPLIER, random = true))
+	public void hibernate(@NotBlank String instanceId) {
+		log.trace("hibernate(): instanceId={}", instanceId);
 		
+		final String document = config.getSsmHibernateDocument();
+		if (Strings.isNullOrEmpty(document)) {
+			log.debug("No SSM hibernate document configured, stopping instance; instanceId={}", instanceId);
+			stop(instanceId);
+			return;
+		}
+		runAutomation(document, instanceId, "hibernate");
+	}
+
+	private void runAutomation(String document, String instanceId, String operation) {
 		try {
 			StartAutomationExecutionRequest request = new StartAutomationExecutionRequest();
-			request.setDocumentName(config.getSsmAutomationDocument());
+			request.setDocumentName(document);
 			request.setParameters(Collections.singletonMap("InstanceId", Collections.singletonList(instanceId)));
-			StartAutomationExecutionResult result = ssmClient.startAutomationExecution(request);
+			StartAutomationExecutionResult result = rateLimiter.call(Priority.DEFAULT, 
+					() -> ssmClient.startAutomationExecution(request));
 			String executionId = result.getAutomationExecutionId();
 
 			AutomationExecution execution = getAutomationExecution(executionId);
-			log.debug("action=Stopping EC2 instance via SSM; instanceId={}; status={}", 
-			        instanceId, execution.getAutomationExecutionStatus());
+			log.debug("action=Stopping EC2 instance via SSM; operation={}; instanceId={}; status={}", 
+			        operation, instanceId, execution.getAutomationExecutionStatus());
 			// TODO: monitor In Progress -> Success
 
-			log.debug("Execution id for SSM EC2 Instance shutdown: {}", executionId);
+			log.debug("Execution id for SSM EC2 Instance {}: {}", operation, executionId);
 		} catch (AmazonClientException e) {
-			log.warn("Failed to stop EC2 instance; instanceId={}; cause={}; message={}", 
-					instanceId, e, e.getMessage());
-			throw new RuntimeException("Failed to stop EC2 instance", e);
+			log.warn("Failed to {} EC2 instance; instanceId={}; cause={}; message={}", 
+					operation, instanceId, e, e.getMessage());
+			throw new RuntimeException("Failed to " + operation + " EC2 instance", e);
 		}
 	}
 
 	private AutomationExecution getAutomationExecution(String executionId){
 		GetAutomationExecutionRequest automationExecutionRequest = new GetAutomationExecutionRequest().withAutomationExecutionId(executionId);
-		GetAutomationExecutionResult automationExecutionResult = ssmClient.getAutomationExecution(automationExecutionRequest);
+		GetAutomationExecutionResult automationExecutionResult = rateLimiter.call(Priority.DEFAULT, 
+				() -> ssmClient.getAutomationExecution(automationExecutionRequest));
 		return automationExecutionResult.getAutomationExecution();
 	}
 
@@ -295,7 +519,7 @@ public class AwsEc2Client implements AwsComputeClient {
 	@Retryable(
 			value = { RuntimeException.class },
 			maxAttempts = AwsConstants.RETRY_ATTEMPTS,
-			backoff = @Backoff(delay = AwsConstants.RETRY_DELAY))
+			backoff = @Backoff(delay = AwsConstants.RETRY_DELAY, multiplier = AwsConstants.RETRY_MULTIPLIER, random = true))
 	public void terminate(@NotBlank String instanceId) {
 		log.trace("terminate(): instanceId={}", instanceId);
 		
@@ -303,7 +527,8 @@ public class AwsEc2Client implements AwsComputeClient {
 			final TerminateInstancesRequest request = new TerminateInstancesRequest();
 			request.withInstanceIds(instanceId);
 			
-			final TerminateInstancesResult result = client.terminateInstances(request);
+			final TerminateInstancesResult result = rateLimiter.call(Priority.DEFAULT, 
+					() -> client.terminateInstances(request));
 			logResult(result, instanceId, "terminateInstance", false);
 		} catch (AmazonClientException e) {
 			log.warn("Failed to terminate EC2 instance; instanceId={}; cause={}; message={}", 
@@ -327,7 +552,7 @@ public class AwsEc2Client implements AwsComputeClient {
 	@Retryable(
 			value = { RuntimeException.class },
 			maxAttempts = AwsConstants.RETRY_ATTEMPTS,
-			backoff = @Backoff(delay = AwsConstants.RETRY_DELAY))
+			backoff = @Backoff(delay = AwsConstants.RETRY_DELAY, multiplier = AwsConstants.RETRY_MULTIPLIER, random = true))
 	@NotNull
 	public List<Instance> find(@NotNull Map<String, String> tags) {
 		log.trace("find(): tag={}", tags);
@@ -346,7 +571,7 @@ public class AwsEc2Client implements AwsComputeClient {
 				request.withFilters(filters);
 			}
 	
-			final DescribeInstancesResult result = client.describeInstances(request);
+			final DescribeInstancesResult result = rateLimiter.call(Priority.DEFAULT, () -> client.describeInstances(request));
 			for (Reservation reservation : result.getReservations()) {
 				allInstances.addAll(reservation.getInstances());
 			}
@@ -364,7 +589,7 @@ public class AwsEc2Client implements AwsComputeClient {
 	@Retryable(
 			value = { RuntimeException.class },
 			maxAttempts = AwsConstants.RETRY_ATTEMPTS,
-			backoff = @Backoff(delay = AwsConstants.RETRY_DELAY))
+			backoff = @Backoff(delay = AwsConstants.RETRY_DELAY, multiplier = AwsConstants.RETRY_MULTIPLIER, random = true))
 	@NotNull
 	public Instance describe(@NotBlank String instanceId) {
 		log.trace("describe(): instanceId={}", instanceId);
@@ -373,7 +598,7 @@ public class AwsEc2Client implements AwsComputeClient {
 			final DescribeInstancesRequest request = new DescribeInstancesRequest();
 			request.withInstanceIds(instanceId);
 			
-			final DescribeInstancesResult result = client.describeInstances(request);
+			final DescribeInstancesResult result = rateLimiter.call(Priority.DEFAULT, () -> client.describeInstances(request));
 			final Instance instance = getFirstInstance(result);
 			
 			logResult(result, instance.getInstanceId(), "describeInstance", true);
@@ -386,6 +611,62 @@ public class AwsEc2Client implements AwsComputeClient {
 		}
 	}
 	
+	@Override
+	@NotNull
+	public List<Instance> describe(@NotNull Collection<String> instanceIds) {
+		log.trace("describe(): instanceIds={}", instanceIds);
+		
+		try {
+			// filter rather than list the ids, so instances not yet visible to EC2 don't fail the request
+			final DescribeInstancesRequest request = new DescribeInstancesRequest()
+					.withFilters(new Filter("instance-id", Lists.newArrayList(instanceIds)));
+			
+			final List<Instance> instances = Lists.newArrayList();
+			final DescribeInstancesResult result = rateLimiter.call(Priority.DEFAULT, () -> client.describeInstances(request));
+			for (Reservation reservation : result.getReservations()) {
+				instances.addAll(reservation.getInstances());
+			}
+			logResult(result, "", "describeInstances", true);
+			log.debug("action=describeInstances; requested={}; found={}", instanceIds.size(), instances.size());
+			
+			return instances;
+		} catch (AmazonClientException e) {
+			log.warn("Failed to describe EC2 instances; count={}; cause={}; message={}", 
+					instanceIds.size(), e, e.getMessage());
+			throw new RuntimeException("Failed to describe EC2 instances", e);
+		}
+	}
+	
+	@Override
+	@NotNull
+	public Set<String> findInterruptedSpotInstances(@NotNull Collection<String> instanceIds) {
+		log.trace("findInterruptedSpotInstances(): instanceIds={}", instanceIds);
+		
+		final Set<String> interrupted = Sets.newHashSet();
+		if (instanceIds.isEmpty()) return interrupted;
+		
+		try {
+			final DescribeSpotInstanceRequestsRequest request = new DescribeSpotInstanceRequestsRequest()
+					.withFilters(new Filter("instance-id", Lists.newArrayList(instanceIds)),
+							new Filter("status-code", Lists.newArrayList(AwsConstants.SPOT_INTERRUPTED_CODES)));
+			
+			final DescribeSpotInstanceRequestsResult result = rateLimiter.call(Priority.DEFAULT, 
+					() -> client.describeSpotInstanceRequests(request));
+			for (SpotInstanceRequest spotRequest : result.getSpotInstanceRequests()) {
+				log.info("Spot instance interrupted; instanceId={}; status={}", 
+						spotRequest.getInstanceId(), spotRequest.getStatus().getCode());
+				interrupted.add(spotRequest.getInstanceId());
+			}
+			logResult(result, "", "describeSpotInstanceRequests", true);
+			
+			return interrupted;
+		} catch (AmazonClientException e) {
+			log.warn("Failed to describe spot instance requests; count={}; cause={}; message={}", 
+					instanceIds.size(), e, e.getMessage());
+			throw new RuntimeException("Failed to describe spot instance requests", e);
+		}
+	}
+	
 	/**
 	 * Calls <code>describe</code> until instance <code>state</code> is not Pending, 
 	 * and optionally is not the state supplied.
@@ -456,7 +737,7 @@ public class AwsEc2Client implements AwsComputeClient {
     @Retryable(
             value = { RuntimeException.class },
             maxAttempts = AwsConstants.RETRY_ATTEMPTS,
-            backoff = @Backoff(delay = AwsConstants.RETRY_DELAY))
+            backoff = @Backoff(delay = AwsConstants.RETRY_DELAY, multiplier = AwsConstants.RETRY_MULTIPLIER, random = true))
     @NotNull
     public Instance updateTags(@NotNull Instance instance, @NotNull Tag... tags) {
         final String instanceId = instance.getInstanceId();
@@ -466,7 +747,7 @@ public class AwsEc2Client implements AwsComputeClient {
             final CreateTagsRequest request = new CreateTagsRequest()
                     .withTags(tags)
                     .withResources(instanceId);
-            final CreateTagsResult result = client.createTags(request);
+            final CreateTagsResult result = rateLimiter.call(Priority.TAG, () -> client.createTags(request));
             logResult(result, instanceId, "createTags", false);
             return describe(instanceId);
         } catch (AmazonClientException e) {
@@ -477,6 +758,23 @@ public class AwsEc2Client implements AwsComputeClient {
         
     }
 
+    @Override
+    public void createTags(@NotNull Collection<String> instanceIds, @NotNull Tag... tags) {
+        log.trace("createTags(): instanceIds={}", instanceIds);
+        
+        try {
+            final CreateTagsRequest request = new CreateTagsRequest()
+                    .withTags(tags)
+                    .withResources(instanceIds);
+            final CreateTagsResult result = rateLimiter.call(Priority.TAG, () -> client.createTags(request));
+            logResult(result, String.join(",", instanceIds), "createTags", true);
+        } catch (AmazonClientException e) {
+            log.warn("Failed to create tags on EC2 instances; count={}; cause={}; message={}", 
+                    instanceIds.size(), e, e.getMessage());
+            throw new RuntimeException("Failed to create tags on EC2 instances", e);
+        }
+    }
+
     @NotNull
 	private Instance validateRunResult(RunInstancesResult result) {
 		if (result == null) throw new RuntimeException("EC2 RunInstanceResult is null");
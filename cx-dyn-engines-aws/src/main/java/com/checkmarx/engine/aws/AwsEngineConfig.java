@@ -13,16 +13,21 @@
  ******************************************************************************/
 package com.checkmarx.engine.aws;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
+import com.checkmarx.engine.domain.EnginePoolConfig;
 import com.checkmarx.engine.domain.EngineSize;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.google.common.base.MoreObjects;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 @Profile("aws")
 @Configuration
@@ -45,6 +50,10 @@ public class AwsEngineConfig {
 	private boolean usePublicUrlForCx = false;
 	private boolean usePublicUrlForMonitor = false;
 	private String ssmAutomationDocument = "AWS-StopEC2Instance";
+	private String ssmHibernateDocument;
+	private String spotMaxPrice;
+	private int capacityCooldownSecs = 300;
+	private int tagWriteDelayMillis = 1000;
 
 	private String scriptOnLaunch;
 	private String scriptOnTerminate;
@@ -56,10 +65,35 @@ public class AwsEngineConfig {
 	 */
 	private final Map<String, String> engineSizeMap = Maps.newHashMap();
 	
+	/**
+	 * Maps EngineSize to equivalent EC2 instanceTypes, tried in order when
+	 * the engineSizeMap type has no capacity;
+	 * 	key=size (M), 
+	 * 	value=ec2 instance types (m5.large, m4.large)
+	 */
+	private final Map<String, List<String>> engineAlternateTypeMap = Maps.newHashMap();
+	
+	/**
+	 * Maps EC2 instanceType to its vCPUs, for the alternate types of sizes with vcpus;
+	 * 	key=ec2 instance type (m5.large), 
+	 * 	value=vCPUs (2)
+	 */
+	private final Map<String, Integer> instanceTypeVcpuMap = Maps.newHashMap();
+	
+	/**
+	 * Subnets tried in order after subnetId when an instance type has no capacity
+	 */
+	private final List<String> alternateSubnetIds = Lists.newArrayList();
+	
 	/**
 	 * Maps custom EC2 tags to values
 	 */
 	private final Map<String,String> tagMap = Maps.newHashMap();
+	
+	/**
+	 * EngineSize names launched as EC2 spot instances
+	 */
+	private final Set<String> spotEngineSizes = Sets.newHashSet();
 
 	public boolean isAssignPublicIP() {
 		return assignPublicIP;
@@ -161,6 +195,38 @@ public class AwsEngineConfig {
 		this.subnetId = subnetId;
 	}
 
+	/**
+	 * Subnets, usually in other availability zones, tried in order after <code>subnetId</code> 
+	 * when EC2 has no capacity for an instance type
+	 */
+	public List<String> getAlternateSubnetIds() {
+		return alternateSubnetIds;
+	}
+
+	/**
+	 * @return seconds an instance type and subnet pair is skipped after EC2 reports 
+	 * 		it has no capacity
+	 */
+	public int getCapacityCooldownSecs() {
+		return capacityCooldownSecs;
+	}
+
+	public void setCapacityCooldownSecs(int capacityCooldownSecs) {
+		this.capacityCooldownSecs = capacityCooldownSecs;
+	}
+
+	/**
+	 * @return milliseconds engine tag changes are held before being written to EC2, so changes 
+	 * 		to several instances share a CreateTags request
+	 */
+	public int getTagWriteDelayMillis() {
+		return tagWriteDelayMillis;
+	}
+
+	public void setTagWriteDelayMillis(int tagWriteDelayMillis) {
+		this.tagWriteDelayMillis = tagWriteDelayMillis;
+	}
+
     @Deprecated
 	public boolean isTerminateOnStop() {
 		return terminateOnStop;
@@ -219,6 +285,58 @@ public class AwsEngineConfig {
 		return engineSizeMap;
 	}
 
+	/**
+	 * Map of EngineSize to equivalent EC2 instanceTypes, tried in order 
+	 * after the engineSizeMap type when EC2 has no capacity;
+	 * key=size (name), 
+	 * value=ec2 instance types (e.g. m5.large, m4.large)
+	 * @see EngineSize
+	 */
+	public Map<String, List<String>> getEngineAlternateTypeMap() {
+		return engineAlternateTypeMap;
+	}
+
+	/**
+	 * Map of EC2 instanceType to its vCPUs, used to check alternate types
+	 * against the vcpus of their engine pool entry;
+	 * key=ec2 instance type (e.g. m5.large), 
+	 * value=vCPUs (e.g. 2)
+	 */
+	public Map<String, Integer> getInstanceTypeVcpuMap() {
+		return instanceTypeVcpuMap;
+	}
+	
+	/**
+	 * Checks that no alternate instance type has more vCPUs than its engine pool 
+	 * entry declares, as the vCPU quota counts each engine at its entry's vcpus.
+	 * Sizes without vcpus are not checked.
+	 * 
+	 * @param poolConfig engine pool to check against
+	 * @throws IllegalArgumentException if an alternate type has more vCPUs, 
+	 * 			or is missing from the instanceTypeVcpuMap
+	 */
+	public void validate(EnginePoolConfig poolConfig) {
+		poolConfig.getPool().forEach((poolEntry) -> {
+			final String size = poolEntry.getScanSize().getName();
+			final List<String> alternates = engineAlternateTypeMap.get(size);
+			if (poolEntry.getVcpus() <= 0 || alternates == null) return;
+			
+			alternates.forEach((instanceType) -> {
+				final Integer vcpus = instanceTypeVcpuMap.get(instanceType);
+				if (vcpus == null) {
+					throw new IllegalArgumentException(String.format(
+							"Invalid AWS engine config: instanceTypeVcpuMap has no vCPUs for alternate type %s of size %s", 
+							instanceType, size));
+				}
+				if (vcpus > poolEntry.getVcpus()) {
+					throw new IllegalArgumentException(String.format(
+							"Invalid AWS engine config: Alternate type %s has more vCPUs than size %s; vcpus=%d; sizeVcpus=%d", 
+							instanceType, size, vcpus, poolEntry.getVcpus()));
+				}
+			});
+		});
+	}
+
 	/**
 	 * Map of custom EC2 tags
 	 *  	key=tag name
@@ -228,6 +346,27 @@ public class AwsEngineConfig {
 		return tagMap;
 	}
 
+	/**
+	 * EngineSize names launched as EC2 spot instances, falling back to on-demand
+	 * instances when spot capacity is unavailable
+	 * @see EngineSize
+	 */
+	public Set<String> getSpotEngineSizes() {
+		return spotEngineSizes;
+	}
+
+	/**
+	 * @return maximum hourly price for spot instances, e.g. 0.05; if not set, 
+	 * 		the on-demand price
+	 */
+	public String getSpotMaxPrice() {
+		return spotMaxPrice;
+	}
+
+	public void setSpotMaxPrice(String spotMaxPrice) {
+		this.spotMaxPrice = spotMaxPrice;
+	}
+
 	public String printEngineSizeMap() {
 		final StringBuilder sb = new StringBuilder();
 		engineSizeMap.forEach((size,instanceType) ->
@@ -250,6 +389,18 @@ public class AwsEngineConfig {
 		this.ssmAutomationDocument = ssmAutomationDocument;
 	}
 
+	/**
+	 * @return SSM automation document that stops an instance with hibernation, for engines 
+	 * 		kept in the hibernated tier; if not set, these engines are stopped
+	 */
+	public String getSsmHibernateDocument() {
+		return ssmHibernateDocument;
+	}
+
+	public void setSsmHibernateDocument(String ssmHibernateDocument) {
+		this.ssmHibernateDocument = ssmHibernateDocument;
+	}
+
 	public String toString() {
 		return MoreObjects.toStringHelper(this)
 				.add("assignPublicIP", assignPublicIP)
@@ -268,8 +419,16 @@ public class AwsEngineConfig {
 				.add("usePublicUrlForCx", usePublicUrlForCx)
 				.add("usePublicUrlForMonitor", usePublicUrlForMonitor)
 				.add("engineSizeMap", "[" + printEngineSizeMap() +"]")
+				.add("engineAlternateTypeMap", engineAlternateTypeMap)
+				.add("instanceTypeVcpuMap", instanceTypeVcpuMap)
+				.add("alternateSubnetIds", alternateSubnetIds)
+				.add("capacityCooldownSecs", capacityCooldownSecs)
+				.add("tagWriteDelayMillis", tagWriteDelayMillis)
 				.add("engineTagMap", "[" + printEngineTagMap() +"]")
 				.add("ssmAutomationDocumetn", ssmAutomationDocument)
+				.add("ssmHibernateDocument", ssmHibernateDocument)
+				.add("spotEngineSizes", spotEngineSizes)
+				.add("spotMaxPrice", spotMaxPrice)
 				.toString();
 	}
 
@@ -16,10 +16,15 @@ package com.checkmarx.engine.aws;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 import javax.validation.constraints.NotNull;
 
@@ -27,28 +32,28 @@ import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Profile;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.ec2.model.Instance;
 import com.amazonaws.services.ec2.model.Tag;
 import com.checkmarx.engine.CxConfig;
 import com.checkmarx.engine.domain.DynamicEngine;
+import com.checkmarx.engine.domain.DynamicEngine.WarmTier;
 import com.checkmarx.engine.domain.EnginePoolConfig;
 import com.checkmarx.engine.domain.EngineSize;
 import com.checkmarx.engine.domain.Host;
 import com.checkmarx.engine.rest.CxEngineClient;
 import com.checkmarx.engine.servers.CxEngines;
+import com.checkmarx.engine.utils.CompletableFutureUtils;
 import com.checkmarx.engine.utils.ScriptRunner;
 import com.checkmarx.engine.utils.TaskManager;
-import com.checkmarx.engine.utils.TimeoutTask;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
  * AWS {@code CxEngines} provider.
@@ -66,16 +71,25 @@ public class AwsEngines implements CxEngines {
 	private final AwsEngineConfig awsConfig;
 	private final EnginePoolConfig poolConfig;
 	private final AwsComputeClient ec2Client;
+	private final Ec2InstancePoller instancePoller;
+	private final Ec2TagWriter tagWriter;
 	private final CxEngineClient engineClient;
 	private final TaskManager taskManager;
 	private final int pollingMillis;
     private final ExecutorService executor;
+    private final ExecutorService launchExecutor;
+    private final ScheduledExecutorService scheduler;
 
 	/**
 	 * Maps engine name to EC2 instance; key=engine name
 	 */
 	private final Map<String, Instance> provisionedEngines = Maps.newConcurrentMap();
 	
+	/**
+	 * Names of spot engines the interruption listener has been notified of
+	 */
+	private final Set<String> interruptedEngines = Sets.newConcurrentHashSet();
+	
 	/**
 	 * Maps EngineSize to EC2 instanceType;
 	 * key=size (name), 
@@ -87,18 +101,25 @@ public class AwsEngines implements CxEngines {
 	        CxConfig cxConfig,
 			EnginePoolConfig poolConfig,
 			AwsComputeClient awsClient, 
+			Ec2InstancePoller instancePoller,
+			Ec2TagWriter tagWriter,
 			CxEngineClient engineClient,
 			TaskManager taskManager) {
 		
 	    this.cxConfig = cxConfig;
 	    this.poolConfig = poolConfig;
 		this.ec2Client = awsClient;
+		this.instancePoller = instancePoller;
+		this.tagWriter = tagWriter;
 		this.awsConfig = awsClient.getConfig(); 
 		this.engineClient = engineClient;
 		this.taskManager = taskManager;
 		this.engineTypeMap = awsConfig.getEngineSizeMap();
+		awsConfig.validate(poolConfig);
 		this.pollingMillis = awsConfig.getMonitorPollingIntervalSecs() * 1000;
 		this.executor = taskManager.getExecutor("EngineScripts", "eng-scripts-%d", false);
+		this.launchExecutor = taskManager.getExecutor("EngineLaunch", "eng-launch-%d", true);
+		this.scheduler = taskManager.getLaunchScheduler();
 		
 		log.info("ctor(): {}", this);
 	}
@@ -208,6 +229,10 @@ public class AwsEngines implements CxEngines {
 			if (instance.getInstanceType().equals(instanceType))
 				return size;
 		}
+		for (Entry<String,List<String>> entry : awsConfig.getEngineAlternateTypeMap().entrySet()) {
+			if (entry.getValue().contains(instance.getInstanceType()))
+				return entry.getKey();
+		}
 		// if not found, return first size in map
 		final String size = Iterables.getFirst(engineTypeMap.keySet(), "S"); 
 		log.warn("Engine size tag doesn't match current settings, assuming {} engine: tag={}; instance={}", 
@@ -216,79 +241,249 @@ public class AwsEngines implements CxEngines {
 	}
     
 	@Override
-	@Retryable(
-			value = { RuntimeException.class },
-			maxAttempts = AwsConstants.RETRY_ATTEMPTS,
-			backoff = @Backoff(delay = AwsConstants.RETRY_DELAY))
 	public void launch(DynamicEngine engine, EngineSize size, boolean waitForSpinup) throws InterruptedException {
 		log.debug("launch(): {}; size={}; wait={}", engine, size, waitForSpinup);
+		CompletableFutureUtils.join(launchAsync(engine, size, waitForSpinup));
+	}
+	
+	@Override
+	public CompletableFuture<DynamicEngine> launchAsync(DynamicEngine engine, EngineSize size, boolean waitForSpinup) {
+		log.debug("launchAsync(): {}; size={}; wait={}", engine, size, waitForSpinup);
+		return launchAsync(engine, size, waitForSpinup, null);
+	}
+	
+	/**
+	 * Engines not yet provisioned are launched with a single RunInstances request, then each
+	 * engine continues through its own launch pipeline.  Engines missing from the batch result
+	 * fall back to a separate launch.
+	 */
+	@Override
+	public List<CompletableFuture<DynamicEngine>> launchAsync(List<DynamicEngine> engines, EngineSize size, 
+			boolean waitForSpinup) {
+		log.debug("launchAsync(): count={}; size={}; wait={}", engines.size(), size, waitForSpinup);
 		
-		final String name = engine.getName();
-		final String type = engineTypeMap.get(size.getName());
-		final Map<String, String> tags = createEngineTags(size.getName());
+		final List<String> names = engines.stream()
+				.map(DynamicEngine::getName)
+				.filter(name -> !provisionedEngines.containsKey(name))
+				.collect(Collectors.toList());
+		if (names.size() < 2) {
+			return CxEngines.super.launchAsync(engines, size, waitForSpinup);
+		}
 		
-		Instance instance = provisionedEngines.get(name);
-		String instanceId = null;
+		final CompletableFuture<Map<String, Instance>> batch = 
+				CompletableFuture.supplyAsync(() -> runInstances(names, size), launchExecutor);
+		return engines.stream().map(engine -> {
+			if (!names.contains(engine.getName())) {
+				return launchAsync(engine, size, waitForSpinup);
+			}
+			final AtomicReference<CompletableFuture<DynamicEngine>> launch = new AtomicReference<>();
+			final CompletableFuture<DynamicEngine> future = batch
+					.handle((instances, ex) -> instances == null ? null : instances.get(engine.getName()))
+					.thenCompose(instance -> {
+						launch.set(launchAsync(engine, size, waitForSpinup, instance));
+						return launch.get();
+					});
+			// cancelling the engine's future abandons its launch, as for a single engine
+			future.whenComplete((result, ex) -> {
+				final CompletableFuture<DynamicEngine> launching = launch.get();
+				if (future.isCancelled() && launching != null) launching.cancel(true);
+			});
+			// cancelled before the batch completed, so the engine's instance has no launch
+			batch.thenAcceptAsync(instances -> {
+				final Instance instance = instances.get(engine.getName());
+				if (instance != null && future.isCancelled() && launch.get() == null) {
+					terminateAbandoned(engine.getName(), instance);
+				}
+			}, launchExecutor);
+			return future;
+		}).collect(Collectors.toList());
+	}
+	
+	private Map<String, Instance> runInstances(List<String> names, EngineSize size) {
+		log.debug("runInstances(): names={}; size={}", names, size);
 		
+		final String type = engineTypeMap.get(size.getName());
+		final Map<String, String> tags = createEngineTags(size.getName());
+		final Map<String, Instance> instances = Maps.newHashMap();
+		try {
+			ec2Client.launch(names, type, tags, isSpot(size)).forEach(instance -> {
+				final String name = Ec2.getName(instance);
+				provisionedEngines.put(name, instance);
+				instances.put(name, instance);
+			});
+			if (instances.size() < names.size()) {
+				log.warn("EC2 launched fewer instances than requested, launching remainder separately; "
+						+ "requested={}; launched={}", names.size(), instances.size());
+			}
+		} catch (Exception e) {
+			log.warn("Failed to launch EC2 instance batch, launching separately; names={}; cause={}; message={}", 
+					names, e, e.getMessage());
+		}
+		return instances;
+	}
+	
+	/**
+	 * @param launched instance already launched for the engine, used by the first attempt; may be null
+	 */
+	private CompletableFuture<DynamicEngine> launchAsync(DynamicEngine engine, EngineSize size, boolean waitForSpinup, 
+			Instance launched) {
+		final String name = engine.getName();
 		log.info("action=LaunchingEngine; name={}; {}", name, engine); 
 
-		boolean success = false;
+		final AtomicReference<Instance> provisioned = new AtomicReference<>(launched);
 		final Stopwatch timer = Stopwatch.createStarted();
-		try {
-			if (instance != null) {
-	            log.debug("...EC2 instance is provisioned...");
-			} else {
-			    instance = launchEngine(engine, name, type, tags);
-			}
+		final CompletableFuture<DynamicEngine> future = CompletableFutureUtils.retry("launch-" + name, 
+				() -> launchEngine(engine, size, waitForSpinup, provisioned.getAndSet(null)), 
+				AwsConstants.RETRY_ATTEMPTS, scheduler, AwsConstants.RETRY_DELAY, TimeUnit.MILLISECONDS);
+		future.whenComplete((result, ex) -> {
+			final Instance instance = provisionedEngines.get(name);
+			log.info("action=LaunchedEngine; success={}; name={}; id={}; elapsedTime={}s; {}", 
+					ex == null, name, instance == null ? null : instance.getInstanceId(), 
+					timer.elapsed(TimeUnit.SECONDS), Ec2.print(instance));
+		});
+		return future;
+	}
 	
-			// refresh instance state
-            instanceId = instance.getInstanceId();
-            instance = ec2Client.describe(instance.getInstanceId());
-            provisionedEngines.put(name, instance);
+	/**
+	 * A single launch attempt: provision or start the instance, wait for the running state,
+	 * then optionally wait for the engine to respond.  EC2 calls run on the launch executor, 
+	 * waits are scheduled.
+	 */
+	private CompletableFuture<DynamicEngine> launchEngine(DynamicEngine engine, EngineSize size, boolean waitForSpinup, 
+			Instance launched) {
+		final String name = engine.getName();
+		final String type = engineTypeMap.get(size.getName());
+		final Map<String, String> tags = createEngineTags(size.getName());
+		final AtomicReference<String> instanceId = new AtomicReference<>();
+		
+		final CompletableFuture<Instance> provisioned;
+		if (launched != null) {
+			instanceId.set(launched.getInstanceId());
+			provisioned = CompletableFuture.completedFuture(launched);
+		} else {
+			provisioned = provisionEngine(name, type, tags, isSpot(size), instanceId);
+		}
+		
+		// completed by the stages below, so they can tell when the attempt was cancelled
+		final CompletableFuture<DynamicEngine> future = new CompletableFuture<>();
+		provisioned
+				.thenApply(instance -> {
+					// the instance id is unknown until EC2 responds, so it is terminated here
+					if (future.isCancelled()) {
+						terminateAbandoned(name, instance);
+						throw new CancellationException();
+					}
+					return instance;
+				})
+				.thenCompose(instance -> Ec2.isRunning(instance) 
+						? CompletableFuture.completedFuture(instance) 
+						: instancePoller.waitForPendingState(instance.getInstanceId()))
+				.thenCompose(instance -> {
+					if (future.isCancelled()) throw new CancellationException();
+					provisionedEngines.put(name, instance);
+					final Host host = createHost(name, instance);
+					engine.setHost(host);
+					return waitForSpinup ? pingEngine(host) : CompletableFuture.completedFuture(true);
+				})
+				.thenApply(pinged -> {
+					//move this logic into caller
+					runScript(awsConfig.getScriptOnLaunch(), engine);
+					return engine;
+				})
+				.whenComplete((result, ex) -> {
+					if (ex == null) {
+						future.complete(result);
+					} else {
+						future.completeExceptionally(CompletableFutureUtils.unwrap(ex));
+					}
+				});
+		
+		future.whenCompleteAsync((result, ex) -> {
+			if (ex == null) return;
+			final Throwable t = CompletableFutureUtils.unwrap(ex);
+			log.warn("Error occurred while launching AWS EC2 instance; name={}; {}; cause={}; message={}", 
+					name, engine, t, t.getMessage());
+			// the engine returns to the pool unprovisioned
+			if (future.isCancelled()) provisionedEngines.remove(name);
+			handleLaunchException(instanceId.get(), t);
+		}, launchExecutor);
+		return future;
+	}
+	
+	private CompletableFuture<Instance> provisionEngine(String name, String type, Map<String, String> tags, 
+			boolean spot, AtomicReference<String> instanceId) {
+		return CompletableFuture.supplyAsync(() -> {
+			final Instance instance = provisionedEngines.get(name);
+			if (instance == null) return null;
 			
-			if (Ec2.isTerminated(instance)) {
-			    log.debug("...EC2 instance is terminated, launching new instance...");
-				instance = launchEngine(engine, name, type, tags);
-				instanceId = instance.getInstanceId();
-            } else if (Ec2.isStopping(instance)) {
-                final int sleep = awsConfig.getStopWaitTimeSecs();
-                log.debug("...EC2 instance is stopping, sleeping {}s...", sleep);
-                Thread.sleep(sleep * 1000);
-                log.debug("...EC2 instance is stopping, starting instance...");
-                instance = ec2Client.start(instanceId);
-			} else if (!Ec2.isRunning(instance)) {
-                log.debug("...EC2 instance is stopped, starting instance...");
-				instance = ec2Client.start(instanceId);
-			} else {
-			    // this will happen if engine was launched
-                log.debug("...EC2 instance is running...");
+			// refresh instance state
+			log.debug("...EC2 instance is provisioned...");
+			final Instance refreshed = ec2Client.describe(instance.getInstanceId());
+			provisionedEngines.put(name, refreshed);
+			return refreshed;
+		}, launchExecutor).thenCompose(instance -> {
+			if (instance == null || Ec2.isTerminated(instance)) {
+				log.debug("...EC2 instance is not provisioned, launching new instance...");
+				return CompletableFuture.supplyAsync(() -> runInstance(name, type, tags, spot, instanceId), launchExecutor);
 			}
 			
-			final Host host = createHost(name, instance);
-			engine.setHost(host);
-			
-			if (waitForSpinup) {
-				pingEngine(host);
+			final String id = instance.getInstanceId();
+			instanceId.set(id);
+			if (Ec2.isPending(instance)) {
+				log.debug("...EC2 instance is pending...");
+				return CompletableFuture.completedFuture(instance);
+			} else if (Ec2.isStopping(instance)) {
+				final int wait = awsConfig.getStopWaitTimeSecs();
+				log.debug("...EC2 instance is stopping, waiting {}s to start instance...", wait);
+				return CompletableFutureUtils.delay(scheduler, wait, TimeUnit.SECONDS)
+						.thenApplyAsync(v -> startInstance(id), launchExecutor);
+			} else if (!Ec2.isRunning(instance)) {
+				log.debug("...EC2 instance is stopped, starting instance...");
+				return CompletableFuture.supplyAsync(() -> startInstance(id), launchExecutor);
 			}
-			//move this logic into caller
-			runScript(awsConfig.getScriptOnLaunch(), engine);
-			
-			//engine.setState(State.IDLE);
-			success = true;
-        } catch (CancellationException | InterruptedException | RejectedExecutionException e) {
-            log.warn("Error occurred while launching AWS EC2 instance; name={}; {}", name, engine, e);
-            handleLaunchException(instanceId, e);
-            throw new InterruptedException(e.getMessage());
-		} catch (Throwable e) {
-			log.error("Error occurred while launching AWS EC2 instance; name={}; {}", name, engine, e);
-            handleLaunchException(instanceId, e);
-            throw new RuntimeException("Error launching engine", e);
-		} finally {
-			log.info("action=LaunchedEngine; success={}; name={}; id={}; elapsedTime={}s; {}", 
-					success, name, instanceId, timer.elapsed(TimeUnit.SECONDS), Ec2.print(instance)); 
+			// this will happen if engine was launched
+			log.debug("...EC2 instance is running...");
+			return CompletableFuture.completedFuture(instance);
+		});
+	}
+	
+	private Instance runInstance(String name, String type, Map<String, String> tags, boolean spot, 
+			AtomicReference<String> instanceId) {
+		log.debug("runInstance(): name={}; type={}; spot={}", name, type, spot);
+		try {
+			final Instance instance = ec2Client.launch(name, type, tags, false, spot);
+			instanceId.set(instance.getInstanceId());
+			provisionedEngines.put(name, instance);
+			return instance;
+		} catch (Exception e) {
+			throw new CompletionException(e);
 		}
 	}
 	
+	private boolean isSpot(EngineSize size) {
+		return awsConfig.getSpotEngineSizes().contains(size.getName());
+	}
+	
+	private Instance startInstance(String instanceId) {
+		try {
+			return ec2Client.start(instanceId, false);
+		} catch (Exception e) {
+			throw new CompletionException(e);
+		}
+	}
+	
+	/**
+	 * Terminates an instance EC2 provisioned after its launch was cancelled; the engine is 
+	 * back in the pool unprovisioned, so the instance would otherwise keep running.
+	 */
+	private void terminateAbandoned(String name, Instance instance) {
+		final String instanceId = instance.getInstanceId();
+		log.warn("Launch cancelled while provisioning, terminating instance; name={}; instanceId={}", 
+				name, instanceId);
+		provisionedEngines.remove(name);
+		ec2Client.terminate(instanceId);
+	}
+	
 	private void handleLaunchException(String instanceId, Throwable e) {
         if (!Strings.isNullOrEmpty(instanceId)) {
             log.warn("Terminating instance due to error; instanceId={}", instanceId);
@@ -303,7 +498,16 @@ public class AwsEngines implements CxEngines {
 	
 	@Override
 	public void stop(DynamicEngine engine, boolean forceTerminate) {
-		log.debug("stop() : {}", engine);
+		stop(engine, cxConfig.isTerminateOnStop() || forceTerminate ? WarmTier.TERMINATED : WarmTier.STOPPED);
+	}
+	
+	/**
+	 * Hibernated engines are stopped with the <code>ssmHibernateDocument</code> automation document.
+	 * Spot engines cannot be restarted once stopped, so are always terminated.
+	 */
+	@Override
+	public void stop(DynamicEngine engine, WarmTier tier) {
+		log.debug("stop() : tier={}; {}", tier, engine);
 
         String action = "StoppedEngine";
         String instanceId = null;
@@ -316,13 +520,19 @@ public class AwsEngines implements CxEngines {
     		instance = lookupInstance(engine, "stop");
     		instanceId = instance.getInstanceId();
 			
-			if (cxConfig.isTerminateOnStop() || forceTerminate) {	
+			if (WarmTier.TERMINATED.equals(tier) || Ec2.isSpot(instance)) {	
 				action = "TerminatedEngine";
 				ec2Client.terminate(instanceId);
 				provisionedEngines.remove(name);
+				interruptedEngines.remove(name);
 				runScript(awsConfig.getScriptOnTerminate(), engine);
 			} else {
-				ec2Client.stop(instanceId);
+				if (WarmTier.HIBERNATED.equals(tier)) {
+					action = "HibernatedEngine";
+					ec2Client.hibernate(instanceId);
+				} else {
+					ec2Client.stop(instanceId);
+				}
 				instance = ec2Client.describe(instanceId);
 				// update the map with updated instance
 				provisionedEngines.put(name, instance);
@@ -335,6 +545,44 @@ public class AwsEngines implements CxEngines {
 		}
 	}
 
+	/**
+	 * Polls EC2 for interrupted spot engines when spot engine sizes are configured.
+	 */
+	@Override
+	public void setInterruptionListener(EngineInterruptionListener listener) {
+		if (awsConfig.getSpotEngineSizes().isEmpty()) return;
+		
+		log.info("Monitoring spot engines for interruption; sizes={}; interval={}ms", 
+				awsConfig.getSpotEngineSizes(), pollingMillis);
+		taskManager.addTask("SpotInterruptionMonitor", scheduler.scheduleWithFixedDelay(
+				() -> checkInterruptions(listener), pollingMillis, pollingMillis, TimeUnit.MILLISECONDS));
+	}
+	
+	private void checkInterruptions(EngineInterruptionListener listener) {
+		log.trace("checkInterruptions()");
+		
+		final Map<String, String> spotEngines = Maps.newHashMap();
+		provisionedEngines.forEach((name, instance) -> {
+			if (Ec2.isSpot(instance) && !Ec2.isTerminated(instance) && !interruptedEngines.contains(name)) {
+				spotEngines.put(instance.getInstanceId(), name);
+			}
+		});
+		if (spotEngines.isEmpty()) return;
+		
+		try {
+			for (String instanceId : ec2Client.findInterruptedSpotInstances(spotEngines.keySet())) {
+				final String name = spotEngines.get(instanceId);
+				if (name == null || !interruptedEngines.add(name)) continue;
+				
+				log.warn("action=InterruptedEngine; name={}; id={}", name, instanceId);
+				listener.onEngineInterrupted(name);
+			}
+		} catch (Throwable t) {
+			// keep the schedule alive
+			log.warn("Failed to check spot engines for interruption; cause={}; message={}", t, t.getMessage());
+		}
+	}
+
     @Override
     public void onScanAssigned(DynamicEngine toEngine) {
         final String scanId = toEngine.getScanId();
@@ -356,27 +604,22 @@ public class AwsEngines implements CxEngines {
         tagEngine(fromEngine, tag, idTag);
     }
     
+    /**
+     * Tags the engine's cached instance, and queues the tags to be written to EC2.  
+     * The tags are only read back when engines are recovered on restart, so scan 
+     * assignment does not wait on EC2.
+     */
     Instance tagEngine(DynamicEngine engine, Tag... tags) {
-        Instance instance = lookupInstance(engine, "tag");
+        final Instance instance = lookupInstance(engine, "tag");
         final String name = engine.getName();
         final String instanceId = instance.getInstanceId();
         
-        final String action = "TagEngine";
-        boolean success = false;
-        final Stopwatch timer = Stopwatch.createStarted();
-        try {
-            instance = ec2Client.updateTags(instance, tags);
-            provisionedEngines.put(name, instance);
-            success = true;
-            return instance;
-        } catch (Exception e) {
-            log.warn("Failed to tag engine; {}; cause={}; message={}", 
-                    engine, e.getCause(), e.getMessage());
-            throw e;
-        } finally {
-            log.info("action={}; success={}; name={}; id={}; elapsedTime={}ms; {}", 
-                    action, success, name, instanceId, timer.elapsed(TimeUnit.MILLISECONDS), Ec2.print(instance)); 
-        }
+        tagWriter.write(instanceId, tags);
+        final Instance tagged = provisionedEngines.computeIfPresent(name, 
+                (key, current) -> Ec2.withTags(current, tags));
+        log.info("action={}; name={}; id={}; pendingWrites={}; {}", 
+                "TagEngine", name, instanceId, tagWriter.getPendingCount(), Ec2.print(tagged));
+        return tagged == null ? Ec2.withTags(instance, tags) : tagged;
     }
     
     private Instance lookupInstance(DynamicEngine engine, String operation) {
@@ -391,15 +634,6 @@ public class AwsEngines implements CxEngines {
         return instance;
     }
 
-	private Instance launchEngine(final DynamicEngine engine, final String name, 
-			final String type, final Map<String, String> tags) throws Exception {
-		log.debug("launchEngine(): name={}; type={}", name, type);
-		
-		final Instance instance = ec2Client.launch(name, type, tags);
-		provisionedEngines.put(name, instance);
-		return instance;
-	}
-
 	private Host createHost(final String name, final Instance instance) {
 		final String ip = instance.getPrivateIpAddress();
 		final String publicIp = instance.getPublicIpAddress();
@@ -411,31 +645,22 @@ public class AwsEngines implements CxEngines {
 				engineClient.buildEngineServiceUrl(monitorIp), launchTime);
 	}
 
-	private void pingEngine(Host host) throws Exception {
+	private CompletableFuture<Boolean> pingEngine(Host host) {
 		log.trace("pingEngine(): host={}", host);
 		
-		final TimeoutTask<Boolean> pingTask = 
-				new TimeoutTask<>("pingEngine-"+host.getIp(), awsConfig.getCxEngineTimeoutSec(), 
-				        TimeUnit.SECONDS, taskManager);
 		final String ip = awsConfig.isUsePublicUrlForMonitor() ? host.getPublicIp(): host.getIp();
-		try {
-			pingTask.execute(() -> {
-			    do {
-                    log.trace("Engine ping failed, waiting to retry; sleep={}ms; {}", pollingMillis, host); 
-                    TimeUnit.MILLISECONDS.sleep(pollingMillis);
-			    } while (!engineClient.pingEngine(ip));
-				return true;
-			});
-        } catch (CancellationException | InterruptedException | RejectedExecutionException e) {
-            log.warn("Failed to ping CxEngine service; {}; cause={}; message={}", 
-                    host, e.getCause(), e.getMessage());
-            // do not retry, so throw Interrupted exception
-            throw new InterruptedException(e.getMessage());
-		} catch (Exception e) {
-			log.warn("Failed to ping CxEngine service; {}; cause={}; message={}", 
-					host, e.getCause(), e.getMessage());
-			throw e;
-		}
+		final CompletableFuture<Boolean> ping = CompletableFutureUtils.poll("pingEngine-" + ip, scheduler, () -> {
+			if (engineClient.pingEngine(ip)) return true;
+			log.trace("Engine ping failed, waiting to retry; sleep={}ms; {}", pollingMillis, host); 
+			return null;
+		}, pollingMillis, pollingMillis, awsConfig.getCxEngineTimeoutSec() * 1000L, TimeUnit.MILLISECONDS);
+		
+		ping.whenComplete((pinged, ex) -> {
+			if (ex == null) return;
+			final Throwable t = CompletableFutureUtils.unwrap(ex);
+			log.warn("Failed to ping CxEngine service; {}; cause={}; message={}", host, t, t.getMessage());
+		});
+		return ping;
 	}
 	
 	void runScript(String scriptFile, DynamicEngine engine) {
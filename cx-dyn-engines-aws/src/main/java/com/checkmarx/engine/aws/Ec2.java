@@ -14,15 +14,21 @@
 package com.checkmarx.engine.aws;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.validation.constraints.NotNull;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.ec2.model.Instance;
 import com.amazonaws.services.ec2.model.Tag;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 public class Ec2 {
 	
@@ -75,6 +81,20 @@ public class Ec2 {
 		return theTag.isPresent() ? theTag.get().getValue() : null;
 	}
 	
+	/**
+	 * @return a copy of the instance with the supplied tags set, leaving the instance unchanged
+	 */
+	public static Instance withTags(@NotNull Instance instance, Tag... tags) {
+		final Map<String, Tag> merged = Maps.newLinkedHashMap();
+		if (instance.getTags() != null) {
+			instance.getTags().forEach(tag -> merged.put(tag.getKey(), tag));
+		}
+		for (Tag tag : tags) {
+			merged.put(tag.getKey(), tag);
+		}
+		return instance.clone().withTags(Lists.newArrayList(merged.values()));
+	}
+	
 	public static InstanceState getState(Instance instance) {
 		return instance == null ? InstanceState.TERMINATED 
 				: InstanceState.from(instance.getState().getCode());
@@ -84,6 +104,11 @@ public class Ec2 {
 		return !isTerminated(instance);
 	}
 	
+    public static boolean isPending(Instance instance) {
+        final InstanceState state = getState(instance);
+        return InstanceState.PENDING.equals(state);
+    }
+
     public static boolean isStopping(Instance instance) {
         final InstanceState state = getState(instance);
         return InstanceState.STOPPING.equals(state);
@@ -105,6 +130,34 @@ public class Ec2 {
 		final InstanceState state = getState(instance);
 		return InstanceState.RUNNING.equals(state);
 	}
+	
+	public static boolean isSpot(@NotNull Instance instance) {
+		return AwsConstants.SPOT_LIFECYCLE.equals(instance.getInstanceLifecycle());
+	}
+
+	/**
+	 * @return true if the supplied exception, or one of its causes, is an EC2 throttling error
+	 */
+	public static boolean isRequestLimitExceeded(Throwable t) {
+		return hasErrorCode(t, AwsConstants.THROTTLING_CODES);
+	}
+
+	/**
+	 * @return true if the supplied exception, or one of its causes, reports an EC2 instance does not exist
+	 */
+	public static boolean isInstanceNotFound(Throwable t) {
+		return hasErrorCode(t, ImmutableSet.of(AwsConstants.INSTANCE_NOT_FOUND));
+	}
+
+	private static boolean hasErrorCode(Throwable t, Set<String> errorCodes) {
+		for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+			if (cause instanceof AmazonServiceException 
+					&& errorCodes.contains(((AmazonServiceException) cause).getErrorCode())) {
+				return true;
+			}
+		}
+		return false;
+	}
 
 	public static String print(Instance instance) {
 		if (instance == null) return "null";
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.aws;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTimeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Orders the instance type and subnet pairs an EC2 instance may launch into: the 
+ * <code>engineSizeMap</code> type followed by its <code>engineAlternateTypeMap</code> types, 
+ * each in <code>subnetId</code> followed by the <code>alternateSubnetIds</code>.
+ * <br/><br/>
+ * Pairs EC2 recently reported out of capacity are skipped until their cooldown passes, 
+ * so launches move straight on to a pair likely to succeed.  Spot and on-demand capacity 
+ * are tracked separately.
+ */
+public class Ec2CapacityTracker {
+
+	private static final Logger log = LoggerFactory.getLogger(Ec2CapacityTracker.class);
+
+	private final AwsEngineConfig config;
+	private final long cooldownMillis;
+
+	/**
+	 * map of cooldown expiry in epoch millis; key=market, instance type and subnet
+	 */
+	private final Map<String, Long> cooldowns = Maps.newConcurrentMap();
+
+	public Ec2CapacityTracker(AwsEngineConfig config) {
+		this.config = config;
+		this.cooldownMillis = TimeUnit.SECONDS.toMillis(config.getCapacityCooldownSecs());
+	}
+
+	/**
+	 * Returns the pairs to try, in order, for an instance type, leaving out pairs still 
+	 * cooling down.  When every pair is cooling down, returns the pair whose cooldown 
+	 * ends first, so the launch is still attempted.
+	 * 
+	 * @param instanceType requested EC2 instance type, e.g. m4.large
+	 * @param spot true for spot capacity
+	 * @return at least one pair
+	 */
+	public List<LaunchTarget> getLaunchTargets(String instanceType, boolean spot) {
+		final long now = DateTimeUtils.currentTimeMillis();
+		final List<LaunchTarget> targets = Lists.newArrayList();
+		LaunchTarget next = null;
+		long nextExpiry = Long.MAX_VALUE;
+		for (LaunchTarget target : listTargets(instanceType)) {
+			final Long expiry = cooldowns.get(target.getKey(spot));
+			if (expiry == null || expiry <= now) {
+				targets.add(target);
+			} else if (expiry < nextExpiry) {
+				next = target;
+				nextExpiry = expiry;
+			}
+		}
+		if (targets.isEmpty()) {
+			log.debug("All launch targets cooling down, trying earliest: instanceType={}; spot={}; {}", 
+					instanceType, spot, next);
+			targets.add(next);
+		}
+		return targets;
+	}
+	
+	/**
+	 * Skips the pair for <code>capacityCooldownSecs</code>.
+	 */
+	public void onCapacityError(LaunchTarget target, boolean spot) {
+		log.debug("Launch target cooling down: spot={}; cooldown={}s; {}", 
+				spot, config.getCapacityCooldownSecs(), target);
+		cooldowns.put(target.getKey(spot), DateTimeUtils.currentTimeMillis() + cooldownMillis);
+	}
+
+	/**
+	 * Ends any cooldown for the pair, once EC2 has launched into it.
+	 */
+	public void onLaunched(LaunchTarget target, boolean spot) {
+		cooldowns.remove(target.getKey(spot));
+	}
+	
+	public int getCoolingCount() {
+		final long now = DateTimeUtils.currentTimeMillis();
+		return (int) cooldowns.values().stream().filter(expiry -> expiry > now).count();
+	}
+
+	private List<LaunchTarget> listTargets(String instanceType) {
+		final List<String> types = Lists.newArrayList(instanceType);
+		for (Entry<String, String> entry : config.getEngineSizeMap().entrySet()) {
+			if (!entry.getValue().equals(instanceType)) continue;
+			final List<String> alternates = config.getEngineAlternateTypeMap().get(entry.getKey());
+			if (alternates == null) continue;
+			alternates.stream()
+					.filter(type -> !types.contains(type))
+					.forEach(types::add);
+		}
+		
+		final List<String> subnets = Lists.newArrayList(Strings.nullToEmpty(config.getSubnetId()));
+		config.getAlternateSubnetIds().stream()
+				.filter(subnet -> !subnets.contains(subnet))
+				.forEach(subnets::add);
+		
+		final List<LaunchTarget> targets = Lists.newArrayList();
+		types.forEach(type -> subnets.forEach(subnet -> targets.add(new LaunchTarget(type, subnet))));
+		return targets;
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("cooldownMillis", cooldownMillis)
+				.add("coolingCount", getCoolingCount())
+				.toString();
+	}
+	
+	/**
+	 * An EC2 instance type and subnet to launch into.
+	 */
+	public static class LaunchTarget {
+		
+		private final String instanceType;
+		private final String subnetId;
+
+		public LaunchTarget(String instanceType, String subnetId) {
+			this.instanceType = instanceType;
+			this.subnetId = subnetId;
+		}
+
+		public String getInstanceType() {
+			return instanceType;
+		}
+
+		public String getSubnetId() {
+			return subnetId;
+		}
+		
+		private String getKey(boolean spot) {
+			return String.format("%s:%s:%s", spot ? AwsConstants.SPOT_LIFECYCLE : "on-demand", instanceType, subnetId);
+		}
+
+		@Override
+		public String toString() {
+			return MoreObjects.toStringHelper(this)
+					.add("instanceType", instanceType)
+					.add("subnetId", subnetId)
+					.toString();
+		}
+	}
+
+}
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.aws;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.amazonaws.services.ec2.model.Instance;
+import com.checkmarx.engine.aws.Ec2.InstanceState;
+import com.checkmarx.engine.utils.ExecutorServiceUtils;
+import com.checkmarx.engine.utils.TaskManager;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Waits for EC2 instances to leave the pending state.  All pending instances are 
+ * described with a single DescribeInstances call per polling interval, and polling 
+ * backs off for every instance when EC2 throttles the requests.
+ * 
+ * @author randy@checkmarx.com
+ */
+@Component
+@Profile("aws")
+public class Ec2InstancePoller {
+	
+	private static final Logger log = LoggerFactory.getLogger(Ec2InstancePoller.class);
+	
+	private final AwsComputeClient ec2Client;
+	private final ScheduledExecutorService scheduler;
+	private final long intervalMillis;
+	private final long maxBackoffMillis;
+	private final long timeoutMillis;
+	
+	/**
+	 * Instances waiting on the pending state; key=instanceId
+	 */
+	private final Map<String, PendingInstance> pendingInstances = Maps.newConcurrentMap();
+	
+	private boolean isScheduled = false;
+	private long delayMillis;
+	
+	public Ec2InstancePoller(AwsComputeClient ec2Client, TaskManager taskManager) {
+		final AwsEngineConfig config = ec2Client.getConfig();
+		this.ec2Client = ec2Client;
+		this.scheduler = ExecutorServiceUtils.buildScheduledExecutorService("ec2-poller-%d", true);
+		this.intervalMillis = TimeUnit.SECONDS.toMillis(config.getMonitorPollingIntervalSecs());
+		this.maxBackoffMillis = Math.max(intervalMillis, 
+				TimeUnit.SECONDS.toMillis(AwsConstants.MAX_POLLING_BACKOFF_SECS));
+		this.timeoutMillis = TimeUnit.SECONDS.toMillis(config.getLaunchTimeoutSec());
+		this.delayMillis = intervalMillis;
+		taskManager.addExecutor("Ec2InstancePoller", scheduler);
+		
+		log.info("ctor(): {}", this);
+	}
+	
+	/**
+	 * Waits for the supplied instance to leave the pending state.
+	 * 
+	 * @param instanceId to wait on
+	 * @return a future completed with the described instance once it is no longer pending,
+	 * 			or failed with a {@link TimeoutException} after the launch timeout.  
+	 * 			Cancelling the future stops polling for the instance.
+	 */
+	@NotNull
+	public CompletableFuture<Instance> waitForPendingState(@NotBlank String instanceId) {
+		log.trace("waitForPendingState(): instanceId={}", instanceId);
+		
+		final PendingInstance pending = pendingInstances.computeIfAbsent(instanceId, id -> {
+			final PendingInstance added = new PendingInstance(id, System.currentTimeMillis() + timeoutMillis);
+			added.future.whenComplete((instance, ex) -> pendingInstances.remove(id, added));
+			return added;
+		});
+		schedule(false);
+		return pending.future;
+	}
+	
+	/**
+	 * @return the number of instances currently waiting on the pending state
+	 */
+	public int getPendingCount() {
+		return pendingInstances.size();
+	}
+
+	private synchronized void schedule(boolean afterPoll) {
+		if (afterPoll) {
+			isScheduled = false;
+		}
+		if (isScheduled || pendingInstances.isEmpty()) return;
+		
+		isScheduled = true;
+		scheduler.schedule(this::poll, delayMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	void poll() {
+		try {
+			final List<String> instanceIds = ImmutableList.copyOf(pendingInstances.keySet());
+			if (instanceIds.isEmpty()) return;
+			
+			log.debug("poll(): pending={}; delay={}ms", instanceIds.size(), delayMillis);
+			final List<Instance> instances = describe(instanceIds);
+			instances.forEach(this::onDescribed);
+			expirePending();
+		} finally {
+			schedule(true);
+		}
+	}
+	
+	private List<Instance> describe(List<String> instanceIds) {
+		try {
+			final List<Instance> instances = Lists.newArrayList();
+			for (List<String> batch : Lists.partition(instanceIds, AwsConstants.MAX_DESCRIBE_INSTANCE_IDS)) {
+				instances.addAll(ec2Client.describe(batch));
+			}
+			onSuccess();
+			return instances;
+		} catch (RuntimeException e) {
+			if (Ec2.isRequestLimitExceeded(e)) {
+				onThrottled();
+			} else {
+				// transient failures are retried next interval, until the launch timeout
+				log.warn("Failed to describe pending EC2 instances; count={}; cause={}; message={}", 
+						instanceIds.size(), e, e.getMessage());
+			}
+			return Lists.newArrayList();
+		}
+	}
+	
+	private synchronized void onSuccess() {
+		delayMillis = intervalMillis;
+	}
+	
+	private synchronized void onThrottled() {
+		delayMillis = Math.min(delayMillis * 2, maxBackoffMillis);
+		log.warn("EC2 request limit exceeded, backing off instance polling; delay={}ms; pending={}", 
+				delayMillis, pendingInstances.size());
+	}
+	
+	private void onDescribed(Instance instance) {
+		final PendingInstance pending = pendingInstances.get(instance.getInstanceId());
+		if (pending == null) return;
+		
+		final InstanceState state = Ec2.getState(instance);
+		if (InstanceState.PENDING.equals(state)) {
+			log.trace("state={}, waiting to refresh; instanceId={}", state, instance.getInstanceId()); 
+			return;
+		}
+		pending.future.complete(instance);
+	}
+	
+	private void expirePending() {
+		final long now = System.currentTimeMillis();
+		pendingInstances.values().forEach(pending -> {
+			if (now < pending.expireTime) return;
+			log.warn("Failed to determine instance state due to timeout; instanceId={}", pending.instanceId);
+			pending.future.completeExceptionally(
+					new TimeoutException("Timeout waiting for instance state: " + pending.instanceId));
+		});
+	}
+
+	synchronized long getDelayMillis() {
+		return delayMillis;
+	}
+	
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("intervalMillis", intervalMillis)
+				.add("maxBackoffMillis", maxBackoffMillis)
+				.add("timeoutMillis", timeoutMillis)
+				.toString();
+	}
+
+	private static class PendingInstance {
+		
+		private final String instanceId;
+		private final long expireTime;
+		private final CompletableFuture<Instance> future = new CompletableFuture<>();
+		
+		PendingInstance(String instanceId, long expireTime) {
+			this.instanceId = instanceId;
+			this.expireTime = expireTime;
+		}
+		
+	}
+
+}
@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.aws;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.amazonaws.services.ec2.model.Tag;
+import com.checkmarx.engine.utils.ExecutorServiceUtils;
+import com.checkmarx.engine.utils.TaskManager;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Writes engine tag changes to EC2 behind the callers making them.  Changes are held for 
+ * <code>tagWriteDelayMillis</code>; a later value of an instance's tag replaces one not yet 
+ * written, and instances with the same pending tags are written with a single CreateTags 
+ * call.  Failed writes are queued again, backing off, and pending changes are written 
+ * on shutdown.
+ */
+@Component
+@Profile("aws")
+public class Ec2TagWriter {
+	
+	private static final Logger log = LoggerFactory.getLogger(Ec2TagWriter.class);
+	
+	private static final long MIN_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(1);
+	
+	private final AwsComputeClient ec2Client;
+	private final ScheduledExecutorService scheduler;
+	private final long intervalMillis;
+	private final long maxBackoffMillis;
+	
+	/**
+	 * Tag values not yet written; key=instanceId, value=(key=tag key, value=tag value)
+	 */
+	private final Map<String, Map<String, String>> pendingTags = Maps.newLinkedHashMap();
+	
+	private boolean isScheduled = false;
+	private boolean isStopped = false;
+	private long delayMillis;
+	
+	public Ec2TagWriter(AwsComputeClient ec2Client, TaskManager taskManager) {
+		final AwsEngineConfig config = ec2Client.getConfig();
+		this.ec2Client = ec2Client;
+		this.scheduler = ExecutorServiceUtils.buildScheduledExecutorService("ec2-tagger-%d", true);
+		this.intervalMillis = config.getTagWriteDelayMillis();
+		this.maxBackoffMillis = Math.max(intervalMillis, 
+				TimeUnit.SECONDS.toMillis(AwsConstants.MAX_TAG_WRITE_BACKOFF_SECS));
+		this.delayMillis = intervalMillis;
+		taskManager.addExecutor("Ec2TagWriter", scheduler);
+		
+		log.info("ctor(): {}", this);
+	}
+	
+	/**
+	 * Queues the supplied tags to be written to the instance, replacing values of the 
+	 * same tags not yet written.
+	 */
+	public void write(@NotBlank String instanceId, @NotNull Tag... tags) {
+		log.trace("write(): instanceId={}; tags={}", instanceId, tags.length);
+		
+		synchronized (this) {
+			final Map<String, String> pending = pendingTags.computeIfAbsent(instanceId, id -> Maps.newLinkedHashMap());
+			for (Tag tag : tags) {
+				pending.put(tag.getKey(), tag.getValue());
+			}
+		}
+		schedule(false);
+	}
+	
+	/**
+	 * @return the number of instances with tag changes not yet written
+	 */
+	public synchronized int getPendingCount() {
+		return pendingTags.size();
+	}
+	
+	/**
+	 * Writes all pending tag changes before the application exits.
+	 */
+	@PreDestroy
+	public void stop() {
+		log.info("stop(): pending={}", getPendingCount());
+		
+		synchronized (this) {
+			isStopped = true;
+		}
+		write(takePending());
+	}
+
+	private synchronized void schedule(boolean afterFlush) {
+		if (afterFlush) {
+			isScheduled = false;
+		}
+		if (isScheduled || isStopped || pendingTags.isEmpty()) return;
+		
+		isScheduled = true;
+		scheduler.schedule(this::flush, delayMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	void flush() {
+		try {
+			write(takePending());
+		} finally {
+			schedule(true);
+		}
+	}
+	
+	private synchronized Map<String, Map<String, String>> takePending() {
+		final Map<String, Map<String, String>> pending = ImmutableMap.copyOf(pendingTags);
+		pendingTags.clear();
+		return pending;
+	}
+	
+	private void write(Map<String, Map<String, String>> tagsByInstance) {
+		if (tagsByInstance.isEmpty()) return;
+		
+		// CreateTags sets the same tags on every instance of a request
+		final Map<Map<String, String>, List<String>> instancesByTags = Maps.newLinkedHashMap();
+		tagsByInstance.forEach((instanceId, tags) -> 
+				instancesByTags.computeIfAbsent(tags, t -> Lists.newArrayList()).add(instanceId));
+		
+		log.debug("write(): instances={}; requests={}; delay={}ms", 
+				tagsByInstance.size(), instancesByTags.size(), delayMillis);
+		instancesByTags.forEach((tags, instanceIds) -> {
+			for (List<String> batch : Lists.partition(instanceIds, AwsConstants.MAX_TAG_RESOURCE_IDS)) {
+				write(batch, tags);
+			}
+		});
+	}
+	
+	private void write(List<String> instanceIds, Map<String, String> tags) {
+		try {
+			ec2Client.createTags(instanceIds, toTags(tags));
+			onSuccess();
+		} catch (RuntimeException e) {
+			if (Ec2.isInstanceNotFound(e)) {
+				onInstanceNotFound(instanceIds, tags);
+				return;
+			}
+			if (Ec2.isRequestLimitExceeded(e)) {
+				log.warn("EC2 request limit exceeded, backing off tag writes; count={}", instanceIds.size());
+			} else {
+				log.warn("Failed to write EC2 instance tags, will retry; count={}; cause={}; message={}", 
+						instanceIds.size(), e, e.getMessage());
+			}
+			onFailure(instanceIds, tags);
+		}
+	}
+	
+	/**
+	 * A terminated instance fails the whole request, so the instances are tagged one at 
+	 * a time, dropping the changes of instances that no longer exist.
+	 */
+	private void onInstanceNotFound(List<String> instanceIds, Map<String, String> tags) {
+		if (instanceIds.size() == 1) {
+			log.debug("Dropping tags of missing EC2 instance; instanceId={}", instanceIds.get(0));
+			return;
+		}
+		instanceIds.forEach(instanceId -> write(Lists.newArrayList(instanceId), tags));
+	}
+	
+	private synchronized void onSuccess() {
+		delayMillis = intervalMillis;
+	}
+	
+	private synchronized void onFailure(List<String> instanceIds, Map<String, String> tags) {
+		delayMillis = Math.min(Math.max(delayMillis * 2, MIN_BACKOFF_MILLIS), maxBackoffMillis);
+		
+		// requeue, unless superseded by a change made since
+		instanceIds.forEach(instanceId -> {
+			final Map<String, String> pending = pendingTags.computeIfAbsent(instanceId, id -> Maps.newLinkedHashMap());
+			tags.forEach(pending::putIfAbsent);
+		});
+	}
+	
+	private Tag[] toTags(Map<String, String> tags) {
+		return tags.entrySet().stream()
+				.map(tag -> new Tag(tag.getKey(), tag.getValue()))
+				.toArray(Tag[]::new);
+	}
+
+	synchronized long getDelayMillis() {
+		return delayMillis;
+	}
+	
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("intervalMillis", intervalMillis)
+				.add("maxBackoffMillis", maxBackoffMillis)
+				.toString();
+	}
+
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.aws;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.ec2.model.CreateTagsRequest;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Tag;
+import com.checkmarx.engine.utils.ApiRateLimiter;
+import com.checkmarx.engine.utils.TaskManager;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Launches instances against a fake EC2 service.
+ */
+public class AwsEc2ClientLaunchTests {
+	
+	private static final Logger log = LoggerFactory.getLogger(AwsEc2ClientLaunchTests.class);
+	
+	private static final String INSTANCE_TYPE = "m5.large";
+	private static final List<String> NAMES = Lists.newArrayList("cx-engine-S-001", "cx-engine-S-002", "cx-engine-S-003");
+	
+	private final FakeAmazonEC2 ec2 = new FakeAmazonEC2();
+	private final TaskManager taskManager = new TaskManager();
+	private final Map<String, String> tags = Maps.newHashMap();
+	private AwsEc2Client ec2Client;
+
+	@Before
+	public void setUp() {
+		ec2Client = new AwsEc2Client(ec2, null, new AwsEngineConfig(), taskManager, 
+				new ApiRateLimiter("ec2", 1000, 1000, t -> false));
+	}
+	
+	@After
+	public void tearDown() {
+		taskManager.shutdown();
+	}
+
+	@Test
+	public void testBatchLaunch() throws Exception {
+		log.trace("testBatchLaunch()");
+		
+		final List<Instance> instances = ec2Client.launch(NAMES, INSTANCE_TYPE, tags, false);
+		
+		assertThat(ec2.runMarketTypes.size(), is(1));
+		assertThat(instances.size(), is(3));
+		for (int i = 0; i < NAMES.size(); i++) {
+			final Instance instance = instances.get(i);
+			assertThat(Ec2.getName(instance), is(NAMES.get(i)));
+			
+			// each instance is named with its own CreateTags request
+			final CreateTagsRequest request = ec2.createTagsRequests.get(i);
+			assertThat(request.getResources(), is(Lists.newArrayList(instance.getInstanceId())));
+			assertThat(request.getTags(), is(Lists.newArrayList(new Tag(AwsConstants.NAME_TAG, NAMES.get(i)))));
+		}
+	}
+
+	@Test
+	public void testPartialBatchLaunch() throws Exception {
+		log.trace("testPartialBatchLaunch()");
+		
+		ec2.capacity = 2;
+		final List<Instance> instances = ec2Client.launch(NAMES, INSTANCE_TYPE, tags, false);
+		
+		assertThat(instances.size(), is(2));
+		assertThat(Ec2.getName(instances.get(0)), is(NAMES.get(0)));
+		assertThat(Ec2.getName(instances.get(1)), is(NAMES.get(1)));
+		assertThat(ec2.createTagsRequests.size(), is(2));
+	}
+
+	@Test
+	public void testBatchLaunchNameFailure() throws Exception {
+		log.trace("testBatchLaunchNameFailure()");
+		
+		// an instance that cannot be named would not be found as an engine
+		ec2.tagFailures.add("i-2");
+		final List<Instance> instances = ec2Client.launch(NAMES, INSTANCE_TYPE, tags, false);
+		
+		assertThat(instances.size(), is(2));
+		assertThat(Ec2.getName(instances.get(0)), is(NAMES.get(0)));
+		assertThat(Ec2.getName(instances.get(1)), is(NAMES.get(2)));
+		assertThat(ec2.terminated, is(Lists.newArrayList("i-2")));
+	}
+
+	@Test
+	public void testSpotLaunch() throws Exception {
+		log.trace("testSpotLaunch()");
+		
+		final Instance instance = ec2Client.launch(NAMES.get(0), INSTANCE_TYPE, tags, false, true);
+		
+		assertThat(ec2.runMarketTypes, is(Lists.newArrayList(AwsConstants.SPOT_LIFECYCLE)));
+		assertThat(Ec2.isSpot(instance), is(true));
+	}
+
+	@Test
+	public void testSpotUnavailable() throws Exception {
+		log.trace("testSpotUnavailable()");
+		
+		for (String errorCode : AwsConstants.SPOT_UNAVAILABLE_CODES) {
+			ec2.runMarketTypes.clear();
+			ec2.runErrors.add(errorCode);
+			final Instance instance = ec2Client.launch(NAMES.get(0), INSTANCE_TYPE, tags, false, true);
+			
+			// the same request runs again on-demand
+			assertThat(errorCode, ec2.runMarketTypes, is(Lists.newArrayList(AwsConstants.SPOT_LIFECYCLE, null)));
+			assertThat(errorCode, Ec2.isSpot(instance), is(false));
+		}
+	}
+
+	@Test
+	public void testSpotLaunchFailure() throws Exception {
+		log.trace("testSpotLaunchFailure()");
+		
+		// other errors are not retried on-demand
+		ec2.runErrors.add("InvalidParameterValue");
+		try {
+			ec2Client.launch(NAMES, INSTANCE_TYPE, tags, true);
+			fail("RuntimeException expected");
+		} catch (RuntimeException e) {
+			assertThat(ec2.runMarketTypes, is(Lists.newArrayList(AwsConstants.SPOT_LIFECYCLE)));
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testBatchLaunchFailure() throws Exception {
+		log.trace("testBatchLaunchFailure()");
+		
+		ec2.runErrors.add("InvalidParameterValue");
+		ec2Client.launch(NAMES, INSTANCE_TYPE, tags, false);
+	}
+
+}
@@ -0,0 +1,264 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.aws;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.checkmarx.engine.CxConfig;
+import com.checkmarx.engine.domain.DynamicEngine;
+import com.checkmarx.engine.domain.DynamicEngine.WarmTier;
+import com.checkmarx.engine.domain.EnginePool.EnginePoolEntry;
+import com.checkmarx.engine.domain.EnginePoolConfig;
+import com.checkmarx.engine.domain.EngineSize;
+import com.checkmarx.engine.rest.CxEngineClient;
+import com.checkmarx.engine.utils.TaskManager;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Launches engines against a fake EC2 client.
+ */
+public class AwsEnginesLaunchTests {
+	
+	private static final Logger log = LoggerFactory.getLogger(AwsEnginesLaunchTests.class);
+	
+	private static final EngineSize SMALL = new EngineSize("S", 0, 99999);
+	private static final String NAME = "cx-engine-S-001";
+	
+	private final FakeEc2Client ec2Client = new FakeEc2Client();
+	private final TaskManager taskManager = new TaskManager();
+	private CxEngineClient engineClient;
+	private AwsEngines awsEngines;
+
+	@Before
+	public void setUp() {
+		ec2Client.config.getEngineSizeMap().put(SMALL.getName(), "m5.large");
+		ec2Client.config.setMonitorPollingIntervalSecs(1);
+		
+		engineClient = new CxEngineClient() {
+			@Override
+			public boolean pingEngine(String host) {
+				return true;
+			}
+			@Override
+			public String buildEngineServerUrl(String host) {
+				return "http://" + host;
+			}
+			@Override
+			public String buildEngineServiceUrl(String host) {
+				return "http://" + host;
+			}
+		};
+		awsEngines = createAwsEngines(new EnginePoolConfig());
+	}
+	
+	private AwsEngines createAwsEngines(EnginePoolConfig poolConfig) {
+		return new AwsEngines(new CxConfig(), poolConfig, ec2Client, 
+				new Ec2InstancePoller(ec2Client, taskManager), new Ec2TagWriter(ec2Client, taskManager), 
+				engineClient, taskManager);
+	}
+	
+	@After
+	public void tearDown() {
+		taskManager.shutdown();
+	}
+
+	@Test
+	public void testCancelWhileProvisioning() throws Exception {
+		log.trace("testCancelWhileProvisioning()");
+		
+		ec2Client.launchGate = new CountDownLatch(1);
+		final DynamicEngine engine = new DynamicEngine(NAME, SMALL.getName(), 300);
+		final CompletableFuture<DynamicEngine> future = awsEngines.launchAsync(engine, SMALL, false);
+		waitFor(() -> !ec2Client.launchCalls.isEmpty());
+		
+		// EC2 responds after the launch is cancelled, so the instance must not be left running
+		future.cancel(true);
+		ec2Client.launchGate.countDown();
+		waitFor(() -> ec2Client.terminateCalls.contains("i-" + NAME));
+		
+		assertThat(awsEngines.findEngines().containsKey(NAME), is(false));
+		assertThat(engine.getHost(), is(nullValue()));
+	}
+
+	@Test
+	public void testAlternateTypeVcpus() {
+		log.trace("testAlternateTypeVcpus()");
+		
+		final EnginePoolConfig poolConfig = new EnginePoolConfig();
+		final EnginePoolEntry entry = new EnginePoolEntry(SMALL, 2);
+		entry.setVcpus(2);
+		poolConfig.getPool().add(entry);
+		ec2Client.config.getEngineAlternateTypeMap().put(SMALL.getName(), Lists.newArrayList("m5a.large", "m5.xlarge"));
+		ec2Client.config.getInstanceTypeVcpuMap().put("m5a.large", 2);
+		
+		// alternate types need their vCPUs once the size declares vcpus
+		try {
+			createAwsEngines(poolConfig);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			log.debug("Expected: {}", e.getMessage());
+		}
+		
+		// an alternate larger than its size would be undercounted against the vCPU quota
+		ec2Client.config.getInstanceTypeVcpuMap().put("m5.xlarge", 4);
+		try {
+			createAwsEngines(poolConfig);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			log.debug("Expected: {}", e.getMessage());
+		}
+		
+		ec2Client.config.getInstanceTypeVcpuMap().put("m5.xlarge", 2);
+		assertThat(createAwsEngines(poolConfig), notNullValue());
+		
+		// sizes without vcpus are not counted against the quota, so are not checked
+		entry.setVcpus(0);
+		ec2Client.config.getInstanceTypeVcpuMap().clear();
+		assertThat(createAwsEngines(poolConfig), notNullValue());
+	}
+
+	@Test
+	public void testBatchLaunch() throws Exception {
+		log.trace("testBatchLaunch()");
+		
+		final List<DynamicEngine> engines = createEngines(3);
+		joinAll(awsEngines.launchAsync(engines, SMALL, false));
+		
+		assertThat(ec2Client.batchLaunchCalls.size(), is(1));
+		assertThat(ec2Client.batchLaunchCalls.get(0), is(names(engines)));
+		assertThat(ec2Client.launchCalls.isEmpty(), is(true));
+		engines.forEach(engine -> assertThat(engine.getHost(), is(notNullValue())));
+		assertThat(awsEngines.findEngines().size(), is(3));
+	}
+
+	@Test
+	public void testPartialBatchLaunch() throws Exception {
+		log.trace("testPartialBatchLaunch()");
+		
+		// EC2 launches fewer instances than requested, the rest launch separately
+		ec2Client.batchCapacity = 2;
+		final List<DynamicEngine> engines = createEngines(3);
+		joinAll(awsEngines.launchAsync(engines, SMALL, false));
+		
+		assertThat(ec2Client.batchLaunchCalls.size(), is(1));
+		assertThat(ec2Client.launchCalls, is(Lists.newArrayList(engines.get(2).getName())));
+		engines.forEach(engine -> assertThat(engine.getHost(), is(notNullValue())));
+	}
+
+	@Test
+	public void testBatchLaunchFailure() throws Exception {
+		log.trace("testBatchLaunchFailure()");
+		
+		ec2Client.batchFails = true;
+		final List<DynamicEngine> engines = createEngines(3);
+		joinAll(awsEngines.launchAsync(engines, SMALL, false));
+		
+		assertThat(ec2Client.batchLaunchCalls.size(), is(1));
+		assertThat(Sets.newHashSet(ec2Client.launchCalls), is(Sets.newHashSet(names(engines))));
+		engines.forEach(engine -> assertThat(engine.getHost(), is(notNullValue())));
+	}
+
+	@Test
+	public void testStopSpotEngine() throws Exception {
+		log.trace("testStopSpotEngine()");
+		
+		ec2Client.config.getSpotEngineSizes().add(SMALL.getName());
+		final DynamicEngine engine = new DynamicEngine(NAME, SMALL.getName(), 300);
+		awsEngines.launchAsync(engine, SMALL, false).get(10, TimeUnit.SECONDS);
+		
+		// a stopped spot instance cannot be restarted
+		awsEngines.stop(engine, WarmTier.STOPPED);
+		assertThat(ec2Client.terminateCalls, is(Lists.newArrayList("i-" + NAME)));
+		assertThat(ec2Client.stopCalls.isEmpty(), is(true));
+		assertThat(awsEngines.findEngines().containsKey(NAME), is(false));
+	}
+
+	@Test
+	public void testStopOnDemandEngine() throws Exception {
+		log.trace("testStopOnDemandEngine()");
+		
+		final DynamicEngine engine = new DynamicEngine(NAME, SMALL.getName(), 300);
+		awsEngines.launchAsync(engine, SMALL, false).get(10, TimeUnit.SECONDS);
+		
+		awsEngines.stop(engine, WarmTier.STOPPED);
+		assertThat(ec2Client.stopCalls, is(Lists.newArrayList("i-" + NAME)));
+		assertThat(ec2Client.terminateCalls.isEmpty(), is(true));
+	}
+
+	@Test
+	public void testSpotInterruption() throws Exception {
+		log.trace("testSpotInterruption()");
+		
+		ec2Client.config.getSpotEngineSizes().add(SMALL.getName());
+		final List<DynamicEngine> engines = createEngines(2);
+		joinAll(awsEngines.launchAsync(engines, SMALL, false));
+		final List<String> interrupted = Lists.newCopyOnWriteArrayList();
+		awsEngines.setInterruptionListener(interrupted::add);
+		
+		final String name = engines.get(0).getName();
+		ec2Client.interruptedInstances.add("i-" + name);
+		waitFor(() -> !interrupted.isEmpty());
+		
+		// the engine is reported once, while the other engine is still checked
+		final int checks = ec2Client.interruptionChecks.get();
+		waitFor(() -> ec2Client.interruptionChecks.get() > checks + 1);
+		assertThat(interrupted, is(Lists.newArrayList(name)));
+	}
+
+	private List<DynamicEngine> createEngines(int count) {
+		final List<DynamicEngine> engines = Lists.newArrayList();
+		for (int i = 1; i <= count; i++) {
+			engines.add(new DynamicEngine(String.format("cx-engine-S-%03d", i), SMALL.getName(), 300));
+		}
+		return engines;
+	}
+	
+	private List<String> names(List<DynamicEngine> engines) {
+		return engines.stream().map(DynamicEngine::getName).collect(Collectors.toList());
+	}
+	
+	private void joinAll(List<CompletableFuture<DynamicEngine>> futures) throws Exception {
+		for (CompletableFuture<DynamicEngine> future : futures) {
+			future.get(10, TimeUnit.SECONDS);
+		}
+	}
+
+	private void waitFor(BooleanSupplier condition) throws InterruptedException {
+		final Stopwatch timer = Stopwatch.createStarted();
+		while (!condition.getAsBoolean()) {
+			assertThat("timed out", timer.elapsed(TimeUnit.SECONDS) < 10, is(true));
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+	}
+	
+}
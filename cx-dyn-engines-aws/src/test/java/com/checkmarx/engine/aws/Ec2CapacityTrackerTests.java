@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.aws;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.checkmarx.engine.aws.Ec2CapacityTracker.LaunchTarget;
+import com.google.common.collect.Lists;
+
+public class Ec2CapacityTrackerTests {
+
+	private static final Logger log = LoggerFactory.getLogger(Ec2CapacityTrackerTests.class);
+	
+	private Ec2CapacityTracker tracker;
+	
+	@Before
+	public void setUp() {
+		final AwsEngineConfig config = new AwsEngineConfig();
+		config.getEngineSizeMap().put("S", "m5.large");
+		config.getEngineAlternateTypeMap().put("S", Lists.newArrayList("m5a.large", "m4.large"));
+		config.setSubnetId("subnet-a");
+		config.getAlternateSubnetIds().add("subnet-b");
+		config.setCapacityCooldownSecs(60);
+		
+		DateTimeUtils.setCurrentMillisFixed(0);
+		tracker = new Ec2CapacityTracker(config);
+	}
+	
+	@After
+	public void tearDown() {
+		DateTimeUtils.setCurrentMillisSystem();
+	}
+
+	@Test
+	public void testLaunchTargets() {
+		log.trace("testLaunchTargets()");
+		
+		assertThat(print(tracker.getLaunchTargets("m5.large", false)), is(Lists.newArrayList(
+				"m5.large/subnet-a", "m5.large/subnet-b", "m5a.large/subnet-a", 
+				"m5a.large/subnet-b", "m4.large/subnet-a", "m4.large/subnet-b")));
+		
+		// types without alternates launch in every subnet
+		assertThat(print(tracker.getLaunchTargets("r5.large", false)), is(Lists.newArrayList(
+				"r5.large/subnet-a", "r5.large/subnet-b")));
+	}
+
+	@Test
+	public void testCooldown() {
+		log.trace("testCooldown()");
+		
+		final List<LaunchTarget> targets = tracker.getLaunchTargets("m5.large", false);
+		tracker.onCapacityError(targets.get(0), false);
+		assertThat(tracker.getCoolingCount(), is(1));
+		assertThat(print(tracker.getLaunchTargets("m5.large", false)).get(0), is("m5.large/subnet-b"));
+		
+		// spot capacity is tracked separately
+		assertThat(print(tracker.getLaunchTargets("m5.large", true)).get(0), is("m5.large/subnet-a"));
+		
+		DateTimeUtils.setCurrentMillisFixed(60 * 1000);
+		assertThat(tracker.getCoolingCount(), is(0));
+		assertThat(print(tracker.getLaunchTargets("m5.large", false)).get(0), is("m5.large/subnet-a"));
+	}
+
+	@Test
+	public void testAllCoolingDown() {
+		log.trace("testAllCoolingDown()");
+		
+		final List<LaunchTarget> targets = tracker.getLaunchTargets("m5.large", false);
+		for (int i = targets.size() - 1; i >= 0; i--) {
+			DateTimeUtils.setCurrentMillisFixed(i * 1000);
+			tracker.onCapacityError(targets.get(i), false);
+		}
+		
+		// the target whose cooldown ends first is still tried
+		assertThat(print(tracker.getLaunchTargets("m5.large", false)), is(Lists.newArrayList("m5.large/subnet-a")));
+		
+		tracker.onLaunched(targets.get(0), false);
+		assertThat(tracker.getCoolingCount(), is(targets.size() - 1));
+	}
+	
+	private List<String> print(List<LaunchTarget> targets) {
+		return targets.stream()
+				.map(target -> target.getInstanceType() + "/" + target.getSubnetId())
+				.collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.aws;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.ec2.model.Instance;
+import com.checkmarx.engine.utils.TaskManager;
+import com.google.common.collect.Lists;
+
+public class Ec2InstancePollerTests {
+	
+	private static final Logger log = LoggerFactory.getLogger(Ec2InstancePollerTests.class);
+	
+	private final FakeEc2Client ec2Client = new FakeEc2Client();
+	private final TaskManager taskManager = new TaskManager();
+	private Ec2InstancePoller poller;
+
+	@Before
+	public void setUp() {
+		// long interval, so polls are only run by the tests
+		ec2Client.config.setMonitorPollingIntervalSecs(3600);
+		ec2Client.config.setLaunchTimeoutSec(3600);
+		poller = new Ec2InstancePoller(ec2Client, taskManager);
+	}
+	
+	@After
+	public void tearDown() {
+		taskManager.shutdown();
+	}
+
+	@Test
+	public void testCoalescedPoll() {
+		log.trace("testCoalescedPoll()");
+		
+		final CompletableFuture<Instance> i1 = poller.waitForPendingState("i-1");
+		final CompletableFuture<Instance> i2 = poller.waitForPendingState("i-2");
+		final CompletableFuture<Instance> i3 = poller.waitForPendingState("i-3");
+		ec2Client.setState("i-1", 16);
+		ec2Client.setState("i-2", 0);
+		ec2Client.setState("i-3", 16);
+		
+		poller.poll();
+		assertThat(ec2Client.describeCalls.size(), is(1));
+		assertThat(ec2Client.describeCalls.get(0).size(), is(3));
+		assertThat(i1.isDone(), is(true));
+		assertThat(i2.isDone(), is(false));
+		assertThat(i3.join().getInstanceId(), is("i-3"));
+		assertThat(poller.getPendingCount(), is(1));
+		
+		ec2Client.setState("i-2", 16);
+		poller.poll();
+		assertThat(ec2Client.describeCalls.get(1), is(Lists.newArrayList("i-2")));
+		assertThat(i2.isDone(), is(true));
+		assertThat(poller.getPendingCount(), is(0));
+	}
+
+	@Test
+	public void testThrottledBackoff() {
+		log.trace("testThrottledBackoff()");
+		
+		ec2Client.config.setMonitorPollingIntervalSecs(30);
+		poller = new Ec2InstancePoller(ec2Client, taskManager);
+		
+		final CompletableFuture<Instance> i1 = poller.waitForPendingState("i-1");
+		ec2Client.setState("i-1", 16);
+		ec2Client.throttled = true;
+		final long interval = poller.getDelayMillis();
+		
+		poller.poll();
+		assertThat(poller.getDelayMillis(), is(interval * 2));
+		assertThat(i1.isDone(), is(false));
+		
+		ec2Client.throttled = false;
+		poller.poll();
+		assertThat(poller.getDelayMillis(), is(interval));
+		assertThat(i1.isDone(), is(true));
+	}
+
+	@Test
+	public void testCancel() {
+		log.trace("testCancel()");
+		
+		final CompletableFuture<Instance> i1 = poller.waitForPendingState("i-1");
+		i1.cancel(true);
+		assertThat(poller.getPendingCount(), is(0));
+	}
+
+}
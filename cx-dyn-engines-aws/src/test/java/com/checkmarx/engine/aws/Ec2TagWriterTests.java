@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.aws;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.ec2.model.Tag;
+import com.checkmarx.engine.utils.TaskManager;
+import com.google.common.collect.Lists;
+
+public class Ec2TagWriterTests {
+	
+	private static final Logger log = LoggerFactory.getLogger(Ec2TagWriterTests.class);
+	
+	private final FakeEc2Client ec2Client = new FakeEc2Client();
+	private final TaskManager taskManager = new TaskManager();
+	private Ec2TagWriter tagWriter;
+
+	@Before
+	public void setUp() {
+		// long delay, so writes are only flushed by the tests
+		ec2Client.config.setTagWriteDelayMillis(3600 * 1000);
+		tagWriter = new Ec2TagWriter(ec2Client, taskManager);
+	}
+	
+	@After
+	public void tearDown() {
+		taskManager.shutdown();
+	}
+
+	@Test
+	public void testCoalescedWrites() {
+		log.trace("testCoalescedWrites()");
+		
+		tagWriter.write("i-1", new Tag("cx-scan-id", "1"), new Tag("cx-engine-id", "10"));
+		tagWriter.write("i-1", new Tag("cx-scan-id", ""), new Tag("cx-engine-id", ""));
+		tagWriter.write("i-2", new Tag("cx-scan-id", ""), new Tag("cx-engine-id", ""));
+		tagWriter.write("i-3", new Tag("cx-scan-id", "3"), new Tag("cx-engine-id", "30"));
+		assertThat(tagWriter.getPendingCount(), is(3));
+		assertThat(ec2Client.createTagsCalls.isEmpty(), is(true));
+		
+		tagWriter.flush();
+		// i-1's assignment is superseded, and i-1 and i-2 share the cleared tags
+		assertThat(ec2Client.createTagsCalls.size(), is(2));
+		assertThat(ec2Client.createTagsCalls.get(0), is(Lists.newArrayList("i-1", "i-2")));
+		assertThat(ec2Client.createTagsCalls.get(1), is(Lists.newArrayList("i-3")));
+		assertThat(ec2Client.instanceTags.get("i-1").get("cx-scan-id"), is(""));
+		assertThat(ec2Client.instanceTags.get("i-3").get("cx-engine-id"), is("30"));
+		assertThat(tagWriter.getPendingCount(), is(0));
+	}
+
+	@Test
+	public void testThrottledRequeue() {
+		log.trace("testThrottledRequeue()");
+		
+		ec2Client.config.setTagWriteDelayMillis(30 * 1000);
+		tagWriter = new Ec2TagWriter(ec2Client, taskManager);
+		
+		final long delay = tagWriter.getDelayMillis();
+		tagWriter.write("i-1", new Tag("cx-scan-id", "1"));
+		ec2Client.throttled = true;
+		
+		tagWriter.flush();
+		assertThat(tagWriter.getPendingCount(), is(1));
+		assertThat(tagWriter.getDelayMillis() > delay, is(true));
+		
+		// a change made while backing off replaces the requeued value
+		tagWriter.write("i-1", new Tag("cx-scan-id", ""));
+		ec2Client.throttled = false;
+		tagWriter.flush();
+		assertThat(ec2Client.instanceTags.get("i-1").get("cx-scan-id"), is(""));
+		assertThat(tagWriter.getDelayMillis(), is(delay));
+		assertThat(tagWriter.getPendingCount(), is(0));
+	}
+
+	@Test
+	public void testMissingInstance() {
+		log.trace("testMissingInstance()");
+		
+		ec2Client.missingInstances.add("i-2");
+		tagWriter.write("i-1", new Tag("cx-scan-id", ""));
+		tagWriter.write("i-2", new Tag("cx-scan-id", ""));
+		
+		tagWriter.flush();
+		assertThat(ec2Client.instanceTags.get("i-1").get("cx-scan-id"), is(""));
+		assertThat(ec2Client.instanceTags.containsKey("i-2"), is(false));
+		assertThat(tagWriter.getPendingCount(), is(0));
+	}
+
+	@Test
+	public void testStop() {
+		log.trace("testStop()");
+		
+		tagWriter.write("i-1", new Tag("cx-scan-id", "1"));
+		tagWriter.stop();
+		assertThat(ec2Client.instanceTags.get("i-1").get("cx-scan-id"), is("1"));
+		assertThat(tagWriter.getPendingCount(), is(0));
+	}
+
+}
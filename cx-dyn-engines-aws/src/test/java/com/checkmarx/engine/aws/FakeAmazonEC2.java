@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.aws;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceResult;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.ResponseMetadata;
+import com.amazonaws.http.HttpResponse;
+import com.amazonaws.http.SdkHttpMetadata;
+import com.amazonaws.services.ec2.AbstractAmazonEC2;
+import com.amazonaws.services.ec2.model.CreateTagsRequest;
+import com.amazonaws.services.ec2.model.CreateTagsResult;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceState;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.amazonaws.services.ec2.model.RunInstancesRequest;
+import com.amazonaws.services.ec2.model.RunInstancesResult;
+import com.amazonaws.services.ec2.model.Tag;
+import com.amazonaws.services.ec2.model.TerminateInstancesRequest;
+import com.amazonaws.services.ec2.model.TerminateInstancesResult;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
+
+/**
+ * Answers the EC2 requests {@link AwsEc2Client} makes to launch instances, and fails them on demand.
+ */
+class FakeAmazonEC2 extends AbstractAmazonEC2 {
+	
+	/**
+	 * Market type of each RunInstances request, <code>null</code> for on-demand
+	 */
+	final List<String> runMarketTypes = Lists.newArrayList();
+	final List<CreateTagsRequest> createTagsRequests = Lists.newArrayList();
+	final List<String> terminated = Lists.newArrayList();
+	/**
+	 * Error codes to fail the next RunInstances requests with, in order
+	 */
+	final Deque<String> runErrors = Queues.newArrayDeque();
+	/**
+	 * Instances that cannot be tagged
+	 */
+	final Set<String> tagFailures = Sets.newHashSet();
+	/**
+	 * Maximum instances a RunInstances request launches
+	 */
+	int capacity = Integer.MAX_VALUE;
+	private int nextId = 0;
+	
+	@Override
+	public RunInstancesResult runInstances(RunInstancesRequest request) {
+		final String marketType = request.getInstanceMarketOptions() == null 
+				? null : request.getInstanceMarketOptions().getMarketType();
+		runMarketTypes.add(marketType);
+		if (!runErrors.isEmpty()) {
+			throw createException(runErrors.remove());
+		}
+		
+		// instances are tagged on launch by the request's tag specifications
+		final List<Tag> tags = Lists.newArrayList();
+		request.getTagSpecifications().forEach(tagSpec -> tags.addAll(tagSpec.getTags()));
+		final List<Instance> instances = Lists.newArrayList();
+		for (int i = 0; i < Math.min(request.getMaxCount(), capacity); i++) {
+			instances.add(new Instance()
+					.withInstanceId("i-" + ++nextId)
+					.withInstanceType(request.getInstanceType())
+					.withState(new InstanceState().withCode(0).withName("pending"))
+					.withLaunchTime(new Date())
+					.withInstanceLifecycle(marketType)
+					.withTags(Lists.newArrayList(tags)));
+		}
+		return withMetadata(new RunInstancesResult().withReservation(new Reservation().withInstances(instances)));
+	}
+	
+	@Override
+	public CreateTagsResult createTags(CreateTagsRequest request) {
+		createTagsRequests.add(request);
+		if (!Collections.disjoint(tagFailures, request.getResources())) {
+			throw createException(AwsConstants.INSTANCE_NOT_FOUND);
+		}
+		return withMetadata(new CreateTagsResult());
+	}
+	
+	@Override
+	public TerminateInstancesResult terminateInstances(TerminateInstancesRequest request) {
+		terminated.addAll(request.getInstanceIds());
+		return withMetadata(new TerminateInstancesResult());
+	}
+	
+	private AmazonServiceException createException(String errorCode) {
+		final AmazonServiceException e = new AmazonServiceException(errorCode);
+		e.setErrorCode(errorCode);
+		return e;
+	}
+	
+	/**
+	 * Sets the response metadata the SDK client populates.
+	 */
+	private <T extends AmazonWebServiceResult<ResponseMetadata>> T withMetadata(T result) {
+		result.setSdkResponseMetadata(new ResponseMetadata(
+				Collections.singletonMap(ResponseMetadata.AWS_REQUEST_ID, "request-" + nextId)));
+		final HttpResponse response = new HttpResponse(new DefaultRequest<>("AmazonEC2"), null);
+		response.setStatusCode(200);
+		result.setSdkHttpMetadata(SdkHttpMetadata.from(response));
+		return result;
+	}
+	
+}
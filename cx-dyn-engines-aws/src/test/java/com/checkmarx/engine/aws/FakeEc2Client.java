@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.aws;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceState;
+import com.amazonaws.services.ec2.model.Tag;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Records launch, describe, tag, stop and terminate requests, and fails them on demand.
+ */
+class FakeEc2Client implements AwsComputeClient {
+	
+	final AwsEngineConfig config = new AwsEngineConfig();
+	final Map<String, Instance> instances = Maps.newConcurrentMap();
+	final List<List<String>> describeCalls = Lists.newArrayList();
+	final List<List<String>> createTagsCalls = Lists.newArrayList();
+	final Map<String, Map<String, String>> instanceTags = Maps.newHashMap();
+	final Set<String> missingInstances = Sets.newHashSet();
+	final List<String> launchCalls = Lists.newCopyOnWriteArrayList();
+	final List<String> terminateCalls = Lists.newCopyOnWriteArrayList();
+	final List<String> stopCalls = Lists.newCopyOnWriteArrayList();
+	final Set<String> interruptedInstances = Sets.newConcurrentHashSet();
+	final AtomicInteger interruptionChecks = new AtomicInteger();
+	final List<List<String>> batchLaunchCalls = Lists.newCopyOnWriteArrayList();
+	/**
+	 * Maximum instances a batch launch returns
+	 */
+	volatile int batchCapacity = Integer.MAX_VALUE;
+	volatile boolean batchFails = false;
+	boolean throttled = false;
+	/**
+	 * When set, single launches wait on the latch before EC2 responds
+	 */
+	volatile CountDownLatch launchGate;
+	
+	void setState(String instanceId, int code) {
+		instances.put(instanceId, new Instance()
+				.withInstanceId(instanceId)
+				.withState(new InstanceState().withCode(code)));
+	}
+	
+	Instance addInstance(String name, String instanceType, boolean spot) {
+		final Instance instance = new Instance()
+				.withInstanceId("i-" + name)
+				.withInstanceType(instanceType)
+				.withState(new InstanceState().withCode(16).withName("running"))
+				.withPrivateIpAddress("10.0.0.1")
+				.withLaunchTime(new Date())
+				.withTags(new Tag(AwsConstants.NAME_TAG, name))
+				.withInstanceLifecycle(spot ? AwsConstants.SPOT_LIFECYCLE : null);
+		instances.put(instance.getInstanceId(), instance);
+		return instance;
+	}
+	
+	@Override
+	public List<Instance> describe(Collection<String> instanceIds) {
+		describeCalls.add(Lists.newArrayList(instanceIds));
+		if (throttled) {
+			final AmazonServiceException e = new AmazonServiceException("Request limit exceeded.");
+			e.setErrorCode(AwsConstants.REQUEST_LIMIT_EXCEEDED);
+			throw new RuntimeException("Failed to describe EC2 instances", e);
+		}
+		final List<Instance> found = Lists.newArrayList();
+		instanceIds.forEach(id -> {
+			if (instances.containsKey(id)) found.add(instances.get(id));
+		});
+		return found;
+	}
+
+	@Override
+	public AwsEngineConfig getConfig() {
+		return config;
+	}
+
+	@Override
+	public Instance launch(String name, String instanceType, Map<String, String> tags) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Instance launch(String name, String instanceType, Map<String, String> tags, boolean waitForRunning) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Instance launch(String name, String instanceType, Map<String, String> tags, boolean waitForRunning, 
+			boolean spot) throws InterruptedException {
+		launchCalls.add(name);
+		final CountDownLatch gate = launchGate;
+		if (gate != null) gate.await();
+		return addInstance(name, instanceType, spot);
+	}
+
+	@Override
+	public List<Instance> launch(List<String> names, String instanceType, Map<String, String> tags) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public List<Instance> launch(List<String> names, String instanceType, Map<String, String> tags, 
+			boolean spot) {
+		batchLaunchCalls.add(Lists.newArrayList(names));
+		if (batchFails) throw new RuntimeException("Failed to launch EC2 instances");
+		
+		final List<Instance> launched = Lists.newArrayList();
+		names.stream().limit(batchCapacity).forEach(name -> launched.add(addInstance(name, instanceType, spot)));
+		return launched;
+	}
+
+	@Override
+	public Set<String> findInterruptedSpotInstances(Collection<String> instanceIds) {
+		interruptionChecks.incrementAndGet();
+		return Sets.newHashSet(Sets.intersection(interruptedInstances, Sets.newHashSet(instanceIds)));
+	}
+
+	@Override
+	public Instance start(String instanceId) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Instance start(String instanceId, boolean waitForRunning) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void stop(String instanceId) {
+		stopCalls.add(instanceId);
+		instances.computeIfPresent(instanceId, 
+				(id, instance) -> instance.withState(new InstanceState().withCode(80).withName("stopped")));
+	}
+
+	@Override
+	public void terminate(String instanceId) {
+		terminateCalls.add(instanceId);
+		instances.computeIfPresent(instanceId, 
+				(id, instance) -> instance.withState(new InstanceState().withCode(48).withName("terminated")));
+	}
+
+	@Override
+	public List<Instance> find(Map<String, String> tags) {
+		return Lists.newArrayList();
+	}
+
+	@Override
+	public Instance describe(String instanceId) {
+		return instances.get(instanceId);
+	}
+
+	@Override
+	public Instance updateTags(Instance instance, Tag... tags) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void createTags(Collection<String> instanceIds, Tag... tags) {
+		createTagsCalls.add(Lists.newArrayList(instanceIds));
+		if (throttled) {
+			final AmazonServiceException e = new AmazonServiceException("Request limit exceeded.");
+			e.setErrorCode(AwsConstants.REQUEST_LIMIT_EXCEEDED);
+			throw new RuntimeException("Failed to create tags on EC2 instances", e);
+		}
+		if (!Sets.intersection(missingInstances, Sets.newHashSet(instanceIds)).isEmpty()) {
+			final AmazonServiceException e = new AmazonServiceException("The instance ID does not exist");
+			e.setErrorCode(AwsConstants.INSTANCE_NOT_FOUND);
+			throw new RuntimeException("Failed to create tags on EC2 instances", e);
+		}
+		instanceIds.forEach(id -> {
+			final Map<String, String> current = instanceTags.computeIfAbsent(id, k -> Maps.newHashMap());
+			for (Tag tag : tags) {
+				current.put(tag.getKey(), tag.getValue());
+			}
+		});
+	}
+
+	@Override
+	public boolean isProvisioned(String instanceId) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean isRunning(String instanceId) {
+		throw new UnsupportedOperationException();
+	}
+	
+}
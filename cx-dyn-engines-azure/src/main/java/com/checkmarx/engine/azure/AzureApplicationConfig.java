@@ -26,7 +26,9 @@
  */
 package com.checkmarx.engine.azure;
 
+import com.checkmarx.engine.CxConfig;
 import com.checkmarx.engine.spring.CoreApplicationConfig;
+import com.checkmarx.engine.utils.ApiRateLimiter;
 import com.google.common.base.Strings;
 import com.microsoft.azure.AzureEnvironment;
 import com.microsoft.azure.credentials.ApplicationTokenCredentials;
@@ -81,4 +83,10 @@ public class AzureApplicationConfig {
 		Azure azure = Azure.authenticate(credentials).withSubscription(subscriptionId);*/
 		//Or credential file
 	}
+
+	@Bean
+	public ApiRateLimiter azureRateLimiter(CxConfig cxConfig) {
+		return new ApiRateLimiter("azure", cxConfig.getCloudApiRequestsPerSecond(), cxConfig.getCloudApiBurst(), 
+				VM::isThrottled);
+	}
 }
@@ -13,6 +13,8 @@
  ******************************************************************************/
 package com.checkmarx.engine.azure;
 
+import com.checkmarx.engine.utils.ApiRateLimiter;
+import com.checkmarx.engine.utils.ApiRateLimiter.Priority;
 import com.checkmarx.engine.utils.TaskManager;
 import com.google.common.base.Stopwatch;
 import com.microsoft.azure.management.Azure;
@@ -51,13 +53,15 @@ public class AzureClient implements AzureComputeClient {
 	private final Azure client;
 	private final AzureEngineConfig config;
 	private final TaskManager taskManager;
+	private final ApiRateLimiter rateLimiter;
 
 	private static final Logger log = LoggerFactory.getLogger(AzureClient.class);
 
-	public AzureClient(Azure client, AzureEngineConfig config, TaskManager taskManager) {
+	public AzureClient(Azure client, AzureEngineConfig config, TaskManager taskManager, ApiRateLimiter rateLimiter) {
 		this.client = client;
 		this.config = config;
 		this.taskManager = taskManager;
+		this.rateLimiter = rateLimiter;
 
 		log.info("ctor(): {}", this);
 	}
@@ -72,7 +76,7 @@ public class AzureClient implements AzureComputeClient {
 	@Retryable(
 			value = { RuntimeException.class },
 			maxAttempts = AzureConstants.RETRY_ATTEMPTS,
-			backoff = @Backoff(delay = AzureConstants.RETRY_DELAY))
+			backoff = @Backoff(delay = AzureConstants.RETRY_DELAY, multiplier = AzureConstants.RETRY_MULTIPLIER, random = true))
 	public @NotNull VirtualMachine launch(@NotBlank String name, @NotBlank String instanceType, @NotNull Map<String, String> tags) throws Exception {
 		log.trace("launch(): name={}; instanceType={}", name, instanceType);
 
@@ -81,8 +85,10 @@ public class AzureClient implements AzureComputeClient {
 		boolean success = false;
 		final Stopwatch timer = Stopwatch.createStarted();
 		try {
-			VirtualMachineCustomImage image = client.virtualMachineCustomImages().getByResourceGroup(config.getResourceGroup(), config.getImageName());
-			Network network = client.networks().getByResourceGroup(config.getResourceGroup(), config.getNetworkName());
+			VirtualMachineCustomImage image = rateLimiter.call(Priority.LAUNCH, () -> client.virtualMachineCustomImages()
+					.getByResourceGroup(config.getResourceGroup(), config.getImageName()));
+			Network network = rateLimiter.call(Priority.LAUNCH, () -> client.networks()
+					.getByResourceGroup(config.getResourceGroup(), config.getNetworkName()));
 			Creatable<VirtualMachine> vm;
 
 			if (config.isAssignPublicIP()) {
@@ -127,7 +133,7 @@ public class AzureClient implements AzureComputeClient {
 						.withTags(tags);
 			}
 
-			instance = vm.create();
+			instance = rateLimiter.call(Priority.LAUNCH, vm::create);
 
 			return instance;
 		} catch (CancellationException | RejectedExecutionException e) {
@@ -148,17 +154,17 @@ public class AzureClient implements AzureComputeClient {
 	@Retryable(
 			value = { RuntimeException.class },
 			maxAttempts = AzureConstants.RETRY_ATTEMPTS,
-			backoff = @Backoff(delay = AzureConstants.RETRY_DELAY))
+			backoff = @Backoff(delay = AzureConstants.RETRY_DELAY, multiplier = AzureConstants.RETRY_MULTIPLIER, random = true))
 	@NotNull
 	public @NotNull VirtualMachine start(@NotBlank String instanceId) throws InterruptedException, Exception {
 		log.trace("start(): instanceId={}", instanceId);
 
 		try {
-			final VirtualMachine instance = client.virtualMachines().getById(instanceId);
+			final VirtualMachine instance = rateLimiter.call(Priority.LAUNCH, () -> client.virtualMachines().getById(instanceId));
 			PowerState instancePowerState = instance.powerState();
 			if (!instancePowerState.equals(PowerState.RUNNING)
 					&& !instancePowerState.equals(PowerState.STARTING)) { //Check in case first pass successfully started despite exception
-				instance.start();
+				rateLimiter.run(Priority.LAUNCH, instance::start);
 				log.info("action=startInstance; instanceId={}; state={}; {}",
 						instanceId, instance.powerState(), VM.print(instance));
 			} else {
@@ -178,13 +184,13 @@ public class AzureClient implements AzureComputeClient {
 	@Retryable(
 			value = { RuntimeException.class },
 			maxAttempts = AzureConstants.RETRY_ATTEMPTS,
-			backoff = @Backoff(delay = AzureConstants.RETRY_DELAY))
+			backoff = @Backoff(delay = AzureConstants.RETRY_DELAY, multiplier = AzureConstants.RETRY_MULTIPLIER, random = true))
 	public void stop(@NotBlank String instanceId) {
 		log.trace("stop(): instanceId={}", instanceId);
 
 		try {
-			final VirtualMachine instance = client.virtualMachines().getById(instanceId);
-			instance.powerOff();
+			final VirtualMachine instance = rateLimiter.call(Priority.DEFAULT, () -> client.virtualMachines().getById(instanceId));
+			rateLimiter.run(Priority.DEFAULT, instance::powerOff);
 		} catch (Throwable e) {
 			log.warn("Failed to stop Azure instance; instanceId={}; cause={}; message={}",
 					instanceId, e, e.getMessage());
@@ -196,12 +202,30 @@ public class AzureClient implements AzureComputeClient {
 	@Retryable(
 			value = { RuntimeException.class },
 			maxAttempts = AzureConstants.RETRY_ATTEMPTS,
-			backoff = @Backoff(delay = AzureConstants.RETRY_DELAY))
+			backoff = @Backoff(delay = AzureConstants.RETRY_DELAY, multiplier = AzureConstants.RETRY_MULTIPLIER, random = true))
+	public void deallocate(@NotBlank String instanceId) {
+		log.trace("deallocate(): instanceId={}", instanceId);
+
+		try {
+			final VirtualMachine instance = rateLimiter.call(Priority.DEFAULT, () -> client.virtualMachines().getById(instanceId));
+			rateLimiter.run(Priority.DEFAULT, instance::deallocate);
+		} catch (Throwable e) {
+			log.warn("Failed to deallocate Azure instance; instanceId={}; cause={}; message={}",
+					instanceId, e, e.getMessage());
+			throw new RuntimeException("Failed to deallocate Azure VirtualMachine instance", e);
+		}
+	}
+
+	@Override
+	@Retryable(
+			value = { RuntimeException.class },
+			maxAttempts = AzureConstants.RETRY_ATTEMPTS,
+			backoff = @Backoff(delay = AzureConstants.RETRY_DELAY, multiplier = AzureConstants.RETRY_MULTIPLIER, random = true))
 	public void terminate(@NotBlank String instanceId) {
 		log.trace("terminate(): instanceId={}", instanceId);
 
 		try {
-			client.virtualMachines().deleteById(instanceId); // TODO Async?  Timeout?
+			rateLimiter.run(Priority.DEFAULT, () -> client.virtualMachines().deleteById(instanceId)); // TODO Async?  Timeout?
 			//TODO Clean up NIC/PublicIP/Disk as Azure does not handle this automatically
 		} catch (Throwable e) {
 			log.warn("Failed to stop Azure instance; instanceId={}; cause={}; message={}",
@@ -212,7 +236,7 @@ public class AzureClient implements AzureComputeClient {
 
 	@Override
 	public @NotNull List<VirtualMachine> find(@NotNull Map<String, String> tags) {
-		ListIterator<VirtualMachine> vms = client.virtualMachines().list().listIterator();
+		ListIterator<VirtualMachine> vms = rateLimiter.call(Priority.DEFAULT, () -> client.virtualMachines().list()).listIterator();
 		List<VirtualMachine> vmList = new ArrayList<>();
 		while(vms.hasNext()){
 			VirtualMachine vm = vms.next();
@@ -227,12 +251,12 @@ public class AzureClient implements AzureComputeClient {
 	@Retryable(
 			value = { RuntimeException.class },
 			maxAttempts = AzureConstants.RETRY_ATTEMPTS,
-			backoff = @Backoff(delay = AzureConstants.RETRY_DELAY))
+			backoff = @Backoff(delay = AzureConstants.RETRY_DELAY, multiplier = AzureConstants.RETRY_MULTIPLIER, random = true))
 	@NotNull
 	public @NotNull VirtualMachine describe(@NotBlank String instanceId) {
 		log.trace("describe(): instanceId={}", instanceId);
 		try{
-			return client.virtualMachines().getById(instanceId);
+			return rateLimiter.call(Priority.DEFAULT, () -> client.virtualMachines().getById(instanceId));
 		} catch (Throwable e) {
 			log.warn("Failed to stop Azure instance; instanceId={}; cause={}; message={}",
 					instanceId, e, e.getMessage());
@@ -244,24 +268,24 @@ public class AzureClient implements AzureComputeClient {
 	@Retryable(
 			value = { RuntimeException.class },
 			maxAttempts = AzureConstants.RETRY_ATTEMPTS,
-			backoff = @Backoff(delay = AzureConstants.RETRY_DELAY))
+			backoff = @Backoff(delay = AzureConstants.RETRY_DELAY, multiplier = AzureConstants.RETRY_MULTIPLIER, random = true))
 	public @NotNull VirtualMachine updateTags(@NotNull VirtualMachine instance, @NotNull Map<String, String> tags) {
 		final String instanceId = instance.id();
 		log.trace("updateTags(): instance={}", instanceId);
-		instance.update().withTags(tags).apply();
+		rateLimiter.call(Priority.TAG, () -> instance.update().withTags(tags).apply());
 		//refresh object state
-		return client.virtualMachines().getById(instanceId);
+		return rateLimiter.call(Priority.DEFAULT, () -> client.virtualMachines().getById(instanceId));
 	}
 
 	@Override
 	public boolean isProvisioned(@NotBlank String instanceId) throws Exception {
-		final VirtualMachine instance = client.virtualMachines().getById(instanceId);
+		final VirtualMachine instance = rateLimiter.call(Priority.DEFAULT, () -> client.virtualMachines().getById(instanceId));
 		return VM.isProvisioned(instance);
 	}
 
 	@Override
 	public boolean isRunning(@NotBlank String instanceId) throws Exception {
-		final VirtualMachine instance = client.virtualMachines().getById(instanceId);
+		final VirtualMachine instance = rateLimiter.call(Priority.DEFAULT, () -> client.virtualMachines().getById(instanceId));
 		return VM.isRunning(instance);
 	}
 
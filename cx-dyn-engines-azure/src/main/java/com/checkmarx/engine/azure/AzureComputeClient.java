@@ -52,6 +52,13 @@ public interface AzureComputeClient {
 	 */
 	void stop(@NotBlank String instanceId);
 
+	/**
+	 * Deallocates an Azure instance, releasing its compute while keeping its disks.
+	 * 
+	 * @param instanceId to deallocate
+	 */
+	void deallocate(@NotBlank String instanceId);
+
 	/**
 	 * Terminates an Azure instance.
 	 * 
@@ -20,5 +20,8 @@ public class AzureConstants {
 
 	public static final long RETRY_DELAY = 10* 1000; // ms
 	public static final int RETRY_ATTEMPTS = 2;
+	public static final double RETRY_MULTIPLIER = 2;
+
+	public static final int TOO_MANY_REQUESTS = 429; // HTTP status of throttled ARM requests
 
 }
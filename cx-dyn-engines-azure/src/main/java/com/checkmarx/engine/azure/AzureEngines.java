@@ -15,14 +15,15 @@ package com.checkmarx.engine.azure;
 
 import com.checkmarx.engine.CxConfig;
 import com.checkmarx.engine.domain.DynamicEngine;
+import com.checkmarx.engine.domain.DynamicEngine.WarmTier;
 import com.checkmarx.engine.domain.EnginePoolConfig;
 import com.checkmarx.engine.domain.EngineSize;
 import com.checkmarx.engine.domain.Host;
 import com.checkmarx.engine.rest.CxEngineClient;
 import com.checkmarx.engine.servers.CxEngines;
+import com.checkmarx.engine.utils.CompletableFutureUtils;
 import com.checkmarx.engine.utils.ScriptRunner;
 import com.checkmarx.engine.utils.TaskManager;
-import com.checkmarx.engine.utils.TimeoutTask;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
@@ -34,18 +35,18 @@ import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Profile;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Component;
 import javax.validation.constraints.NotNull;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * azure {@code CxEngines} provider.
@@ -67,6 +68,8 @@ public class AzureEngines implements CxEngines {
 	private final TaskManager taskManager;
 	private final int pollingMillis;
     private final ExecutorService executor;
+    private final ExecutorService launchExecutor;
+    private final ScheduledExecutorService scheduler;
 
 	/**
 	 * Maps engine name to Azure instance; key=engine name
@@ -96,6 +99,8 @@ public class AzureEngines implements CxEngines {
 		this.engineTypeMap = azureConfig.getEngineSizeMap();
 		this.pollingMillis = azureConfig.getMonitorPollingIntervalSecs() * 1000;
 		this.executor = taskManager.getExecutor("EngineScripts", "eng-scripts-%d", false);
+		this.launchExecutor = taskManager.getExecutor("EngineLaunch", "eng-launch-%d", true);
+		this.scheduler = taskManager.getLaunchScheduler();
 		
 		log.info("ctor(): {}", this);
 	}
@@ -216,76 +221,117 @@ public class AzureEngines implements CxEngines {
 	}
     
 	@Override
-	@Retryable(
-			value = { RuntimeException.class },
-			maxAttempts = AzureConstants.RETRY_ATTEMPTS,
-			backoff = @Backoff(delay = AzureConstants.RETRY_DELAY))
 	public void launch(DynamicEngine engine, EngineSize size, boolean waitForSpinup) throws InterruptedException {
 		log.debug("launch(): {}; size={}; wait={}", engine, size, waitForSpinup);
+		CompletableFutureUtils.join(launchAsync(engine, size, waitForSpinup));
+	}
+
+	@Override
+	public CompletableFuture<DynamicEngine> launchAsync(DynamicEngine engine, EngineSize size, boolean waitForSpinup) {
+		log.debug("launchAsync(): {}; size={}; wait={}", engine, size, waitForSpinup);
 
 		final String name = engine.getName();
-		final String type = engineTypeMap.get(size.getName());
-		final Map<String, String> tags = createEngineTags(size.getName());
-		
-		VirtualMachine instance = provisionedEngines.get(name);
-		String instanceId = null;
-		
 		log.info("action=LaunchingEngine; name={}; {}", name, engine); 
 
-		boolean success = false;
 		final Stopwatch timer = Stopwatch.createStarted();
-		try {
-			if (instance != null) {
-				log.debug("...Azure VM is provisioned...");
-			}
-			else{
-				instance = launchEngine(engine, name, type, tags);
-			}
-			instanceId = instance.id();
+		final CompletableFuture<DynamicEngine> future = CompletableFutureUtils.retry("launch-" + name, 
+				() -> launchEngine(engine, size, waitForSpinup), 
+				AzureConstants.RETRY_ATTEMPTS, scheduler, AzureConstants.RETRY_DELAY, TimeUnit.MILLISECONDS);
+		future.whenComplete((launched, ex) -> {
+			final VirtualMachine instance = provisionedEngines.get(name);
+			log.info("action=LaunchedEngine; success={}; name={}; id={}; elapsedTime={}s; {}", 
+					ex == null, name, instance == null ? null : instance.id(), 
+					timer.elapsed(TimeUnit.SECONDS), VM.print(instance));
+		});
+		return future;
+	}
+
+	/**
+	 * A single launch attempt.  Azure VM create and start calls block until the VM is running, 
+	 * so they run on the launch executor; the stopping wait and engine ping are scheduled.
+	 */
+	private CompletableFuture<DynamicEngine> launchEngine(DynamicEngine engine, EngineSize size, boolean waitForSpinup) {
+		final String name = engine.getName();
+		final String type = engineTypeMap.get(size.getName());
+		final Map<String, String> tags = createEngineTags(size.getName());
+		final AtomicReference<String> instanceId = new AtomicReference<>();
+
+		final CompletableFuture<DynamicEngine> future = 
+				provisionEngine(name, type, tags, instanceId)
+				.thenCompose(instance -> {
+					provisionedEngines.put(name, instance);
+					final Host host = createHost(name, instance);
+					engine.setHost(host);
+					return waitForSpinup ? pingEngine(host) : CompletableFuture.completedFuture(true);
+				})
+				.thenApply(pinged -> {
+					//move this logic into caller
+					runScript(azureConfig.getScriptOnLaunch(), engine);
+					return engine;
+				});
+
+		future.whenCompleteAsync((launched, ex) -> {
+			if (ex == null) return;
+			final Throwable t = CompletableFutureUtils.unwrap(ex);
+			log.warn("Error occurred while launching azure Azure instance; name={}; {}; cause={}; message={}", 
+					name, engine, t, t.getMessage());
+			handleLaunchException(instanceId.get(), t);
+		}, launchExecutor);
+		return future;
+	}
+
+	private CompletableFuture<VirtualMachine> provisionEngine(String name, String type, Map<String, String> tags, 
+			AtomicReference<String> instanceId) {
+		return CompletableFuture.supplyAsync(() -> {
+			final VirtualMachine instance = provisionedEngines.get(name);
+			if (instance == null) return null;
+
 			//refresh instance state
-			instance = azureClient.describe(instanceId);
-			provisionedEngines.put(name, instance);
-			
-			if (VM.isTerminated(instance)) {
-				log.debug("...Azure VM is terminated, launching new instance...");
-				instance = launchEngine(engine, name, type, tags);
-				instanceId = instance.id();
-			}else if (VM.isStopping(instance)) {
-				final int sleep = azureConfig.getCxEngineTimeoutSec();
-				log.debug("...Azure VM is stopping, sleeping {}s", sleep);
-				Thread.sleep(sleep * 1000);
-				log.debug("...Azure VM is stopping, starting instance...");
-				instance = azureClient.start(instanceId);
+			log.debug("...Azure VM is provisioned...");
+			final VirtualMachine refreshed = azureClient.describe(instance.id());
+			provisionedEngines.put(name, refreshed);
+			return refreshed;
+		}, launchExecutor).thenCompose(instance -> {
+			if (instance == null || VM.isTerminated(instance)) {
+				log.debug("...Azure VM is not provisioned, launching new instance...");
+				return CompletableFuture.supplyAsync(() -> createInstance(name, type, tags, instanceId), launchExecutor);
+			}
+
+			final String id = instance.id();
+			instanceId.set(id);
+			if (VM.isStopping(instance)) {
+				final int wait = azureConfig.getCxEngineTimeoutSec();
+				log.debug("...Azure VM is stopping, waiting {}s to start instance...", wait);
+				return CompletableFutureUtils.delay(scheduler, wait, TimeUnit.SECONDS)
+						.thenApplyAsync(v -> startInstance(id), launchExecutor);
 			} else if (!VM.isRunning(instance)) {
 				log.debug("...Azure VM is stopped, starting instance...");
-				instance = azureClient.start(instanceId);
-			} else {
-				// host is running
-				log.debug("...Azure VM is running...");
-			}
-			
-			final Host host = createHost(name, instance);
-			engine.setHost(host);
-			
-			if (waitForSpinup) {
-				pingEngine(host);
+				return CompletableFuture.supplyAsync(() -> startInstance(id), launchExecutor);
 			}
-			//move this logic into caller
-			runScript(azureConfig.getScriptOnLaunch(), engine);
-			
-			//engine.setState(State.IDLE);
-			success = true;
-        } catch (CancellationException | InterruptedException | RejectedExecutionException e) {
-            log.warn("Error occurred while launching azure Azure instance; name={}; {}", name, engine, e);
-            handleLaunchException(instanceId, e);
-            throw new InterruptedException(e.getMessage());
-		} catch (Throwable e) {
-			log.error("Error occurred while launching azure Azure instance; name={}; {}", name, engine, e);
-            handleLaunchException(instanceId, e);
-            throw new RuntimeException("Error launching engine", e);
-		} finally {
-			log.info("action=LaunchedEngine; success={}; name={}; id={}; elapsedTime={}s; {}", 
-					success, name, instanceId, timer.elapsed(TimeUnit.SECONDS), VM.print(instance));
+			// host is running
+			log.debug("...Azure VM is running...");
+			return CompletableFuture.completedFuture(instance);
+		});
+	}
+
+	private VirtualMachine createInstance(String name, String type, Map<String, String> tags, 
+			AtomicReference<String> instanceId) {
+		log.debug("createInstance(): name={}; type={}", name, type);
+		try {
+			final VirtualMachine instance = azureClient.launch(name, type, tags);
+			instanceId.set(instance.id());
+			provisionedEngines.put(name, instance);
+			return instance;
+		} catch (Exception e) {
+			throw new CompletionException(e);
+		}
+	}
+
+	private VirtualMachine startInstance(String instanceId) {
+		try {
+			return azureClient.start(instanceId);
+		} catch (Exception e) {
+			throw new CompletionException(e);
 		}
 	}
 	
@@ -309,7 +355,15 @@ public class AzureEngines implements CxEngines {
 	
 	@Override
 	public void stop(DynamicEngine engine, boolean forceTerminate) {
-		log.debug("stop() : {}", engine);
+		stop(engine, cxConfig.isTerminateOnStop() || forceTerminate ? WarmTier.TERMINATED : WarmTier.STOPPED);
+	}
+	
+	/**
+	 * Hibernated engines are deallocated, releasing their compute; stopped engines are powered off.
+	 */
+	@Override
+	public void stop(DynamicEngine engine, WarmTier tier) {
+		log.debug("stop() : tier={}; {}", tier, engine);
 
         String action = "StoppedEngine";
         String instanceId = null;
@@ -322,13 +376,18 @@ public class AzureEngines implements CxEngines {
     		instance = lookupVirtualMachine(engine, "stop");
     		instanceId = instance.id();
 			
-			if (cxConfig.isTerminateOnStop() || forceTerminate) {
+			if (WarmTier.TERMINATED.equals(tier)) {
 				action = "TerminatedEngine";
 				azureClient.terminate(instanceId);
 				provisionedEngines.remove(name);
 				runScript(azureConfig.getScriptOnTerminate(), engine);
 			} else {
-				azureClient.stop(instanceId);
+				if (WarmTier.HIBERNATED.equals(tier)) {
+					action = "DeallocatedEngine";
+					azureClient.deallocate(instanceId);
+				} else {
+					azureClient.stop(instanceId);
+				}
 				instance = azureClient.describe(instanceId);
 				provisionedEngines.put(name, instance);
 			}
@@ -398,15 +457,6 @@ public class AzureEngines implements CxEngines {
         return instance;
     }
 
-	private VirtualMachine launchEngine(final DynamicEngine engine, final String name,
-			final String type, final Map<String, String> tags) throws Exception {
-		log.debug("launchEngine(): name={}; type={}", name, type);
-
-		final VirtualMachine instance = azureClient.launch(name, type, tags);
-		provisionedEngines.put(name, instance);
-		return instance;
-	}
-
 	private Host createHost(final String name, final VirtualMachine instance) {
 		final String ip = instance.getPrimaryNetworkInterface().primaryPrivateIP();
 		final String publicIp = instance.getPrimaryPublicIPAddress() != null ?
@@ -422,31 +472,22 @@ public class AzureEngines implements CxEngines {
 				engineClient.buildEngineServiceUrl(monitorIp), launchTime);
 	}
 
-	private void pingEngine(Host host) throws Exception {
+	private CompletableFuture<Boolean> pingEngine(Host host) {
 		log.trace("pingEngine(): host={}", host);
 		
-		final TimeoutTask<Boolean> pingTask = 
-				new TimeoutTask<>("pingEngine-"+host.getIp(), azureConfig.getCxEngineTimeoutSec(), 
-				        TimeUnit.SECONDS, taskManager);
 		final String ip = azureConfig.isUsePublicUrlForMonitor() ? host.getPublicIp(): host.getIp();
-		try {
-			pingTask.execute(() -> {
-			    do {
-                    log.trace("Engine ping failed, waiting to retry; sleep={}ms; {}", pollingMillis, host); 
-                    TimeUnit.MILLISECONDS.sleep(pollingMillis);
-			    } while (!engineClient.pingEngine(ip));
-				return true;
-			});
-        } catch (CancellationException | InterruptedException | RejectedExecutionException e) {
-            log.warn("Failed to ping CxEngine service; {}; cause={}; message={}", 
-                    host, e.getCause(), e.getMessage());
-            // do not retry, so throw Interrupted exception
-            throw new InterruptedException(e.getMessage());
-		} catch (Exception e) {
-			log.warn("Failed to ping CxEngine service; {}; cause={}; message={}", 
-					host, e.getCause(), e.getMessage());
-			throw e;
-		}
+		final CompletableFuture<Boolean> ping = CompletableFutureUtils.poll("pingEngine-" + ip, scheduler, () -> {
+			if (engineClient.pingEngine(ip)) return true;
+			log.trace("Engine ping failed, waiting to retry; sleep={}ms; {}", pollingMillis, host); 
+			return null;
+		}, pollingMillis, pollingMillis, azureConfig.getCxEngineTimeoutSec() * 1000L, TimeUnit.MILLISECONDS);
+		
+		ping.whenComplete((pinged, ex) -> {
+			if (ex == null) return;
+			final Throwable t = CompletableFutureUtils.unwrap(ex);
+			log.warn("Failed to ping CxEngine service; {}; cause={}; message={}", host, t, t.getMessage());
+		});
+		return ping;
 	}
 	
 	void runScript(String scriptFile, DynamicEngine engine) {
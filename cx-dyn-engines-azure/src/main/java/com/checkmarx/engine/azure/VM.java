@@ -14,6 +14,7 @@
 package com.checkmarx.engine.azure;
 
 import com.google.common.base.MoreObjects;
+import com.microsoft.azure.CloudException;
 import com.microsoft.azure.management.compute.PowerState;
 import com.microsoft.azure.management.compute.VirtualMachine;
 
@@ -93,6 +94,20 @@ public class VM {
 		return InstanceState.RUNNING.equals(state);
 	}
 
+	/**
+	 * @return true if the supplied exception, or one of its causes, is an Azure Resource Manager throttling error
+	 */
+	public static boolean isThrottled(Throwable t) {
+		for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+			if (cause instanceof CloudException 
+					&& ((CloudException) cause).response() != null
+					&& ((CloudException) cause).response().code() == AzureConstants.TOO_MANY_REQUESTS) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public static String print(VirtualMachine instance) {
 		if (instance == null) return "null";
 		
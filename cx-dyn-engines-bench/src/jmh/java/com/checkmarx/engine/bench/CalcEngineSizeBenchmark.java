@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.checkmarx.engine.domain.DefaultEnginePoolBuilder;
+import com.checkmarx.engine.domain.EnginePool;
+import com.checkmarx.engine.domain.EnginePool.EnginePoolEntry;
+import com.checkmarx.engine.domain.EnginePoolConfig;
+import com.checkmarx.engine.domain.EngineSize;
+import com.checkmarx.engine.rest.model.ProgramLanguage;
+import com.checkmarx.engine.rest.model.Project;
+import com.checkmarx.engine.rest.model.ScanRequest;
+import com.checkmarx.engine.rest.model.ScanRequest.ScanStatus;
+
+/**
+ * Scan LOC to engine size classification across a range of configured sizes, 
+ * by LOC and memoized per scan, as on each scan queue poll.
+ * 
+ * @author randy@checkmarx.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CalcEngineSizeBenchmark {
+	
+	private static final int LOC_COUNT = 1024;
+	private static final int LOC_PER_SIZE = 100000;
+
+	@Param({ "4", "16", "64" })
+	private int sizeCount;
+
+	private EnginePool pool;
+	private final long[] locs = new long[LOC_COUNT];
+	private final ScanRequest[] scans = new ScanRequest[LOC_COUNT];
+	private int next;
+	
+	@Setup
+	public void setUp() {
+		final DefaultEnginePoolBuilder builder = new DefaultEnginePoolBuilder(new EnginePoolConfig());
+		for (int i = 0; i < sizeCount; i++) {
+			final EngineSize size = new EngineSize("size-" + i, i * LOC_PER_SIZE, (i + 1) * LOC_PER_SIZE - 1);
+			builder.addEntry(new EnginePoolEntry(size, 1, 0));
+		}
+		pool = builder.build();
+		
+		final Random random = new Random(42);
+		for (int i = 0; i < LOC_COUNT; i++) {
+			locs[i] = (long) (random.nextDouble() * sizeCount * LOC_PER_SIZE);
+			scans[i] = new ScanRequest(i, "runId" + i, "team", new Project(i, "project" + i), 
+					ScanStatus.to(ScanStatus.Queued), "", "", 0, 0, (int) locs[i], false, true, 
+					"bench", i, "bench", new ProgramLanguage[0], null, null, null, null);
+		}
+	}
+
+	@Benchmark
+	public EngineSize calcEngineSize() {
+		next = (next + 1) & (LOC_COUNT - 1);
+		return pool.calcEngineSize(locs[next]);
+	}
+
+	@Benchmark
+	public EngineSize calcScanEngineSize() {
+		next = (next + 1) & (LOC_COUNT - 1);
+		return pool.calcEngineSize(scans[next]);
+	}
+
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import com.checkmarx.engine.domain.DefaultEnginePoolBuilder;
+import com.checkmarx.engine.domain.DynamicEngine;
+import com.checkmarx.engine.domain.EnginePool;
+import com.checkmarx.engine.domain.EnginePool.EnginePoolEntry;
+import com.checkmarx.engine.domain.EnginePoolConfig;
+import com.checkmarx.engine.domain.EngineSize;
+
+/**
+ * Engine allocation and state transition cycles, the scheduling hot path during scan bursts.
+ * Every engine starts IDLE; each operation returns its engine to IDLE, so the pool 
+ * stays in a steady state across iterations.
+ * 
+ * @author randy@checkmarx.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EnginePoolBenchmark {
+	
+	private static final EngineSize SMALL = new EngineSize("S", 0, 99999);
+	private static final EngineSize MEDIUM = new EngineSize("M", 100000, 999999);
+
+	@Param({ "10", "100", "1000", "10000" })
+	private int poolSize;
+	
+	private EnginePool pool;
+	
+	@Setup
+	public void setUp() {
+		final EnginePoolConfig config = new EnginePoolConfig();
+		pool = new DefaultEnginePoolBuilder(config)
+				.addEntry(new EnginePoolEntry(SMALL, poolSize, 0))
+				.addEntry(new EnginePoolEntry(MEDIUM, poolSize, 0))
+				.build();
+		for (int i = 0; i < poolSize; i++) {
+			pool.allocateEngine(SMALL, DynamicEngine.State.UNPROVISIONED, DynamicEngine.State.IDLE);
+			pool.allocateEngine(MEDIUM, DynamicEngine.State.UNPROVISIONED, DynamicEngine.State.IDLE);
+		}
+	}
+	
+	@Benchmark
+	@Threads(1)
+	public DynamicEngine allocateIdle() {
+		return allocateIdleCycle();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public DynamicEngine allocateIdle4Threads() {
+		return allocateIdleCycle();
+	}
+
+	@Benchmark
+	@Threads(16)
+	public DynamicEngine allocateIdle16Threads() {
+		return allocateIdleCycle();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public DynamicEngine expire() {
+		return expireCycle();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public DynamicEngine expire4Threads() {
+		return expireCycle();
+	}
+
+	@Benchmark
+	@Threads(16)
+	public DynamicEngine expire16Threads() {
+		return expireCycle();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public int engineCount() {
+		return pool.getEngineCount(SMALL, DynamicEngine.State.IDLE);
+	}
+
+	/**
+	 * IDLE -> SCANNING -> IDLE, as for a scan on a warm engine
+	 */
+	private DynamicEngine allocateIdleCycle() {
+		final DynamicEngine engine = pool.allocateEngine(SMALL, DynamicEngine.State.IDLE, DynamicEngine.State.SCANNING);
+		if (engine != null) {
+			pool.idleEngine(engine);
+		}
+		return engine;
+	}
+	
+	/**
+	 * IDLE -> EXPIRING -> UNPROVISIONED, then re-provisions an engine to IDLE, as for 
+	 * an expired engine followed by a launch
+	 */
+	private DynamicEngine expireCycle() {
+		final DynamicEngine engine = pool.allocateEngine(SMALL, DynamicEngine.State.IDLE, DynamicEngine.State.EXPIRING);
+		if (engine != null) {
+			pool.deallocateEngine(engine);
+		}
+		return pool.allocateEngine(SMALL, DynamicEngine.State.UNPROVISIONED, DynamicEngine.State.IDLE);
+	}
+
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.bench;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.checkmarx.engine.rest.model.Project;
+import com.checkmarx.engine.rest.model.ProgramLanguage;
+import com.checkmarx.engine.rest.model.ScanRequest;
+import com.checkmarx.engine.rest.model.ScanRequest.ScanStatus;
+import com.checkmarx.engine.utils.ScanUtils;
+import com.google.common.collect.Lists;
+
+/**
+ * Scan queue ordering on large synthetic queues.  Queue positions are shuffled and 
+ * partly missing, as returned by CxManager for scans not yet positioned.  The 
+ * measured time includes copying the queue, so each invocation sorts unsorted input.
+ * 
+ * @author randy@checkmarx.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SortQueueBenchmark {
+	
+	@Param({ "100", "1000", "10000" })
+	private int queueSize;
+	
+	private final List<ScanRequest> queue = Lists.newArrayList();
+	
+	@Setup
+	public void setUp() {
+		final Random random = new Random(42);
+		final DateTime now = DateTime.now();
+		queue.clear();
+		for (int i = 0; i < queueSize; i++) {
+			// ~10% of scans have no queue position yet
+			final Integer position = random.nextInt(10) == 0 ? null : random.nextInt(queueSize);
+			final DateTime created = now.minusSeconds(random.nextInt(3600));
+			final DateTime queuedOn = created.plusSeconds(random.nextInt(60));
+			queue.add(new ScanRequest(i, "runId" + i, "team" + i, new Project(i, "project" + i), 
+					ScanStatus.to(ScanStatus.Queued), "", "", 0, 0, random.nextInt(1000000), false, true, 
+					"bench", position, "bench", new ProgramLanguage[0], created, queuedOn, null, null));
+		}
+	}
+
+	@Benchmark
+	public List<ScanRequest> sortQueue() {
+		final List<ScanRequest> copy = Lists.newArrayList(queue);
+		ScanUtils.sortQueue(copy);
+		return copy;
+	}
+
+}
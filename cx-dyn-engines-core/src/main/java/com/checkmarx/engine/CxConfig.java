@@ -13,11 +13,14 @@
  ******************************************************************************/
 package com.checkmarx.engine;
 
+import java.util.Map;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.google.common.base.MoreObjects;
+import com.google.common.collect.Maps;
 
 @Component
 @ConfigurationProperties(prefix="cx")
@@ -46,6 +49,23 @@ public class CxConfig {
 	private String notificationId; //Identifier for Notification implementation (ARN/URI/UID/etc)
 	private String notificationSubject = "Dynamic Engines"; //Subject for notifications
 	private int notificationTimer = 60; //time to wait before resending
+	private boolean prewarmEnabled = false;
+	private int prewarmLookaheadMins = 15;
+	private int prewarmMonitorSecs = 60;
+	private double prewarmSmoothingFactor = 0.3;
+	private int queueMinIntervalSecs = 2;
+	private int launchBatchWindowMillis = 250;
+	private boolean engineHandoffEnabled = false;
+	private boolean finishPredictionEnabled = false;
+	private int shortScanWaitSecs = 0;
+	private boolean engineBorrowingEnabled = false;
+	private int borrowIdleReserve = 1;
+	private Map<String, Integer> teamWeights = Maps.newHashMap();
+	private boolean speculativeLaunchEnabled = false;
+	private boolean preRegisteredEnginesEnabled = false;
+	private int hedgeLaunchPercentile = 0;
+	private int cloudApiRequestsPerSecond = 10;
+	private int cloudApiBurst = 20;
 
 	public String getUserName() {
 		return userName;
@@ -124,10 +144,15 @@ public class CxConfig {
 		this.expireEngineBufferMins = expireEngineBufferMins;
 	}
 
+	/**
+	 * @return no longer used, idle engines expire on a timer
+	 */
+	@Deprecated
 	public int getIdleMonitorSecs() {
 		return idleMonitorSecs;
 	}
 
+	@Deprecated
 	public void setIdleMonitorSecs(int idleMonitorSecs) {
 		this.idleMonitorSecs = idleMonitorSecs;
 	}
@@ -220,6 +245,191 @@ public class CxConfig {
 		this.notificationTimer = notificationTimer;
 	}
 
+	/**
+	 * @return if true, IDLE engines are launched ahead of the forecast scan demand
+	 */
+	public boolean isPrewarmEnabled() {
+		return prewarmEnabled;
+	}
+
+	public void setPrewarmEnabled(boolean prewarmEnabled) {
+		this.prewarmEnabled = prewarmEnabled;
+	}
+
+	/**
+	 * @return the forecast window in minutes; should cover the engine launch time
+	 */
+	public int getPrewarmLookaheadMins() {
+		return prewarmLookaheadMins;
+	}
+
+	public void setPrewarmLookaheadMins(int prewarmLookaheadMins) {
+		this.prewarmLookaheadMins = prewarmLookaheadMins;
+	}
+
+	public int getPrewarmMonitorSecs() {
+		return prewarmMonitorSecs;
+	}
+
+	public void setPrewarmMonitorSecs(int prewarmMonitorSecs) {
+		this.prewarmMonitorSecs = prewarmMonitorSecs;
+	}
+
+	/**
+	 * @return weight (0..1] given to the most recent week of scan arrivals
+	 */
+	public double getPrewarmSmoothingFactor() {
+		return prewarmSmoothingFactor;
+	}
+
+	public void setPrewarmSmoothingFactor(double prewarmSmoothingFactor) {
+		this.prewarmSmoothingFactor = prewarmSmoothingFactor;
+	}
+
+	/**
+	 * @return the shortest scan queue polling interval, used while the queue is changing
+	 */
+	public int getQueueMinIntervalSecs() {
+		return queueMinIntervalSecs;
+	}
+
+	public void setQueueMinIntervalSecs(int queueMinIntervalSecs) {
+		this.queueMinIntervalSecs = queueMinIntervalSecs;
+	}
+
+	/**
+	 * @return how long new engine launches of the same size are collected into one batch; 0 disables batching
+	 */
+	public int getLaunchBatchWindowMillis() {
+		return launchBatchWindowMillis;
+	}
+
+	public void setLaunchBatchWindowMillis(int launchBatchWindowMillis) {
+		this.launchBatchWindowMillis = launchBatchWindowMillis;
+	}
+
+	/**
+	 * @return if true, a finished engine is reassigned to a waiting scan of the same size without unregistering it
+	 */
+	public boolean isEngineHandoffEnabled() {
+		return engineHandoffEnabled;
+	}
+
+	public void setEngineHandoffEnabled(boolean engineHandoffEnabled) {
+		this.engineHandoffEnabled = engineHandoffEnabled;
+	}
+
+	/**
+	 * @return if true, a queued scan waits for a working engine predicted to finish sooner than a new engine can launch
+	 */
+	public boolean isFinishPredictionEnabled() {
+		return finishPredictionEnabled;
+	}
+
+	public void setFinishPredictionEnabled(boolean finishPredictionEnabled) {
+		this.finishPredictionEnabled = finishPredictionEnabled;
+	}
+
+	/**
+	 * @return longest a scan predicted to finish within an engine launch time waits for a working engine; 0 disables duration based placement
+	 */
+	public int getShortScanWaitSecs() {
+		return shortScanWaitSecs;
+	}
+
+	public void setShortScanWaitSecs(int shortScanWaitSecs) {
+		this.shortScanWaitSecs = shortScanWaitSecs;
+	}
+
+	/**
+	 * @return if true, a scan with no idle engine of its size borrows the smallest idle engine of a larger size
+	 */
+	public boolean isEngineBorrowingEnabled() {
+		return engineBorrowingEnabled;
+	}
+
+	public void setEngineBorrowingEnabled(boolean engineBorrowingEnabled) {
+		this.engineBorrowingEnabled = engineBorrowingEnabled;
+	}
+
+	/**
+	 * @return idle engines of each size that are never lent to smaller scans
+	 */
+	public int getBorrowIdleReserve() {
+		return borrowIdleReserve;
+	}
+
+	public void setBorrowIdleReserve(int borrowIdleReserve) {
+		this.borrowIdleReserve = borrowIdleReserve;
+	}
+
+	/**
+	 * @return fair share weights of blocked scans by CxSAST team id; teams not listed have weight 1
+	 */
+	public Map<String, Integer> getTeamWeights() {
+		return teamWeights;
+	}
+
+	public void setTeamWeights(Map<String, Integer> teamWeights) {
+		this.teamWeights = teamWeights;
+	}
+
+	/**
+	 * @return if true, an engine is launched while a scan is still pulling source, sized by the project's last known LOC
+	 */
+	public boolean isSpeculativeLaunchEnabled() {
+		return speculativeLaunchEnabled;
+	}
+
+	public void setSpeculativeLaunchEnabled(boolean speculativeLaunchEnabled) {
+		this.speculativeLaunchEnabled = speculativeLaunchEnabled;
+	}
+
+	/**
+	 * @return if true, idle engines stay registered with CxManager over their full engine size LOC range, so CxManager assigns scans to them directly.
+	 * 		CxManager also assigns scans held back by the <code>concurrentScanLimit</code>, so the limit does not apply to pre-registered engines
+	 */
+	public boolean isPreRegisteredEnginesEnabled() {
+		return preRegisteredEnginesEnabled;
+	}
+
+	public void setPreRegisteredEnginesEnabled(boolean preRegisteredEnginesEnabled) {
+		this.preRegisteredEnginesEnabled = preRegisteredEnginesEnabled;
+	}
+
+	/**
+	 * @return percentile (1-100) of recent launch times after which a second engine is launched for a scan whose engine is not yet ready; 0 disables hedged launches
+	 */
+	public int getHedgeLaunchPercentile() {
+		return hedgeLaunchPercentile;
+	}
+
+	public void setHedgeLaunchPercentile(int hedgeLaunchPercentile) {
+		this.hedgeLaunchPercentile = hedgeLaunchPercentile;
+	}
+
+	/**
+	 * @return sustained request rate to the cloud provider API, shared by all engine operations; halved while the provider throttles requests
+	 */
+	public int getCloudApiRequestsPerSecond() {
+		return cloudApiRequestsPerSecond;
+	}
+
+	public void setCloudApiRequestsPerSecond(int cloudApiRequestsPerSecond) {
+		this.cloudApiRequestsPerSecond = cloudApiRequestsPerSecond;
+	}
+
+	/**
+	 * @return cloud provider API requests admitted at once after an idle period
+	 */
+	public int getCloudApiBurst() {
+		return cloudApiBurst;
+	}
+
+	public void setCloudApiBurst(int cloudApiBurst) {
+		this.cloudApiBurst = cloudApiBurst;
+	}
+
 	private String getManifestVersion() {
 	    final Package objPackage = this.getClass().getPackage();
 	    return objPackage.getImplementationVersion();
@@ -245,6 +455,23 @@ public class CxConfig {
 				.add("version", getVersion())
 				.add("notificationId", notificationId)
 				.add("notificationSubject", notificationSubject)
+				.add("prewarmEnabled", prewarmEnabled)
+				.add("prewarmLookaheadMins", prewarmLookaheadMins)
+				.add("prewarmMonitorSecs", prewarmMonitorSecs)
+				.add("prewarmSmoothingFactor", prewarmSmoothingFactor)
+				.add("queueMinIntervalSecs", queueMinIntervalSecs)
+				.add("launchBatchWindowMillis", launchBatchWindowMillis)
+				.add("engineHandoffEnabled", engineHandoffEnabled)
+				.add("finishPredictionEnabled", finishPredictionEnabled)
+				.add("shortScanWaitSecs", shortScanWaitSecs)
+				.add("engineBorrowingEnabled", engineBorrowingEnabled)
+				.add("borrowIdleReserve", borrowIdleReserve)
+				.add("teamWeights", teamWeights)
+				.add("speculativeLaunchEnabled", speculativeLaunchEnabled)
+				.add("preRegisteredEnginesEnabled", preRegisteredEnginesEnabled)
+				.add("hedgeLaunchPercentile", hedgeLaunchPercentile)
+				.add("cloudApiRequestsPerSecond", cloudApiRequestsPerSecond)
+				.add("cloudApiBurst", cloudApiBurst)
 				.toString();
 	}
 
@@ -46,7 +46,9 @@ public class DefaultEnginePoolBuilder implements EnginePoolBuilder {
 		log.trace("build()");
 		engines.clear();
 		entries.forEach((entry) -> addEngines(entry.getScanSize(), entry.getCount()));
-		return new EnginePool(entries, engines);
+		final EnginePool pool = new EnginePool(entries, engines);
+		pool.setVcpuQuota(config.getVcpuQuota());
+		return pool;
 	}
 
 	private void addEngines(EngineSize size, int count) {
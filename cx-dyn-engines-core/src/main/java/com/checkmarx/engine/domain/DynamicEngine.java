@@ -18,6 +18,8 @@ package com.checkmarx.engine.domain;
 
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -43,18 +45,34 @@ public class DynamicEngine implements Comparable<DynamicEngine> {
 		UNPROVISIONED;
 	}
 	
+	/**
+	 * Tiers an engine is kept warm in, warmest first; an UNPROVISIONED engine resumes from its tier.
+	 */
+	public enum WarmTier {
+		RUNNING,
+		HIBERNATED,
+		STOPPED,
+		TERMINATED;
+	}
+	
 	private final String name;
 	private final String size;
-	private State state = State.UNPROVISIONED;
-	private DateTime currentStateTime = DateTime.now();
-	private DateTime timeToExpire;
-	private Host host;
+	private final AtomicReference<State> state = new AtomicReference<>(State.UNPROVISIONED);
+	/**
+	 * orders state transitions, so the pool moves the engine between its state collections in sequence
+	 */
+	private final ReentrantLock transitionLock = new ReentrantLock();
+	private volatile DateTime currentStateTime = DateTime.now();
+	private volatile DateTime timeToExpire;
+	private volatile Host host;
 	private Map<State, Duration> elapsedTimes = Maps.newConcurrentMap();
 	private final long expireDurationSecs;
-	private DateTime launchTime;
-	private String scanId;
-	private String engineId;
-	private EnginePool enginePool;
+	private volatile DateTime launchTime;
+	private volatile String scanId;
+	private volatile String engineId;
+	private volatile EnginePool enginePool;
+	private volatile WarmTier warmTier = WarmTier.TERMINATED;
+	private volatile WarmTier launchTier;
 
 	public EnginePool getEnginePool() {
 		return enginePool;
@@ -87,6 +105,7 @@ public class DynamicEngine implements Comparable<DynamicEngine> {
 		engine.scanId = scanId;
 		engine.engineId = engineId;
 		engine.launchTime = launchTime;
+		engine.warmTier = isRunning ? WarmTier.RUNNING : WarmTier.STOPPED;
 		/*
 		if (isRunning) {
 		    // TODO-RJG: should we pass state?
@@ -113,7 +132,7 @@ public class DynamicEngine implements Comparable<DynamicEngine> {
 	}
 
 	public State getState() {
-		return state;
+		return state.get();
 	}
 
 	public Host getHost() {
@@ -137,21 +156,51 @@ public class DynamicEngine implements Comparable<DynamicEngine> {
 	}
 	
 	public void setState(State toState) {
-		final State curState = this.state; 
-		log.debug("setState(): currentState={}; newState={}; {}", curState, toState, this);
-		
-		//sanity check
-		if (curState.equals(toState)) {
-			log.warn("Setting DynamicEngine state to current state; state={}", toState);
-			return;
+		transitionLock.lock();
+		try {
+			final State curState = state.get(); 
+			log.debug("setState(): currentState={}; newState={}; {}", curState, toState, this);
+			
+			//sanity check
+			if (curState.equals(toState)) {
+				log.warn("Setting DynamicEngine state to current state; state={}", toState);
+				return;
+			}
+			state.set(toState);
+			onStateChanged(curState, toState);
+		} finally {
+			transitionLock.unlock();
 		}
-		
+	}
+	
+	/**
+	 * Atomically changes the engine state if it is currently <code>fromState</code>.  Never waits:
+	 * if another thread is changing the engine state, the engine is not changed.
+	 * 
+	 * @return true if the state was changed
+	 */
+	public boolean compareAndSetState(State fromState, State toState) {
+		if (fromState.equals(toState) || !fromState.equals(state.get())) return false;
+		if (!transitionLock.tryLock()) return false;
+		try {
+			if (!state.compareAndSet(fromState, toState)) return false;
+			log.debug("compareAndSetState(): currentState={}; newState={}; {}", fromState, toState, this);
+			onStateChanged(fromState, toState);
+			return true;
+		} finally {
+			transitionLock.unlock();
+		}
+	}
+	
+	private void onStateChanged(State curState, State toState) {
 		// before changing state, update current state elapsed time
-		final Duration currentDuration = elapsedTimes.get(this.state); 
-		elapsedTimes.put(this.state, currentDuration.plus(getElapsedTime()));
+		final Duration currentDuration = elapsedTimes.get(curState); 
+		elapsedTimes.put(curState, currentDuration.plus(getElapsedTime()));
 
 		// if current state is UNPROVISIONED, set launch time
 		if (curState.equals(State.UNPROVISIONED)) {
+			launchTier = warmTier;
+			warmTier = WarmTier.RUNNING;
 			launchTime = DateTime.now();
 			if (host != null && host.getLaunchTime() != null) {
 				launchTime = host.getLaunchTime();
@@ -160,12 +209,13 @@ public class DynamicEngine implements Comparable<DynamicEngine> {
 		}
 
 		// update state
-		this.state = toState;
 		currentStateTime = DateTime.now();
 		
 		// if new state is UNPROVISIONED, clear applicable items
 		switch (toState) {
 			case UNPROVISIONED :
+				// engines not demoted to a warm tier were terminated, e.g. failed launches
+				if (WarmTier.RUNNING.equals(warmTier)) warmTier = WarmTier.TERMINATED;
 				host = null;
 				launchTime = null;
 				timeToExpire = null;
@@ -182,6 +232,23 @@ public class DynamicEngine implements Comparable<DynamicEngine> {
 		if (enginePool != null) enginePool.changeState(this, curState, toState);
 	}
 	
+	/**
+	 * Moves the expiration time of an IDLE engine to the end of its next expiration interval,
+	 * e.g. when the engine is kept idle for the pool minimum.
+	 * 
+	 * @return the new expiration time, or <code>null</code> if the engine is not IDLE
+	 */
+	DateTime renewExpiration() {
+		transitionLock.lock();
+		try {
+			if (!State.IDLE.equals(state.get()) || timeToExpire == null) return null;
+			timeToExpire = timeToExpire.plusSeconds(Math.toIntExact(expireDurationSecs));
+			return timeToExpire;
+		} finally {
+			transitionLock.unlock();
+		}
+	}
+	
 	DateTime calcExpirationTime() {
 		final Duration runTime = getRunTime();
 		Long factor = Math.floorDiv(runTime.getStandardSeconds(), expireDurationSecs) + 1;
@@ -215,7 +282,7 @@ public class DynamicEngine implements Comparable<DynamicEngine> {
 		final StringBuilder sb = new StringBuilder();
 		elapsedTimes.forEach((state,duration) -> {
 			if (state.equals(State.ALL)) return;
-			if (state.equals(this.state)) duration = duration.plus(getElapsedTime()); 
+			if (state.equals(this.state.get())) duration = duration.plus(getElapsedTime()); 
 			sb.append(String.format("%s:%ss, ", state, duration.getStandardSeconds()));
 		});
 		return sb.toString().replaceAll(", $", "");
@@ -237,6 +304,27 @@ public class DynamicEngine implements Comparable<DynamicEngine> {
         this.engineId = engineId;
     }
 
+    /**
+     * @return the tier the engine is kept in; RUNNING unless the engine is UNPROVISIONED
+     */
+    public WarmTier getWarmTier() {
+        return warmTier;
+    }
+
+    /**
+     * Sets the tier an engine leaving the running tier is kept in, before it is deallocated.
+     */
+    public void setWarmTier(WarmTier warmTier) {
+        this.warmTier = warmTier;
+    }
+
+    /**
+     * @return the tier the engine was last launched from, or <code>null</code> if never launched
+     */
+    public WarmTier getLaunchTier() {
+        return launchTier;
+    }
+
     // name and size are only immutable properties
 	@Override
 	public int hashCode() {
@@ -263,7 +351,7 @@ public class DynamicEngine implements Comparable<DynamicEngine> {
 		return MoreObjects.toStringHelper(this)
 				.add("name", name)
 				.add("size", size)
-				.add("state", state)
+				.add("state", state.get())
 				.add("elapsedTime", getElapsedTime().getStandardSeconds())
 				.add("launchTime", printInstance(launchTime))
 				.add("runTime", getRunTime().getStandardSeconds())
@@ -272,6 +360,7 @@ public class DynamicEngine implements Comparable<DynamicEngine> {
 				.add("timeToExpire", timeToExpire)
 				.add("scanId", scanId)
                 .add("engineId", engineId)
+                .add("warmTier", warmTier)
 				.add("host", host)
 				.add("elapsedTimes", "[" + printElapsedTimes() + "]")
 				//.omitNullValues()
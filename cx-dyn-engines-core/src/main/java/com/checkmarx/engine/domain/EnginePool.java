@@ -13,26 +13,45 @@
  ******************************************************************************/
 package com.checkmarx.engine.domain;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.checkmarx.engine.domain.DynamicEngine.State;
+import com.checkmarx.engine.domain.DynamicEngine.WarmTier;
+import com.checkmarx.engine.rest.model.ScanRequest;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 
+/**
+ * Pool of engines, striped by engine size and state.  The state collections are lock-free;
+ * {@link DynamicEngine#getState()} is authoritative, and an engine is allocated by the thread 
+ * that wins the compare-and-set of its state.  IDLE engines are kept as a stack, so the most 
+ * recently used engine is allocated first and the others can expire.
+ */
 public class EnginePool {
 
 	private static final Logger log = LoggerFactory.getLogger(EnginePool.class);
@@ -45,17 +64,17 @@ public class EnginePool {
 	/**
 	 * map of all engines by size; key = engine size (string)
 	 */
-	private final Map<String, Set<DynamicEngine>> allSizedEngines = Maps.newConcurrentMap();
-	private final Map<String, Set<DynamicEngine>> activeEngines = Maps.newConcurrentMap();
-	private final Map<String, Set<DynamicEngine>> idleEngines = Maps.newConcurrentMap();
-	private final Map<String, Set<DynamicEngine>> expiringEngines = Maps.newConcurrentMap();
-	private final Map<String, Set<DynamicEngine>> unprovisionedEngines = Maps.newConcurrentMap();
+	private final Map<String, Collection<DynamicEngine>> allSizedEngines = Maps.newConcurrentMap();
+	private final Map<String, Collection<DynamicEngine>> activeEngines = Maps.newConcurrentMap();
+	private final Map<String, Collection<DynamicEngine>> idleEngines = Maps.newConcurrentMap();
+	private final Map<String, Collection<DynamicEngine>> expiringEngines = Maps.newConcurrentMap();
+	private final Map<String, Collection<DynamicEngine>> unprovisionedEngines = Maps.newConcurrentMap();
 
 	/**
 	 * map of engine maps by State, then by size name
 	 * 1st key=engine state, 2nd key = engine size
 	 */
-	private final Map<State, Map<String, Set<DynamicEngine>>> engineMaps = Maps.newEnumMap(State.class);
+	private final Map<State, Map<String, Collection<DynamicEngine>>> engineMaps = Maps.newEnumMap(State.class);
 
 	/**
 	 * map of engine counts by size; key=ScanSize
@@ -74,6 +93,59 @@ public class EnginePool {
 	 */
 	private final Map<String, Integer> poolMins = Maps.newConcurrentMap();
 	
+	/**
+	 * map of concurrent scan slots per engine by size; key=size name (string)
+	 */
+	private final Map<String, Integer> poolSlots = Maps.newConcurrentMap();
+	
+	/**
+	 * map of occupied scan slots of SCANNING engines; key=engine name
+	 */
+	private final Map<String, Integer> occupiedSlots = Maps.newConcurrentMap();
+	
+	/**
+	 * map of idle engines lent to scans of a smaller size; key=scan size name and engine size name
+	 */
+	private final Map<String, AtomicLong> borrowCounts = Maps.newConcurrentMap();
+	
+	/**
+	 * map of engine counts to keep in each stopped warm tier by size; key=size name (string)
+	 */
+	private final Map<String, Map<WarmTier, Integer>> poolTiers = Maps.newConcurrentMap();
+	
+	/**
+	 * map of vCPUs per engine by size; key=size name (string)
+	 */
+	private final Map<String, Integer> poolVcpus = Maps.newConcurrentMap();
+	
+	/**
+	 * account-wide vCPU limit for engines not UNPROVISIONED; 0 if unlimited
+	 */
+	private volatile int vcpuQuota;
+	
+	/**
+	 * serializes quota checks of engines allocated from UNPROVISIONED
+	 */
+	private final Object vcpuLock = new Object();
+	
+	private final AtomicLong quotaDeniedCount = new AtomicLong();
+	
+	private final WarmTierPolicy tierPolicy = new WarmTierPolicy(WarmTierPolicy.DEFAULT_SMOOTHING_FACTOR);
+	
+	private volatile IdleEngineMonitor idleMonitor;
+	
+	private static final int MAX_CLASSIFIED_SCANS = 10000;
+	
+	private final EngineSizeClassifier sizeClassifier;
+	
+	/**
+	 * cache of scan engine sizes; key=ScanRequest.Id
+	 */
+	private final Cache<Long, ClassifiedScan> classifiedScans = CacheBuilder.newBuilder()
+			.maximumSize(MAX_CLASSIFIED_SCANS)
+			.expireAfterAccess(1, TimeUnit.DAYS)
+			.build();
+	
 	
 	public EnginePool(Set<EnginePoolEntry> entries, Set<DynamicEngine> engines) {
 		this(entries);
@@ -87,6 +159,7 @@ public class EnginePool {
 		engineMaps.put(DynamicEngine.State.IDLE, idleEngines);
 		engineMaps.put(DynamicEngine.State.UNPROVISIONED, unprovisionedEngines);
 		initSizeMaps(entries);
+		sizeClassifier = new EngineSizeClassifier(engineSizes.keySet());
 	}
 	
 	private void initSizeMaps(Set<EnginePoolEntry> entries) {
@@ -95,15 +168,30 @@ public class EnginePool {
 			final String size = scanSize.getName();
 			scanSizes.put(scanSize.getName(), scanSize);
 			poolMins.put(size, entry.getMinimum());
+			poolSlots.put(size, entry.getSlots());
+			poolVcpus.put(size, entry.getVcpus());
+			final Map<WarmTier, Integer> tiers = Maps.newEnumMap(WarmTier.class);
+			tiers.put(WarmTier.HIBERNATED, entry.getHibernated());
+			tiers.put(WarmTier.STOPPED, entry.getStopped());
+			poolTiers.put(size, tiers);
 			engineSizes.put(scanSize, new AtomicLong(0));
-			engineMaps.forEach((k, map)->initEngineMaps(size, map));
+			engineMaps.forEach((state, map)->initEngineMaps(size, state, map));
 			log.info("Adding engine size; {}", scanSize); 
 		});
 	}
 
-	private void initEngineMaps(String size, Map<String, Set<DynamicEngine>> map) {
+	private void initEngineMaps(String size, State state, Map<String, Collection<DynamicEngine>> map) {
 		if (map.containsKey(size)) return;
-		map.put(size, Sets.newTreeSet());
+		map.put(size, State.IDLE.equals(state) ? new ConcurrentLinkedDeque<>() : new ConcurrentSkipListSet<>());
+	}
+	
+	private void addToState(State state, String size, DynamicEngine engine) {
+		final Collection<DynamicEngine> engines = engineMaps.get(state).get(size);
+		if (State.IDLE.equals(state)) {
+			((ConcurrentLinkedDeque<DynamicEngine>) engines).addFirst(engine);
+		} else {
+			engines.add(engine);
+		}
 	}
 	
 	private void addEngine(DynamicEngine engine) {
@@ -114,15 +202,47 @@ public class EnginePool {
 		//initEngineSizes(size);
 		engineSizes.get(scanSize).incrementAndGet();
 		allSizedEngines.get(size).add(engine);
-		engineMaps.get(state).get(size).add(engine);
+		addToState(state, size, engine);
 		allNamedEngines.put(engine.getName(), engine);
+		if (State.SCANNING.equals(state)) {
+			occupiedSlots.put(engine.getName(), 1);
+		}
 		engine.setEnginePool(this);
+		scheduleExpiry(engine, state);
+	}
+	
+	private void scheduleExpiry(DynamicEngine engine, State state) {
+		final IdleEngineMonitor monitor = idleMonitor;
+		if (monitor == null) return;
+		
+		if (State.IDLE.equals(state)) {
+			monitor.schedule(engine);
+		} else {
+			monitor.cancel(engine);
+		}
 	}
 	
 	public int getEngineCount() {
 		return allNamedEngines.size();
 	}
 
+	/**
+	 * @param size engine size to count
+	 * @param state engine state to count
+	 * @return the number of engines of the supplied size in the supplied state
+	 */
+	public int getEngineCount(EngineSize size, State state) {
+		final Collection<DynamicEngine> engines = engineMaps.get(state).get(size.getName());
+		return engines == null ? 0 : engines.size();
+	}
+
+	/**
+	 * @return the configured engine sizes, ordered by LOC
+	 */
+	public ImmutableSet<EngineSize> getEngineSizes() {
+		return ImmutableSet.copyOf(engineSizes.keySet());
+	}
+
 	public DynamicEngine getEngineByName(String name) {
 		return allNamedEngines.get(name);
 	}
@@ -131,28 +251,40 @@ public class EnginePool {
 		return ImmutableMap.copyOf(allNamedEngines);
 	}
 
-	ImmutableMap<String, Set<DynamicEngine>> getAllEnginesBySize() {
-		return ImmutableMap.copyOf(allSizedEngines);
+	ImmutableMap<String, Collection<DynamicEngine>> getAllEnginesBySize() {
+		return snapshot(allSizedEngines);
 	}
 
-	ImmutableMap<String, Set<DynamicEngine>> getActiveEngines() {
-		return ImmutableMap.copyOf(activeEngines);
+	ImmutableMap<String, Collection<DynamicEngine>> getActiveEngines() {
+		return snapshot(activeEngines);
 	}
 
-	ImmutableMap<String, Set<DynamicEngine>> getIdleEngines() {
-		return ImmutableMap.copyOf(idleEngines);
+	ImmutableMap<String, Collection<DynamicEngine>> getIdleEngines() {
+		return snapshot(idleEngines);
 	}
 
-	ImmutableMap<String, Set<DynamicEngine>> getExpiringEngines() {
-		return ImmutableMap.copyOf(expiringEngines);
+	ImmutableMap<String, Collection<DynamicEngine>> getExpiringEngines() {
+		return snapshot(expiringEngines);
 	}
 
-	ImmutableMap<String, Set<DynamicEngine>> getUnprovisionedEngines() {
-		return ImmutableMap.copyOf(unprovisionedEngines);
+	ImmutableMap<String, Collection<DynamicEngine>> getUnprovisionedEngines() {
+		return snapshot(unprovisionedEngines);
+	}
+	
+	private ImmutableMap<String, Collection<DynamicEngine>> snapshot(Map<String, Collection<DynamicEngine>> engines) {
+		final ImmutableMap.Builder<String, Collection<DynamicEngine>> builder = ImmutableMap.builder();
+		engines.forEach((size, sized) -> builder.put(size, ImmutableList.copyOf(sized)));
+		return builder.build();
 	}
 	
+	/**
+	 * Creates the monitor expiring idle engines, with the engines already IDLE scheduled.
+	 */
 	public IdleEngineMonitor createIdleEngineMonitor(BlockingQueue<DynamicEngine> expiringEngines, int expireBufferMins) {
-		return new IdleEngineMonitor(this, expiringEngines, expireBufferMins);
+		final IdleEngineMonitor monitor = new IdleEngineMonitor(this, expiringEngines, expireBufferMins);
+		idleMonitor = monitor;
+		idleEngines.forEach((size, idle) -> ImmutableList.copyOf(idle).forEach(monitor::schedule));
+		return monitor;
 	}
 
 	/**
@@ -184,6 +316,8 @@ public class EnginePool {
 		allSizedEngines.get(size).remove(curEngine);
         engineSizes.get(engineSize).decrementAndGet();
 		engineMaps.get(curState).get(size).remove(curEngine);
+		occupiedSlots.remove(name);
+		scheduleExpiry(curEngine, State.UNPROVISIONED);
 		
 		addEngine(newEngine);
 		
@@ -191,6 +325,10 @@ public class EnginePool {
 		return curEngine;
 	}
 
+	/**
+	 * Moves the engine between state collections; called by {@link DynamicEngine} 
+	 * once its state has changed.
+	 */
 	public void changeState(DynamicEngine engine, State fromState, State toState) {
 		if (toState.equals(State.ALL)) 
 			throw new IllegalArgumentException("Cannot set Engine state to ALL");
@@ -200,7 +338,14 @@ public class EnginePool {
 		if (fromState.equals(toState)) return;
 		
 		engineMaps.get(fromState).get(size).remove(engine);
-		engineMaps.get(toState).get(size).add(engine);
+		addToState(toState, size, engine);
+		
+		if (State.SCANNING.equals(toState)) {
+			occupiedSlots.put(engine.getName(), 1);
+		} else {
+			occupiedSlots.remove(engine.getName());
+		}
+		scheduleExpiry(engine, toState);
 	}
 	
 	void changeState(DynamicEngine engine, State toState) {
@@ -213,38 +358,230 @@ public class EnginePool {
 
 	public EngineSize calcEngineSize(long loc) {
 		log.trace("calcEngineSize() : loc={}", loc);
+		return sizeClassifier.classify(loc);
+	}
+	
+	/**
+	 * Calculates the scan's engine size once per scan; the size is recalculated 
+	 * only if the scan LOC changes, e.g. once the source is pulled.
+	 * 
+	 * @return the engine size for the scan, or <code>null</code> if no size matches
+	 */
+	public EngineSize calcEngineSize(ScanRequest scan) {
+		final long loc = scan.getLoc();
+		final ClassifiedScan cached = classifiedScans.getIfPresent(scan.getId());
+		if (cached != null && cached.loc == loc) return cached.size;
 		
-		for (EngineSize size : engineSizes.keySet()) {
-			if (size.isMatch(loc)) return size;
-		}
-		return null;
+		final EngineSize size = calcEngineSize(loc);
+		classifiedScans.put(scan.getId(), new ClassifiedScan(loc, size));
+		return size;
 	}
 	
+	/**
+	 * Allocates an engine of the supplied size in <code>fromState</code>.  Engines are only 
+	 * allocated from UNPROVISIONED while the vCPU quota has room for them.
+	 * 
+	 * @return the engine, now in <code>toState</code>, or <code>null</code> if none can be allocated
+	 */
 	public DynamicEngine allocateEngine(EngineSize scanSize, State fromState, State toState) {
+		return allocateEngine(scanSize, fromState, toState, engine -> true);
+	}
+	
+	/**
+	 * Allocates an engine of the supplied size in <code>fromState</code>, as 
+	 * {@link #allocateEngine(EngineSize, State, State)}, skipping engines the filter rejects.
+	 * 
+	 * @param filter engines that may be allocated
+	 * @return the engine, now in <code>toState</code>, or <code>null</code> if none can be allocated
+	 */
+	public DynamicEngine allocateEngine(EngineSize scanSize, State fromState, State toState, 
+			Predicate<DynamicEngine> filter) {
 		log.trace("allocateEngine() : size={}; fromState={}; toState={}", 
 		        scanSize.getName(), fromState, toState);
 		
 		final String size = scanSize.getName();
-		final Map<String, Set<DynamicEngine>> engineMap = engineMaps.get(fromState);
+		if (!State.UNPROVISIONED.equals(fromState) || vcpuQuota <= 0 || getVcpus(size) <= 0) {
+			return allocateEngine(size, fromState, toState, filter);
+		}
+		
+		// engines leaving UNPROVISIONED outside the lock only lower the headroom seen here
+		synchronized (vcpuLock) {
+			final int headroom = getVcpuHeadroom();
+			if (headroom < getVcpus(size)) {
+				final long denied = quotaDeniedCount.incrementAndGet();
+				log.debug("Engine not allocated, vCPU quota reached: size={}; vcpus={}; headroom={}; deniedCount={}", 
+						size, getVcpus(size), headroom, denied);
+				return null;
+			}
+			return allocateEngine(size, fromState, toState, filter);
+		}
+	}
+	
+	private DynamicEngine allocateEngine(String size, State fromState, State toState, 
+			Predicate<DynamicEngine> filter) {
+		final Map<String, Collection<DynamicEngine>> engineMap = engineMaps.get(fromState);
 		if (engineMap == null) return null;
-		final Set<DynamicEngine> engineList = engineMap.get(size);
+		final Collection<DynamicEngine> engineList = engineMap.get(size);
+		if (engineList == null) return null;
 		
-		synchronized(this) {
-			if (engineList == null || engineList.size() == 0) return null;
-			
-			final DynamicEngine engine = Iterables.getFirst(engineList, null);
-			changeState(engine, toState);
-			log.debug("Engine allocated: fromState={}; toState={}; pool={}", fromState, toState, this);
-			return engine;
+		// unprovisioned engines resume from the warmest worthwhile tier first
+		final Collection<DynamicEngine> candidates = State.UNPROVISIONED.equals(fromState) 
+				? rankByWarmTier(size, engineList) : engineList;
+		
+		// engines claimed or in transition by other threads are skipped, never waited on
+		for (DynamicEngine engine : candidates) {
+			if (filter.test(engine) && engine.compareAndSetState(fromState, toState)) {
+				log.debug("Engine allocated: fromState={}; toState={}; engine={}", fromState, toState, engine.getName());
+				return engine;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Lends an IDLE engine of a larger size to a scan, as long as more than 
+	 * <code>idleReserve</code> engines of that size stay IDLE for their own scans.
+	 * 
+	 * @param scanSize engine size of the scan
+	 * @param engineSize larger engine size to borrow from
+	 * @param idleReserve IDLE engines of <code>engineSize</code> that are never lent
+	 * @return the engine, now SCANNING, or <code>null</code> if none can be lent
+	 */
+	public DynamicEngine borrowEngine(EngineSize scanSize, EngineSize engineSize, int idleReserve) {
+		log.trace("borrowEngine() : scanSize={}; engineSize={}; idleReserve={}", 
+				scanSize.getName(), engineSize.getName(), idleReserve);
+		
+		if (engineSize.getMaxLOC() <= scanSize.getMaxLOC()) return null;
+		if (getEngineCount(engineSize, State.IDLE) <= idleReserve) return null;
+		
+		final DynamicEngine engine = allocateEngine(engineSize, State.IDLE, State.SCANNING);
+		if (engine == null) return null;
+		
+		final String key = scanSize.getName() + "->" + engineSize.getName();
+		final long count = borrowCounts.computeIfAbsent(key, k -> new AtomicLong()).incrementAndGet();
+		log.debug("Engine borrowed: scanSize={}; engineSize={}; borrowCount={}; engine={}", 
+				scanSize.getName(), engineSize.getName(), count, engine.getName());
+		return engine;
+	}
+	
+	private Collection<DynamicEngine> rankByWarmTier(String size, Collection<DynamicEngine> engines) {
+		final List<WarmTier> ranks = tierPolicy.rankTiers(size);
+		final List<DynamicEngine> ranked = Lists.newArrayList(engines);
+		ranked.sort((a, b) -> Integer.compare(ranks.indexOf(a.getWarmTier()), ranks.indexOf(b.getWarmTier())));
+		return ranked;
+	}
+	
+	/**
+	 * @return the number of UNPROVISIONED engines of the supplied size kept in the supplied tier
+	 */
+	public int getTierCount(EngineSize size, WarmTier tier) {
+		final Collection<DynamicEngine> engines = unprovisionedEngines.get(size.getName());
+		if (engines == null) return 0;
+		return Math.toIntExact(engines.stream().filter(engine -> tier.equals(engine.getWarmTier())).count());
+	}
+	
+	/**
+	 * Picks the warm tier an expiring engine is kept in once stopped.
+	 * 
+	 * @return the tier, or <code>null</code> if no stopped tiers are configured for the engine's size
+	 */
+	public WarmTier selectWarmTier(DynamicEngine engine) {
+		final EngineSize size = scanSizes.get(engine.getSize());
+		final Map<WarmTier, Integer> targets = poolTiers.get(engine.getSize());
+		if (size == null || targets == null || targets.values().stream().allMatch(target -> target <= 0)) return null;
+		
+		final Map<WarmTier, Integer> counts = Maps.newEnumMap(WarmTier.class);
+		targets.keySet().forEach(tier -> counts.put(tier, getTierCount(size, tier)));
+		final WarmTier tier = tierPolicy.selectTier(size.getName(), targets, counts);
+		log.debug("Warm tier selected: tier={}; targets={}; counts={}; engine={}", tier, targets, counts, engine.getName());
+		return tier;
+	}
+	
+	/**
+	 * Records how long the engine took to launch from the tier it was kept in.
+	 */
+	public void recordResume(DynamicEngine engine, Duration resumeTime) {
+		tierPolicy.recordResume(engine.getSize(), engine.getLaunchTier(), resumeTime);
+	}
+	
+	/**
+	 * @return average resume times in seconds; key=size name and tier, e.g. S:STOPPED
+	 */
+	public ImmutableMap<String, Long> getResumeSeconds() {
+		return tierPolicy.getResumeSeconds();
+	}
+	
+	/**
+	 * @return the number of engines lent to smaller scans; key=scan size name and engine size name, e.g. S->M 
+	 */
+	public ImmutableMap<String, Long> getBorrowCounts() {
+		final ImmutableMap.Builder<String, Long> counts = ImmutableMap.builder();
+		borrowCounts.forEach((key, count) -> counts.put(key, count.get()));
+		return counts.build();
+	}
+	
+	/**
+	 * @return vCPUs per engine of the supplied size; 0 if not counted against the vCPU quota
+	 */
+	public int getVcpus(String size) {
+		return poolVcpus.getOrDefault(size, 0);
+	}
+	
+	/**
+	 * @param vcpuQuota account-wide vCPU limit for engines not UNPROVISIONED, 
+	 * 		e.g. the EC2 running instances vCPU limit; 0 if unlimited
+	 */
+	public void setVcpuQuota(int vcpuQuota) {
+		this.vcpuQuota = vcpuQuota;
+	}
+	
+	public int getVcpuQuota() {
+		return vcpuQuota;
+	}
+	
+	/**
+	 * @return vCPUs of the engines not UNPROVISIONED, i.e. launching, running or expiring
+	 */
+	public int getVcpusInUse() {
+		int used = 0;
+		for (Entry<String, Integer> entry : poolVcpus.entrySet()) {
+			final String size = entry.getKey();
+			// an engine changing state is briefly in neither collection, so count it as in use
+			final int provisioned = allSizedEngines.get(size).size() - unprovisionedEngines.get(size).size();
+			used += entry.getValue() * provisioned;
 		}
+		return used;
+	}
+	
+	/**
+	 * @return vCPUs left under the quota, or {@link Integer#MAX_VALUE} if unlimited
+	 */
+	public int getVcpuHeadroom() {
+		final int quota = vcpuQuota;
+		return quota <= 0 ? Integer.MAX_VALUE : Math.max(0, quota - getVcpusInUse());
+	}
+	
+	/**
+	 * @return the number of UNPROVISIONED engines of the supplied size the vCPU quota has room for
+	 */
+	public int getLaunchableCount(EngineSize size) {
+		final int unprovisioned = getEngineCount(size, State.UNPROVISIONED);
+		final int vcpus = getVcpus(size.getName());
+		if (vcpuQuota <= 0 || vcpus <= 0) return unprovisioned;
+		return Math.min(unprovisioned, getVcpuHeadroom() / vcpus);
+	}
+	
+	/**
+	 * @return the number of engine launches refused by the vCPU quota
+	 */
+	public long getQuotaDeniedCount() {
+		return quotaDeniedCount.get();
 	}
 	
 	public void allocateExistingEngine(DynamicEngine engine) {
         log.trace("allocateExistingEngine() : {}", engine);
-        synchronized(this) {
-            changeState(engine, State.SCANNING);
-            log.debug("Engine allocated: pool={}", this);
-        }
+        changeState(engine, State.SCANNING);
+        log.debug("Engine allocated: engine={}", engine.getName());
 	}
 	
     public List<DynamicEngine> allocateMinIdleEngines() {
@@ -263,28 +600,126 @@ public class EnginePool {
         return engines;
     }
 
+	/**
+	 * @param size engine size
+	 * @return the number of concurrent scans an engine of the supplied size can run
+	 */
+	public int getSlotCapacity(EngineSize size) {
+		final Integer slots = poolSlots.get(size.getName());
+		return slots == null ? 1 : slots;
+	}
+	
+	/**
+	 * @return the number of scans running on the engine; 0 unless the engine is SCANNING
+	 */
+	public int getOccupiedSlots(DynamicEngine engine) {
+		return occupiedSlots.getOrDefault(engine.getName(), 0);
+	}
+	
+	/**
+	 * @return the free scan slots of registered SCANNING engines of the supplied size
+	 */
+	public int getFreeSlots(EngineSize size) {
+		final int capacity = getSlotCapacity(size);
+		if (capacity <= 1) return 0;
+		
+		int free = 0;
+		for (DynamicEngine engine : activeEngines.get(size.getName())) {
+			final int occupied = getOccupiedSlots(engine);
+			if (occupied == 0 || engine.getEngineId() == null) continue;
+			free += Math.max(0, capacity - occupied);
+		}
+		return free;
+	}
+	
+	/**
+	 * Occupies a free scan slot on a registered SCANNING engine.  The fullest engine
+	 * is picked first, so the remaining engines drain and can expire.
+	 * 
+	 * @param scanSize engine size
+	 * @return the engine, or <code>null</code> if no engine has a free slot
+	 */
+	public DynamicEngine allocateSlot(EngineSize scanSize) {
+		log.trace("allocateSlot() : size={}", scanSize.getName());
+		
+		final int capacity = getSlotCapacity(scanSize);
+		if (capacity <= 1) return null;
+		
+		while (true) {
+			DynamicEngine allocated = null;
+			int allocatedSlots = 0;
+			for (DynamicEngine engine : activeEngines.get(scanSize.getName())) {
+				final int occupied = getOccupiedSlots(engine);
+				// engines with no occupied slots are being released, unregistered ones are still launching
+				if (occupied == 0 || occupied >= capacity || engine.getEngineId() == null) continue;
+				if (occupied > allocatedSlots) {
+					allocated = engine;
+					allocatedSlots = occupied;
+				}
+			}
+			if (allocated == null) return null;
+			
+			// retry if another thread changed the engine's slots
+			if (occupiedSlots.replace(allocated.getName(), allocatedSlots, allocatedSlots + 1)) {
+				log.debug("Engine slot allocated: slots={}; capacity={}; engine={}", 
+						allocatedSlots + 1, capacity, allocated.getName());
+				return allocated;
+			}
+		}
+	}
+	
+	/**
+	 * Occupies a scan slot on the supplied SCANNING engine, for scans CxManager assigned
+	 * to the engine itself.
+	 * 
+	 * @return the number of slots now occupied, 0 if the engine is not SCANNING
+	 */
+	public int occupySlot(DynamicEngine engine) {
+		log.trace("occupySlot() : {}", engine);
+		final Integer occupied = occupiedSlots.computeIfPresent(engine.getName(), (name, slots) -> slots + 1);
+		log.debug("Engine slot occupied: slots={}; engine={}", occupied, engine.getName());
+		return occupied == null ? 0 : occupied;
+	}
+	
+	/**
+	 * Frees a scan slot on a SCANNING engine.
+	 * 
+	 * @return the number of slots still occupied; once 0 the engine is no longer offered 
+	 * 			by {@link #allocateSlot(EngineSize)}
+	 */
+	public int releaseSlot(DynamicEngine engine) {
+		log.trace("releaseSlot() : {}", engine);
+		final Integer occupied = occupiedSlots.computeIfPresent(engine.getName(), 
+				(name, slots) -> Math.max(0, slots - 1));
+		log.debug("Engine slot released: slots={}; engine={}", occupied, engine.getName());
+		return occupied == null ? 0 : occupied;
+	}
+
 	public void deallocateEngine(DynamicEngine engine) {
 		log.trace("deallocateEngine() : {}", engine);
-		synchronized(this) {
-			changeState(engine, State.UNPROVISIONED);
-			log.debug("Engine unallocated: pool={}", this);
-		}
+		changeState(engine, State.UNPROVISIONED);
+		log.debug("Engine unallocated: engine={}", engine.getName());
 	}
 	
 	public void idleEngine(DynamicEngine engine) {
 		log.trace("idleEngine() : {}", engine);
-		synchronized(this) {
-			changeState(engine, State.IDLE);
-			log.debug("Engine idled: pool={}", this);
-		}
+		changeState(engine, State.IDLE);
+		log.debug("Engine idled: engine={}", engine.getName());
 	}
 
-	public void expireEngine(DynamicEngine engine) {
+	/**
+	 * Expires an IDLE engine.
+	 * 
+	 * @return false if the engine is no longer IDLE, e.g. was allocated to a scan 
+	 */
+	public boolean expireEngine(DynamicEngine engine) {
 		log.trace("expireEngine() : {}", engine);
-		synchronized(this) {
-			changeState(engine, State.EXPIRING);
-			log.debug("Engine expired: pool={}", this);
+		if (!engine.compareAndSetState(State.IDLE, State.EXPIRING)) {
+			log.debug("Engine not expired, no longer idle: engine={}", engine.getName());
+			return false;
 		}
+		log.debug("Engine expired: engine={}", engine.getName());
+		return true;
 	}
 
 	public void logEngines()	{
@@ -295,15 +730,18 @@ public class EnginePool {
 		engineMaps.get(state).forEach((size,engines)->logEngines(engines));
 	}
 	
-	private void logEngines(Set<DynamicEngine> engines) {
-		engines.forEach(engine->log.debug("{}", engine));
+	private void logEngines(Collection<DynamicEngine> engines) {
+		ImmutableList.copyOf(engines).forEach(engine->log.debug("{}", engine));
 	}
 	
 	@Override
 	public String toString() {
+		// print from a snapshot, engines change state concurrently
+		final List<String> engines = Lists.newArrayList();
+		allSizedEngines.forEach((size,sized)->
+				ImmutableList.copyOf(sized).forEach(engine->engines.add(engine.toString())));
 		final StringBuilder sb = new StringBuilder();
-		allSizedEngines.forEach((size,engines)->
-				engines.forEach(engine->sb.append(String.format("%s; ", engine))));
+		engines.forEach(engine->sb.append(String.format("%s; ", engine)));
 		final StringBuilder sbSizes = new StringBuilder();
 		engineSizes.forEach((scanSize,count)-> {
 		        String size = scanSize.getName();
@@ -312,10 +750,19 @@ public class EnginePool {
 			});
 		return MoreObjects.toStringHelper(this)
 				.add("engineSizes", "[" + sbSizes.toString().replaceAll(", $", "") + "]")
+				.add("borrowCounts", getBorrowCounts())
+				.add("vcpuQuota", vcpuQuota)
+				.add("vcpusInUse", getVcpusInUse())
 				.add("engines", "[" + sb.toString().replaceAll("; $", "") + "]")
 				.toString();
 	}
 	
+	/**
+	 * Expires idle engines at their expiration time, less <code>expireBufferMins</code>.  
+	 * Engines are scheduled on a {@link DelayQueue} whenever they become IDLE and unscheduled 
+	 * when they leave IDLE, so no idle engine is checked until it is due.  An engine due while 
+	 * its size is at the pool minimum is kept idle and scheduled for its next expiration interval.
+	 */
 	public class IdleEngineMonitor implements Runnable {
 		
 		private final Logger log = LoggerFactory.getLogger(EnginePool.IdleEngineMonitor.class);
@@ -323,6 +770,13 @@ public class EnginePool {
 		private final BlockingQueue<DynamicEngine> expiredEnginesQueue;
 		private final int expireBufferMins;
 		private final EnginePool enginePool;
+		
+		private final DelayQueue<EngineExpiry> expiries = new DelayQueue<>();
+		
+		/**
+		 * map of scheduled expiries of IDLE engines; key=engine name
+		 */
+		private final Map<String, EngineExpiry> scheduled = Maps.newConcurrentMap();
 
 		public IdleEngineMonitor(EnginePool enginePool, BlockingQueue<DynamicEngine> expiredEnginesQueue, int expireBufferMins) {
 			this.enginePool = enginePool;
@@ -332,63 +786,118 @@ public class EnginePool {
 
 		@Override
 		public void run() {
-			log.trace("run()");
+			log.info("run(): IdleEngineMonitor starting; expireBufferMins={}; scheduled={}", 
+					expireBufferMins, scheduled.size());
+			
+			int expiredCount = 0;
 			try {
-
-				final AtomicInteger expiredCount = new AtomicInteger(0);
-				final List<DynamicEngine> expiringEngines = Lists.newArrayList();
-				
-				// loop thru IDLE engines looking for expiration
-				idleEngines.forEach((engineSize, engines) -> {
-					final int minEngines = poolMins.get(engineSize);
-					log.debug("Idle engines: size={}; count={0}; minimum={}", engineSize, engines.size(), minEngines);
-					int size = engines.size();
-					for(DynamicEngine engine: engines) {
-                        if (size > minEngines) {
-                            if (checkExpiredEngine(expiredCount, engine)) {
-                                expiringEngines.add(engine);
-                                size--;
-                            }
-                        } else {
-                            log.debug("Leaving min engines idle: engineSize={}; engine={}; minEngines={}; size={}",
-                                    engineSize, engine.getEngineId(), minEngines, size);
-                        }
-                        
+				while (true) {
+					// blocks until the next engine is due
+					final EngineExpiry expiry = expiries.take();
+					try {
+						if (processExpiry(expiry)) expiredCount++;
+					} catch (InterruptedException e) {
+						throw e;
+					} catch (Throwable t) {
+						log.warn("Error occurred while expiring engine; engine={}; cause={}; message={}", 
+								expiry.engine.getName(), t, t.getMessage(), t); 
+						// swallow to avoid killing background thread
 					}
-					log.debug("Expiring engines: size={}; count={}", engineSize, expiredCount.get());
-				});
-				expiringEngines.forEach(engine -> processExpiredEngines(engine));
-			} catch (Throwable t) {
-				log.warn("Error occurred while checking expired engines; cause={}; message={}", 
-						t, t.getMessage(), t); 
-				// swallow for now to avoid killing background thread
+				}
+			} catch (InterruptedException e) {
+				log.info("IdleEngineMonitor interrupted");
+			} finally {
+				log.info("IdleEngineMonitor exiting; expiredCount={}", expiredCount);
 			}
 		}
 		
-		private void processExpiredEngines(DynamicEngine engine) {
-            log.debug("processExpiredEngines(): {}", engine);
-
-            try {
-                enginePool.expireEngine(engine);
-                expiredEnginesQueue.put(engine);
-            } catch (InterruptedException e) {
-                throw new RuntimeException("IdleEngineMonitor interrupted, exiting...");
-            }
-		}
-
-		private boolean checkExpiredEngine(AtomicInteger expiredCount, DynamicEngine engine) {
+		/**
+		 * Schedules the IDLE engine to expire; replaces any expiry already scheduled.
+		 */
+		void schedule(DynamicEngine engine) {
 			final DateTime expireTime = engine.getTimeToExpire();
-			log.trace("Checking idle engine: name={}; expireTime={}", 
-					engine.getName(), expireTime);
+			if (expireTime == null) return;
+			
+			final EngineExpiry expiry = new EngineExpiry(engine, expireTime.minusMinutes(expireBufferMins));
+			final EngineExpiry previous = scheduled.put(engine.getName(), expiry);
+			if (previous != null) expiries.remove(previous);
+			expiries.put(expiry);
+			log.trace("Idle engine scheduled to expire: name={}; expireTime={}", engine.getName(), expireTime);
+		}
+		
+		/**
+		 * Unschedules an engine no longer IDLE.
+		 */
+		void cancel(DynamicEngine engine) {
+			final EngineExpiry previous = scheduled.remove(engine.getName());
+			if (previous != null) expiries.remove(previous);
+		}
+		
+		int getScheduledCount() {
+			return scheduled.size();
+		}
+		
+		private boolean processExpiry(EngineExpiry expiry) throws InterruptedException {
+			final DynamicEngine engine = expiry.engine;
+			log.debug("processExpiry(): {}", engine);
+			
+			// engine was rescheduled or left IDLE since
+			if (!scheduled.remove(engine.getName(), expiry)) return false;
+			
+			final String size = engine.getSize();
+			final int minEngines = poolMins.get(size);
+			final int idleCount = idleEngines.get(size).size();
+			if (idleCount <= minEngines) {
+				log.debug("Leaving min engines idle: engineSize={}; engine={}; minEngines={}; size={}",
+						size, engine.getName(), minEngines, idleCount);
+				if (engine.renewExpiration() != null) schedule(engine);
+				return false;
+			}
+			
+			// engine may have been allocated since it was due
+			if (!enginePool.expireEngine(engine)) return false;
+			expiredEnginesQueue.put(engine);
+			log.debug("Expiring engine: size={}; engine={}; expireTime={}", 
+					size, engine.getName(), engine.getTimeToExpire());
+			return true;
+		}
+	}
+	
+	private static class EngineExpiry implements Delayed {
+		
+		private final DynamicEngine engine;
+		private final DateTime dueTime;
+		
+		EngineExpiry(DynamicEngine engine, DateTime dueTime) {
+			this.engine = engine;
+			this.dueTime = dueTime;
+		}
 
-			if (expireTime == null) return false;
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(dueTime.getMillis() - DateTimeUtils.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
 
-			if (expireTime.minusMinutes(expireBufferMins).isBeforeNow()) {
-				expiredCount.incrementAndGet();
-				return true;
+		@Override
+		public int compareTo(Delayed other) {
+			if (other instanceof EngineExpiry) {
+				return dueTime.compareTo(((EngineExpiry) other).dueTime);
 			}
-			return false;
+			return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+		}
+		
+	}
+	
+	private static class ClassifiedScan {
+		
+		private final long loc;
+		private final EngineSize size;
+		
+		ClassifiedScan(long loc, EngineSize size) {
+			this.loc = loc;
+			this.size = size;
 		}
+		
 	}
 	
 	public static class EnginePoolEntry implements Comparable<EnginePoolEntry> {
@@ -396,6 +905,10 @@ public class EnginePool {
 		private EngineSize scanSize;
 		private int count;
 		private int minimum;
+		private int slots = 1;
+		private int hibernated;
+		private int stopped;
+		private int vcpus;
 		
 		public EnginePoolEntry() {
 			// for Spring
@@ -411,6 +924,11 @@ public class EnginePool {
             this.minimum = minimum;
         }
 
+		public EnginePoolEntry(EngineSize scanSize, int count, int minimum, int slots) {
+			this(scanSize, count, minimum);
+			this.slots = slots;
+		}
+
         public EngineSize getScanSize() {
 			return scanSize;
 		}
@@ -430,6 +948,51 @@ public class EnginePool {
 			this.minimum = minimum;
 		}
 
+		/**
+		 * @return # of scans an engine of this pool runs concurrently; default is 1
+		 */
+		public int getSlots() {
+			return slots;
+		}
+
+		public void setSlots(int slots) {
+			this.slots = slots;
+		}
+
+		/**
+		 * @return # of engines kept hibernated (EC2) or deallocated (Azure) once idle engines expire; default is 0
+		 */
+		public int getHibernated() {
+			return hibernated;
+		}
+
+		public void setHibernated(int hibernated) {
+			this.hibernated = hibernated;
+		}
+
+		/**
+		 * @return # of engines kept stopped, with their disk retained, once idle engines expire; default is 0
+		 */
+		public int getStopped() {
+			return stopped;
+		}
+
+		public void setStopped(int stopped) {
+			this.stopped = stopped;
+		}
+
+		/**
+		 * @return # of vCPUs (cores) of an engine in this pool, counted against the vCPU quota; 
+		 * 		default is 0, not counted
+		 */
+		public int getVcpus() {
+			return vcpus;
+		}
+
+		public void setVcpus(int vcpus) {
+			this.vcpus = vcpus;
+		}
+
 		public void setScanSize(EngineSize scanSize) {
 			this.scanSize = scanSize;
 		}
@@ -440,7 +1003,7 @@ public class EnginePool {
 
 		@Override
 		public int hashCode() {
-			return Objects.hashCode(minimum, count, scanSize);
+			return Objects.hashCode(minimum, count, slots, hibernated, stopped, vcpus, scanSize);
 		}
 
 		@Override
@@ -451,6 +1014,10 @@ public class EnginePool {
 			final EnginePoolEntry other = (EnginePoolEntry) obj;
 			return Objects.equal(count, other.count)
 				&& Objects.equal(minimum, other.minimum)
+				&& Objects.equal(slots, other.slots)
+				&& Objects.equal(hibernated, other.hibernated)
+				&& Objects.equal(stopped, other.stopped)
+				&& Objects.equal(vcpus, other.vcpus)
 				&& Objects.equal(scanSize, other.scanSize);
 		}
 
@@ -465,6 +1032,10 @@ public class EnginePool {
 					.add("scanSize", scanSize)
 					.add("count", count)
 					.add("minimum", minimum)
+					.add("slots", slots)
+					.add("hibernated", hibernated)
+					.add("stopped", stopped)
+					.add("vcpus", vcpus)
 					.toString();
 		}
 
@@ -51,6 +51,7 @@ public class EnginePoolConfig {
 	
 	private int engineExpireIntervalSecs = Math.toIntExact(TimeUnit.MINUTES.toSeconds(60));
 	private String enginePrefix = "cx-engine";
+	private int vcpuQuota;
 
 	public int getEngineExpireIntervalSecs() {
 		return engineExpireIntervalSecs;
@@ -72,6 +73,19 @@ public class EnginePoolConfig {
 		this.enginePrefix = enginePrefix;
 	}
 
+	/**
+	 * @return account-wide vCPU (core) limit for running engines of all sizes, e.g. 
+	 * 		the EC2 running instances vCPU limit or Azure regional core quota; 
+	 * 		engines are launched only while under the limit.  Default value is 0, unlimited.
+	 */
+	public int getVcpuQuota() {
+		return vcpuQuota;
+	}
+
+	public void setVcpuQuota(int vcpuQuota) {
+		this.vcpuQuota = vcpuQuota;
+	}
+
 	public List<EnginePoolEntry> getPool() {
 		return pool;
 	}
@@ -84,6 +98,18 @@ public class EnginePoolConfig {
 	            throw new IllegalArgumentException(
 	                    "Invalid engine pool config: Min engine count must be less than total engine count");
 	        }
+	        if (poolEntry.getMinimum() + poolEntry.getHibernated() + poolEntry.getStopped() > poolEntry.getCount()) {
+	            throw new IllegalArgumentException(
+	                    "Invalid engine pool config: Min, hibernated and stopped engine counts must not exceed total engine count");
+	        }
+	        if (poolEntry.getSlots() < 1) {
+	            throw new IllegalArgumentException(
+	                    "Invalid engine pool config: Engine slots must be at least 1");
+	        }
+	        if (poolEntry.getVcpus() < 0 || poolEntry.getVcpus() > vcpuQuota && vcpuQuota > 0) {
+	            throw new IllegalArgumentException(
+	                    "Invalid engine pool config: Engine vCPUs must be between 0 and the vCPU quota");
+	        }
 	        //check loc range
 	        final EngineSize scanSize = poolEntry.getScanSize();
 	        if (scanSize.getMinLOC() > scanSize.getMaxLOC()) {
@@ -101,8 +127,8 @@ public class EnginePoolConfig {
 	private String printEnginePool() {
 		final StringBuilder sb = new StringBuilder();
 		pool.forEach((entry) -> {
-			sb.append(String.format("%s:%d:%d, ", 
-					entry.getScanSize().getName(), entry.getMinimum(), entry.getCount()));
+			sb.append(String.format("%s:%d:%d:%d, ", 
+					entry.getScanSize().getName(), entry.getMinimum(), entry.getCount(), entry.getSlots()));
 		});
 		return sb.toString().replaceAll(", $", ""); 
 	}
@@ -111,6 +137,7 @@ public class EnginePoolConfig {
 		return MoreObjects.toStringHelper(this)
 				.add("engineExpireIntervalSecs", engineExpireIntervalSecs)
 				.add("enginePrefix", getEnginePrefix())
+				.add("vcpuQuota", vcpuQuota)
 				.add("enginePool", "[" + printEnginePool() + "]")
 				.toString();
 	}
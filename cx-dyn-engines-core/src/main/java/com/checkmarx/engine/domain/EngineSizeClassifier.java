@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.domain;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Classifies scan LOC into an {@link EngineSize} by binary search over the sorted size ranges.
+ * Built once from the configured, non-overlapping sizes; immutable and thread safe.
+ */
+class EngineSizeClassifier {
+	
+	private final EngineSize[] sizes;
+	private final long[] minLocs;
+	
+	EngineSizeClassifier(Collection<EngineSize> engineSizes) {
+		final List<EngineSize> sorted = Lists.newArrayList(engineSizes);
+		sorted.sort(new EngineSize.SortBySize());
+		sizes = sorted.toArray(new EngineSize[0]);
+		minLocs = new long[sizes.length];
+		for (int i = 0; i < sizes.length; i++) {
+			minLocs[i] = sizes[i].getMinLOC();
+		}
+	}
+	
+	/**
+	 * @return the engine size for the LOC, or <code>null</code> if no size matches
+	 */
+	EngineSize classify(long loc) {
+		int index = Arrays.binarySearch(minLocs, loc);
+		// not found: index of the last size starting below loc
+		if (index < 0) index = -index - 2;
+		if (index < 0) return null;
+		
+		// sizes may share a boundary LOC, the smaller size wins
+		if (index > 0 && sizes[index - 1].isMatch(loc)) return sizes[index - 1];
+		return sizes[index].isMatch(loc) ? sizes[index] : null;
+	}
+
+}
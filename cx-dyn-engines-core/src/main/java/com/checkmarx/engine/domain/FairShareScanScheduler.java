@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.domain;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.checkmarx.engine.rest.model.ScanRequest;
+import com.checkmarx.engine.utils.ScanUtils;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Holds scans waiting for an engine and picks the next scan to dispatch using weighted fair 
+ * share between teams.
+ * <br/><br/>
+ * Each team has a virtual time that advances by <code>1/weight</code> for every scan dispatched;
+ * the waiting team with the lowest virtual time goes next, so a burst from one team cannot 
+ * starve the others.  A team that had nothing waiting restarts at the current virtual clock 
+ * rather than banking credit.  Within a team, incremental scans go first, then CxSAST queue 
+ * order.  Scans without a team are shared by project.
+ */
+public class FairShareScanScheduler {
+
+	private static final Logger log = LoggerFactory.getLogger(FairShareScanScheduler.class);
+
+	private static final Comparator<ScanRequest> SCAN_ORDER = 
+			Comparator.comparing((ScanRequest scan) -> !scan.isIncremental()).thenComparing(ScanUtils.QUEUE_ORDER);
+
+	/**
+	 * map of team weights; key=team id
+	 */
+	private final Map<String, Integer> weights;
+
+	/**
+	 * map of waiting scans by engine size, then by team 
+	 */
+	private final Map<EngineSize, Map<String, List<ScanRequest>>> waiting = Maps.newHashMap();
+
+	/**
+	 * map of team virtual times; key=team.  Teams with nothing waiting are dropped once 
+	 * the virtual clock reaches them, as they would restart at the clock anyway.
+	 */
+	private final Map<String, Double> virtualTimes = Maps.newHashMap();
+
+	/**
+	 * virtual time of the last dispatched team
+	 */
+	private double virtualClock = 0;
+
+	/**
+	 * @param weights share weights by team id; teams not listed have weight 1
+	 */
+	public FairShareScanScheduler(Map<String, Integer> weights) {
+		weights.forEach((team, weight) -> {
+			if (weight == null || weight < 1)
+				throw new IllegalArgumentException("Team weight must be at least 1; team=" + team);
+		});
+		this.weights = ImmutableMap.copyOf(weights);
+	}
+
+	/**
+	 * Adds a scan waiting for an engine of the given size.
+	 */
+	public synchronized void add(EngineSize size, ScanRequest scan) {
+		final String team = teamOf(scan);
+		if (!isWaiting(team)) {
+			virtualTimes.put(team, Math.max(virtualClock, virtualTimes.getOrDefault(team, 0.0)));
+		}
+		waiting.computeIfAbsent(size, key -> Maps.newHashMap())
+				.computeIfAbsent(team, key -> Lists.newArrayList())
+				.add(scan);
+		log.debug("Scan waiting: size={}; team={}; virtualTime={}; scanId={}", 
+				size.getName(), team, virtualTimes.get(team), scan.getId());
+	}
+
+	/**
+	 * Removes a waiting scan, e.g. when cancelled.
+	 * 
+	 * @return true if the scan was waiting
+	 */
+	public synchronized boolean remove(EngineSize size, ScanRequest scan) {
+		final Map<String, List<ScanRequest>> teams = waiting.get(size);
+		if (teams == null) return false;
+		
+		final String team = teamOf(scan);
+		final List<ScanRequest> scans = teams.get(team);
+		if (scans == null || !scans.remove(scan)) return false;
+		
+		if (scans.isEmpty()) teams.remove(team);
+		pruneIdleTeams();
+		return true;
+	}
+
+	/**
+	 * Removes the next scan to dispatch for the given size.
+	 * 
+	 * @return the scan, or <code>null</code> if none waiting
+	 */
+	public synchronized ScanRequest poll(EngineSize size) {
+		final Map<String, List<ScanRequest>> teams = waiting.get(size);
+		if (teams == null || teams.isEmpty()) return null;
+		
+		String next = null;
+		ScanRequest nextScan = null;
+		for (Map.Entry<String, List<ScanRequest>> entry : teams.entrySet()) {
+			final String team = entry.getKey();
+			final ScanRequest head = entry.getValue().stream().min(SCAN_ORDER).get();
+			if (next == null || isBefore(team, head, next, nextScan)) {
+				next = team;
+				nextScan = head;
+			}
+		}
+		
+		final List<ScanRequest> scans = teams.get(next);
+		scans.remove(nextScan);
+		if (scans.isEmpty()) teams.remove(next);
+		
+		final double start = virtualTimes.get(next);
+		virtualClock = Math.max(virtualClock, start);
+		virtualTimes.put(next, start + 1.0 / weightOf(next));
+		pruneIdleTeams();
+		log.debug("Scan dispatched: size={}; team={}; virtualTime={}; scanId={}", 
+				size.getName(), next, start, nextScan.getId());
+		return nextScan;
+	}
+
+	/**
+	 * @return true if scans of the given size are waiting
+	 */
+	public synchronized boolean hasWaiting(EngineSize size) {
+		final Map<String, List<ScanRequest>> teams = waiting.get(size);
+		return teams != null && !teams.isEmpty();
+	}
+
+	/**
+	 * @return the engine sizes with waiting scans
+	 */
+	public synchronized Set<EngineSize> getWaitingSizes() {
+		final ImmutableSet.Builder<EngineSize> sizes = ImmutableSet.builder();
+		waiting.forEach((size, teams) -> {
+			if (!teams.isEmpty()) sizes.add(size);
+		});
+		return sizes.build();
+	}
+
+	/**
+	 * Used for test purposes only
+	 * 
+	 * @return the number of teams with a virtual time
+	 */
+	synchronized int getTeamCount() {
+		return virtualTimes.size();
+	}
+
+	private void pruneIdleTeams() {
+		virtualTimes.entrySet().removeIf(entry -> 
+				entry.getValue() <= virtualClock && !isWaiting(entry.getKey()));
+	}
+
+	private boolean isBefore(String team, ScanRequest scan, String other, ScanRequest otherScan) {
+		final int byTime = Double.compare(virtualTimes.get(team), virtualTimes.get(other));
+		if (byTime != 0) return byTime < 0;
+		return SCAN_ORDER.compare(scan, otherScan) < 0;
+	}
+
+	private boolean isWaiting(String team) {
+		return waiting.values().stream().anyMatch(teams -> teams.containsKey(team));
+	}
+
+	private int weightOf(String team) {
+		return weights.getOrDefault(team, 1);
+	}
+
+	static String teamOf(ScanRequest scan) {
+		if (!Strings.isNullOrEmpty(scan.getTeamId())) return scan.getTeamId();
+		return "project:" + (scan.getProject() == null ? 0 : scan.getProject().getId());
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("weights", weights)
+				.add("virtualClock", virtualClock)
+				.add("virtualTimes", virtualTimes)
+				.toString();
+	}
+
+}
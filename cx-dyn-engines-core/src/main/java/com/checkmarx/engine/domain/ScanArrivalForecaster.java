@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.domain;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Maps;
+
+/**
+ * Learns scan queue arrival rates by engine size and forecasts near term demand.
+ * <br/><br/>
+ * Arrivals are counted in hour-of-week buckets (day-of-week x hour-of-day).  When
+ * an hour completes, its count is folded into an exponentially weighted average
+ * for that bucket, so the forecast follows weekly patterns like the morning burst.
+ */
+public class ScanArrivalForecaster {
+
+	private static final Logger log = LoggerFactory.getLogger(ScanArrivalForecaster.class);
+
+	static final int BUCKET_COUNT = 7 * 24;
+
+	private final double smoothingFactor;
+
+	/**
+	 * map of average arrivals per hour-of-week bucket; key=size name
+	 */
+	private final Map<String, double[]> arrivalRates = Maps.newHashMap();
+
+	/**
+	 * map of samples folded into each hour-of-week bucket; key=size name
+	 */
+	private final Map<String, int[]> sampleCounts = Maps.newHashMap();
+
+	/**
+	 * map of arrivals counted in the current bucket; key=size name
+	 */
+	private final Map<String, Integer> currentCounts = Maps.newHashMap();
+
+	/**
+	 * start of the hour currently being counted, <code>null</code> until the first sample
+	 */
+	private DateTime currentHour;
+
+	/**
+	 * @param sizes engine size names to track
+	 * @param smoothingFactor weight (0..1] given to the most recent week
+	 */
+	public ScanArrivalForecaster(Collection<String> sizes, double smoothingFactor) {
+		if (smoothingFactor <= 0 || smoothingFactor > 1)
+			throw new IllegalArgumentException("Forecast smoothing factor must be in range (0..1]");
+
+		this.smoothingFactor = smoothingFactor;
+		sizes.forEach(size -> {
+			arrivalRates.put(size, new double[BUCKET_COUNT]);
+			sampleCounts.put(size, new int[BUCKET_COUNT]);
+			currentCounts.put(size, 0);
+		});
+	}
+
+	/**
+	 * Records a scan arriving in the queue.
+	 *
+	 * @param size name of the engine size the scan requires
+	 * @param time the scan arrived
+	 */
+	public synchronized void recordArrival(String size, DateTime time) {
+		log.trace("recordArrival(): size={}; time={}", size, time);
+
+		if (!currentCounts.containsKey(size)) return;
+
+		rollBucket(time);
+		currentCounts.put(size, currentCounts.get(size) + 1);
+	}
+
+	/**
+	 * Forecasts the number of scan arrivals expected in a time window.
+	 *
+	 * @param size name of the engine size
+	 * @param from start of the forecast window
+	 * @param lookaheadMins length of the forecast window
+	 * @return expected arrivals, <code>0</code> if no history exists
+	 */
+	public synchronized double forecast(String size, DateTime from, int lookaheadMins) {
+		log.trace("forecast(): size={}; from={}; lookahead={}m", size, from, lookaheadMins);
+
+		final double[] rates = arrivalRates.get(size);
+		if (rates == null) return 0;
+
+		rollBucket(from);
+
+		double expected = 0;
+		DateTime start = from;
+		final DateTime end = from.plusMinutes(lookaheadMins);
+		while (start.isBefore(end)) {
+			final DateTime bucketEnd = start.hourOfDay().roundFloorCopy().plusHours(1);
+			final DateTime sliceEnd = bucketEnd.isBefore(end) ? bucketEnd : end;
+			final long sliceMillis = sliceEnd.getMillis() - start.getMillis();
+			expected += rates[bucketOf(start)] * sliceMillis / DateTimeConstants.MILLIS_PER_HOUR;
+			start = sliceEnd;
+		}
+		return expected;
+	}
+
+	static int bucketOf(DateTime time) {
+		return (time.getDayOfWeek() - 1) * 24 + time.getHourOfDay();
+	}
+
+	/**
+	 * Folds the current bucket counts into the averages when the hour changes.
+	 * Hours with no activity while the service was down are not sampled.
+	 */
+	private void rollBucket(DateTime time) {
+		final DateTime hour = time.hourOfDay().roundFloorCopy();
+		if (hour.equals(currentHour)) return;
+
+		if (currentHour != null) {
+			final int completed = bucketOf(currentHour);
+			currentCounts.forEach((size, count) -> foldCount(size, completed, count));
+			currentCounts.replaceAll((size, count) -> 0);
+		}
+		currentHour = hour;
+	}
+
+	private void foldCount(String size, int bucket, int count) {
+		final double[] rates = arrivalRates.get(size);
+		final int[] samples = sampleCounts.get(size);
+
+		rates[bucket] = samples[bucket] == 0 ? count
+				: smoothingFactor * count + (1 - smoothingFactor) * rates[bucket];
+		samples[bucket]++;
+		log.debug("Arrival rate updated: size={}; bucket={}; count={}; rate={}",
+				size, bucket, count, rates[bucket]);
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("smoothingFactor", smoothingFactor)
+				.add("sizes", arrivalRates.keySet())
+				.add("currentHour", currentHour)
+				.toString();
+	}
+
+}
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.domain;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.checkmarx.engine.rest.model.ScanRequest;
+import com.google.common.base.MoreObjects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+
+/**
+ * Learns how long scans take on an engine, by project, so scans can be placed by their 
+ * predicted duration before they start.
+ * <br/><br/>
+ * Each finished scan updates an exponentially weighted average for its project and scan 
+ * type (full or incremental): engine time per LOC for full scans, engine time for incremental 
+ * scans, since their cost follows the change set rather than the project LOC.  Projects 
+ * without history fall back to the average of their engine size and scan type.  The project 
+ * history is bounded, least recently used projects are dropped.
+ */
+public class ScanDurationModel {
+
+	private static final Logger log = LoggerFactory.getLogger(ScanDurationModel.class);
+
+	public static final double DEFAULT_SMOOTHING_FACTOR = 0.3;
+	public static final int DEFAULT_MAX_PROJECTS = 10000;
+
+	private final double smoothingFactor;
+
+	/**
+	 * cache of project scan durations; key=Project.Id and scan type
+	 */
+	private final Cache<String, Estimate> projectEstimates;
+
+	/**
+	 * map of scan durations by engine size; key=size name and scan type
+	 */
+	private final Map<String, Estimate> sizeEstimates = Maps.newHashMap();
+
+	/**
+	 * @param maxProjects maximum number of projects to keep history for
+	 * @param smoothingFactor weight (0..1] given to the most recent scan
+	 */
+	public ScanDurationModel(int maxProjects, double smoothingFactor) {
+		if (smoothingFactor <= 0 || smoothingFactor > 1)
+			throw new IllegalArgumentException("Scan duration smoothing factor must be in range (0..1]");
+
+		this.smoothingFactor = smoothingFactor;
+		this.projectEstimates = CacheBuilder.newBuilder()
+				.maximumSize(maxProjects)
+				.expireAfterAccess(30, TimeUnit.DAYS)
+				.build();
+	}
+
+	/**
+	 * Records the engine time of a finished scan.
+	 *
+	 * @param scan finished scan
+	 * @param size name of the engine size the scan ran on
+	 * @param engineTime the scan spent on the engine
+	 */
+	public synchronized void recordScan(ScanRequest scan, String size, Duration engineTime) {
+		final long millis = engineTime.getMillis();
+		if (millis <= 0) return;
+		
+		final long loc = scan.getLoc() == null ? 0 : scan.getLoc();
+		final String projectKey = projectKey(scan);
+		Estimate project = projectEstimates.getIfPresent(projectKey);
+		if (project == null) {
+			project = new Estimate();
+			projectEstimates.put(projectKey, project);
+		}
+		project.update(millis, loc, smoothingFactor);
+		
+		if (size != null) {
+			sizeEstimates.computeIfAbsent(sizeKey(size, scan), key -> new Estimate())
+					.update(millis, loc, smoothingFactor);
+		}
+		log.debug("Scan duration recorded: scanId={}; project={}; size={}; engineTime={}s; loc={}", 
+				scan.getId(), projectKey, size, engineTime.getStandardSeconds(), loc);
+	}
+
+	/**
+	 * Predicts the engine time of a scan.
+	 *
+	 * @param scan scan to predict
+	 * @param size name of the engine size the scan requires
+	 * @return predicted engine time, or <code>null</code> if no history exists
+	 */
+	public synchronized Duration predict(ScanRequest scan, String size) {
+		Estimate estimate = projectEstimates.getIfPresent(projectKey(scan));
+		if (estimate == null && size != null) {
+			estimate = sizeEstimates.get(sizeKey(size, scan));
+		}
+		if (estimate == null) return null;
+		
+		final long loc = scan.getLoc() == null ? 0 : scan.getLoc();
+		return new Duration(estimate.predict(loc, scan.isIncremental()));
+	}
+
+	private String projectKey(ScanRequest scan) {
+		final long projectId = scan.getProject() == null ? 0 : scan.getProject().getId();
+		return projectId + (scan.isIncremental() ? ":inc" : ":full");
+	}
+
+	private String sizeKey(String size, ScanRequest scan) {
+		return size + (scan.isIncremental() ? ":inc" : ":full");
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("smoothingFactor", smoothingFactor)
+				.add("projectCount", projectEstimates.size())
+				.add("sizes", sizeEstimates.keySet())
+				.toString();
+	}
+
+	private static class Estimate {
+
+		private double millis;
+		private double millisPerLoc;
+		private int samples;
+
+		void update(long millis, long loc, double smoothingFactor) {
+			final double perLoc = loc > 0 ? (double) millis / loc : 0;
+			if (samples == 0) {
+				this.millis = millis;
+				this.millisPerLoc = perLoc;
+			} else {
+				this.millis = smoothingFactor * millis + (1 - smoothingFactor) * this.millis;
+				if (loc > 0) {
+					this.millisPerLoc = this.millisPerLoc == 0 ? perLoc
+							: smoothingFactor * perLoc + (1 - smoothingFactor) * this.millisPerLoc;
+				}
+			}
+			samples++;
+		}
+
+		long predict(long loc, boolean incremental) {
+			if (incremental || loc <= 0 || millisPerLoc == 0) return Math.round(millis);
+			return Math.round(millisPerLoc * loc);
+		}
+
+	}
+
+}
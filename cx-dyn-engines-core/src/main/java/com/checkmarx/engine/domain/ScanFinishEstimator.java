@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.domain;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.checkmarx.engine.rest.model.ScanRequest;
+import com.checkmarx.engine.rest.model.ScanRequest.ScanStatus;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+
+/**
+ * Predicts when working scans will finish and learns how long a cold engine launch takes.
+ * <br/><br/>
+ * Remaining scan time is extrapolated from the progress reported by each scan queue poll:
+ * the time since <code>engineStartedOn</code> is scaled by the percentage still to go.  
+ * <code>totalPercent</code> is used when reported, otherwise <code>stagePercent</code>.
+ * Launch (boot) times are kept as an exponentially weighted average by engine size, 
+ * along with the most recent launch times for percentile estimates.
+ */
+public class ScanFinishEstimator {
+
+	private static final Logger log = LoggerFactory.getLogger(ScanFinishEstimator.class);
+
+	public static final double DEFAULT_SMOOTHING_FACTOR = 0.3;
+
+	/**
+	 * number of recent launch times kept per engine size
+	 */
+	public static final int LAUNCH_SAMPLE_SIZE = 50;
+
+	/**
+	 * launch times needed before a percentile is estimated
+	 */
+	public static final int MIN_LAUNCH_SAMPLES = 5;
+
+	private final double smoothingFactor;
+
+	/**
+	 * map of last progress sample of working scans; key=Scan.Id
+	 */
+	private final Map<Long, Progress> progress = Maps.newHashMap();
+
+	/**
+	 * map of average engine launch time in millis; key=size name
+	 */
+	private final Map<String, Double> launchMillis = Maps.newHashMap();
+
+	/**
+	 * map of recent engine launch times in millis, oldest first; key=size name
+	 */
+	private final Map<String, Deque<Long>> launchSamples = Maps.newHashMap();
+
+	/**
+	 * @param smoothingFactor weight (0..1] given to the most recent launch time
+	 */
+	public ScanFinishEstimator(double smoothingFactor) {
+		if (smoothingFactor <= 0 || smoothingFactor > 1)
+			throw new IllegalArgumentException("Launch time smoothing factor must be in range (0..1]");
+
+		this.smoothingFactor = smoothingFactor;
+	}
+
+	/**
+	 * Records the progress of a scan from a scan queue poll.  Scans no longer 
+	 * scanning are forgotten.
+	 *
+	 * @param scan polled scan
+	 * @param time the scan was polled
+	 */
+	public synchronized void recordProgress(ScanRequest scan, DateTime time) {
+		final long scanId = scan.getId();
+		if (!ScanStatus.Scanning.equals(scan.getStatus())) {
+			progress.remove(scanId);
+			return;
+		}
+
+		final int percent = calcPercent(scan);
+		final DateTime startedOn = scan.getEngineStartedOn();
+		if (percent <= 0 || startedOn == null) return;
+
+		log.trace("recordProgress(): scanId={}; percent={}", scanId, percent);
+		progress.put(scanId, new Progress(startedOn, time, percent));
+	}
+
+	/**
+	 * Forgets scans not in the given set, e.g. after a full scan queue poll.
+	 */
+	public synchronized void retainScans(Collection<Long> scanIds) {
+		progress.keySet().retainAll(scanIds);
+	}
+
+	/**
+	 * Estimates the time a working scan needs to finish.
+	 *
+	 * @param scanId Scan.Id
+	 * @param now time to estimate from
+	 * @return remaining time, or <code>null</code> if no progress has been reported
+	 */
+	public synchronized Duration estimateRemaining(long scanId, DateTime now) {
+		final Progress sample = progress.get(scanId);
+		if (sample == null) return null;
+
+		final long elapsed = sample.polledOn.getMillis() - sample.startedOn.getMillis();
+		final long remaining = Math.max(0, elapsed) * (100 - sample.percent) / sample.percent;
+		final long sincePoll = now.getMillis() - sample.polledOn.getMillis();
+		return new Duration(Math.max(0, remaining - Math.max(0, sincePoll)));
+	}
+
+	/**
+	 * Records how long an engine took to launch and become ready.
+	 *
+	 * @param size name of the engine size
+	 * @param launchTime the launch took
+	 */
+	public synchronized void recordLaunch(String size, Duration launchTime) {
+		final long millis = launchTime.getMillis();
+		final Double average = launchMillis.get(size);
+		final double updated = average == null ? millis 
+				: smoothingFactor * millis + (1 - smoothingFactor) * average;
+		launchMillis.put(size, updated);
+		
+		final Deque<Long> samples = launchSamples.computeIfAbsent(size, key -> Queues.newArrayDeque());
+		if (samples.size() >= LAUNCH_SAMPLE_SIZE) samples.removeFirst();
+		samples.addLast(millis);
+		log.debug("Engine launch time updated: size={}; launchTime={}ms; average={}ms", size, millis, Math.round(updated));
+	}
+
+	/**
+	 * @param size name of the engine size
+	 * @return average launch time, or <code>null</code> if no engine of the size was launched
+	 */
+	public synchronized Duration getLaunchTime(String size) {
+		final Double average = launchMillis.get(size);
+		return average == null ? null : new Duration(Math.round(average));
+	}
+
+	/**
+	 * Estimates a percentile of the recent launch times, using the nearest-rank method.
+	 *
+	 * @param size name of the engine size
+	 * @param percentile of launch times, in range (0..100]
+	 * @return the launch time, or <code>null</code> if fewer than 
+	 * 			{@value #MIN_LAUNCH_SAMPLES} engines of the size were launched
+	 */
+	public synchronized Duration getLaunchTime(String size, int percentile) {
+		if (percentile <= 0 || percentile > 100)
+			throw new IllegalArgumentException("Launch time percentile must be in range (0..100]");
+		
+		final Deque<Long> samples = launchSamples.get(size);
+		if (samples == null || samples.size() < MIN_LAUNCH_SAMPLES) return null;
+		
+		final long[] sorted = samples.stream().mapToLong(Long::longValue).toArray();
+		Arrays.sort(sorted);
+		final int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+		return new Duration(sorted[Math.max(rank, 1) - 1]);
+	}
+
+	static int calcPercent(ScanRequest scan) {
+		final Integer total = scan.getTotalPercent();
+		final Integer stage = scan.getStagePercent();
+		final Integer percent = total != null && total > 0 ? total : stage;
+		return percent == null ? 0 : Math.min(percent, 100);
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("smoothingFactor", smoothingFactor)
+				.add("scanCount", progress.size())
+				.add("launchMillis", launchMillis)
+				.toString();
+	}
+
+	private static class Progress {
+
+		private final DateTime startedOn;
+		private final DateTime polledOn;
+		private final int percent;
+
+		Progress(DateTime startedOn, DateTime polledOn, int percent) {
+			this.startedOn = startedOn;
+			this.polledOn = polledOn;
+			this.percent = percent;
+		}
+
+	}
+
+}
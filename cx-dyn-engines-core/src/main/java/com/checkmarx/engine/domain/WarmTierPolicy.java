@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.domain;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.checkmarx.engine.domain.DynamicEngine.WarmTier;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Decides which warm tier an expiring engine is kept in, from the resume times measured per 
+ * engine size and tier.
+ * <br/><br/>
+ * An engine is demoted to the warmest tier below its target count, skipping tiers that do not 
+ * resume faster than every colder tier measured so far; tiers not yet measured are assumed 
+ * worthwhile.  Engines are launched (promoted) from the warmest worthwhile tier first.
+ */
+public class WarmTierPolicy {
+
+	private static final Logger log = LoggerFactory.getLogger(WarmTierPolicy.class);
+
+	public static final double DEFAULT_SMOOTHING_FACTOR = 0.3;
+
+	private final double smoothingFactor;
+
+	/**
+	 * map of average resume time in millis; key=size name, then tier
+	 */
+	private final Map<String, Map<WarmTier, Double>> resumeMillis = Maps.newHashMap();
+
+	/**
+	 * @param smoothingFactor weight (0..1] given to the most recent resume time
+	 */
+	public WarmTierPolicy(double smoothingFactor) {
+		if (smoothingFactor <= 0 || smoothingFactor > 1)
+			throw new IllegalArgumentException("Resume time smoothing factor must be in range (0..1]");
+
+		this.smoothingFactor = smoothingFactor;
+	}
+
+	/**
+	 * Records the time an engine took to launch from a tier.
+	 *
+	 * @param size name of the engine size
+	 * @param tier the engine was launched from
+	 * @param resumeTime from launch request until the engine responded
+	 */
+	public synchronized void recordResume(String size, WarmTier tier, Duration resumeTime) {
+		if (tier == null || WarmTier.RUNNING.equals(tier)) return;
+		
+		final Map<WarmTier, Double> tiers = resumeMillis.computeIfAbsent(size, s -> Maps.newEnumMap(WarmTier.class));
+		final long millis = resumeTime.getMillis();
+		final Double average = tiers.get(tier);
+		final double updated = average == null ? millis 
+				: smoothingFactor * millis + (1 - smoothingFactor) * average;
+		tiers.put(tier, updated);
+		log.debug("Engine resume time updated: size={}; tier={}; resumeTime={}ms; average={}ms", 
+				size, tier, millis, Math.round(updated));
+	}
+
+	/**
+	 * @return average resume time, or <code>null</code> if no engine of the size was launched from the tier
+	 */
+	public synchronized Duration getResumeTime(String size, WarmTier tier) {
+		if (WarmTier.RUNNING.equals(tier)) return Duration.ZERO;
+		
+		final Map<WarmTier, Double> tiers = resumeMillis.get(size);
+		final Double average = tiers == null ? null : tiers.get(tier);
+		return average == null ? null : new Duration(Math.round(average));
+	}
+
+	/**
+	 * A tier is worthwhile when it resumes faster than every colder tier measured so far; 
+	 * TERMINATED always is.
+	 */
+	public synchronized boolean isWorthwhile(String size, WarmTier tier) {
+		final Duration resumeTime = getResumeTime(size, tier);
+		if (resumeTime == null) return true;
+		
+		for (WarmTier colder : WarmTier.values()) {
+			if (colder.compareTo(tier) <= 0) continue;
+			final Duration colderTime = getResumeTime(size, colder);
+			if (colderTime != null && !resumeTime.isShorterThan(colderTime)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Picks the tier for an engine leaving the running tier: the warmest worthwhile stopped tier 
+	 * whose engine count is below its target, else TERMINATED.
+	 *
+	 * @param size name of the engine size
+	 * @param targets engine count to keep in each tier
+	 * @param counts engines currently in each tier
+	 * @return the tier
+	 */
+	public synchronized WarmTier selectTier(String size, Map<WarmTier, Integer> targets, Map<WarmTier, Integer> counts) {
+		for (WarmTier tier : new WarmTier[] { WarmTier.HIBERNATED, WarmTier.STOPPED }) {
+			final int target = targets.getOrDefault(tier, 0);
+			final int count = counts.getOrDefault(tier, 0);
+			if (count < target && isWorthwhile(size, tier)) return tier;
+		}
+		return WarmTier.TERMINATED;
+	}
+
+	/**
+	 * @return the order engines of the size are launched from: worthwhile tiers warmest first, then the rest
+	 */
+	public synchronized List<WarmTier> rankTiers(String size) {
+		final Comparator<WarmTier> worthwhileFirst = Comparator.comparing((WarmTier tier) -> !isWorthwhile(size, tier));
+		return Stream.of(WarmTier.values())
+				.sorted(worthwhileFirst.thenComparing(Comparator.naturalOrder()))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * @return average resume times in seconds; key=size name and tier, e.g. "S:STOPPED"
+	 */
+	public synchronized ImmutableMap<String, Long> getResumeSeconds() {
+		final ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+		resumeMillis.forEach((size, tiers) -> tiers.forEach((tier, millis) -> 
+				builder.put(size + ":" + tier, Math.round(millis / 1000))));
+		return builder.build();
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("smoothingFactor", smoothingFactor)
+				.add("resumeMillis", resumeMillis)
+				.toString();
+	}
+
+}
@@ -14,8 +14,11 @@
 package com.checkmarx.engine.servers;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 import com.checkmarx.engine.domain.DynamicEngine;
+import com.checkmarx.engine.domain.DynamicEngine.WarmTier;
 import com.checkmarx.engine.domain.EngineSize;
 
 /**
@@ -67,6 +70,39 @@ public interface CxEngines {
 	 */
 	void launch(DynamicEngine engine, EngineSize size, boolean waitForSpinup) throws InterruptedException;
 	
+	/**
+	 * Launches a dynamic engine without blocking the calling thread.
+	 * <br/> <br/>
+	 * Performs the same steps as {@link #launch(DynamicEngine, EngineSize, boolean)}
+	 * as a staged pipeline; waits between stages are scheduled rather than slept,
+	 * so no thread is held while the engine spins up.
+	 * Cancelling the returned future abandons any remaining stages.
+	 * 
+	 * @param engine to launch
+	 * @param size of the engine to launch
+	 * @param waitForSpinup if true, the future completes once the engine process responds to requests
+	 * @return a future completed with the launched engine, or failed with the launch exception
+	 */
+	CompletableFuture<DynamicEngine> launchAsync(DynamicEngine engine, EngineSize size, boolean waitForSpinup);
+	
+	/**
+	 * Launches several dynamic engines of the same size without blocking the calling thread.
+	 * <br/> <br/>
+	 * Providers able to provision several engines with one request should override this;
+	 * the default launches each engine separately.
+	 * 
+	 * @param engines to launch
+	 * @param size of the engines to launch
+	 * @param waitForSpinup if true, each future completes once its engine process responds to requests
+	 * @return a future for each engine, in the order supplied
+	 */
+	default List<CompletableFuture<DynamicEngine>> launchAsync(List<DynamicEngine> engines, EngineSize size, 
+			boolean waitForSpinup) {
+		return engines.stream()
+				.map(engine -> launchAsync(engine, size, waitForSpinup))
+				.collect(Collectors.toList());
+	}
+	
 	/**
 	 * Stops the supplied dynamic engine.  Underlying implementation may terminate the engine.
 	 * 
@@ -82,6 +118,20 @@ public interface CxEngines {
 	 */
 	void stop(DynamicEngine engine, boolean forceTerminate);
 
+	/**
+	 * Stops the supplied dynamic engine into a warm tier: HIBERNATED keeps memory and disk, STOPPED 
+	 * keeps the disk, TERMINATED releases the engine.
+	 * <br/> <br/>
+	 * Providers without a hibernated tier should override this; the default stops
+	 * the engine for all tiers but TERMINATED.
+	 * 
+	 * @param engine to stop
+	 * @param tier to keep the engine in
+	 */
+	default void stop(DynamicEngine engine, WarmTier tier) {
+		stop(engine, WarmTier.TERMINATED.equals(tier));
+	}
+
     /***
      * Event called when scan is assigned to the supplied engine.
      * 
@@ -98,4 +148,28 @@ public interface CxEngines {
      */
     void onScanRemoved(DynamicEngine fromEngine);
     
+    /**
+     * Sets the listener notified when the underlying IaaS reclaims an engine, 
+     * e.g. an interrupted spot instance.
+     * <br/> <br/>
+     * Providers whose engines can be interrupted should override this; 
+     * the default never notifies the listener.
+     * 
+     * @param listener notified once for each interrupted engine
+     */
+    default void setInterruptionListener(EngineInterruptionListener listener) {
+    }
+    
+    /**
+     * Notified when an engine is being reclaimed by the underlying IaaS.
+     */
+    @FunctionalInterface
+    interface EngineInterruptionListener {
+    	
+    	/**
+    	 * @param engineName name of the interrupted engine
+    	 */
+    	void onEngineInterrupted(String engineName);
+    }
+    
 }
@@ -16,16 +16,20 @@ package com.checkmarx.engine.servers;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import javax.validation.constraints.NotNull;
 
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.retry.annotation.Backoff;
@@ -36,20 +40,28 @@ import org.springframework.web.client.RestClientException;
 import com.checkmarx.engine.CxConfig;
 import com.checkmarx.engine.domain.DynamicEngine;
 import com.checkmarx.engine.domain.DynamicEngine.State;
+import com.checkmarx.engine.domain.DynamicEngine.WarmTier;
 import com.checkmarx.engine.domain.EnginePool;
 import com.checkmarx.engine.domain.EnginePool.IdleEngineMonitor;
 import com.checkmarx.engine.domain.EngineSize;
+import com.checkmarx.engine.domain.FairShareScanScheduler;
+import com.checkmarx.engine.domain.ScanArrivalForecaster;
+import com.checkmarx.engine.domain.ScanDurationModel;
+import com.checkmarx.engine.domain.ScanFinishEstimator;
 import com.checkmarx.engine.rest.CxEngineApi;
 import com.checkmarx.engine.rest.Notification;
 import com.checkmarx.engine.rest.model.EngineServer;
 import com.checkmarx.engine.rest.model.ScanRequest;
 import com.checkmarx.engine.rest.model.ScanRequest.ScanStatus;
+import com.checkmarx.engine.servers.ScanQueueMonitor.DispatchedScanListener;
+import com.checkmarx.engine.servers.ScanQueueMonitor.PreparingScanListener;
+import com.checkmarx.engine.utils.CompletableFutureUtils;
 import com.checkmarx.engine.utils.ExecutorServiceUtils;
 import com.checkmarx.engine.utils.TaskManager;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
 
 public class EngineManager implements Runnable {
 	
@@ -59,6 +71,9 @@ public class EngineManager implements Runnable {
 	private final CxEngineApi cxClient;
 	private final EnginePool pool;
 	private final CxEngines engineProvisioner;
+	private final ScanArrivalForecaster arrivalForecaster;
+	private final ScanFinishEstimator finishEstimator;
+	private final ScanDurationModel durationModel;
 	//FIXME: figure out a way to communicate with scanQueue without dependency
     private final ScanQueueMonitor scanQueueMonitor;
 	private final BlockingQueue<ScanRequest> queuedScansQueue;
@@ -73,16 +88,16 @@ public class EngineManager implements Runnable {
 	private final TaskManager taskManager;
 	private final Notification notify;
 
-	private final static int MANAGER_THREAD_POOL_SIZE = 3;
+	private final static int MANAGER_THREAD_POOL_SIZE = 4;
 	//FIXME: move these to config
 	private final static int SCANS_QUEUED_THREAD_POOL_SIZE = 10;
 	private final static int SCANS_FINISHED_THREAD_POOL_SIZE = 5;
 	private final static int ENGINE_EXPIRING_THREAD_POOL_SIZE = 5;
 
 	/**
-	 * map of blocked scans by engine size; key=EngineSize of scan
+	 * scans blocked waiting for an engine, dispatched by fair share between teams
 	 */
-	private final Map<EngineSize, Queue<ScanRequest>> blockedScansQueueMap;
+	private final FairShareScanScheduler blockedScans;
 	
 	/**
 	 * map of scans assigned to engines; key=Scan.Id, value=cxEngineId
@@ -103,12 +118,45 @@ public class EngineManager implements Runnable {
 	 * map of active scans when DynEngines is started, key=ScanId
 	 */
 	private Map<String, DynamicEngine> preExistingScans = Maps.newConcurrentMap();
+	
+	/**
+	 * map of queued scans waiting on a working engine predicted to finish soon, key=cxEngineId
+	 */
+	private final Map<Long, ScanRequest> reservedScans = Maps.newConcurrentMap();
+	
+	/**
+	 * Scan.Ids whose engine reservation expired, so they are not reserved again
+	 */
+	private final Set<Long> expiredReservations = Sets.newConcurrentHashSet();
+	
+	/**
+	 * map of idle engines registered over their engine size LOC range, key=cxEngineId
+	 */
+	private final Map<Long, EngineServer> preRegisteredEngines = Maps.newConcurrentMap();
+	
+	/**
+	 * map of queued scans left for CxManager to dispatch to pre-registered engines, key=Scan.Id
+	 */
+	private final Map<Long, ScanRequest> dispatchingScans = Maps.newConcurrentMap();
+	
+	/**
+	 * map of new engine launches not yet registered for their scan, key=Scan.Id
+	 */
+	private final Map<Long, PendingLaunch> launchingScans = Maps.newConcurrentMap();
+	
+	/**
+	 * names of engines being reclaimed by the IaaS provider, e.g. interrupted spot instances
+	 */
+	private final Set<String> interruptedEngines = Sets.newConcurrentHashSet();
 
 	public EngineManager(
 			CxConfig config,
 			EnginePool pool, 
 			CxEngineApi cxClient,
 			CxEngines engineProvisioner,
+			ScanArrivalForecaster arrivalForecaster,
+			ScanFinishEstimator finishEstimator,
+			ScanDurationModel durationModel,
 			TaskManager taskManager,
 			ScanQueueMonitor scanQueueMonitor,
 			BlockingQueue<ScanRequest> scansQueued,
@@ -122,8 +170,11 @@ public class EngineManager implements Runnable {
 		this.queuedScansQueue = scansQueued;
 		this.finshedScansQueue = scansFinished;
 		this.expiredEnginesQueue = new ArrayBlockingQueue<DynamicEngine>(pool.getEngineCount());
-		this.blockedScansQueueMap = Maps.newConcurrentMap();
+		this.blockedScans = new FairShareScanScheduler(config.getTeamWeights());
 		this.engineProvisioner = engineProvisioner;
+		this.arrivalForecaster = arrivalForecaster;
+		this.finishEstimator = finishEstimator;
+		this.durationModel = durationModel;
 		this.managerExecutor = ExecutorServiceUtils.buildPooledExecutorService(MANAGER_THREAD_POOL_SIZE, "engine-mgr-%d", true);
 		this.scanQueuedExecutor = ExecutorServiceUtils.buildPooledExecutorService(SCANS_QUEUED_THREAD_POOL_SIZE, "scan-queue-%d", true);
 		this.scanFinishedExecutor = ExecutorServiceUtils.buildPooledExecutorService(SCANS_FINISHED_THREAD_POOL_SIZE, "scan-finish-%d", true);
@@ -145,13 +196,23 @@ public class EngineManager implements Runnable {
 
             final IdleEngineMonitor engineMonitor = 
                     pool.createIdleEngineMonitor(this.expiredEnginesQueue, config.getExpireEngineBufferMins());
-            final int monitorInterval = config.getIdleMonitorSecs();
 
-            taskManager.addTask("ScanLauncher", managerExecutor.submit(new ScanLauncher()));
+            final ScanLauncher scanLauncher = new ScanLauncher();
+            if (config.isSpeculativeLaunchEnabled()) {
+                scanQueueMonitor.setPreparingScanListener(scanLauncher);
+            }
+            if (config.isPreRegisteredEnginesEnabled()) {
+                scanQueueMonitor.setDispatchedScanListener(scanLauncher);
+            }
+            engineProvisioner.setInterruptionListener(this::onEngineInterrupted);
+            taskManager.addTask("ScanLauncher", managerExecutor.submit(scanLauncher));
 			taskManager.addTask("ScanFinisher", managerExecutor.submit(new ScanFinisher()));
 			taskManager.addTask("EngineTerminator", managerExecutor.submit(new EngineTerminator()));
-			taskManager.addTask("IdleEngineMonitor", 
-			        idleEngineExecutor.scheduleAtFixedRate(engineMonitor, 1, monitorInterval, TimeUnit.SECONDS));
+			taskManager.addTask("IdleEngineMonitor", managerExecutor.submit(engineMonitor));
+			if (config.isPrewarmEnabled()) {
+				taskManager.addTask("EnginePrewarmer", idleEngineExecutor.scheduleAtFixedRate(
+						new EnginePrewarmer(), config.getPrewarmMonitorSecs(), config.getPrewarmMonitorSecs(), TimeUnit.SECONDS));
+			}
 		} catch (Throwable t) {
 			log.error("Error occurred while launching Engine processes, shutting down; cause={}; message={}", 
 					t, t.getMessage(), t);
@@ -165,7 +226,7 @@ public class EngineManager implements Runnable {
     }
 
 	private EngineSize calcEngineSize(ScanRequest scan) {
-		final EngineSize size = pool.calcEngineSize(scan.getLoc());
+		final EngineSize size = pool.calcEngineSize(scan);
 		if (size == null) {
 			final String msg = String.format("Invalid scan size; %s", scan);
 			throw new RuntimeException(msg);
@@ -236,21 +297,20 @@ public class EngineManager implements Runnable {
     private void trackPreExistingScans(List<DynamicEngine> activeEngines, List<ScanRequest> scans) {
         log.debug("trackPreExistingScans(): count={}", activeEngines.size());
         activeEngines.forEach(engine -> {
-            final String scanId = engine.getScanId(); 
             final Long engineId = Long.valueOf(engine.getEngineId());
-            log.warn("...tracking existing scan; scanId={}; {}", scanId, engine);
 
             final EngineServer cxEngine = cxClient.getEngine(engineId);
             cxEngines.put(engineId, engine);
-            engineScans.put(String.valueOf(scanId), engineId);
             this.activeEngines.put(engineId, cxEngine);
-            
-            preExistingScans.put(scanId, engine);
             cxClient.blockEngine(engine.getEngineId());
-            final Optional<ScanRequest> scan = scans.stream()
-                    .filter(scanRequest -> String.valueOf(scanRequest.getId()).equals(engine.getScanId()))
-                    .findFirst();
-            scanQueueMonitor.onPreExistingScan(scan.get());
+            
+            findEngineScans(engine, scans).forEach(scan -> {
+                final String scanId = String.valueOf(scan.getId());
+                log.warn("...tracking existing scan; scanId={}; {}", scanId, engine);
+                engineScans.put(scanId, engineId);
+                preExistingScans.put(scanId, engine);
+                scanQueueMonitor.onPreExistingScan(scan);
+            });
         });
     }
 
@@ -272,6 +332,8 @@ public class EngineManager implements Runnable {
      *  1. Find all provisioned engines
      *  2. If engine is running a scan, add to pool as State.SCANNING
      *  3. If not, add to pool as State.IDLE and unregister (if registered)
+     *  4. If pre-registered engines are enabled, register idle engines over their size range
+     *  5. If engine is stopped, add to pool as State.UNPROVISIONED in the STOPPED warm tier
      *  
      *  If engine name does not exist in pool, stop the engine.
      *  
@@ -293,6 +355,11 @@ public class EngineManager implements Runnable {
             return activeEngines;
         }
         
+        // stopped engines resume from their warm tier
+        provisionedEngines.stream()
+                .filter(engine -> engine.getHost() == null)
+                .forEach(engine -> addEngineToPool(engine));
+        
         final List<DynamicEngine> idleEngines = provisionedEngines.stream()
                 .filter(engine -> Strings.isNullOrEmpty(engine.getScanId()))
 				.filter(engine -> engine.getHost() != null) //a host object reference here is the only indication of a running server
@@ -311,14 +378,21 @@ public class EngineManager implements Runnable {
         //Check the active scans,
         scanningEngines.forEach((engine) -> {
             if (!addEngineToPool(engine)) return;
-            if (checkForActiveScan(engine, activeScans)) {
+            final List<ScanRequest> runningScans = findEngineScans(engine, activeScans);
+            if (!runningScans.isEmpty()) {
+                log.info("Engine found running active scans: count={}; {}", runningScans.size(), engine);
                 activeEngines.add(engine);
                 engine.setState(State.SCANNING);
+                // one slot is occupied once SCANNING
+                runningScans.stream().skip(1).forEach(scan -> pool.occupySlot(engine));
             } else {
                 idleEngines.add(engine);
                 engineProvisioner.onScanRemoved(engine);  //remove reference to the invalid scan id
             }
         });
+        idleEngines.stream()
+                .filter(engine -> pool.getEngineByName(engine.getName()) == engine)
+                .forEach(engine -> preRegisterEngine(engine));
 
         return activeEngines;
     }
@@ -336,7 +410,10 @@ public class EngineManager implements Runnable {
     private void launchIdleEngine(DynamicEngine engine) {
         try {
             final EngineSize size = pool.getEngineSize(engine.getSize());
+            final DateTime launchedOn = DateTime.now();
             engineProvisioner.launch(engine, size, false);
+            pool.recordResume(engine, new Duration(launchedOn, DateTime.now()));
+            preRegisterEngine(engine);
         } catch (InterruptedException e) {
             // if interrupted, continue
             log.warn("Spinning idle engine interrupted, continuing...");
@@ -374,27 +451,26 @@ public class EngineManager implements Runnable {
         });
     }
 
-    private boolean checkForActiveScan(@NotNull DynamicEngine engine, @NotNull List<ScanRequest> activeScans) {
-        final String scanId = engine.getScanId();
-        log.debug("checkForActiveScan(): engine={}; scan={}", engine.getName(), scanId);
-
-        final Optional<ScanRequest> foundScan = 
-                activeScans.stream().filter(scan -> String.valueOf(scan.getId()).equals(scanId)).findFirst();
-        
-        if (!foundScan.isPresent()) {
-            return false;
-        }
-        
-        final ScanRequest scan = foundScan.get();
-        log.debug("...found matching scanRequest: {}", scan);
-        if (engine.getEngineId().equals(String.valueOf(scan.getEngineId()))) {
-            log.info("Engine found running active scan: {}, {}", engine, scan);
-            return true;
+    /**
+     * Finds the active scans running on the engine.  Scans packed onto the engine's slots
+     * each overwrite its scan id tag, so scans are matched by CxManager engine id, not by tag.
+     * 
+     * @return the engine's scans, empty if the engine is not registered
+     */
+    private List<ScanRequest> findEngineScans(@NotNull DynamicEngine engine, @NotNull List<ScanRequest> activeScans) {
+        final String engineId = engine.getEngineId();
+        log.debug("findEngineScans(): engine={}; engineId={}; taggedScan={}", 
+                engine.getName(), engineId, engine.getScanId());
+
+        if (Strings.isNullOrEmpty(engineId)) {
+            log.warn("Existing engine found with ScanId but engine is not registered: {}", engine);
+            return Lists.newArrayList();
         }
-
-        log.warn("Existing engine found with ScanId but scan is running on different engine: {}; {}",
-                engine, scan);
-        return false;
+        final List<ScanRequest> scans = activeScans.stream()
+                .filter(scan -> engineId.equals(String.valueOf(scan.getEngineId())))
+                .collect(Collectors.toList());
+        scans.forEach(scan -> log.debug("...found matching scanRequest: {}", scan));
+        return scans;
     }
 
     private List<EngineServer> findRegisteredDynEngines() {
@@ -435,14 +511,205 @@ public class EngineManager implements Runnable {
         activeEngines.put(engineId, cxEngine);
     }
 
+    /**
+     * Used for test purposes only
+     * 
+     * @return true if a new engine is launching for the scan
+     */
+    boolean isLaunching(long scanId) {
+        return launchingScans.containsKey(scanId);
+    }
+
     private String computeCxEngineName(String name) {
         final String prefix = config.getCxEnginePrefix(); //"**";
         return String.format("%s%s", prefix, name);
     }
 
-	public class ScanLauncher implements Runnable {
+    /**
+     * Re-queues blocked scans, of every size, for which engine capacity is available: 
+     * idle engines, engines the vCPU quota has room to launch and free scan slots.  Called whenever
+     * capacity is freed.
+     */
+    private void dispatchBlockedScans() {
+        for (EngineSize size : blockedScans.getWaitingSizes()) {
+            final int capacity = pool.getEngineCount(size, State.IDLE) 
+                    + pool.getLaunchableCount(size) + pool.getFreeSlots(size);
+            log.trace("dispatchBlockedScans(): size={}; capacity={}", size.getName(), capacity);
+            
+            for (int i = 0; i < capacity; i++) {
+                final ScanRequest scan = blockedScans.poll(size);
+                if (scan == null) break;
+                if (!queuedScansQueue.offer(scan)) {
+                    // scan queue is full, retry when more capacity is freed
+                    blockedScans.add(size, scan);
+                    return;
+                }
+                log.info("Blocked scan dispatched: size={}; scan={}", size.getName(), scan);
+            }
+        }
+    }
+
+    /**
+     * Registers an idle engine over its full engine size LOC range, unblocked, so CxManager 
+     * assigns scans to it directly; only when <code>preRegisteredEnginesEnabled</code>.
+     * If registration fails the engine stays idle and unregistered.
+     */
+    private void preRegisterEngine(DynamicEngine engine) {
+        if (!config.isPreRegisteredEnginesEnabled()) return;
+        if (!State.IDLE.equals(engine.getState()) || Strings.isNullOrEmpty(engine.getUrl())) return;
+        log.trace("preRegisterEngine(): {}", engine);
+        
+        final EngineSize size = pool.getEngineSize(engine.getSize());
+        final EngineServer cxEngine = new EngineServer(computeCxEngineName(engine.getName()), engine.getUrl(), 
+                computeLoc(size.getMinLOC()), computeLoc(size.getMaxLOC()), pool.getSlotCapacity(size), false);
+        try {
+            synchronized (engine) {
+                final EngineServer registered = cxClient.registerEngine(cxEngine);
+                final Long engineId = registered.getId();
+                engine.setEngineId(String.valueOf(engineId));
+                cxEngines.put(engineId, engine);
+                preRegisteredEngines.put(engineId, registered);
+            }
+        } catch (Throwable t) {
+            log.warn("Failed to pre-register idle engine; engine={}; cause={}; message={}", 
+                    engine.getName(), t, t.getMessage());
+            return;
+        }
+        log.info("Idle engine pre-registered: size={}; engine={}", size.getName(), engine);
+    }
+    
+    private boolean isPreRegistered(DynamicEngine engine) {
+        final String engineId = engine.getEngineId();
+        return !Strings.isNullOrEmpty(engineId) && preRegisteredEngines.containsKey(Long.valueOf(engineId));
+    }
+    
+    /**
+     * Unregisters an expiring pre-registered engine.  CxManager does not unregister an engine
+     * it has assigned a scan to, in which case the engine is kept.  Scans left for CxManager
+     * to dispatch are queued again, as the engine they were counted against is gone.
+     * 
+     * @return false if the engine must not be stopped
+     */
+    private boolean unRegisterPreRegisteredEngine(DynamicEngine engine) {
+        final String sEngineId = engine.getEngineId();
+        if (Strings.isNullOrEmpty(sEngineId)) return true;
+        final Long engineId = Long.valueOf(sEngineId);
+        if (!preRegisteredEngines.containsKey(engineId)) return true;
+        
+        try {
+            cxClient.unregisterEngine(engineId);
+        } catch (Throwable t) {
+            log.warn("Failed to unregister pre-registered engine, keeping engine; engine={}; cause={}; message={}", 
+                    engine.getName(), t, t.getMessage());
+            return false;
+        }
+        preRegisteredEngines.remove(engineId);
+        cxEngines.remove(engineId);
+        engine.setEngineId(null);
+        
+        final EngineSize size = pool.getEngineSize(engine.getSize());
+        dispatchingScans.values().stream()
+                .filter(scan -> size.equals(pool.calcEngineSize(scan)))
+                .forEach(scan -> {
+                    if (dispatchingScans.remove(scan.getId(), scan) && !queuedScansQueue.offer(scan)) {
+                        scanQueueMonitor.onLaunchFailed(scan);
+                    }
+                });
+        return true;
+    }
+
+    /**
+     * Hands the engine still launching for a cancelled, deleted or failed scan to a blocked 
+     * scan of the same size, or else cancels the launch, returning the engine to the pool.
+     * 
+     * @return false if the scan has no launch in flight
+     */
+    private boolean cancelLaunch(EngineSize size, ScanRequest scan) {
+        final PendingLaunch launch = launchingScans.get(scan.getId());
+        if (launch == null) return false;
+        log.trace("cancelLaunch(): size={}; {}", size, scan);
+        
+        final ScanRequest blocked = launch.isPending() ? blockedScans.poll(size) : null;
+        if (blocked != null) {
+            if (launch.reassign(blocked)) {
+                launchingScans.remove(scan.getId(), launch);
+                launchingScans.put(blocked.getId(), launch);
+                log.info("Launching engine handed to blocked scan: engine={}; cancelledScan={}; scan={}", 
+                        launch.engine.getName(), scan.getId(), blocked);
+                return true;
+            }
+            // engine launched in the meantime
+            blockedScans.add(size, blocked);
+            dispatchBlockedScans();
+        }
+        
+        if (!launch.cancel()) {
+            // engine already registered for the scan, finish as usual
+            return false;
+        }
+        launchingScans.remove(scan.getId(), launch);
+        log.info("Engine launch cancelled for completed scan: engine={}; scan={}", launch.engine.getName(), scan);
+        return true;
+    }
+
+    /**
+     * Keeps an engine the IaaS provider is reclaiming from taking new scans.  An idle engine 
+     * is expired at once; a scanning engine is blocked in CxManager and expired once its scans 
+     * finish.  Scans still running when the engine goes away are postponed by CxManager 
+     * and re-queued for another engine.
+     */
+    private void onEngineInterrupted(String name) {
+        final DynamicEngine engine = pool.getEngineByName(name);
+        if (engine == null) {
+            log.warn("Interrupted engine not found in pool; name={}", name);
+            return;
+        }
+        log.warn("Engine interrupted by provider: {}", engine);
+        
+        synchronized (engine) {
+            interruptedEngines.add(name);
+            if (pool.expireEngine(engine)) {
+                if (!expiredEnginesQueue.offer(engine)) {
+                    log.warn("Unable to expire interrupted engine, queue full; engine={}", name);
+                }
+                return;
+            }
+        }
+        
+        final String engineId = engine.getEngineId();
+        if (!State.SCANNING.equals(engine.getState()) || Strings.isNullOrEmpty(engineId)) return;
+        try {
+            cxClient.blockEngine(Long.valueOf(engineId));
+        } catch (Throwable t) {
+            log.warn("Failed to block interrupted engine; engine={}; cause={}; message={}", 
+                    name, t, t.getMessage());
+        }
+    }
+
+    private int computeLoc(long loc) {
+        return (int) Math.min(loc, Integer.MAX_VALUE);
+    }
+
+    private int computeMaxLoc(ScanRequest scan) {
+        // rjg - Issue 14: CxMgr has a defect with 0 LOC scans, which will cause Engine 
+        // 		registration failure (400).  Workaround set maxLoc to 1 when LOC is 0. 
+        final int minLoc = scan.getLoc();
+        return minLoc > 0 ? minLoc : 1;
+    }
+
+	public class ScanLauncher implements Runnable, PreparingScanListener, DispatchedScanListener {
 		
 		private final Logger log = LoggerFactory.getLogger(EngineManager.ScanLauncher.class);
+		
+		/**
+		 * new engine launches waiting to be sent as one batch; key=EngineSize
+		 */
+		private final Map<EngineSize, List<PendingLaunch>> pendingLaunches = Maps.newHashMap();
+		
+		/**
+		 * engines launched for scans still preparing; key=Scan.Id
+		 */
+		private final Map<Long, SpeculativeLaunch> speculativeLaunches = Maps.newConcurrentMap();
 
 		@Override
 		public void run() {
@@ -477,16 +744,28 @@ public class EngineManager implements Runnable {
 			
 			try {
 			
-				if (allocateIdleEngine(size, scan)) return;
+				if (claimSpeculativeEngine(size, scan)) return;
+				
+				if (leaveToCxManager(size, scan)) return;
 				
-				if (checkActiveEngines(size, scan)) return;
+				// pre-registered idle engines and slots are dispatched by CxManager
+				if (config.isPreRegisteredEnginesEnabled()) {
+					if (allocateUnregisteredEngine(size, scan)) return;
+				} else {
+					if (allocateEngineSlot(size, scan)) return;
+					
+					if (allocateIdleEngine(size, scan)) return;
+					
+					final boolean shortScan = isShortScan(size, scan);
+					if ((shortScan || config.isEngineBorrowingEnabled()) && borrowLargerEngine(size, scan)) return;
+					
+					if (checkActiveEngines(size, scan, shortScan)) return;
+				}
 				
 				if (allocateNewEngine(size, scan)) return;
 				
 				blockScan(size, scan);
 				
-            } catch (InterruptedException e) {
-                log.info("onScanQueued interrupted, exiting...");
 			} catch (Throwable t) {
 				log.error("Error occurred launching scan; cause={}; message={}", 
 						t, t.getMessage(), t);
@@ -496,19 +775,297 @@ public class EngineManager implements Runnable {
 			}
 		}
 
+		/**
+		 * Launches an engine for a scan still pulling source, sized by its project's last known LOC.
+		 * The engine is held for the scan, it is not offered to other scans while launching.
+		 * The launch is tracked before it starts, so the scan can claim or abandon it at any time.
+		 */
+		@Override
+		public void onScanPreparing(ScanRequest scan, EngineSize expectedSize) {
+			log.trace("onScanPreparing(): size={}; {}", expectedSize, scan);
+			
+			if (pool.getEngineCount(expectedSize, State.IDLE) > 0) {
+				log.debug("Idle engine available, no speculative launch; size={}; scanId={}", 
+						expectedSize.getName(), scan.getId());
+				return;
+			}
+			final DynamicEngine engine = pool.allocateEngine(expectedSize, State.UNPROVISIONED, State.SCANNING);
+			if (engine == null) return;
+			
+			final SpeculativeLaunch launch = new SpeculativeLaunch(engine, expectedSize, new CompletableFuture<>());
+			speculativeLaunches.put(scan.getId(), launch);
+			launch.future.whenComplete((launched, ex) -> {
+				if (ex != null && speculativeLaunches.remove(scan.getId(), launch)) {
+					final Throwable t = CompletableFutureUtils.unwrap(ex);
+					log.warn("Failed to launch speculative engine; engine={}; cause={}; message={}", 
+							engine.getName(), t, t.getMessage());
+					pool.deallocateEngine(engine);
+				}
+			});
+			
+			// the queue monitor calls back while processing the queue, so launch in the background
+			scanQueuedExecutor.execute(() -> launchSpeculativeEngine(scan, launch));
+		}
+		
+		private void launchSpeculativeEngine(ScanRequest scan, SpeculativeLaunch launch) {
+			final DynamicEngine engine = launch.engine;
+			final DateTime launchedOn = DateTime.now();
+			final CompletableFuture<DynamicEngine> future;
+			try {
+				future = engineProvisioner.launchAsync(Lists.newArrayList(engine), launch.size, true).get(0);
+			} catch (Throwable t) {
+				launch.future.completeExceptionally(t);
+				return;
+			}
+			log.info("Speculative engine launched for preparing scan: size={}; engine={}; scanId={}", 
+					launch.size.getName(), engine.getName(), scan.getId());
+			
+			future.whenComplete((launched, ex) -> {
+				if (ex != null) {
+					launch.future.completeExceptionally(ex);
+					return;
+				}
+				final Duration launchTime = new Duration(launchedOn, DateTime.now());
+				finishEstimator.recordLaunch(launch.size.getName(), launchTime);
+				pool.recordResume(engine, launchTime);
+				launch.future.complete(launched);
+			});
+		}
+		
+		@Override
+		public void onScanAbandoned(ScanRequest scan) {
+			final SpeculativeLaunch launch = speculativeLaunches.remove(scan.getId());
+			if (launch == null) return;
+			
+			log.info("Preparing scan was not queued, releasing speculative engine; engine={}; scanId={}", 
+					launch.engine.getName(), scan.getId());
+			releaseSpeculativeEngine(launch);
+		}
+		
+		/**
+		 * Places the scan on the engine launched while it was preparing, if the engine is at 
+		 * least the scan's actual size; a smaller engine is released to the idle pool.
+		 */
+		private boolean claimSpeculativeEngine(EngineSize size, ScanRequest scan) {
+			final SpeculativeLaunch launch = speculativeLaunches.remove(scan.getId());
+			if (launch == null) return false;
+			log.trace("claimSpeculativeEngine(): size={}; expectedSize={}; {}", size, launch.size, scan);
+			
+			if (launch.size.getMaxLOC() < size.getMaxLOC()) {
+				log.info("Speculative engine too small for scan, releasing; expectedSize={}; size={}; scanId={}", 
+						launch.size.getName(), size.getName(), scan.getId());
+				releaseSpeculativeEngine(launch);
+				return false;
+			}
+			
+			launch.future.whenCompleteAsync((launched, ex) -> {
+				if (ex != null) {
+					onLaunchFailed(scan, launch.engine, ex);
+					return;
+				}
+				try {
+					registerEngine(State.UNPROVISIONED, scan, launched);
+				} catch (Throwable t) {
+					onRegisterFailed(scan, launched, t);
+				}
+			}, scanQueuedExecutor);
+			log.info("Speculative engine claimed by scan: expectedSize={}; size={}; engine={}; scanId={}", 
+					launch.size.getName(), size.getName(), launch.engine.getName(), scan.getId());
+			return true;
+		}
+		
+		private void releaseSpeculativeEngine(SpeculativeLaunch launch) {
+			launch.future.whenComplete((launched, ex) -> {
+				if (ex != null) {
+					pool.deallocateEngine(launch.engine);
+					return;
+				}
+				pool.idleEngine(launch.engine);
+				preRegisterEngine(launch.engine);
+				dispatchBlockedScans();
+			});
+		}
+		
+		/**
+		 * Leaves the scan for CxManager to dispatch, when the pre-registered engines of its size
+		 * have room for it; scans already left for CxManager count against that room.
+		 */
+		private boolean leaveToCxManager(EngineSize size, ScanRequest scan) {
+			if (!config.isPreRegisteredEnginesEnabled()) return false;
+			log.trace("leaveToCxManager(): size={}; {}", size, scan);
+			
+			if (engineScans.containsKey(String.valueOf(scan.getId()))) {
+				log.debug("Scan already dispatched by CxManager; scanId={}", scan.getId());
+				return true;
+			}
+			
+			synchronized (dispatchingScans) {
+				final long engines = preRegisteredEngines.keySet().stream()
+						.map(engineId -> cxEngines.get(engineId))
+						.filter(engine -> engine != null && size.getName().equals(engine.getSize()))
+						.count();
+				final long capacity = engines * pool.getSlotCapacity(size) + pool.getFreeSlots(size);
+				final long waiting = dispatchingScans.values().stream()
+						.filter(waitingScan -> size.equals(pool.calcEngineSize(waitingScan)))
+						.count();
+				if (waiting >= capacity) return false;
+				
+				dispatchingScans.put(scan.getId(), scan);
+				log.info("Scan left for CxManager to dispatch to pre-registered engine: size={}; capacity={}; waiting={}; scan={}", 
+						size.getName(), capacity, waiting + 1, scan);
+			}
+			return true;
+		}
+		
+		/**
+		 * Tracks a scan CxManager assigned to a pre-registered engine, or to a free slot of 
+		 * one; the engine changes to SCANNING without a registration round trip.
+		 */
+		@Override
+		public boolean onScanDispatched(ScanRequest scan, EngineSize size) {
+			dispatchingScans.remove(scan.getId());
+			final Long engineId = scan.getEngineId();
+			final DynamicEngine engine = cxEngines.get(engineId);
+			if (engine == null || engineScans.containsKey(String.valueOf(scan.getId()))) return false;
+			
+			// the queue monitor calls back while processing the queue, so track in the background
+			scanQueuedExecutor.execute(() -> acceptDispatchedScan(scan, engineId, engine));
+			return true;
+		}
+		
+		private void acceptDispatchedScan(ScanRequest scan, Long engineId, DynamicEngine engine) {
+			log.trace("acceptDispatchedScan(): engineId={}; {}", engineId, scan);
+			
+			synchronized (engine) {
+				if (engineScans.containsKey(String.valueOf(scan.getId()))) return;
+				
+				EngineServer cxEngine = preRegisteredEngines.remove(engineId);
+				if (cxEngine != null) {
+					// the engine may have expired after CxManager assigned the scan
+					engine.setState(State.SCANNING);
+				} else {
+					cxEngine = activeEngines.get(engineId);
+					if (cxEngine == null) {
+						log.warn("Scan dispatched to engine no longer registered; engine={}; scan={}", engine.getName(), scan);
+						return;
+					}
+					pool.occupySlot(engine);
+				}
+				trackEngineScan(scan, cxEngine, engine);
+			}
+			log.info("Scan dispatched by CxManager to pre-registered engine: slots={}; engine={}; scan={}", 
+					pool.getOccupiedSlots(engine), engine, scan);
+		}
+		
+		/**
+		 * Packs the scan onto a registered engine with a free scan slot.  The engine's LOC range 
+		 * is set to the scan's LOC and the engine is unblocked, so CxManager routes only this scan 
+		 * to it; scans already running on the engine are unaffected.
+		 */
+		private boolean allocateEngineSlot(EngineSize size, ScanRequest scan) {
+			log.trace("allocateEngineSlot(): size={}; {}", size, scan);
+			
+			final DynamicEngine engine = pool.allocateSlot(size);
+			if (engine == null) return false;
+			
+			try {
+				synchronized (engine) {
+					final String engineId = engine.getEngineId();
+					final EngineServer cxEngine = engineId == null ? null : activeEngines.get(Long.valueOf(engineId));
+					if (cxEngine == null || interruptedEngines.contains(engine.getName())) {
+						log.debug("Engine no longer registered, skipping slot; engine={}", engine.getName());
+						pool.releaseSlot(engine);
+						return false;
+					}
+					cxEngine.setMinLoc(scan.getLoc());
+					cxEngine.setMaxLoc(computeMaxLoc(scan));
+					cxEngine.setBlocked(false);
+					final EngineServer updated = cxClient.updateEngine(cxEngine);
+					trackEngineScan(scan, updated, engine);
+				}
+			} catch (Throwable t) {
+				log.warn("Failed to allocate engine slot for scan; engine={}; scan={}; cause={}; message={}", 
+						engine.getName(), scan, t, t.getMessage());
+				pool.releaseSlot(engine);
+				return false;
+			}
+			
+			log.info("Engine slot allocated for scan: slots={}; engine={}; scan={}", 
+					pool.getOccupiedSlots(engine), engine, scan);
+			return true;
+		}
+		
 		private boolean allocateIdleEngine(EngineSize size, ScanRequest scan) {
 			log.trace("allocateIdleEngine(): size={}; {}", size, scan);
-
+			return allocateIdleEngine(size, scan, engine -> true);
+		}
+		
+		/**
+		 * Registers an idle engine CxManager cannot dispatch to for the scan: one whose
+		 * pre-registration failed, or that was idled after its registration failed.
+		 */
+		private boolean allocateUnregisteredEngine(EngineSize size, ScanRequest scan) {
+			log.trace("allocateUnregisteredEngine(): size={}; {}", size, scan);
+			return allocateIdleEngine(size, scan, engine -> !isPreRegistered(engine));
+		}
+		
+		private boolean allocateIdleEngine(EngineSize size, ScanRequest scan, Predicate<DynamicEngine> filter) {
 			final State state = State.IDLE;
-			final DynamicEngine engine = pool.allocateEngine(size, state, State.SCANNING);
+			final DynamicEngine engine = pool.allocateEngine(size, state, State.SCANNING, filter);
 			
 			if (engine == null) return false;
 			
-			registerEngine(state, scan, engine);
+			try {
+				registerEngine(state, scan, engine);
+			} catch (Throwable t) {
+				// engine is running, so keep it for the next scan
+				onRegisterFailed(scan, engine, t);
+			}
 			return true;
 		}
 		
-		private boolean allocateNewEngine(EngineSize size, ScanRequest scan) throws InterruptedException {
+		/**
+		 * A scan is short when its predicted engine time is below the launch time of its
+		 * engine size; launching an engine for it would mostly pay for boot and idle time.
+		 */
+		private boolean isShortScan(EngineSize size, ScanRequest scan) {
+			if (config.getShortScanWaitSecs() <= 0) return false;
+			
+			final Duration launchTime = finishEstimator.getLaunchTime(size.getName());
+			final Duration predicted = durationModel.predict(scan, size.getName());
+			log.trace("isShortScan(): size={}; predicted={}; launchTime={}; scanId={}", 
+					size.getName(), predicted, launchTime, scan.getId());
+			
+			return launchTime != null && predicted != null && predicted.isShorterThan(launchTime);
+		}
+		
+		/**
+		 * Places the scan on the smallest idle engine of a larger size; the engine is registered 
+		 * with the scan's LOC range.  Sizes with scans of their own waiting, or with no more than
+		 * <code>borrowIdleReserve</code> idle engines, do not lend engines.
+		 */
+		private boolean borrowLargerEngine(EngineSize size, ScanRequest scan) {
+			log.trace("borrowLargerEngine(): size={}; {}", size, scan);
+			
+			for (EngineSize larger : pool.getEngineSizes()) {
+				if (larger.getMaxLOC() <= size.getMaxLOC() || hasBlockedScans(larger)) continue;
+				
+				final DynamicEngine engine = pool.borrowEngine(size, larger, config.getBorrowIdleReserve());
+				if (engine == null) continue;
+				
+				log.info("Idle engine of larger size borrowed for scan: scanSize={}; engineSize={}; borrowCounts={}; scanId={}", 
+						size.getName(), larger.getName(), pool.getBorrowCounts(), scan.getId());
+				registerEngine(State.IDLE, scan, engine);
+				return true;
+			}
+			return false;
+		}
+		
+		private boolean hasBlockedScans(EngineSize size) {
+			return blockedScans.hasWaiting(size);
+		}
+		
+		private boolean allocateNewEngine(EngineSize size, ScanRequest scan) {
 			log.trace("allocateNewEngine(): size={}; {}", scan, size);
 
 			final State state = DynamicEngine.State.UNPROVISIONED;
@@ -516,27 +1073,202 @@ public class EngineManager implements Runnable {
 			
 			if (engine == null) return false;
 
+			final PendingLaunch launch = new PendingLaunch(engine, scan);
+			launchingScans.put(scan.getId(), launch);
+			queueLaunch(size, launch);
+			return true;
+		}
+		
+		/**
+		 * Collects new engine launches of the same size for <code>launchBatchWindowMillis</code>,
+		 * so a burst of scans is provisioned with one request.
+		 */
+		private void queueLaunch(EngineSize size, PendingLaunch launch) {
+			final int window = config.getLaunchBatchWindowMillis();
+			if (window <= 0) {
+				launchEngines(size, Lists.newArrayList(launch));
+				return;
+			}
+			
+			synchronized (pendingLaunches) {
+				List<PendingLaunch> batch = pendingLaunches.get(size);
+				if (batch == null) {
+					batch = Lists.newArrayList();
+					pendingLaunches.put(size, batch);
+					idleEngineExecutor.schedule(() -> flushLaunches(size), window, TimeUnit.MILLISECONDS);
+				}
+				batch.add(launch);
+			}
+		}
+		
+		private void flushLaunches(EngineSize size) {
+			final List<PendingLaunch> batch;
+			synchronized (pendingLaunches) {
+				batch = pendingLaunches.remove(size);
+			}
+			if (batch != null) {
+				launchEngines(size, batch);
+			}
+		}
+		
+		private void launchEngines(EngineSize size, List<PendingLaunch> batch) {
+			log.debug("launchEngines(): size={}; count={}", size.getName(), batch.size());
+			
+			// scans cancelled while their launch was batched
+			batch.removeIf(launch -> {
+				if (!launch.isCancelled()) return false;
+				pool.deallocateEngine(launch.engine);
+				return true;
+			});
+			if (batch.isEmpty()) return;
+			
+			final List<DynamicEngine> engines = batch.stream()
+					.map(launch -> launch.engine).collect(Collectors.toList());
+			final List<CompletableFuture<DynamicEngine>> futures;
+			final DateTime launchedOn = DateTime.now();
 			try {
-	            // blocks while engine is spinning up
-                engineProvisioner.launch(engine, size, true);
-    			registerEngine(state, scan, engine);
-    			return true;
-            } catch (InterruptedException e) {
-                throw e;
-            }
+				// engines spin up in the background; the calling thread is released immediately
+				futures = engineProvisioner.launchAsync(engines, size, true);
+			} catch (Throwable t) {
+				batch.forEach(launch -> onEngineLaunched(size, launch, launch.engine, launchedOn, null, t));
+				return;
+			}
+			
+			for (int i = 0; i < batch.size(); i++) {
+				final PendingLaunch launch = batch.get(i);
+				final CompletableFuture<DynamicEngine> future = futures.get(i);
+				launch.addFuture(future);
+				future.whenCompleteAsync((launched, ex) -> 
+						onEngineLaunched(size, launch, launch.engine, launchedOn, launched, ex), scanQueuedExecutor);
+				scheduleHedge(size, launch, future);
+			}
 		}
 		
-		private void blockScan(EngineSize size, ScanRequest scan) {
-			log.trace("blockScan(): size={}; {}", size, scan);
+		/**
+		 * Runs the scan on the first of its engines to launch; a hedged engine that loses, or an 
+		 * engine launched for a scan cancelled meanwhile, is returned to the idle pool.  A failed 
+		 * launch only fails the scan when none of its launches are left running.
+		 */
+		private void onEngineLaunched(EngineSize size, PendingLaunch launch, DynamicEngine engine, 
+				DateTime launchedOn, DynamicEngine launched, Throwable ex) {
+			if (ex != null) {
+				final ScanRequest scan = launch.fail();
+				if (scan != null) {
+					launchingScans.remove(scan.getId(), launch);
+					onLaunchFailed(scan, engine, ex);
+					return;
+				}
+				final Throwable t = CompletableFutureUtils.unwrap(ex);
+				if (launch.isCancelled()) {
+					log.info("Engine launch cancelled, engine returned to pool; engine={}", engine.getName());
+				} else {
+					log.warn("Engine launch failed, scan waits for its other launch; engine={}; scanId={}; cause={}; message={}", 
+							engine.getName(), launch.getScan().getId(), t, t.getMessage());
+				}
+				pool.deallocateEngine(engine);
+				return;
+			}
 			
-			Queue<ScanRequest> blockedQueue = blockedScansQueueMap.get(size);
-			if (blockedQueue == null) {
-				log.debug("Creating blocked queue: size={}; {}", size, scan);
-				blockedQueue = Queues.newConcurrentLinkedQueue();
-				blockedScansQueueMap.put(size, blockedQueue);
+			final Duration launchTime = new Duration(launchedOn, DateTime.now());
+			finishEstimator.recordLaunch(size.getName(), launchTime);
+			pool.recordResume(engine, launchTime);
+			final ScanRequest scan = launch.claim();
+			if (scan == null) {
+				log.info("Engine not needed by its scan, returning engine to idle pool; engine={}; cancelled={}", 
+						launched.getName(), launch.isCancelled());
+				pool.idleEngine(launched);
+				preRegisterEngine(launched);
+				dispatchBlockedScans();
+				return;
+			}
+			try {
+				registerEngine(State.UNPROVISIONED, scan, launched);
+			} catch (Throwable t) {
+				launchingScans.remove(scan.getId(), launch);
+				// engine is running, so keep it for the next scan
+				onRegisterFailed(scan, launched, t);
+				return;
+			}
+			launchingScans.remove(scan.getId(), launch);
+			if (!launch.register() && !finshedScansQueue.offer(scan)) {
+				log.warn("Scan cancelled while its engine registered, finished queue full; engine={}; scan={}", 
+						launched.getName(), scan);
 			}
+		}
+		
+		/**
+		 * Schedules a second launch for the scan when its engine is not ready within 
+		 * <code>hedgeLaunchPercentile</code> of the recent launch times of its size.
+		 */
+		private void scheduleHedge(EngineSize size, PendingLaunch launch, CompletableFuture<DynamicEngine> future) {
+			final int percentile = config.getHedgeLaunchPercentile();
+			if (percentile <= 0) return;
+			
+			final Duration threshold = finishEstimator.getLaunchTime(size.getName(), Math.min(percentile, 100));
+			if (threshold == null) return;
+			
+			idleEngineExecutor.schedule(() -> hedgeLaunch(size, launch, future), 
+					threshold.getMillis(), TimeUnit.MILLISECONDS);
+		}
+		
+		/**
+		 * Launches a second engine for a scan whose engine is still launching, from the
+		 * engines left in the pool.  Scans blocked on the size take precedence.
+		 */
+		private void hedgeLaunch(EngineSize size, PendingLaunch launch, CompletableFuture<DynamicEngine> future) {
+			if (future.isDone() || !launch.isPending()) return;
+			final ScanRequest scan = launch.getScan();
+			log.trace("hedgeLaunch(): size={}; {}", size, scan);
 			
-			blockedQueue.add(scan);
+			if (hasBlockedScans(size)) {
+				log.debug("Scans blocked, launch not hedged; size={}; scanId={}", size.getName(), scan.getId());
+				return;
+			}
+			final DynamicEngine engine = pool.allocateEngine(size, State.UNPROVISIONED, State.SCANNING);
+			if (engine == null) return;
+			if (!launch.hedge()) {
+				// the first launch completed in the meantime
+				pool.deallocateEngine(engine);
+				return;
+			}
+			
+			final DateTime launchedOn = DateTime.now();
+			final CompletableFuture<DynamicEngine> hedged;
+			try {
+				hedged = engineProvisioner.launchAsync(Lists.newArrayList(engine), size, true).get(0);
+			} catch (Throwable t) {
+				onEngineLaunched(size, launch, engine, launchedOn, null, t);
+				return;
+			}
+			log.info("Engine launch is slow, hedged with a second engine; size={}; engine={}; hedge={}; scanId={}", 
+					size.getName(), launch.engine.getName(), engine.getName(), scan.getId());
+			launch.addFuture(hedged);
+			hedged.whenCompleteAsync((launched, ex) -> 
+					onEngineLaunched(size, launch, engine, launchedOn, launched, ex), scanQueuedExecutor);
+		}
+		
+		private void onLaunchFailed(ScanRequest scan, DynamicEngine engine, Throwable ex) {
+			final Throwable t = CompletableFutureUtils.unwrap(ex);
+			log.error("Error occurred launching engine for scan; engine={}; scan={}; cause={}; message={}", 
+					engine.getName(), scan, t, t.getMessage(), t);
+			pool.deallocateEngine(engine);
+			notify.sendNotification(config.getNotificationSubject(), "Error occurred launching scan", t);
+			scanQueueMonitor.onLaunchFailed(scan);
+		}
+
+		private void onRegisterFailed(ScanRequest scan, DynamicEngine engine, Throwable t) {
+			log.error("Error occurred registering engine for scan; engine={}; scan={}; cause={}; message={}", 
+					engine.getName(), scan, t, t.getMessage(), t);
+			pool.idleEngine(engine);
+			dispatchBlockedScans();
+			notify.sendNotification(config.getNotificationSubject(), "Error occurred launching scan", t);
+			scanQueueMonitor.onLaunchFailed(scan);
+		}
+		
+		private void blockScan(EngineSize size, ScanRequest scan) {
+			log.trace("blockScan(): size={}; {}", size, scan);
+			
+			blockedScans.add(size, scan);
 			log.warn("No engine available, added scan to blocked queue: size={}; {}", size, scan);
 		}
 
@@ -549,7 +1281,8 @@ public class EngineManager implements Runnable {
 				final String msg = String.format("Cannot register Engine, url is null: %s", dynEngine);
 				throw new RuntimeException(msg);
 			}
-			EngineServer cxEngine = createEngine(dynEngine.getName(), scan, dynEngine.getUrl());
+			final EngineSize size = pool.getEngineSize(dynEngine.getSize());
+			EngineServer cxEngine = createEngine(dynEngine.getName(), size, scan, dynEngine.getUrl());
 			cxEngine = registerCxEngine(scanId, cxEngine);
 			
 			trackEngineScan(scan, cxEngine, dynEngine);
@@ -567,25 +1300,64 @@ public class EngineManager implements Runnable {
 			return cxEngine;
 		}
 
-		private EngineServer createEngine(String name, ScanRequest scan, String url) {
+		private EngineServer createEngine(String name, EngineSize size, ScanRequest scan, String url) {
 		    final String engineName = computeCxEngineName(name);
-
-		    // rjg - Issue 14: CxMgr has a defect with 0 LOC scans, which will cause Engine 
-		    // 		registration failure (400).  Workaround set maxLoc to 1 when LOC is 0. 
 			final int minLoc = scan.getLoc();
-			final int maxLoc = minLoc > 0 ? minLoc : 1;
+			final int maxScans = pool.getSlotCapacity(size);
 			
-			return new EngineServer(engineName, url, minLoc, maxLoc, 1, false);
+			return new EngineServer(engineName, url, minLoc, computeMaxLoc(scan), maxScans, false);
 		}
 
-        private boolean checkActiveEngines(EngineSize size, ScanRequest scan) {
-			log.trace("checkActiveEngines() : size={}; {}", size, scan);
+		/**
+		 * Reserves the working engine predicted to finish first, when it finishes sooner than a new
+		 * engine of the same size takes to launch.  Short scans also wait up to 
+		 * <code>shortScanWaitSecs</code>.  The {@link ScanFinisher} hands the engine to the 
+		 * scan; if the engine is still busy after the wait, the scan is queued again.
+		 */
+        private boolean checkActiveEngines(EngineSize size, ScanRequest scan, boolean shortScan) {
+			log.trace("checkActiveEngines() : size={}; shortScan={}; {}", size, shortScan, scan);
 
-			//final State state = State.SCANNING;
-			//final DynamicEngine engine = pool.allocateEngine(size, state);
+			if (!config.isFinishPredictionEnabled()) return false;
+			if (expiredReservations.remove(scan.getId())) return false;
 			
-			//TODO: check active engines for scan finish time; if within finish window, allocate scan
-			return false;
+			final Duration launchTime = finishEstimator.getLaunchTime(size.getName());
+			if (launchTime == null) return false;
+			
+			final Duration shortScanWait = Duration.standardSeconds(config.getShortScanWaitSecs());
+			final Duration maxWait = shortScan && shortScanWait.isLongerThan(launchTime) ? shortScanWait : launchTime;
+			final DateTime now = DateTime.now();
+			Long engineId = null;
+			Duration soonest = maxWait;
+			for (Map.Entry<String, Long> entry : engineScans.entrySet()) {
+				final Long cxEngineId = entry.getValue();
+				final DynamicEngine engine = cxEngines.get(cxEngineId);
+				if (engine == null || !size.getName().equals(engine.getSize()) 
+						|| reservedScans.containsKey(cxEngineId)) continue;
+				
+				final Duration remaining = finishEstimator.estimateRemaining(Long.valueOf(entry.getKey()), now);
+				if (remaining != null && remaining.isShorterThan(soonest)) {
+					engineId = cxEngineId;
+					soonest = remaining;
+				}
+			}
+			if (engineId == null || reservedScans.putIfAbsent(engineId, scan) != null) return false;
+			
+			final Long reservedId = engineId;
+			idleEngineExecutor.schedule(() -> expireReservation(reservedId, scan), 
+					maxWait.getMillis(), TimeUnit.MILLISECONDS);
+			log.info("Working engine reserved for scan: engineId={}; remaining={}s; maxWait={}s; scan={}", 
+					engineId, soonest.getStandardSeconds(), maxWait.getStandardSeconds(), scan);
+			return true;
+		}
+		
+		private void expireReservation(Long engineId, ScanRequest scan) {
+			if (!reservedScans.remove(engineId, scan)) return;
+			
+			log.info("Reserved engine did not finish in time, queueing scan; engineId={}; scan={}", engineId, scan);
+			expiredReservations.add(scan.getId());
+			if (!queuedScansQueue.offer(scan)) {
+				scanQueueMonitor.onLaunchFailed(scan);
+			}
 		}
 
 	}
@@ -629,17 +1401,52 @@ public class EngineManager implements Runnable {
 			    
                 final String scanId = String.valueOf(scan.getId()); 
 				final EngineSize size = calcEngineSize(scan);
+				if (cancelLaunch(size, scan)) return;
+				
 				final Long engineId = determineEngineId(scan);
+				final boolean dispatching = dispatchingScans.remove(scan.getId()) != null;
 				if (engineId == null) {
+					if (dispatching) {
+						log.info("Scan left for CxManager was cancelled and removed: {}", scan);
+						return;
+					}
 					if (removeBlockedScan(size, scan)) {
 						log.info("Blocked scan was cancelled and removed: {}", scan);
 						return;
 					}
+					if (reservedScans.values().remove(scan)) {
+						log.info("Reserved scan was cancelled and removed: {}", scan);
+						return;
+					}
 					log.warn("Untracked scan completed; scanId={}; {}", scanId, scan);
 					return;
 				}
 				
 				final DynamicEngine engine = cxEngines.get(engineId);
+				// short scans may have run on a larger engine
+				final EngineSize engineSize = engine == null ? size : pool.getEngineSize(engine.getSize());
+				if (engine != null && interruptedEngines.contains(engine.getName())) {
+					releaseInterruptedEngine(scan, engineId, engine);
+					return;
+				}
+				if (handOffEngine(engineSize, scan, engineId, engine)) return;
+				
+				if (pool.releaseSlot(engine) > 0) {
+					// other scans are still running on the engine
+					engineScans.remove(scanId);
+					log.info("Scan finished, engine slot released: slots={}; engine={}; scan={}", 
+							pool.getOccupiedSlots(engine), engine, scan);
+					dispatchBlockedScans();
+					return;
+				}
+				
+				if (reRegisterEngine(engineId, engine)) {
+					engineScans.remove(scanId);
+					log.info("Scan finished, engine pre-registered for the next scan: engine={}; scan={}", engine, scan);
+					dispatchBlockedScans();
+					return;
+				}
+				
 				unRegisterEngine(engineId);
 				engineProvisioner.onScanRemoved(engine);
 				engine.setScanId(null);
@@ -650,8 +1457,12 @@ public class EngineManager implements Runnable {
 				cxEngines.remove(engineId);
 				log.info("Scan finished, engine removed: engine={}; scan={}", engine, scan);
 				
+				// a scan may have reserved the engine while it was being released
+				final ScanRequest reserved = reservedScans.remove(engineId);
+				if (reserved != null) queuedScansQueue.put(reserved);
+				
 				// see if we have any scans blocked that can now run
-				checkBlockedScans(size);
+				dispatchBlockedScans();
 			} catch (Throwable t) {
 				log.error("Error occurred finishing scan; cause={}; message={}", 
 						t, t.getMessage(), t); 
@@ -659,28 +1470,144 @@ public class EngineManager implements Runnable {
 
 		}
 
-        /**
-		 * Queues the head scan in the blocked queue, if any 
-		 * @param size Engine size to check
+		/**
+		 * Unregisters an engine being reclaimed by the IaaS provider once its last scan 
+		 * finishes, and expires it rather than returning it to the pool.
 		 */
-		private void checkBlockedScans(EngineSize size) throws InterruptedException {
-			log.trace("checkBlockedScans(): size={}", size);
+		private void releaseInterruptedEngine(ScanRequest scan, Long engineId, DynamicEngine engine) 
+				throws InterruptedException {
+			log.trace("releaseInterruptedEngine(): engineId={}; {}", engineId, engine);
+			
+			engineScans.remove(String.valueOf(scan.getId()));
+			final ScanRequest reserved = reservedScans.remove(engineId);
+			if (reserved != null) queuedScansQueue.put(reserved);
+			
+			if (pool.releaseSlot(engine) > 0) {
+				log.info("Scan finished on interrupted engine, waiting on remaining scans: slots={}; engine={}; scan={}", 
+						pool.getOccupiedSlots(engine), engine, scan);
+				return;
+			}
+			
+			try {
+				unRegisterEngine(engineId);
+			} catch (Throwable t) {
+				log.warn("Failed to unregister interrupted engine; engine={}; cause={}; message={}", 
+						engine.getName(), t, t.getMessage());
+			}
+			synchronized (engine) {
+				engine.setScanId(null);
+				engine.setEngineId(null);
+				engine.setState(State.EXPIRING);
+			}
+			activeEngines.remove(engineId);
+			cxEngines.remove(engineId);
+			expiredEnginesQueue.put(engine);
+			log.info("Scan finished, interrupted engine expired: engine={}; scan={}", engine, scan);
+			
+			dispatchBlockedScans();
+		}
+
+		/**
+		 * Reassigns the still-registered engine to the scan that reserved it, or to a blocked 
+		 * or queued scan of the same size, by updating its LOC range in CxManager, skipping 
+		 * the unregister/register round trip.
+		 * 
+		 * @return true if the engine was handed off
+		 */
+		private boolean handOffEngine(EngineSize size, ScanRequest finished, Long engineId, DynamicEngine engine) 
+				throws InterruptedException {
+			final ScanRequest reserved = reservedScans.remove(engineId);
+			final EngineServer cxEngine = activeEngines.get(engineId);
+			if (engine == null || cxEngine == null) {
+				if (reserved != null) queuedScansQueue.put(reserved);
+				return false;
+			}
+			
+			if (reserved == null && !config.isEngineHandoffEnabled()) return false;
+			
+			final ScanRequest scan = reserved != null ? reserved : takeWaitingScan(size);
+			if (scan == null) return false;
+			log.trace("handOffEngine(): engine={}; finished={}; scan={}", engine.getName(), finished, scan);
+			
+			try {
+				synchronized (engine) {
+					cxEngine.setMinLoc(scan.getLoc());
+					cxEngine.setMaxLoc(computeMaxLoc(scan));
+					cxEngine.setBlocked(false);
+					final EngineServer updated = cxClient.updateEngine(cxEngine);
+					
+					engineScans.remove(String.valueOf(finished.getId()));
+					trackEngineScan(scan, updated, engine);
+				}
+			} catch (Throwable t) {
+				log.warn("Engine hand-off failed, releasing engine; engine={}; scan={}; cause={}; message={}", 
+						engine.getName(), scan, t, t.getMessage());
+				// engine is released as usual, the launcher places the scan
+				queuedScansQueue.put(scan);
+				return false;
+			}
 			
-			if (!blockedScansQueueMap.containsKey(size)) return;
+			log.info("Scan finished, engine handed off: engine={}; finishedScan={}; scan={}", 
+					engine, finished.getId(), scan);
+			return true;
+		}
+		
+		/**
+		 * Removes the next blocked scan of the given size, or failing that a queued scan
+		 * not yet picked up by the {@link ScanLauncher}.
+		 * 
+		 * @return the scan, or <code>null</code> if none waiting
+		 */
+		private ScanRequest takeWaitingScan(EngineSize size) {
+			final ScanRequest blocked = blockedScans.poll(size);
+			if (blocked != null) return blocked;
 			
-			final ScanRequest scan = blockedScansQueueMap.get(size).poll();
-			if (scan == null) return;
+			for (ScanRequest queued : queuedScansQueue) {
+				if (size.equals(pool.calcEngineSize(queued)) && queuedScansQueue.remove(queued)) {
+					return queued;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Widens the engine's LOC range back to its engine size and unblocks it, so CxManager
+		 * dispatches the next scan to it; only when <code>preRegisteredEnginesEnabled</code>.
+		 * 
+		 * @return false if the engine is to be unregistered as usual
+		 */
+		private boolean reRegisterEngine(Long engineId, DynamicEngine engine) {
+			if (!config.isPreRegisteredEnginesEnabled()) return false;
+			final EngineServer cxEngine = activeEngines.get(engineId);
+			if (cxEngine == null) return false;
+			log.trace("reRegisterEngine(): engineId={}; {}", engineId, engine);
 			
-			// add scan to the queue
-			queuedScansQueue.put(scan);
+			final EngineSize size = pool.getEngineSize(engine.getSize());
+			try {
+				synchronized (engine) {
+					cxEngine.setMinLoc(computeLoc(size.getMinLOC()));
+					cxEngine.setMaxLoc(computeLoc(size.getMaxLOC()));
+					cxEngine.setBlocked(false);
+					final EngineServer updated = cxClient.updateEngine(cxEngine);
+					
+					engineProvisioner.onScanRemoved(engine);
+					engine.setScanId(null);
+					activeEngines.remove(engineId);
+					preRegisteredEngines.put(engineId, updated);
+					pool.idleEngine(engine);
+				}
+			} catch (Throwable t) {
+				log.warn("Failed to pre-register engine, unregistering; engine={}; cause={}; message={}", 
+						engine.getName(), t, t.getMessage());
+				return false;
+			}
+			return true;
 		}
 
 		private boolean removeBlockedScan(EngineSize size, ScanRequest scan) {
 			log.trace("removeBlockedScan(): size={}; {}", size, scan);
 
-			if (!blockedScansQueueMap.containsKey(size)) return false;
-			
-			return blockedScansQueueMap.get(size).remove(scan);
+			return blockedScans.remove(size, scan);
 		}
 
 		@Retryable(value = { HttpClientErrorException.class }, maxAttempts = 3, backoff = @Backoff(delay = 1000))
@@ -727,10 +1654,239 @@ public class EngineManager implements Runnable {
 		private void stopEngine(DynamicEngine engine) {
 			log.debug("stopEngine(): {}", engine);
 			
+			synchronized (engine) {
+				// CxManager may have assigned a scan to a pre-registered engine since it expired
+				if (!State.EXPIRING.equals(engine.getState())) {
+					log.info("Expired engine is no longer expiring, not stopping; engine={}", engine);
+					return;
+				}
+				if (!unRegisterPreRegisteredEngine(engine)) {
+					pool.idleEngine(engine);
+					return;
+				}
+			}
+			// engines are demoted to a warm tier, or stopped as configured by terminateOnStop
+			final WarmTier tier = interruptedEngines.remove(engine.getName()) 
+					? WarmTier.TERMINATED : pool.selectWarmTier(engine);
+			engine.setWarmTier(tier != null ? tier 
+					: config.isTerminateOnStop() ? WarmTier.TERMINATED : WarmTier.STOPPED);
 			pool.deallocateEngine(engine);
-			engineProvisioner.stop(engine);
+			if (tier == null) {
+				engineProvisioner.stop(engine);
+			} else {
+				engineProvisioner.stop(engine, tier);
+			}
 
-			log.info("Idle engine expired, engine deallocated: engine={}", engine);
+			log.info("Idle engine expired, engine deallocated: warmTier={}; engine={}", engine.getWarmTier(), engine);
+			dispatchBlockedScans();
+		}
+		
+	}
+
+	/**
+	 * Launches idle engines ahead of forecast scan arrivals, so queued scans find a warm engine
+	 * instead of waiting on a cold boot.  Engines are held out of the idle pool until they 
+	 * have launched.  Engines launched for a forecast that does not materialize are reclaimed 
+	 * by the {@link IdleEngineMonitor}.
+	 */
+	public class EnginePrewarmer implements Runnable {
+
+		private final Logger log = LoggerFactory.getLogger(EngineManager.EnginePrewarmer.class);
+		
+		/**
+		 * engines still launching, counted as idle for the forecast
+		 */
+		private final Set<DynamicEngine> launchingEngines = Sets.newConcurrentHashSet();
+
+		@Override
+		public void run() {
+			log.trace("run()");
+
+			try {
+				final DateTime now = DateTime.now();
+				final int lookaheadMins = config.getPrewarmLookaheadMins();
+				pool.getEngineSizes().forEach(size -> prewarm(size, now, lookaheadMins));
+			} catch (Throwable t) {
+				// catch everything so the scheduled task keeps running
+				log.warn("Error occurred in EnginePrewarmer; cause={}; message={}", 
+						t, t.getMessage(), t);
+			}
+		}
+
+		private void prewarm(EngineSize size, DateTime now, int lookaheadMins) {
+			final double expected = arrivalForecaster.forecast(size.getName(), now, lookaheadMins);
+			final long demand = Math.round(expected);
+			final long launching = launchingEngines.stream()
+					.filter(engine -> size.getName().equals(engine.getSize())).count();
+			final long idleCount = pool.getEngineCount(size, State.IDLE) + launching;
+			log.debug("prewarm(): size={}; expected={}; idle={}; launching={}", 
+					size.getName(), expected, idleCount, launching);
+
+			final List<DynamicEngine> engines = Lists.newArrayList();
+			for (long i = idleCount; i < demand; i++) {
+				// held as SCANNING while launching, so no scan is placed on an engine without a url
+				final DynamicEngine engine = pool.allocateEngine(size, State.UNPROVISIONED, State.SCANNING);
+				if (engine == null) {
+					log.debug("No unprovisioned engines available to pre-warm; size={}", size.getName());
+					break;
+				}
+				log.info("Pre-warming engine for forecast demand; size={}; expected={}; engine={}", 
+						size.getName(), expected, engine.getName());
+				engines.add(engine);
+				launchingEngines.add(engine);
+			}
+			if (engines.isEmpty()) return;
+			
+			// engines of one size are launched as a single batch
+			final DateTime launchedOn = DateTime.now();
+			final List<CompletableFuture<DynamicEngine>> futures;
+			try {
+				futures = engineProvisioner.launchAsync(engines, size, false);
+			} catch (Throwable t) {
+				engines.forEach(engine -> onEngineLaunched(engine, launchedOn, t));
+				return;
+			}
+			for (int i = 0; i < engines.size(); i++) {
+				final DynamicEngine engine = engines.get(i);
+				futures.get(i).whenComplete((launched, ex) -> onEngineLaunched(engine, launchedOn, ex));
+			}
+		}
+		
+		private void onEngineLaunched(DynamicEngine engine, DateTime launchedOn, Throwable ex) {
+			launchingEngines.remove(engine);
+			if (ex != null) {
+				final Throwable t = CompletableFutureUtils.unwrap(ex);
+				log.warn("Failed to pre-warm engine; engine={}; cause={}; message={}", 
+						engine.getName(), t, t.getMessage());
+				pool.deallocateEngine(engine);
+				return;
+			}
+			pool.recordResume(engine, new Duration(launchedOn, DateTime.now()));
+			pool.idleEngine(engine);
+			preRegisterEngine(engine);
+			dispatchBlockedScans();
+		}
+
+	}
+
+	private static class SpeculativeLaunch {
+		
+		private final DynamicEngine engine;
+		private final EngineSize size;
+		private final CompletableFuture<DynamicEngine> future;
+		
+		SpeculativeLaunch(DynamicEngine engine, EngineSize size, CompletableFuture<DynamicEngine> future) {
+			this.engine = engine;
+			this.size = size;
+			this.future = future;
+		}
+		
+	}
+
+	/**
+	 * A new engine launch for a queued scan, with its hedged launch if any.  The scan is 
+	 * replaced if it is cancelled while the engine launches.
+	 */
+	static class PendingLaunch {
+		
+		private final DynamicEngine engine;
+		private ScanRequest scan;
+		
+		/**
+		 * engine launches for the scan still running; two once hedged
+		 */
+		private int running = 1;
+		private boolean claimed;
+		private boolean registered;
+		private boolean cancelled;
+		private final List<CompletableFuture<DynamicEngine>> futures = Lists.newArrayList();
+		
+		PendingLaunch(DynamicEngine engine, ScanRequest scan) {
+			this.engine = engine;
+			this.scan = scan;
+		}
+		
+		synchronized ScanRequest getScan() {
+			return scan;
+		}
+		
+		synchronized boolean isPending() {
+			return !claimed && !cancelled && running > 0;
+		}
+		
+		synchronized boolean isCancelled() {
+			return cancelled;
+		}
+		
+		void addFuture(CompletableFuture<DynamicEngine> future) {
+			synchronized (this) {
+				if (!cancelled) {
+					futures.add(future);
+					return;
+				}
+			}
+			future.cancel(true);
+		}
+		
+		/**
+		 * @return true if another launch may be started for the scan 
+		 */
+		synchronized boolean hedge() {
+			if (!isPending()) return false;
+			running++;
+			return true;
+		}
+		
+		/**
+		 * @return the scan to run on the launched engine, or <code>null</code> if another
+		 * 			engine was launched first or the launch was cancelled
+		 */
+		synchronized ScanRequest claim() {
+			running--;
+			if (claimed || cancelled) return null;
+			claimed = true;
+			return scan;
+		}
+		
+		/**
+		 * @return the scan to fail if no launch for it remains, otherwise <code>null</code>
+		 */
+		synchronized ScanRequest fail() {
+			running--;
+			return !claimed && !cancelled && running == 0 ? scan : null;
+		}
+		
+		/**
+		 * @return true if the engine launches for the supplied scan instead
+		 */
+		synchronized boolean reassign(ScanRequest scan) {
+			if (!isPending()) return false;
+			this.scan = scan;
+			return true;
+		}
+		
+		/**
+		 * @return false if the scan was cancelled while its engine registered
+		 */
+		synchronized boolean register() {
+			registered = true;
+			return !cancelled;
+		}
+		
+		/**
+		 * Cancels the engine launches still running.
+		 * 
+		 * @return false if the engine is already registered for the scan
+		 */
+		boolean cancel() {
+			final List<CompletableFuture<DynamicEngine>> running;
+			synchronized (this) {
+				if (registered) return false;
+				cancelled = true;
+				running = Lists.newArrayList(futures);
+			}
+			running.forEach(future -> future.cancel(true));
+			return true;
 		}
 		
 	}
@@ -15,7 +15,6 @@ package com.checkmarx.engine.servers;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 import javax.annotation.PreDestroy;
 
@@ -36,6 +35,7 @@ public class EngineService implements Runnable {
 
 	private final CxConfig config;
 	private final ScanQueueMonitor scanQueueMonitor;
+	private final ScanQueueSource scanQueueSource;
 	private final EngineManager engineManager;
 
 	private final ExecutorService engineManagerExecutor;
@@ -43,9 +43,11 @@ public class EngineService implements Runnable {
 	private final TaskManager taskManager;
 
 	public EngineService(CxEngineApi cxClient, CxConfig config, ScanQueueMonitor scanQueueMonitor, 
-			EngineManager engineManager, EnginePool enginePool, TaskManager taskManager) {
+			ScanQueueSource scanQueueSource, EngineManager engineManager, EnginePool enginePool, 
+			TaskManager taskManager) {
 		this.config = config;
 		this.scanQueueMonitor = scanQueueMonitor;
+		this.scanQueueSource = scanQueueSource;
 		this.engineManager = engineManager;
 		this.engineManagerExecutor = ExecutorServiceUtils.buildSingleThreadExecutorService("eng-service-%d", true);
 		this.scanQueueExecutor = ExecutorServiceUtils.buildScheduledExecutorService("queue-mon-%d", true);
@@ -70,8 +72,7 @@ public class EngineService implements Runnable {
 			taskManager.addTask("EngineManager", engineManagerExecutor.submit(engineManager));
 			
 			log.info("Launching ScanQueueMonitor; pollingInterval={}s", pollingInterval);
-			taskManager.addTask("ScanQueueMonitor", 
-			        scanQueueExecutor.scheduleAtFixedRate(scanQueueMonitor, 0L, pollingInterval, TimeUnit.SECONDS));
+			scanQueueSource.start(scanQueueExecutor, scanQueueMonitor);
 
 		} catch (Throwable t) {
 			log.error("Error occurred while launching Engine services, shutting down; cause={}; message={}", 
@@ -89,6 +90,7 @@ public class EngineService implements Runnable {
 	private void shutdown() {
 		log.info("shutdown()");
 
+		scanQueueSource.stop();
 		taskManager.shutdown();
 		// taskManager will shutdown executors and cancel all tasks
 		//engineManagerExecutor.shutdown();
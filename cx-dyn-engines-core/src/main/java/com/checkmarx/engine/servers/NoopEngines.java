@@ -14,6 +14,7 @@
 package com.checkmarx.engine.servers;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +52,12 @@ public class NoopEngines implements CxEngines {
 		// noop
 	}
 
+	@Override
+	public CompletableFuture<DynamicEngine> launchAsync(DynamicEngine engine, EngineSize size, boolean waitForSpinup) {
+		log.debug("launchAsync() : {}; {}; waitForSpinup={}", engine, size, waitForSpinup);
+		return CompletableFuture.completedFuture(engine);
+	}
+
 	@Override
 	public void stop(DynamicEngine engine) {
 		log.debug("stop() : {}", engine);
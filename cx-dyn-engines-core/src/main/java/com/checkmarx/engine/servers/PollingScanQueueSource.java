@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.servers;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.checkmarx.engine.CxConfig;
+import com.checkmarx.engine.rest.CxEngineApi;
+import com.checkmarx.engine.rest.model.ScanRequest;
+
+/**
+ * Polls the CxSAST scan queue with an adaptive interval.
+ * <br/><br/>
+ * While scans are changing state the queue is polled every <code>queueMinIntervalSecs</code>;
+ * each poll without changes doubles the interval, up to <code>queueIntervalSecs</code>.
+ * 
+ * @author randy@checkmarx.com
+ */
+public class PollingScanQueueSource implements ScanQueueSource {
+
+	private static final Logger log = LoggerFactory.getLogger(PollingScanQueueSource.class);
+
+	private final CxEngineApi cxClient;
+	private final int minIntervalSecs;
+	private final int maxIntervalSecs;
+
+	private ScheduledExecutorService executor;
+	private volatile ScanQueueListener listener;
+	private ScheduledFuture<?> nextPoll;
+	private volatile boolean running;
+	private int intervalSecs;
+
+	public PollingScanQueueSource(CxEngineApi cxClient, CxConfig config) {
+		this.cxClient = cxClient;
+		this.maxIntervalSecs = Math.max(1, config.getQueueIntervalSecs());
+		this.minIntervalSecs = Math.max(1, Math.min(config.getQueueMinIntervalSecs(), maxIntervalSecs));
+		this.intervalSecs = minIntervalSecs;
+	}
+
+	@Override
+	public synchronized void start(ScheduledExecutorService executor, ScanQueueListener listener) {
+		log.info("start(): minInterval={}s; maxInterval={}s", minIntervalSecs, maxIntervalSecs);
+		
+		this.executor = executor;
+		this.listener = listener;
+		this.running = true;
+		schedule(0);
+	}
+
+	@Override
+	public synchronized void stop() {
+		log.info("stop()");
+		
+		running = false;
+		if (nextPoll != null) nextPoll.cancel(false);
+	}
+
+	/**
+	 * @return the interval in seconds until the next poll
+	 */
+	public int getIntervalSecs() {
+		return intervalSecs;
+	}
+
+	private void poll() {
+		log.trace("poll()");
+
+		try {
+			final List<ScanRequest> queue = cxClient.getScansQueue();
+			log.debug("action=getScansQueue; scanCount={}", queue.size());
+
+			final boolean changed = listener.onScansQueue(queue);
+			intervalSecs = calcNextInterval(changed, intervalSecs);
+		} catch (Throwable t) {
+			log.error("Error occurred while polling scan queue, cause={}; message={}",
+					t, t.getMessage(), t);
+			//TODO: determine if unexpected error should terminate polling; for now swallow
+		} finally {
+			schedule(intervalSecs);
+		}
+	}
+
+	/**
+	 * Tightens the polling interval when the queue changed, otherwise relaxes it.
+	 * 
+	 * @param changed true if the last poll found scan state changes 
+	 * @param currentSecs the current polling interval
+	 * @return the next polling interval in seconds
+	 */
+	protected int calcNextInterval(boolean changed, int currentSecs) {
+		if (changed) return minIntervalSecs;
+		return Math.min(maxIntervalSecs, currentSecs * 2);
+	}
+
+	private synchronized void schedule(int delaySecs) {
+		if (!running) return;
+		
+		log.trace("schedule(): delay={}s", delaySecs);
+		nextPoll = executor.schedule(this::poll, delaySecs, TimeUnit.SECONDS);
+	}
+
+}
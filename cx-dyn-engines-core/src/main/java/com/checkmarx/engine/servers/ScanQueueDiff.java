@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.servers;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.checkmarx.engine.rest.model.ScanRequest;
+import com.checkmarx.engine.utils.ScanUtils;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Tracks the last seen state of each scan in the CxSAST scan queue and reports
+ * only the scans whose state changed, keyed by Scan.Id.
+ * <br/><br/>
+ * A scan is considered changed when its status, stage details (e.g. postponed), 
+ * LOC or assigned engine differ from the previous update.  Scans missing from a 
+ * queue snapshot are forgotten.
+ * 
+ * @author randy@checkmarx.com
+ */
+public class ScanQueueDiff {
+
+	private static final Logger log = LoggerFactory.getLogger(ScanQueueDiff.class);
+
+	/**
+	 * map of last seen scan requests; key=Scan.Id
+	 */
+	private final Map<Long, ScanRequest> scans = Maps.newHashMap();
+
+	/**
+	 * Compares a full queue snapshot to the previous snapshot.
+	 * 
+	 * @param queue current scan queue
+	 * @return the new and changed scans, in queue order
+	 */
+	public synchronized List<ScanRequest> diff(List<ScanRequest> queue) {
+		log.trace("diff(): scanCount={}", queue.size());
+
+		final List<ScanRequest> changed = queue.stream()
+				.filter(scan -> update(scan))
+				.collect(Collectors.toCollection(Lists::newArrayList));
+
+		final Set<Long> ids = queue.stream().map(ScanRequest::getId).collect(Collectors.toSet());
+		scans.keySet().retainAll(ids);
+
+		// order changes before processing to avoid ScansManager queue bug
+		ScanUtils.sortQueue(changed);
+		log.debug("action=diff; scanCount={}; changedCount={}", queue.size(), changed.size());
+		return changed;
+	}
+
+	/**
+	 * Records a single scan update.
+	 * 
+	 * @param scan updated scan
+	 * @return true if the scan is new or its state changed
+	 */
+	public synchronized boolean update(ScanRequest scan) {
+		final ScanRequest previous = scans.put(scan.getId(), scan);
+		return previous == null || isChanged(previous, scan);
+	}
+
+	/**
+	 * @return the Scan.Ids currently tracked
+	 */
+	public synchronized ImmutableSet<Long> getScanIds() {
+		return ImmutableSet.copyOf(scans.keySet());
+	}
+
+	static boolean isChanged(ScanRequest previous, ScanRequest current) {
+		return !Objects.equals(previous.getStatus(), current.getStatus())
+				|| !Objects.equals(previous.getStageDetails(), current.getStageDetails())
+				|| !Objects.equals(previous.getLoc(), current.getLoc())
+				|| !Objects.equals(previous.getEngineId(), current.getEngineId());
+	}
+
+}
@@ -15,10 +15,17 @@ package com.checkmarx.engine.servers;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import com.checkmarx.engine.domain.EnginePool;
+import com.checkmarx.engine.domain.EngineSize;
+import com.checkmarx.engine.domain.ScanArrivalForecaster;
+import com.checkmarx.engine.domain.ScanDurationModel;
+import com.checkmarx.engine.domain.ScanFinishEstimator;
 
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -28,25 +35,68 @@ import org.slf4j.LoggerFactory;
 import com.checkmarx.engine.CxConfig;
 import com.checkmarx.engine.rest.CxEngineApi;
 import com.checkmarx.engine.rest.model.ScanRequest;
+import com.checkmarx.engine.rest.model.ScanRequest.ScanStatus;
+import com.checkmarx.engine.servers.ScanQueueSource.ScanQueueListener;
 import com.checkmarx.engine.utils.ScanUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
-public class ScanQueueMonitor implements Runnable {
+public class ScanQueueMonitor implements ScanQueueListener {
 
 	private static final Logger log = LoggerFactory.getLogger(ScanQueueMonitor.class);
 
+	private static final int MAX_PROJECT_LOCS = 10000;
+	private static final int MAX_ARRIVED_SCANS = 10000;
+	private static final int ARRIVED_SCAN_EXPIRY_HOURS = 24;
+
 	private final BlockingQueue<ScanRequest> scanQueued;
 	//private final BlockingQueue<ScanRequest> scanWorking;
 	private final BlockingQueue<ScanRequest> scanFinished;
 	private final EnginePool enginePool;
-
+	private final ScanArrivalForecaster arrivalForecaster;
+	private final ScanFinishEstimator finishEstimator;
+	private final ScanDurationModel durationModel;
 
 	/**
 	 * Map of active scan requests by Scan.Id
 	 */
 	private final Map<Long,ScanRequest> activeScanMap = Maps.newHashMap();
 	private final List<Long> workingScans = Lists.newArrayList();
+	/**
+	 * Cx engine ids of working scans, by Scan.Id
+	 */
+	private final Map<Long,Long> workingEngines = Maps.newHashMap();
+	/**
+	 * Occupied scan slots of working engines, by cx engine id
+	 */
+	private final Map<Long,Integer> engineSlots = Maps.newHashMap();
+	/**
+	 * Scan.Ids already recorded as arrivals for demand forecasting; scans whose completion 
+	 * is never seen expire
+	 */
+	private final Cache<Long,Boolean> arrivedScans = CacheBuilder.newBuilder()
+			.maximumSize(MAX_ARRIVED_SCANS)
+			.expireAfterWrite(ARRIVED_SCAN_EXPIRY_HOURS, TimeUnit.HOURS)
+			.build();
+	/**
+	 * Queued scans waiting on the concurrent scan limit or a re-queue, by Scan.Id
+	 */
+	private final Map<Long,ScanRequest> deferredScans = Maps.newLinkedHashMap();
+	/**
+	 * Preparing scans an engine was launched for, by Scan.Id
+	 */
+	private final Map<Long,ScanRequest> preparingScans = Maps.newHashMap();
+	/**
+	 * Last known LOC by Project.Id
+	 */
+	private final Cache<Long,Integer> projectLocs = CacheBuilder.newBuilder()
+			.maximumSize(MAX_PROJECT_LOCS)
+			.build();
+	private volatile PreparingScanListener preparingScanListener;
+	private volatile DispatchedScanListener dispatchedScanListener;
+	private final ScanQueueDiff queueDiff = new ScanQueueDiff();
 	private final CxEngineApi cxClient;
 	private final int concurrentScanLimit;
 	private final AtomicInteger concurrentScans = new AtomicInteger(0);
@@ -56,6 +106,9 @@ public class ScanQueueMonitor implements Runnable {
 			//BlockingQueue<ScanRequest> scanWorking,
 			BlockingQueue<ScanRequest> scanFinished,
 			EnginePool enginePool,
+			ScanArrivalForecaster arrivalForecaster,
+			ScanFinishEstimator finishEstimator,
+			ScanDurationModel durationModel,
 			CxEngineApi cxClient,
 			CxConfig config) {
 		log.info("ctor(): {}", config);
@@ -64,69 +117,154 @@ public class ScanQueueMonitor implements Runnable {
 		//this.scanWorking = scanWorking;
 		this.scanFinished = scanFinished;
 		this.enginePool = enginePool;
+		this.arrivalForecaster = arrivalForecaster;
+		this.finishEstimator = finishEstimator;
+		this.durationModel = durationModel;
 		this.cxClient = cxClient;
 		this.concurrentScanLimit = config.getConcurrentScanLimit();
 	}
 
 	@Override
-	public void run() {
-		log.trace("run()");
+	public synchronized boolean onScansQueue(List<ScanRequest> queue) {
+		log.trace("onScansQueue(): scanCount={}", queue.size());
 
-		try {
-			final List<ScanRequest> queue = cxClient.getScansQueue();
-			log.debug("action=getScansQueue; scanCount={}", queue.size());
-
-			// order queue before processing to avoid ScansManager queue bug
-			ScanUtils.sortQueue(queue);
-			queue.forEach((scan) -> processScan(scan));
-
-			//TODO: check for missing scans and treat as finished
-		} catch (Throwable t) {
-			log.error("Error occurred while polling scan queue, cause={}; message={}",
-					t, t.getMessage(), t);
-			//TODO: determine if unexpected error should terminate monitor; for now swallow
-		}
+		recordQueue(queue);
+		final List<ScanRequest> changed = queueDiff.diff(queue);
+		final List<ScanRequest> deferred = refreshDeferredScans(queue);
+		
+		// deferred scans are older, so process before new changes
+		deferred.forEach((scan) -> tryProcessScan(scan));
+		changed.stream()
+				.filter((scan) -> !deferred.contains(scan))
+				.forEach((scan) -> tryProcessScan(scan));
+
+		//TODO: check for missing scans and treat as finished
+		return !changed.isEmpty();
+	}
 
+	/**
+	 * Feeds scan progress to the finish estimator and records project LOC; progress changes
+	 * alone are not reported by the queue diff.  Preparing scans missing from the queue are
+	 * abandoned.
+	 */
+	private void recordQueue(List<ScanRequest> queue) {
+		final DateTime now = DateTime.now();
+		queue.forEach((scan) -> {
+			finishEstimator.recordProgress(scan, now);
+			recordProjectLoc(scan);
+		});
+		final Set<Long> ids = queue.stream().map(ScanRequest::getId).collect(Collectors.toSet());
+		finishEstimator.retainScans(ids);
+		
+		Lists.newArrayList(preparingScans.keySet()).stream()
+				.filter((scanId) -> !ids.contains(scanId))
+				.forEach((scanId) -> abandonPreparing(scanId));
+	}
+
+	private void recordProjectLoc(ScanRequest scan) {
+		final Integer loc = scan.getLoc();
+		if (loc == null || loc <= 0 || scan.getProject() == null) return;
+		
+		projectLocs.put(scan.getProject().getId(), loc);
+	}
+
+	/**
+	 * Sets the listener notified of preparing scans, or <code>null</code> to stop notifications.
+	 */
+	public void setPreparingScanListener(PreparingScanListener listener) {
+		this.preparingScanListener = listener;
+	}
+
+	/**
+	 * Sets the listener notified of scans starting work, or <code>null</code> to stop notifications.
+	 */
+	public void setDispatchedScanListener(DispatchedScanListener listener) {
+		this.dispatchedScanListener = listener;
+	}
+
+	/**
+	 * Replaces the deferred scans with their current queue entries; scans no 
+	 * longer in the queue are dropped.
+	 * 
+	 * @return the deferred scans, in queue order
+	 */
+	private List<ScanRequest> refreshDeferredScans(List<ScanRequest> queue) {
+		if (deferredScans.isEmpty()) return Lists.newArrayList();
+		
+		final List<ScanRequest> deferred = Lists.newArrayList();
+		queue.forEach((scan) -> {
+			if (deferredScans.containsKey(scan.getId())) deferred.add(scan);
+		});
+		deferredScans.clear();
+		ScanUtils.sortQueue(deferred);
+		return deferred;
 	}
 	
-	public void onPreExistingScan(ScanRequest scan) {
+	public synchronized void onPreExistingScan(ScanRequest scan) {
         log.debug("onPreExistingScan(): {}", scan);
         concurrentScans.incrementAndGet();
         activeScanMap.put(scan.getId(), scan);
 	}
 	
-	public void onLaunchFailed(ScanRequest scan) {
-        log.debug("onPreExistingScan(): {}", scan);
+	public synchronized void onLaunchFailed(ScanRequest scan) {
+        log.debug("onLaunchFailed(): {}", scan);
         
         final long scanId = scan.getId();
         if (activeScanMap.containsKey(scanId)) {
             activeScanMap.remove(scanId);
+            // retry on next queue cycle
+            deferredScans.put(scanId, scan);
         }
 	}
 
+	/**
+	 * Processes a scan, deferring it to the next queue cycle if processing fails;
+	 * the queue diff has already recorded the scan, so it would not be reported again.
+	 */
+	private void tryProcessScan(ScanRequest scan) {
+		try {
+			processScan(scan);
+		} catch (RuntimeException e) {
+			log.warn("Failed to process scan, retrying on next queue cycle; scanId={}; cause={}; message={}", 
+					scan.getId(), e, e.getMessage());
+			deferredScans.put(scan.getId(), scan);
+		}
+	}
+
 	private void processScan(ScanRequest scan) {
 		log.debug("processScan(): {}", scan.toString(true));
 
 		final long scanId = scan.getId();
+		deferredScans.remove(scanId);
+		if (isPreparing(scan)) {
+			onPreparing(scanId, scan);
+			return;
+		}
+		final EngineSize size = enginePool.calcEngineSize(scan);
+		if (preparingScans.containsKey(scanId) && (size == null || isCompleted(scan))) {
+			abandonPreparing(scanId);
+		}
 		//if the scan loc is zero, it is not ready to determine if applicable to Dynamic Engines
 		//if the calcEngineSize ends up with null, there is no applicable engine, therefore Dynamic Engines ignores
 		//TODO replace this block when static engines are managed by Dynamic Engines
-		if(enginePool.calcEngineSize(scan.getLoc()) == null && scan.getLoc() >= 0){
+		if(size == null && scan.getLoc() >= 0){
 			log.info("No engine pool for scan size, ignoring; scanId={}, loc={}", scan.getId(), scan.getLoc());
 			return;
 		}
 		switch (scan.getStatus()) {
 			case Queued :
+				recordArrival(scanId, size);
 				onQueued(scanId, scan);
 				break;
 			case Scanning :
-				onScanning(scanId, scan);
+				onScanning(scanId, scan, size);
 				break;
 			case Canceled :
 			case Deleted :
 			case Failed :
 			case Finished :
-				onCompleted(scanId, scan);
+				arrivedScans.invalidate(scanId);
+				onCompleted(scanId, scan, size);
 				break;
 			default:
 				onOther(scan);
@@ -134,6 +272,67 @@ public class ScanQueueMonitor implements Runnable {
 		}
 	}
 
+	private boolean isPreparing(ScanRequest scan) {
+		switch (scan.getStatus()) {
+			case New :
+			case PreScan :
+			case SourcePullingAndDeployment :
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private boolean isCompleted(ScanRequest scan) {
+		switch (scan.getStatus()) {
+			case Canceled :
+			case Deleted :
+			case Failed :
+			case Finished :
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Guesses the engine size of a scan still pulling source from its project's last known
+	 * LOC, so an engine can be launched before the scan is queued.
+	 */
+	private void onPreparing(final long scanId, ScanRequest scan) {
+		log.trace("onPreparing(): {}", scan);
+
+		final PreparingScanListener listener = preparingScanListener;
+		if (listener == null || preparingScans.containsKey(scanId) || scan.getProject() == null) return;
+		
+		final Integer loc = projectLocs.getIfPresent(scan.getProject().getId());
+		final EngineSize size = loc == null ? null : enginePool.calcEngineSize(loc);
+		if (size == null) {
+			log.debug("No LOC history for preparing scan, skipping; scanId={}; projectId={}", 
+					scanId, scan.getProject().getId());
+			return;
+		}
+		
+		preparingScans.put(scanId, scan);
+		log.info("Scan preparing, expected size={}; lastLoc={}; {}", size.getName(), loc, scan);
+		listener.onScanPreparing(scan, size);
+	}
+
+	private void abandonPreparing(long scanId) {
+		final ScanRequest scan = preparingScans.remove(scanId);
+		final PreparingScanListener listener = preparingScanListener;
+		if (scan == null || listener == null) return;
+		
+		log.debug("Preparing scan will not be queued; scanId={}", scanId);
+		listener.onScanAbandoned(scan);
+	}
+
+	private void recordArrival(final long scanId, EngineSize size) {
+		if (size == null || arrivedScans.asMap().putIfAbsent(scanId, Boolean.TRUE) != null) return;
+		
+		arrivalForecaster.recordArrival(size.getName(), DateTime.now());
+	}
+
 	private void onQueued(final long scanId, ScanRequest scan) {
 		log.trace("onQueued(): {}", scan);
 
@@ -149,6 +348,7 @@ public class ScanQueueMonitor implements Runnable {
 		// skip if at concurrent scan limit
 		if (concurrentScans.get() >= concurrentScanLimit) {
 			log.debug("At concurrent scan limit, defering scan...");
+			deferredScans.put(scanId, scan);
 			return;
 		}
 
@@ -160,18 +360,36 @@ public class ScanQueueMonitor implements Runnable {
 				scan, count, concurrentScanLimit);
 	}
 
-	private void onScanning(final long scanId, ScanRequest scan) {
+	private void onScanning(final long scanId, ScanRequest scan, EngineSize size) {
 		log.trace("onScanning(): {}", scan);
 
+		// CxManager may assign a scan deferred by the concurrent scan limit to a pre-registered engine;
+		// the scan is already running, so it is counted even when over the limit
+		if (!workingScans.contains(scanId) && isDispatched(scan, size) && !activeScanMap.containsKey(scanId)) {
+			log.info("Deferred scan dispatched to pre-registered engine; {}", scan);
+			activeScanMap.put(scanId, scan);
+		}
+
 		// only process working scans once, so we add to workingScans after processing
 		if (activeScanMap.containsKey(scanId) && !workingScans.contains(scanId)) {
             //FIXME: move block engine to EngineManager by posting to a queue
             //scanWorking.add(scan);
             final long engineId = scan.getEngineId();
-            final int count = concurrentScans.incrementAndGet();
-            log.info("Scan is working, blocking engine; scanId={}; engineId={}; concurrentCount={}; concurrentLimit={}", 
-                    scanId, engineId, count, concurrentScanLimit);
-            cxClient.blockEngine(engineId);
+            final int count = concurrentScans.get() + 1;
+            final int slots = engineSlots.getOrDefault(engineId, 0) + 1;
+            final int capacity = size == null ? 1 : enginePool.getSlotCapacity(size);
+            // block before recording the scan as working, so a failed block is retried
+            if (slots >= capacity) {
+                log.info("Scan is working, blocking engine; scanId={}; engineId={}; slots={}; concurrentCount={}; concurrentLimit={}", 
+                        scanId, engineId, slots, count, concurrentScanLimit);
+                cxClient.blockEngine(engineId);
+            } else {
+                log.info("Scan is working, engine has free slots; scanId={}; engineId={}; slots={}; capacity={}; concurrentCount={}; concurrentLimit={}", 
+                        scanId, engineId, slots, capacity, count, concurrentScanLimit);
+            }
+
+            concurrentScans.incrementAndGet();
+            occupySlot(scanId, engineId);
 
             // update active scan
 			activeScanMap.put(scanId, scan);
@@ -179,6 +397,13 @@ public class ScanQueueMonitor implements Runnable {
 		}
 	}
 
+	private boolean isDispatched(ScanRequest scan, EngineSize size) {
+		final DispatchedScanListener listener = dispatchedScanListener;
+		if (listener == null || size == null || scan.getEngineId() == null) return false;
+		
+		return listener.onScanDispatched(scan, size);
+	}
+
 	private void onPostponed(final long scanId, ScanRequest scan) {
 		log.trace("onPostponed(): {}", scan);
 		
@@ -191,9 +416,11 @@ public class ScanQueueMonitor implements Runnable {
 		log.debug("Working scan postponed, adding back to queue and completing; id={}", scanId);
 
 		final int count = concurrentScans.decrementAndGet();
+		releaseSlot(scanId);
 
-		// remove from activeScan map so scan will be re-queued on next queue cycle
+		// remove from activeScan map and defer so scan will be re-queued on next queue cycle
 		activeScanMap.remove(scanId);
+		deferredScans.put(scanId, scan);
 		// treat scan as finished so engine will be released
 		workingScans.remove(scanId);
 		scanFinished.add(scan);
@@ -202,7 +429,7 @@ public class ScanQueueMonitor implements Runnable {
 				scan, count, concurrentScanLimit);
 	}
 
-	private void onCompleted(final long scanId, ScanRequest scan) {
+	private void onCompleted(final long scanId, ScanRequest scan, EngineSize size) {
 		log.trace("onCompleted(): {}", scan);
 
         // FIXME-rjg: if EngineManager.ScanFinisher fails to unregister engine, 
@@ -212,12 +439,42 @@ public class ScanQueueMonitor implements Runnable {
 		}
 
 		final int count = concurrentScans.decrementAndGet();
+		releaseSlot(scanId);
 
 		log.debug("Scan complete, adding to scanFinished queue; id={}", scanId);
 		workingScans.remove(scanId);
 		scanFinished.add(scan);
 		log.info("Scan finished: scanTime={}s; {}; concurrentScans={}", 
 		        calcScanTime(scan), scan, count);
+		recordDuration(scan, size);
+	}
+
+	/**
+	 * Feeds the engine time of a successfully finished scan to the duration model.
+	 */
+	private void recordDuration(ScanRequest scan, EngineSize size) {
+		if (!ScanStatus.Finished.equals(scan.getStatus()) || scan.getEngineStartedOn() == null) return;
+		
+		final DateTime completedOn = scan.getCompletedOn() == null ? DateTime.now() : scan.getCompletedOn();
+		final Duration engineTime = new Duration(scan.getEngineStartedOn(), completedOn);
+		durationModel.recordScan(scan, size == null ? null : size.getName(), engineTime);
+	}
+
+	private void occupySlot(long scanId, long engineId) {
+		workingEngines.put(scanId, engineId);
+		engineSlots.put(engineId, engineSlots.getOrDefault(engineId, 0) + 1);
+	}
+	
+	private void releaseSlot(long scanId) {
+		final Long engineId = workingEngines.remove(scanId);
+		if (engineId == null) return;
+		
+		final int slots = engineSlots.getOrDefault(engineId, 0) - 1;
+		if (slots > 0) {
+			engineSlots.put(engineId, slots);
+		} else {
+			engineSlots.remove(engineId);
+		}
 	}
 
 	private long calcScanTime(ScanRequest scan) {
@@ -230,4 +487,45 @@ public class ScanQueueMonitor implements Runnable {
 		// do nothing
 	}
 
+	/**
+	 * Receives scans that are still preparing (New, PreScan or SourcePullingAndDeployment).
+	 */
+	public interface PreparingScanListener {
+		
+		/**
+		 * Called once when a scan starts preparing.
+		 * 
+		 * @param scan preparing scan
+		 * @param expectedSize engine size guessed from the project's last known LOC
+		 */
+		void onScanPreparing(ScanRequest scan, EngineSize expectedSize);
+		
+		/**
+		 * Called when a preparing scan completes, leaves the queue or has no engine size; 
+		 * also called for scans that were since queued, which the listener may ignore.
+		 * 
+		 * @param scan abandoned scan
+		 */
+		void onScanAbandoned(ScanRequest scan);
+		
+	}
+
+	/**
+	 * Receives scans that start working on an engine.
+	 */
+	public interface DispatchedScanListener {
+		
+		/**
+		 * Called when a scan starts working on an engine; scans on engines the listener
+		 * does not manage may be reported more than once.
+		 * 
+		 * @param scan working scan
+		 * @param size engine size of the scan
+		 * @return true if CxManager assigned the scan to a pre-registered engine, 
+		 * 			without the engine being registered for the scan
+		 */
+		boolean onScanDispatched(ScanRequest scan, EngineSize size);
+		
+	}
+
 }
\ No newline at end of file
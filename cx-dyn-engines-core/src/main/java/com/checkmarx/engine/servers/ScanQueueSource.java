@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.servers;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+import com.checkmarx.engine.rest.model.ScanRequest;
+
+/**
+ * Supplies CxSAST scan queue updates to a {@link ScanQueueListener}.
+ * 
+ * @author randy@checkmarx.com
+ */
+public interface ScanQueueSource {
+
+	/**
+	 * Starts delivering scan queue updates to the supplied listener.
+	 * 
+	 * @param executor used to schedule background work, e.g. polling
+	 * @param listener to receive scan queue updates
+	 */
+	void start(ScheduledExecutorService executor, ScanQueueListener listener);
+	
+	/**
+	 * Stops delivering scan queue updates.
+	 */
+	void stop();
+
+	/**
+	 * Receives scan queue updates from a {@link ScanQueueSource}.
+	 */
+	public interface ScanQueueListener {
+		
+		/**
+		 * Called with a full snapshot of the scan queue.
+		 * 
+		 * @param queue current scan queue
+		 * @return true if any scan changed state since the previous update
+		 */
+		boolean onScansQueue(List<ScanRequest> queue);
+	}
+
+}
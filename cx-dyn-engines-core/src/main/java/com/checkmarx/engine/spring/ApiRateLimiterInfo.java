@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.spring;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.info.Info.Builder;
+import org.springframework.boot.actuate.info.InfoContributor;
+import org.springframework.stereotype.Component;
+
+import com.checkmarx.engine.utils.ApiRateLimiter;
+
+/**
+ * Publishes the current request rate, throttle count and queueing delay of each cloud 
+ * provider API rate limiter on the actuator info endpoint.
+ */
+@Component
+public class ApiRateLimiterInfo implements InfoContributor {
+    
+    private final ObjectProvider<ApiRateLimiter> rateLimiters;
+
+    public ApiRateLimiterInfo(ObjectProvider<ApiRateLimiter> rateLimiters) {
+        this.rateLimiters = rateLimiters;
+    }
+
+    @Override
+    public void contribute(Builder builder) {
+        final Map<String, Object> stats = rateLimiters.orderedStream()
+                .collect(Collectors.toMap(ApiRateLimiter::getName, ApiRateLimiter::getStats));
+        if (stats.isEmpty()) return;
+        
+        builder.withDetail("cxCloudApi", stats);
+    }
+
+}
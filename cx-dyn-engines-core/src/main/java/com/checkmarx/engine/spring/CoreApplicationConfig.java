@@ -14,6 +14,7 @@
 package com.checkmarx.engine.spring;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 import com.checkmarx.engine.rest.Notification;
 import org.slf4j.Logger;
@@ -26,11 +27,17 @@ import com.checkmarx.engine.domain.DefaultEnginePoolBuilder;
 import com.checkmarx.engine.domain.EnginePool;
 import com.checkmarx.engine.domain.EnginePool.EnginePoolEntry;
 import com.checkmarx.engine.domain.EnginePoolConfig;
+import com.checkmarx.engine.domain.EngineSize;
+import com.checkmarx.engine.domain.ScanArrivalForecaster;
+import com.checkmarx.engine.domain.ScanDurationModel;
+import com.checkmarx.engine.domain.ScanFinishEstimator;
 import com.checkmarx.engine.domain.ScanQueue;
 import com.checkmarx.engine.rest.CxEngineApi;
 import com.checkmarx.engine.servers.CxEngines;
 import com.checkmarx.engine.servers.EngineManager;
+import com.checkmarx.engine.servers.PollingScanQueueSource;
 import com.checkmarx.engine.servers.ScanQueueMonitor;
+import com.checkmarx.engine.servers.ScanQueueSource;
 import com.checkmarx.engine.utils.TaskManager;
 import com.fasterxml.jackson.datatype.joda.JodaModule;
 
@@ -76,14 +83,44 @@ public class CoreApplicationConfig {
 		return builder.build();
 	}
 	
+	@Bean
+	public ScanArrivalForecaster scanArrivalForecaster(
+			CxConfig config,
+			EnginePool enginePool) {
+		final List<String> sizes = enginePool.getEngineSizes().stream()
+				.map(EngineSize::getName).collect(Collectors.toList());
+		return new ScanArrivalForecaster(sizes, config.getPrewarmSmoothingFactor());
+	}
+	
+	@Bean
+	public ScanFinishEstimator scanFinishEstimator() {
+		return new ScanFinishEstimator(ScanFinishEstimator.DEFAULT_SMOOTHING_FACTOR);
+	}
+	
+	@Bean
+	public ScanDurationModel scanDurationModel() {
+		return new ScanDurationModel(ScanDurationModel.DEFAULT_MAX_PROJECTS, ScanDurationModel.DEFAULT_SMOOTHING_FACTOR);
+	}
+	
+    @Bean
+    public ScanQueueSource scanQueueSource(
+            CxConfig config,
+            CxEngineApi cxClient) {
+        return new PollingScanQueueSource(cxClient, config);
+    }
+    
     @Bean
     public ScanQueueMonitor queueMonitor(
             CxConfig config,
             CxEngineApi cxClient,
             EnginePool enginePool,
+            ScanArrivalForecaster arrivalForecaster,
+            ScanFinishEstimator finishEstimator,
+            ScanDurationModel durationModel,
             ScanQueue scansQueued, 
             ScanQueue scansFinished) {
-        return new ScanQueueMonitor(scansQueued.getQueue(), scansFinished.getQueue(), enginePool, cxClient, config);
+        return new ScanQueueMonitor(scansQueued.getQueue(), scansFinished.getQueue(), enginePool, 
+                arrivalForecaster, finishEstimator, durationModel, cxClient, config);
     }
     
 	@Bean
@@ -92,13 +129,17 @@ public class CoreApplicationConfig {
 			EnginePool enginePool,
 			CxEngineApi cxClient,
 			CxEngines engineProvisioner,
+			ScanArrivalForecaster arrivalForecaster,
+			ScanFinishEstimator finishEstimator,
+			ScanDurationModel durationModel,
 			TaskManager taskManager,
 			ScanQueueMonitor scanQueueMonitor,
 			ScanQueue scansQueued,
 			ScanQueue scansFinished,
 			Notification notify) {
 		
-		return new EngineManager(config, enginePool, cxClient, engineProvisioner, taskManager, 
+		return new EngineManager(config, enginePool, cxClient, engineProvisioner, arrivalForecaster, finishEstimator, durationModel, 
+				taskManager, 
 		        scanQueueMonitor, scansQueued.getQueue(), scansFinished.getQueue(), notify);
 	}
 	
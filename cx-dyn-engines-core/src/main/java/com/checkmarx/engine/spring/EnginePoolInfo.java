@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.spring;
+
+import org.springframework.boot.actuate.info.Info.Builder;
+import org.springframework.boot.actuate.info.InfoContributor;
+import org.springframework.stereotype.Component;
+
+import com.checkmarx.engine.domain.EnginePool;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Publishes engine pool allocation counters, warm tier resume times and vCPU quota headroom 
+ * on the actuator info endpoint.
+ * 
+ * @author randy@checkmarx.com
+ */
+@Component
+public class EnginePoolInfo implements InfoContributor {
+    
+    private final EnginePool pool;
+
+    public EnginePoolInfo(EnginePool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void contribute(Builder builder) {
+        final int quota = pool.getVcpuQuota();
+        builder.withDetail("cxEnginePool", ImmutableMap.of(
+                "borrowCounts", pool.getBorrowCounts(),
+                "resumeSeconds", pool.getResumeSeconds(),
+                "vcpuQuota", ImmutableMap.of(
+                        "quota", quota,
+                        "inUse", pool.getVcpusInUse(),
+                        "headroom", quota > 0 ? pool.getVcpuHeadroom() : -1,
+                        "deniedCount", pool.getQuotaDeniedCount())));
+    }
+
+}
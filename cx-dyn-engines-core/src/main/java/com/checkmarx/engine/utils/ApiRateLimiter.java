@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.utils;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Token bucket limiting the request rate to a cloud provider API, shared by every thread 
+ * calling the provider.  Waiting callers are admitted in {@link Priority} order, so engine 
+ * launches are not held up behind tag updates.
+ * <br/><br/>
+ * The rate adapts to throttling: a throttled response halves the rate and pauses all callers 
+ * for an exponential backoff with jitter; each successful response restores a tenth of the 
+ * configured rate.
+ */
+public class ApiRateLimiter {
+	
+	private static final Logger log = LoggerFactory.getLogger(ApiRateLimiter.class);
+	
+	public static final long INITIAL_BACKOFF_MILLIS = 1000;
+	public static final long MAX_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(60);
+	
+	private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final long MIN_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final int MIN_RATE_DIVISOR = 16;
+	
+	/**
+	 * Request priority classes, highest first
+	 */
+	public enum Priority {
+		/** engine launches and starts */
+		LAUNCH,
+		/** describes, lists, stops and terminates */
+		DEFAULT,
+		/** tag updates */
+		TAG
+	}
+	
+	/**
+	 * A provider API request returning a result.
+	 */
+	@FunctionalInterface
+	public interface ApiCall<T, E extends Exception> {
+		T call() throws E;
+	}
+	
+	/**
+	 * A provider API request without a result.
+	 */
+	@FunctionalInterface
+	public interface ApiTask<E extends Exception> {
+		void run() throws E;
+	}
+	
+	private final String name;
+	private final double maxRate;
+	private final double minRate;
+	private final int burst;
+	private final long initialBackoffMillis;
+	private final Predicate<Throwable> isThrottled;
+	
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+	
+	// guarded by lock
+	private double rate;
+	private double tokens;
+	private long refilledNanos;
+	private long pausedUntilNanos;
+	private int consecutiveThrottles;
+	private final int[] waiting = new int[Priority.values().length];
+	
+	private final AtomicLong throttledCount = new AtomicLong();
+	
+	/**
+	 * queueing delay of admitted requests; key=priority
+	 */
+	private final Map<Priority, QueueStats> queueStats = Maps.newEnumMap(Priority.class);
+	
+	/**
+	 * @param name of the provider API, for logging and metrics
+	 * @param requestsPerSecond sustained request rate
+	 * @param burst requests admitted at once after an idle period
+	 * @param isThrottled true if a request failed because the provider throttled it 
+	 */
+	public ApiRateLimiter(String name, double requestsPerSecond, int burst, Predicate<Throwable> isThrottled) {
+		this(name, requestsPerSecond, burst, isThrottled, INITIAL_BACKOFF_MILLIS);
+	}
+	
+	ApiRateLimiter(String name, double requestsPerSecond, int burst, Predicate<Throwable> isThrottled, 
+			long initialBackoffMillis) {
+		if (requestsPerSecond <= 0) 
+			throw new IllegalArgumentException("API request rate must be greater than 0");
+		if (burst < 1) 
+			throw new IllegalArgumentException("API request burst must be at least 1");
+		
+		this.name = name;
+		this.maxRate = requestsPerSecond;
+		this.minRate = requestsPerSecond / MIN_RATE_DIVISOR;
+		this.burst = burst;
+		this.isThrottled = isThrottled;
+		this.initialBackoffMillis = initialBackoffMillis;
+		this.rate = requestsPerSecond;
+		this.tokens = burst;
+		this.refilledNanos = System.nanoTime();
+		for (Priority priority : Priority.values()) {
+			queueStats.put(priority, new QueueStats());
+		}
+		
+		log.info("ctor(): {}", this);
+	}
+	
+	/**
+	 * Waits for a request permit, then runs the request, backing off if the provider throttles it.
+	 * 
+	 * @throws CancellationException if interrupted while waiting for a permit
+	 */
+	public <T, E extends Exception> T call(Priority priority, ApiCall<T, E> call) throws E {
+		acquire(priority);
+		try {
+			final T result = call.call();
+			onSuccess();
+			return result;
+		} catch (Exception e) {
+			if (isThrottled.test(e)) onThrottled(e);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Waits for a request permit, then runs the request, backing off if the provider throttles it.
+	 * 
+	 * @throws CancellationException if interrupted while waiting for a permit
+	 */
+	public <E extends Exception> void run(Priority priority, ApiTask<E> task) throws E {
+		call(priority, () -> {
+			task.run();
+			return null;
+		});
+	}
+	
+	/**
+	 * Waits for a request permit.  An interrupt, e.g. a cancelled launch or an executor 
+	 * shutdown, stops the wait; the thread's interrupt status is kept.
+	 * 
+	 * @throws CancellationException if interrupted while waiting
+	 */
+	public void acquire(Priority priority) {
+		final long start = System.nanoTime();
+		lock.lock();
+		try {
+			waiting[priority.ordinal()]++;
+			try {
+				while (true) {
+					final long now = System.nanoTime();
+					refill(now);
+					final long waitNanos = Math.max(pausedUntilNanos - now, 
+							tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * SECOND_NANOS / rate));
+					if (waitNanos <= 0 && !isOutranked(priority)) {
+						tokens -= 1;
+						break;
+					}
+					try {
+						available.awaitNanos(Math.max(waitNanos, MIN_WAIT_NANOS));
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new CancellationException(String.format(
+								"Interrupted waiting for API request permit: limiter=%s; priority=%s", name, priority));
+					}
+				}
+			} finally {
+				waiting[priority.ordinal()]--;
+				available.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+		
+		final long delayNanos = System.nanoTime() - start;
+		queueStats.get(priority).record(delayNanos);
+		if (delayNanos > SECOND_NANOS) {
+			log.debug("API request queued: limiter={}; priority={}; delay={}ms", 
+					name, priority, TimeUnit.NANOSECONDS.toMillis(delayNanos));
+		}
+	}
+	
+	private void refill(long now) {
+		tokens = Math.min(burst, tokens + (now - refilledNanos) * rate / SECOND_NANOS);
+		refilledNanos = now;
+	}
+	
+	private boolean isOutranked(Priority priority) {
+		for (int i = 0; i < priority.ordinal(); i++) {
+			if (waiting[i] > 0) return true;
+		}
+		return false;
+	}
+	
+	private void onSuccess() {
+		lock.lock();
+		try {
+			if (consecutiveThrottles == 0 && rate >= maxRate) return;
+			consecutiveThrottles = 0;
+			refill(System.nanoTime());
+			rate = Math.min(maxRate, rate + maxRate / 10);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	private void onThrottled(Throwable t) {
+		final long count = throttledCount.incrementAndGet();
+		lock.lock();
+		try {
+			final long backoff = Math.min(MAX_BACKOFF_MILLIS, 
+					initialBackoffMillis << Math.min(consecutiveThrottles, 16));
+			final long jittered = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+			consecutiveThrottles++;
+			refill(System.nanoTime());
+			rate = Math.max(minRate, rate / 2);
+			pausedUntilNanos = Math.max(pausedUntilNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(jittered));
+			log.warn("API request throttled, backing off: limiter={}; backoff={}ms; rate={}/s; throttledCount={}; message={}", 
+					name, jittered, String.format("%.2f", rate), count, t.getMessage());
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * @return current request rate per second, reduced while the provider throttles requests
+	 */
+	public double getRate() {
+		lock.lock();
+		try {
+			return rate;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	public long getThrottledCount() {
+		return throttledCount.get();
+	}
+	
+	/**
+	 * @return request count, average and maximum queueing delay in millis; key=priority
+	 */
+	public ImmutableMap<String, Object> getStats() {
+		final ImmutableMap.Builder<String, Object> delays = ImmutableMap.builder();
+		queueStats.forEach((priority, stats) -> delays.put(priority.name(), stats.toMap()));
+		return ImmutableMap.of(
+				"rate", Math.round(getRate() * 100) / 100.0,
+				"throttledCount", getThrottledCount(),
+				"queueDelayMillis", delays.build());
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("name", name)
+				.add("maxRate", maxRate)
+				.add("burst", burst)
+				.add("throttledCount", throttledCount)
+				.toString();
+	}
+	
+	private static class QueueStats {
+		
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+		
+		void record(long delayNanos) {
+			count.incrementAndGet();
+			totalNanos.addAndGet(delayNanos);
+			maxNanos.accumulateAndGet(delayNanos, Math::max);
+		}
+		
+		ImmutableMap<String, Long> toMap() {
+			final long requests = count.get();
+			return ImmutableMap.of(
+					"count", requests,
+					"avg", requests == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos.get() / requests),
+					"max", TimeUnit.NANOSECONDS.toMillis(maxNanos.get()));
+		}
+	}
+
+}
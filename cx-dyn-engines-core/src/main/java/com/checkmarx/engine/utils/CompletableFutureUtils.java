@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Helpers for composing {@link CompletableFuture} stages that wait on a 
+ * {@link ScheduledExecutorService} instead of sleeping a thread.
+ * 
+ * @author randy@checkmarx.com
+ */
+public class CompletableFutureUtils {
+	
+	private static final Logger log = LoggerFactory.getLogger(CompletableFutureUtils.class);
+
+	private CompletableFutureUtils() {
+		// static class
+	}
+	
+	/**
+	 * @return a future that fails with the supplied exception 
+	 */
+	public static <T> CompletableFuture<T> failed(Throwable t) {
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(t);
+		return future;
+	}
+	
+	/**
+	 * @return a future that completes after the supplied delay
+	 */
+	public static CompletableFuture<Void> delay(ScheduledExecutorService scheduler, long delay, TimeUnit unit) {
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+		if (delay <= 0) {
+			future.complete(null);
+			return future;
+		}
+		final ScheduledFuture<?> timer = scheduler.schedule(() -> future.complete(null), delay, unit);
+		future.whenComplete((r, t) -> timer.cancel(false));
+		return future;
+	}
+	
+	/**
+	 * Polls the supplied check on the scheduler until it returns a non-null result.
+	 * 
+	 * @param name of the task, for logging
+	 * @param scheduler to run the check on; the check should not block for long
+	 * @param check returns null until the awaited condition is met
+	 * @param initialDelay before the first check
+	 * @param interval between checks
+	 * @param timeout after which the future fails with a {@link TimeoutException}
+	 * @param unit of the delay, interval and timeout
+	 * @return a future completed with the first non-null check result
+	 */
+	public static <T> CompletableFuture<T> poll(String name, ScheduledExecutorService scheduler, Callable<T> check, 
+			long initialDelay, long interval, long timeout, TimeUnit unit) {
+		log.trace("poll(): name={}; interval={}; timeout={}; unit={}", name, interval, timeout, unit);
+		
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		final ScheduledFuture<?> poller = scheduler.scheduleWithFixedDelay(() -> {
+			if (future.isDone()) return;
+			try {
+				final T result = check.call();
+				if (result != null) {
+					future.complete(result);
+				} else if (System.nanoTime() - deadline >= 0) {
+					future.completeExceptionally(
+							new TimeoutException(String.format("Timeout waiting for %s", name)));
+				}
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+			}
+		}, initialDelay, interval, unit);
+		
+		// stop polling once complete, including when cancelled by the caller
+		future.whenComplete((r, t) -> poller.cancel(false));
+		return future;
+	}
+	
+	/**
+	 * Retries the supplied async operation, waiting the supplied delay between attempts.  
+	 * Cancellation and interruption are not retried.
+	 * 
+	 * @param name of the operation, for logging
+	 * @param operation supplies a new attempt
+	 * @param maxAttempts total number of attempts, including the first
+	 * @return a future completed by the first successful attempt, or failed by the last attempt
+	 */
+	public static <T> CompletableFuture<T> retry(String name, Supplier<CompletableFuture<T>> operation, 
+			int maxAttempts, ScheduledExecutorService scheduler, long delay, TimeUnit unit) {
+		final CompletableFuture<T> result = new CompletableFuture<>();
+		attempt(name, operation, 1, maxAttempts, scheduler, delay, unit, result);
+		return result;
+	}
+	
+	private static <T> void attempt(String name, Supplier<CompletableFuture<T>> operation, int attempt, 
+			int maxAttempts, ScheduledExecutorService scheduler, long delay, TimeUnit unit, 
+			CompletableFuture<T> result) {
+		if (result.isDone()) return;
+		
+		final CompletableFuture<T> future;
+		try {
+			future = operation.get();
+		} catch (Throwable t) {
+			result.completeExceptionally(t);
+			return;
+		}
+		
+		// cancelling the overall result abandons the attempt in flight
+		result.whenComplete((value, ex) -> {
+			if (result.isCancelled()) future.cancel(true);
+		});
+		future.whenComplete((value, ex) -> {
+			if (ex == null) {
+				result.complete(value);
+				return;
+			}
+			final Throwable cause = unwrap(ex);
+			if (attempt >= maxAttempts || !isRetryable(cause)) {
+				result.completeExceptionally(cause);
+				return;
+			}
+			log.warn("Async operation failed, retrying; name={}; attempt={}; cause={}; message={}", 
+					name, attempt, cause, cause.getMessage());
+			delay(scheduler, delay, unit).thenRun(() -> 
+					attempt(name, operation, attempt + 1, maxAttempts, scheduler, delay, unit, result));
+		});
+	}
+	
+	private static boolean isRetryable(Throwable t) {
+		return !(t instanceof CancellationException || t instanceof InterruptedException);
+	}
+
+	/**
+	 * @return the underlying cause of a {@link CompletionException} or {@link ExecutionException}
+	 */
+	public static Throwable unwrap(Throwable t) {
+		Throwable cause = t;
+		while ((cause instanceof CompletionException || cause instanceof ExecutionException) 
+				&& cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		return cause;
+	}
+	
+	/**
+	 * Blocks until the supplied future completes. 
+	 * If the calling thread is interrupted, the future is cancelled.
+	 * 
+	 * @return the future result
+	 * @throws RuntimeException the underlying cause of a failed future, wrapped if checked
+	 */
+	public static <T> T join(CompletableFuture<T> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			throw e;
+		} catch (ExecutionException e) {
+			final Throwable cause = unwrap(e);
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause.getMessage(), cause);
+		}
+	}
+
+}
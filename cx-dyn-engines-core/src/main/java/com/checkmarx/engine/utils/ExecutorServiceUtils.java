@@ -51,6 +51,10 @@ public class ExecutorServiceUtils {
 	public static ScheduledExecutorService buildScheduledExecutorService(String nameFormat, boolean daemon) {
 		return Executors.newSingleThreadScheduledExecutor(buildThreadFactory(nameFormat, daemon));
 	}
+
+	public static ScheduledExecutorService buildScheduledExecutorService(int count, String nameFormat, boolean daemon) {
+		return Executors.newScheduledThreadPool(count, buildThreadFactory(nameFormat, daemon));
+	}
 	
     public static void terminateExecutor(ExecutorService executor, String name) {
         log.debug("terminateExecutor(): name={}", name);
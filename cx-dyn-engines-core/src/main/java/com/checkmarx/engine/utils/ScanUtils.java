@@ -1,5 +1,6 @@
 package com.checkmarx.engine.utils;
 
+import java.util.Comparator;
 import java.util.List;
 
 import org.joda.time.DateTime;
@@ -61,8 +62,14 @@ public class ScanUtils {
                 };
             });
 
+    /**
+     * CxSAST scan queue order: queue position, then queued date, then created date
+     */
+    public final static Comparator<ScanRequest> QUEUE_ORDER = 
+            byQueuePosition.thenComparing(byQueuedOn.thenComparing(byDateCreated));
+
     public static void sortQueue(List<ScanRequest> queue) {
-        queue.sort(byQueuePosition.thenComparing(byQueuedOn.thenComparing(byDateCreated)));
+        queue.sort(QUEUE_ORDER);
     }
 
 }
\ No newline at end of file
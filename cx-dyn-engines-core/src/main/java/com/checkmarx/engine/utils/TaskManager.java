@@ -16,6 +16,7 @@ package com.checkmarx.engine.utils;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 
 import com.google.common.collect.Maps;
 import org.slf4j.Logger;
@@ -35,18 +36,28 @@ public class TaskManager {
     private static final Logger log = LoggerFactory.getLogger(TaskManager.class);
 
     private final ExecutorService timerExecutor = ExecutorServiceUtils.buildPooledExecutorService(20, "timer-%d", false);
+    private final ScheduledExecutorService launchScheduler = ExecutorServiceUtils.buildScheduledExecutorService(4, "launch-%d", true);
 
     private final Map<String, Future<?>> tasks = Maps.newConcurrentMap();
     private final Map<String, ExecutorService> executors = Maps.newConcurrentMap();
     
     public TaskManager() {
         addExecutor("TimerExecutor", timerExecutor);
+        addExecutor("LaunchScheduler", launchScheduler);
     }
 
     public ExecutorService getTimeoutExecutor() {
         return timerExecutor;
     }
     
+    /**
+     * @return a small scheduler shared by the async engine launch stages; 
+     * 			tasks run on it should be short and must not sleep
+     */
+    public ScheduledExecutorService getLaunchScheduler() {
+        return launchScheduler;
+    }
+    
     public ExecutorService getExecutor(String name, String format, boolean isDaemon) {
         final ExecutorService executor = ExecutorServiceUtils.buildPooledExecutorService(20, format, isDaemon);
         addExecutor(name, executor);
@@ -22,6 +22,13 @@ import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.*;
 
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.joda.time.DateTime;
 import org.junit.Before;
@@ -32,8 +39,15 @@ import org.slf4j.LoggerFactory;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import com.checkmarx.engine.domain.DynamicEngine.State;
+import com.checkmarx.engine.domain.DynamicEngine.WarmTier;
 import com.checkmarx.engine.domain.EnginePool.EnginePoolEntry;
+import com.checkmarx.engine.rest.model.ProgramLanguage;
+import com.checkmarx.engine.rest.model.Project;
+import com.checkmarx.engine.rest.model.ScanRequest;
+import com.checkmarx.engine.rest.model.ScanRequest.ScanStatus;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 /**
  * @author rjgey
@@ -203,6 +217,234 @@ public class EnginePoolTests {
 		assertNotEquals(newEngine.getHost(), oldEngine.getHost());
 	}
 
+	@Test
+	public void testAllocateSlot() {
+		log.trace("testAllocateSlot()");
+		
+		final EnginePool slotPool = new DefaultEnginePoolBuilder(config)
+				.addEntry(new EnginePoolEntry(SMALL, 2, 0, 2))
+				.addEntry(new EnginePoolEntry(MEDIUM, 2, 0))
+				.build();
+		assertEquals(2, slotPool.getSlotCapacity(SMALL));
+		assertEquals(1, slotPool.getSlotCapacity(MEDIUM));
+		
+		// single slot engines, and engines not yet registered, are never shared
+		final DynamicEngine medium = slotPool.allocateEngine(MEDIUM, State.UNPROVISIONED, State.SCANNING);
+		medium.setEngineId("2");
+		assertThat(slotPool.allocateSlot(MEDIUM), is(nullValue()));
+		final DynamicEngine engine = slotPool.allocateEngine(SMALL, State.UNPROVISIONED, State.SCANNING);
+		assertEquals(1, slotPool.getOccupiedSlots(engine));
+		assertThat(slotPool.allocateSlot(SMALL), is(nullValue()));
+		
+		engine.setEngineId("1");
+		assertEquals(engine, slotPool.allocateSlot(SMALL));
+		assertEquals(2, slotPool.getOccupiedSlots(engine));
+		assertThat(slotPool.allocateSlot(SMALL), is(nullValue()));
+		
+		assertEquals(1, slotPool.releaseSlot(engine));
+		assertEquals(0, slotPool.releaseSlot(engine));
+		// engine is being released
+		assertThat(slotPool.allocateSlot(SMALL), is(nullValue()));
+		
+		slotPool.idleEngine(engine);
+		assertEquals(0, slotPool.getOccupiedSlots(engine));
+	}
+
+	@Test
+	public void testBorrowEngine() {
+		log.trace("testBorrowEngine()");
+		
+		pool.allocateEngine(MEDIUM, State.UNPROVISIONED, State.IDLE);
+		pool.allocateEngine(MEDIUM, State.UNPROVISIONED, State.IDLE);
+		
+		// only larger engines are lent, and the reserve stays idle
+		assertThat(pool.borrowEngine(MEDIUM, SMALL, 0), is(nullValue()));
+		assertThat(pool.borrowEngine(SMALL, LARGE, 0), is(nullValue()));
+		assertThat(pool.borrowEngine(SMALL, MEDIUM, 2), is(nullValue()));
+		
+		final DynamicEngine engine = pool.borrowEngine(SMALL, MEDIUM, 1);
+		assertThat(engine, is(notNullValue()));
+		assertEquals(State.SCANNING, engine.getState());
+		assertThat(pool.borrowEngine(SMALL, MEDIUM, 1), is(nullValue()));
+		assertEquals(1, pool.getEngineCount(MEDIUM, State.IDLE));
+		assertEquals(Long.valueOf(1), pool.getBorrowCounts().get("S->M"));
+		
+		pool.idleEngine(engine);
+		assertThat(pool.borrowEngine(SMALL, MEDIUM, 0), is(notNullValue()));
+		assertEquals(Long.valueOf(2), pool.getBorrowCounts().get("S->M"));
+	}
+
+	@Test
+	public void testWarmTiers() {
+		log.trace("testWarmTiers()");
+		
+		final EnginePoolEntry entry = new EnginePoolEntry(LARGE, 3, 0);
+		entry.setHibernated(1);
+		entry.setStopped(1);
+		final EnginePool tieredPool = new DefaultEnginePoolBuilder(new EnginePoolConfig()).addEntry(entry).build();
+		
+		final List<DynamicEngine> engines = Lists.newArrayList();
+		for (int i = 0; i < 3; i++) {
+			engines.add(tieredPool.allocateEngine(LARGE, State.UNPROVISIONED, State.IDLE));
+		}
+		
+		// expiring engines fill the warmest tiers first
+		for (WarmTier expected : new WarmTier[] { WarmTier.HIBERNATED, WarmTier.STOPPED, WarmTier.TERMINATED }) {
+			final DynamicEngine engine = engines.remove(0);
+			final WarmTier tier = tieredPool.selectWarmTier(engine);
+			assertEquals(expected, tier);
+			engine.setWarmTier(tier);
+			tieredPool.deallocateEngine(engine);
+			engines.add(engine);
+		}
+		assertEquals(1, tieredPool.getTierCount(LARGE, WarmTier.HIBERNATED));
+		assertEquals(1, tieredPool.getTierCount(LARGE, WarmTier.STOPPED));
+		
+		// engines resume from the warmest tier first
+		final DynamicEngine resumed = tieredPool.allocateEngine(LARGE, State.UNPROVISIONED, State.SCANNING);
+		assertEquals(WarmTier.HIBERNATED, resumed.getLaunchTier());
+		assertEquals(WarmTier.RUNNING, resumed.getWarmTier());
+		assertEquals(WarmTier.STOPPED, tieredPool.allocateEngine(LARGE, State.UNPROVISIONED, State.SCANNING).getLaunchTier());
+		
+		// engines deallocated without a tier, e.g. failed launches, are terminated
+		tieredPool.deallocateEngine(resumed);
+		assertEquals(WarmTier.TERMINATED, resumed.getWarmTier());
+		
+		// no stopped tiers configured
+		assertThat(pool.selectWarmTier(pool.allocateEngine(LARGE, State.UNPROVISIONED, State.IDLE)), is(nullValue()));
+	}
+
+	@Test
+	public void testVcpuQuota() {
+		log.trace("testVcpuQuota()");
+		
+		final EnginePoolConfig quotaConfig = new EnginePoolConfig();
+		quotaConfig.setVcpuQuota(8);
+		final EnginePoolEntry small = new EnginePoolEntry(SMALL, 3, 0);
+		small.setVcpus(2);
+		final EnginePoolEntry large = new EnginePoolEntry(LARGE, 3, 0);
+		large.setVcpus(4);
+		final EnginePool quotaPool = new DefaultEnginePoolBuilder(quotaConfig)
+				.addEntry(small).addEntry(large).build();
+		
+		assertEquals(8, quotaPool.getVcpuHeadroom());
+		assertEquals(2, quotaPool.getLaunchableCount(LARGE));
+		
+		final DynamicEngine engine = quotaPool.allocateEngine(LARGE, State.UNPROVISIONED, State.SCANNING);
+		assertThat(engine, is(notNullValue()));
+		assertThat(quotaPool.allocateEngine(SMALL, State.UNPROVISIONED, State.IDLE), is(notNullValue()));
+		assertEquals(6, quotaPool.getVcpusInUse());
+		assertEquals(2, quotaPool.getVcpuHeadroom());
+		
+		// launches over the quota are refused, smaller sizes still fit
+		assertEquals(0, quotaPool.getLaunchableCount(LARGE));
+		assertThat(quotaPool.allocateEngine(LARGE, State.UNPROVISIONED, State.SCANNING), is(nullValue()));
+		assertEquals(1, quotaPool.getQuotaDeniedCount());
+		assertThat(quotaPool.allocateEngine(SMALL, State.UNPROVISIONED, State.SCANNING), is(notNullValue()));
+		assertEquals(0, quotaPool.getVcpuHeadroom());
+		
+		// engines already provisioned are allocated regardless of the quota
+		assertThat(quotaPool.allocateEngine(SMALL, State.IDLE, State.SCANNING), is(notNullValue()));
+		
+		quotaPool.deallocateEngine(engine);
+		assertEquals(4, quotaPool.getVcpuHeadroom());
+		assertThat(quotaPool.allocateEngine(LARGE, State.UNPROVISIONED, State.SCANNING), is(notNullValue()));
+		
+		// no quota configured
+		assertEquals(Integer.MAX_VALUE, pool.getVcpuHeadroom());
+		assertEquals(3, pool.getLaunchableCount(LARGE));
+	}
+
+	@Test
+	public void testConcurrentAllocate() throws InterruptedException {
+		log.trace("testConcurrentAllocate()");
+		
+		for (int i = 0; i < 3; i++) {
+			pool.allocateEngine(SMALL, State.UNPROVISIONED, State.IDLE);
+		}
+		
+		final Set<DynamicEngine> scanning = Sets.newConcurrentHashSet();
+		final AtomicInteger conflicts = new AtomicInteger();
+		final AtomicInteger allocations = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int t = 0; t < 8; t++) {
+			executor.execute(() -> {
+				for (int i = 0; i < 2000; i++) {
+					final DynamicEngine engine = pool.allocateEngine(SMALL, State.IDLE, State.SCANNING);
+					if (engine == null) continue;
+					allocations.incrementAndGet();
+					// an engine must never be allocated to two threads at once
+					if (!scanning.add(engine)) conflicts.incrementAndGet();
+					scanning.remove(engine);
+					pool.idleEngine(engine);
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+		
+		assertEquals(0, conflicts.get());
+		assertTrue(allocations.get() > 0);
+		assertEquals(3, pool.getEngineCount(SMALL, State.IDLE));
+		assertEquals(0, pool.getEngineCount(SMALL, State.SCANNING));
+		pool.getIdleEngines().get(SMALL.getName()).forEach(engine -> assertEquals(State.IDLE, engine.getState()));
+	}
+
+	@Test
+	public void testExpireAllocatedEngine() {
+		log.trace("testExpireAllocatedEngine()");
+		
+		final DynamicEngine engine = pool.allocateEngine(SMALL, State.UNPROVISIONED, State.IDLE);
+		pool.allocateEngine(SMALL, State.IDLE, State.SCANNING);
+		
+		// engine was allocated after the idle monitor checked it
+		assertFalse(pool.expireEngine(engine));
+		assertEquals(State.SCANNING, engine.getState());
+		
+		pool.idleEngine(engine);
+		assertTrue(pool.expireEngine(engine));
+		assertEquals(1, pool.getEngineCount(SMALL, State.EXPIRING));
+	}
+
+	@Test
+	public void testIdleEngineMonitor() throws InterruptedException {
+		log.trace("testIdleEngineMonitor()");
+		
+		final EnginePoolConfig shortConfig = new EnginePoolConfig();
+		shortConfig.setEngineExpireIntervalSecs(1);
+		final EnginePool shortPool = new DefaultEnginePoolBuilder(shortConfig)
+				.addEntry(new EnginePoolEntry(SMALL, 2, 1))
+				.build();
+		
+		// engines idle before the monitor is created are scheduled too
+		final DynamicEngine first = shortPool.allocateEngine(SMALL, State.UNPROVISIONED, State.IDLE);
+		final BlockingQueue<DynamicEngine> expired = new ArrayBlockingQueue<>(10);
+		final EnginePool.IdleEngineMonitor monitor = shortPool.createIdleEngineMonitor(expired, 0);
+		final DynamicEngine second = shortPool.allocateEngine(SMALL, State.UNPROVISIONED, State.IDLE);
+		assertEquals(2, monitor.getScheduledCount());
+		
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			executor.submit(monitor);
+			
+			// one engine expires, the other is kept for the pool minimum
+			final DynamicEngine engine = expired.poll(5, TimeUnit.SECONDS);
+			assertThat(engine, is(notNullValue()));
+			assertEquals(State.EXPIRING, engine.getState());
+			assertEquals(1, shortPool.getEngineCount(SMALL, State.IDLE));
+			assertThat(expired.poll(2, TimeUnit.SECONDS), is(nullValue()));
+			assertEquals(1, monitor.getScheduledCount());
+			
+			// engines leaving IDLE are unscheduled
+			final DynamicEngine kept = engine == first ? second : first;
+			shortPool.allocateEngine(SMALL, State.IDLE, State.SCANNING);
+			assertEquals(State.SCANNING, kept.getState());
+			assertEquals(0, monitor.getScheduledCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
 	@Test
 	public void testCalcSize() {
 		log.trace("testCalcSize()");
@@ -215,6 +457,44 @@ public class EnginePoolTests {
 		assertEquals(LARGE, pool.calcEngineSize(500000));
 		assertEquals(LARGE, pool.calcEngineSize(999999999));
 		assertNull(pool.calcEngineSize(100000000000L));
+		assertNull(pool.calcEngineSize(-1));
+	}
+	
+	@Test
+	public void testCalcSizeSharedBoundary() {
+		log.trace("testCalcSizeSharedBoundary()");
+		
+		final EngineSize small = new EngineSize("S", 10, 100);
+		final EngineSize medium = new EngineSize("M", 100, 200);
+		final EnginePool boundaryPool = new DefaultEnginePoolBuilder(config)
+				.addEntry(new EnginePoolEntry(medium, 1, 0))
+				.addEntry(new EnginePoolEntry(small, 1, 0))
+				.build();
+		
+		assertNull(boundaryPool.calcEngineSize(9));
+		assertEquals(small, boundaryPool.calcEngineSize(10));
+		// the smaller size wins a shared boundary
+		assertEquals(small, boundaryPool.calcEngineSize(100));
+		assertEquals(medium, boundaryPool.calcEngineSize(101));
+		assertEquals(medium, boundaryPool.calcEngineSize(200));
+		assertNull(boundaryPool.calcEngineSize(201));
+	}
+	
+	@Test
+	public void testCalcScanSize() {
+		log.trace("testCalcScanSize()");
+		
+		assertEquals(SMALL, pool.calcEngineSize(createScan(1, 0)));
+		assertEquals(SMALL, pool.calcEngineSize(createScan(1, 0)));
+		// LOC is known once source is pulled
+		assertEquals(LARGE, pool.calcEngineSize(createScan(1, 600000)));
+		assertEquals(MEDIUM, pool.calcEngineSize(createScan(2, 100000)));
+		assertNull(pool.calcEngineSize(createScan(3, Integer.MAX_VALUE)));
+	}
+	
+	private ScanRequest createScan(long id, int loc) {
+		return new ScanRequest(id, "runId" + id, "team", new Project(id, "project"), ScanStatus.to(ScanStatus.Queued), 
+				"", "", 0, 0, loc, false, true, "Portal", 1, "initiator", new ProgramLanguage[0], null, null, null, null);
 	}
 	
 }
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.checkmarx.engine.rest.model.ProgramLanguage;
+import com.checkmarx.engine.rest.model.Project;
+import com.checkmarx.engine.rest.model.ScanRequest;
+import com.checkmarx.engine.rest.model.ScanRequest.ScanStatus;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+public class FairShareScanSchedulerTests {
+
+	private static final Logger log = LoggerFactory.getLogger(FairShareScanSchedulerTests.class);
+
+	private static final EngineSize SMALL = new EngineSize("S", 0, 99999);
+	private static final EngineSize MEDIUM = new EngineSize("M", 100000, 499999);
+
+	@Test
+	public void testFairShare() {
+		log.trace("testFairShare()");
+
+		final FairShareScanScheduler scheduler = new FairShareScanScheduler(ImmutableMap.of());
+		assertThat(scheduler.poll(SMALL), is(nullValue()));
+		
+		// team A bursts ahead of team B
+		for (int i = 1; i <= 4; i++) {
+			scheduler.add(SMALL, createScan(i, "A", i, false));
+		}
+		scheduler.add(SMALL, createScan(5, "B", 5, false));
+		scheduler.add(SMALL, createScan(6, "B", 6, false));
+		
+		assertThat(pollIds(scheduler, SMALL), is(Lists.newArrayList(1L, 5L, 2L, 6L, 3L, 4L)));
+		assertThat(scheduler.hasWaiting(SMALL), is(false));
+	}
+
+	@Test
+	public void testWeightsAndPriority() {
+		log.trace("testWeightsAndPriority()");
+
+		final FairShareScanScheduler scheduler = new FairShareScanScheduler(ImmutableMap.of("A", 2));
+		scheduler.add(SMALL, createScan(1, "A", 1, false));
+		scheduler.add(SMALL, createScan(2, "A", 2, false));
+		scheduler.add(SMALL, createScan(3, "A", 3, true));
+		scheduler.add(SMALL, createScan(4, "A", 4, false));
+		scheduler.add(SMALL, createScan(5, "B", 5, false));
+		scheduler.add(SMALL, createScan(6, "B", 6, false));
+		scheduler.add(MEDIUM, createScan(7, "B", 7, false));
+		
+		// incremental scan first within team, team A gets two scans for each of team B
+		assertThat(pollIds(scheduler, SMALL), is(Lists.newArrayList(3L, 5L, 1L, 2L, 6L, 4L)));
+		assertThat(scheduler.getWaitingSizes().contains(MEDIUM), is(true));
+		
+		// cancelled scans are removed
+		assertThat(scheduler.remove(MEDIUM, createScan(7, "B", 7, false)), is(true));
+		assertThat(scheduler.remove(MEDIUM, createScan(7, "B", 7, false)), is(false));
+		assertThat(scheduler.getWaitingSizes().isEmpty(), is(true));
+	}
+
+	@Test
+	public void testNoBankedCredit() {
+		log.trace("testNoBankedCredit()");
+
+		final FairShareScanScheduler scheduler = new FairShareScanScheduler(ImmutableMap.of());
+		for (int i = 1; i <= 3; i++) {
+			scheduler.add(SMALL, createScan(i, "A", i, false));
+			scheduler.poll(SMALL);
+		}
+		
+		// team B was idle, so it goes next but does not catch up on the engines it did not use
+		scheduler.add(SMALL, createScan(4, "B", 4, false));
+		scheduler.add(SMALL, createScan(5, "B", 5, false));
+		scheduler.add(SMALL, createScan(6, "B", 6, false));
+		scheduler.add(SMALL, createScan(7, "A", 7, false));
+		scheduler.add(SMALL, createScan(8, "A", 8, false));
+		assertThat(pollIds(scheduler, SMALL), is(Lists.newArrayList(4L, 5L, 7L, 6L, 8L)));
+	}
+
+	@Test
+	public void testIdleTeamsForgotten() {
+		log.trace("testIdleTeamsForgotten()");
+
+		final FairShareScanScheduler scheduler = new FairShareScanScheduler(ImmutableMap.of());
+		scheduler.add(SMALL, createScan(1, "A", 1, false));
+		scheduler.add(SMALL, createScan(2, "A", 2, false));
+		scheduler.add(SMALL, createScan(3, "B", 3, false));
+		assertThat(pollIds(scheduler, SMALL), is(Lists.newArrayList(1L, 3L, 2L)));
+		// team B has nothing waiting and the clock reached it, team A is still ahead of the clock
+		assertThat(scheduler.getTeamCount(), is(1));
+		
+		scheduler.add(SMALL, createScan(4, "C", 4, false));
+		scheduler.add(SMALL, createScan(5, "C", 5, false));
+		scheduler.add(SMALL, createScan(6, "B", 6, false));
+		assertThat(scheduler.remove(SMALL, createScan(6, "B", 6, false)), is(true));
+		assertThat(pollIds(scheduler, SMALL), is(Lists.newArrayList(4L, 5L)));
+		assertThat(scheduler.getTeamCount(), is(1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidWeight() {
+		log.trace("testInvalidWeight()");
+
+		new FairShareScanScheduler(ImmutableMap.of("A", 0));
+	}
+
+	private List<Long> pollIds(FairShareScanScheduler scheduler, EngineSize size) {
+		final List<Long> ids = Lists.newArrayList();
+		ScanRequest scan;
+		while ((scan = scheduler.poll(size)) != null) {
+			ids.add(scan.getId());
+		}
+		return ids;
+	}
+
+	private ScanRequest createScan(long id, String teamId, int queuePosition, boolean incremental) {
+		return new ScanRequest(id, "runId" + id, teamId, new Project(id, "project" + id), ScanStatus.to(ScanStatus.Queued), 
+				"", "", 0, 0, 1000, incremental, true, "Portal", queuePosition, "initiator", new ProgramLanguage[0], 
+				null, null, null, null);
+	}
+
+}
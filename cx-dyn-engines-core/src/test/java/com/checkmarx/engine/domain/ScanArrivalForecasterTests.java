@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+public class ScanArrivalForecasterTests {
+
+	private static final Logger log = LoggerFactory.getLogger(ScanArrivalForecasterTests.class);
+
+	private static final DateTime MONDAY_9AM = new DateTime(2019, 1, 7, 9, 0);
+
+	@Test
+	public void testForecast() {
+		log.trace("testForecast()");
+
+		final ScanArrivalForecaster forecaster = new ScanArrivalForecaster(Lists.newArrayList("S", "M"), 0.5);
+		assertThat(forecaster.forecast("S", MONDAY_9AM, 60), is(0.0));
+
+		// 4 small scans arrive between 9-10am
+		for (int i = 0; i < 4; i++) {
+			forecaster.recordArrival("S", MONDAY_9AM.plusMinutes(i * 10));
+		}
+
+		// next week, forecast for 9:00 covers the full bucket, 9:45 only a quarter
+		final DateTime nextWeek = MONDAY_9AM.plusWeeks(1);
+		log.debug("{}", forecaster);
+		assertThat(forecaster.forecast("S", nextWeek, 60), closeTo(4.0, 0.001));
+		assertThat(forecaster.forecast("S", nextWeek.plusMinutes(45), 30), closeTo(1.0, 0.001));
+		assertThat(forecaster.forecast("M", nextWeek, 60), is(0.0));
+		assertThat(forecaster.forecast("X", nextWeek, 60), is(0.0));
+
+		// no arrivals the next week halves the rate
+		forecaster.recordArrival("S", nextWeek.plusHours(1));
+		assertThat(forecaster.forecast("S", nextWeek.plusWeeks(1), 60), closeTo(2.0, 0.001));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSmoothingFactor() {
+		log.trace("testInvalidSmoothingFactor()");
+
+		new ScanArrivalForecaster(Lists.newArrayList("S"), 0);
+	}
+
+}
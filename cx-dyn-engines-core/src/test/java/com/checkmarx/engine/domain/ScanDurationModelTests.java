@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.joda.time.Duration;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.checkmarx.engine.rest.model.ProgramLanguage;
+import com.checkmarx.engine.rest.model.Project;
+import com.checkmarx.engine.rest.model.ScanRequest;
+import com.checkmarx.engine.rest.model.ScanRequest.ScanStatus;
+
+public class ScanDurationModelTests {
+
+	private static final Logger log = LoggerFactory.getLogger(ScanDurationModelTests.class);
+
+	@Test
+	public void testPredict() {
+		log.trace("testPredict()");
+
+		final ScanDurationModel model = new ScanDurationModel(100, 0.5);
+		assertThat(model.predict(createScan(1, 1000, false), "S"), is(nullValue()));
+		
+		// full scans scale with LOC
+		model.recordScan(createScan(1, 1000, false), "S", Duration.standardMinutes(10));
+		model.recordScan(createScan(1, 1000, false), "S", Duration.standardMinutes(20));
+		log.debug("{}", model);
+		assertThat(model.predict(createScan(1, 1000, false), "S"), is(Duration.standardMinutes(15)));
+		assertThat(model.predict(createScan(1, 2000, false), "S"), is(Duration.standardMinutes(30)));
+		
+		// incremental scans are tracked separately and do not scale with project LOC
+		assertThat(model.predict(createScan(1, 1000, true), "S"), is(nullValue()));
+		model.recordScan(createScan(1, 1000, true), "S", Duration.standardMinutes(2));
+		assertThat(model.predict(createScan(1, 5000, true), "S"), is(Duration.standardMinutes(2)));
+		
+		// projects without history use the engine size average
+		assertThat(model.predict(createScan(2, 500, false), "S"), is(Duration.standardSeconds(450)));
+		assertThat(model.predict(createScan(2, 500, false), "M"), is(nullValue()));
+	}
+
+	@Test
+	public void testMaxProjects() {
+		log.trace("testMaxProjects()");
+
+		final ScanDurationModel model = new ScanDurationModel(1, 0.5);
+		model.recordScan(createScan(1, 1000, true), null, Duration.standardMinutes(1));
+		model.recordScan(createScan(2, 1000, true), null, Duration.standardMinutes(2));
+		
+		assertThat(model.predict(createScan(1, 1000, true), null), is(nullValue()));
+		assertThat(model.predict(createScan(2, 1000, true), null), is(Duration.standardMinutes(2)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSmoothingFactor() {
+		log.trace("testInvalidSmoothingFactor()");
+
+		new ScanDurationModel(100, 0);
+	}
+
+	private ScanRequest createScan(long projectId, int loc, boolean incremental) {
+		return new ScanRequest(projectId, "runId", "team", new Project(projectId, "project" + projectId), 
+				ScanStatus.to(ScanStatus.Finished), "", "", 100, 100, loc, incremental, true, "Portal", 0, 
+				"initiator", new ProgramLanguage[0], null, null, null, null);
+	}
+
+}
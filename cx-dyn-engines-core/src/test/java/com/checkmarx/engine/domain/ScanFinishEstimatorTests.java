@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.checkmarx.engine.rest.model.ProgramLanguage;
+import com.checkmarx.engine.rest.model.Project;
+import com.checkmarx.engine.rest.model.ScanRequest;
+import com.checkmarx.engine.rest.model.ScanRequest.ScanStatus;
+import com.google.common.collect.Lists;
+
+public class ScanFinishEstimatorTests {
+
+	private static final Logger log = LoggerFactory.getLogger(ScanFinishEstimatorTests.class);
+
+	private static final DateTime STARTED_ON = new DateTime(2019, 1, 7, 9, 0);
+
+	@Test
+	public void testEstimateRemaining() {
+		log.trace("testEstimateRemaining()");
+
+		final ScanFinishEstimator estimator = new ScanFinishEstimator(0.5);
+		final DateTime polledOn = STARTED_ON.plusMinutes(10);
+		
+		// 80% done after 10 minutes leaves 2.5 minutes
+		estimator.recordProgress(createScan(1, ScanStatus.Scanning, 80, 0), polledOn);
+		log.debug("{}", estimator);
+		assertThat(estimator.estimateRemaining(1, polledOn), is(Duration.standardSeconds(150)));
+		assertThat(estimator.estimateRemaining(1, polledOn.plusMinutes(1)), is(Duration.standardSeconds(90)));
+		assertThat(estimator.estimateRemaining(1, polledOn.plusMinutes(5)), is(Duration.ZERO));
+		
+		// stage percent is used when total percent is not reported
+		estimator.recordProgress(createScan(2, ScanStatus.Scanning, 0, 50), polledOn);
+		assertThat(estimator.estimateRemaining(2, polledOn), is(Duration.standardMinutes(10)));
+		
+		// no progress yet
+		estimator.recordProgress(createScan(3, ScanStatus.Scanning, 0, 0), polledOn);
+		assertThat(estimator.estimateRemaining(3, polledOn), is(nullValue()));
+		
+		// finished and missing scans are forgotten
+		estimator.recordProgress(createScan(1, ScanStatus.Finished, 100, 100), polledOn);
+		assertThat(estimator.estimateRemaining(1, polledOn), is(nullValue()));
+		estimator.retainScans(Lists.newArrayList(1L));
+		assertThat(estimator.estimateRemaining(2, polledOn), is(nullValue()));
+	}
+
+	@Test
+	public void testLaunchTime() {
+		log.trace("testLaunchTime()");
+
+		final ScanFinishEstimator estimator = new ScanFinishEstimator(0.5);
+		assertThat(estimator.getLaunchTime("S"), is(nullValue()));
+		
+		estimator.recordLaunch("S", Duration.standardMinutes(4));
+		assertThat(estimator.getLaunchTime("S"), is(Duration.standardMinutes(4)));
+		estimator.recordLaunch("S", Duration.standardMinutes(2));
+		assertThat(estimator.getLaunchTime("S"), is(Duration.standardMinutes(3)));
+		assertThat(estimator.getLaunchTime("M"), is(nullValue()));
+	}
+
+	@Test
+	public void testLaunchTimePercentile() {
+		log.trace("testLaunchTimePercentile()");
+
+		final ScanFinishEstimator estimator = new ScanFinishEstimator(0.5);
+		for (int i = 1; i < ScanFinishEstimator.MIN_LAUNCH_SAMPLES; i++) {
+			estimator.recordLaunch("S", Duration.standardMinutes(i));
+		}
+		assertThat(estimator.getLaunchTime("S", 90), is(nullValue()));
+		
+		// 1..10 minutes, recorded out of order
+		for (int i = 10; i >= ScanFinishEstimator.MIN_LAUNCH_SAMPLES; i--) {
+			estimator.recordLaunch("S", Duration.standardMinutes(i));
+		}
+		assertThat(estimator.getLaunchTime("S", 90), is(Duration.standardMinutes(9)));
+		assertThat(estimator.getLaunchTime("S", 50), is(Duration.standardMinutes(5)));
+		assertThat(estimator.getLaunchTime("S", 100), is(Duration.standardMinutes(10)));
+		assertThat(estimator.getLaunchTime("M", 90), is(nullValue()));
+		
+		// only the most recent launches are kept
+		for (int i = 0; i < ScanFinishEstimator.LAUNCH_SAMPLE_SIZE; i++) {
+			estimator.recordLaunch("S", Duration.standardMinutes(1));
+		}
+		assertThat(estimator.getLaunchTime("S", 100), is(Duration.standardMinutes(1)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSmoothingFactor() {
+		log.trace("testInvalidSmoothingFactor()");
+
+		new ScanFinishEstimator(1.5);
+	}
+
+	private ScanRequest createScan(long id, ScanStatus status, int totalPercent, int stagePercent) {
+		return new ScanRequest(id, "runId" + id, "team", new Project(id, "project"), ScanStatus.to(status), "", "", 
+				totalPercent, stagePercent, 1000, false, true, "Portal", 0, "initiator", new ProgramLanguage[0], 
+				null, null, STARTED_ON, null);
+	}
+
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Map;
+
+import org.joda.time.Duration;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.checkmarx.engine.domain.DynamicEngine.WarmTier;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+public class WarmTierPolicyTests {
+
+	private static final Logger log = LoggerFactory.getLogger(WarmTierPolicyTests.class);
+
+	private static final Map<WarmTier, Integer> TARGETS = 
+			ImmutableMap.of(WarmTier.HIBERNATED, 1, WarmTier.STOPPED, 1);
+
+	@Test
+	public void testSelectTier() {
+		log.trace("testSelectTier()");
+
+		final WarmTierPolicy policy = new WarmTierPolicy(0.5);
+		
+		// warmest tier below its target first
+		assertThat(policy.selectTier("S", TARGETS, ImmutableMap.of()), is(WarmTier.HIBERNATED));
+		assertThat(policy.selectTier("S", TARGETS, ImmutableMap.of(WarmTier.HIBERNATED, 1)), is(WarmTier.STOPPED));
+		assertThat(policy.selectTier("S", TARGETS, TARGETS), is(WarmTier.TERMINATED));
+		assertThat(policy.selectTier("S", ImmutableMap.of(), ImmutableMap.of()), is(WarmTier.TERMINATED));
+	}
+
+	@Test
+	public void testResumeTimes() {
+		log.trace("testResumeTimes()");
+
+		final WarmTierPolicy policy = new WarmTierPolicy(1.0);
+		assertThat(policy.getResumeTime("S", WarmTier.STOPPED), is(nullValue()));
+		assertThat(policy.getResumeTime("S", WarmTier.RUNNING), is(Duration.ZERO));
+		
+		policy.recordResume("S", WarmTier.HIBERNATED, Duration.standardSeconds(60));
+		policy.recordResume("S", WarmTier.STOPPED, Duration.standardSeconds(90));
+		policy.recordResume("S", WarmTier.TERMINATED, Duration.standardSeconds(360));
+		log.debug("{}", policy);
+		assertThat(policy.isWorthwhile("S", WarmTier.HIBERNATED), is(true));
+		assertThat(policy.rankTiers("S"), 
+				is(Lists.newArrayList(WarmTier.RUNNING, WarmTier.HIBERNATED, WarmTier.STOPPED, WarmTier.TERMINATED)));
+		assertThat(policy.getResumeSeconds().get("S:STOPPED"), is(90L));
+		
+		// hibernation no faster than a stop, so engines skip it
+		policy.recordResume("S", WarmTier.HIBERNATED, Duration.standardSeconds(120));
+		assertThat(policy.isWorthwhile("S", WarmTier.HIBERNATED), is(false));
+		assertThat(policy.selectTier("S", TARGETS, ImmutableMap.of()), is(WarmTier.STOPPED));
+		assertThat(policy.rankTiers("S"), 
+				is(Lists.newArrayList(WarmTier.RUNNING, WarmTier.STOPPED, WarmTier.TERMINATED, WarmTier.HIBERNATED)));
+		
+		// other sizes are not affected
+		assertThat(policy.selectTier("M", TARGETS, ImmutableMap.of()), is(WarmTier.HIBERNATED));
+	}
+
+	@Test
+	public void testSmoothing() {
+		log.trace("testSmoothing()");
+
+		final WarmTierPolicy policy = new WarmTierPolicy(0.5);
+		policy.recordResume("S", WarmTier.STOPPED, Duration.standardSeconds(60));
+		policy.recordResume("S", WarmTier.STOPPED, Duration.standardSeconds(120));
+		assertThat(policy.getResumeTime("S", WarmTier.STOPPED), is(Duration.standardSeconds(90)));
+		
+		// engines never stopped have no resume time to record
+		policy.recordResume("S", null, Duration.standardSeconds(10));
+		policy.recordResume("S", WarmTier.RUNNING, Duration.standardSeconds(10));
+		assertThat(policy.getResumeSeconds().size(), is(1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSmoothingFactor() {
+		new WarmTierPolicy(0);
+	}
+
+}
@@ -0,0 +1,570 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.servers;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.checkmarx.engine.CxConfig;
+import com.checkmarx.engine.domain.DefaultEnginePoolBuilder;
+import com.checkmarx.engine.domain.DynamicEngine;
+import com.checkmarx.engine.domain.DynamicEngine.State;
+import com.checkmarx.engine.domain.EnginePool;
+import com.checkmarx.engine.domain.EnginePool.EnginePoolEntry;
+import com.checkmarx.engine.domain.EnginePoolConfig;
+import com.checkmarx.engine.domain.EngineSize;
+import com.checkmarx.engine.domain.Host;
+import com.checkmarx.engine.domain.ScanArrivalForecaster;
+import com.checkmarx.engine.domain.ScanDurationModel;
+import com.checkmarx.engine.domain.ScanFinishEstimator;
+import com.checkmarx.engine.rest.model.ProgramLanguage;
+import com.checkmarx.engine.rest.model.EngineServer;
+import com.checkmarx.engine.rest.model.Project;
+import com.checkmarx.engine.rest.model.ScanRequest;
+import com.checkmarx.engine.rest.model.ScanRequest.ScanStatus;
+import com.checkmarx.engine.utils.TaskManager;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+
+/**
+ * Runs the engine manager against fake CxManager and IaaS providers.  Scans are queued 
+ * directly on a {@link EngineManager.ScanLauncher}, finished scans go through the queue.
+ */
+public class EngineManagerUnitTests {
+
+	private static final Logger log = LoggerFactory.getLogger(EngineManagerUnitTests.class);
+
+	private static final EngineSize SMALL = new EngineSize("S", 0, 99999);
+	private static final EngineSize MEDIUM = new EngineSize("M", 100000, 999999);
+
+	private final BlockingQueue<ScanRequest> scansQueued = new LinkedBlockingQueue<>();
+	private final BlockingQueue<ScanRequest> scansFinished = new LinkedBlockingQueue<>();
+	private final FakeCxEngineApi cxClient = new FakeCxEngineApi();
+	private final FakeCxEngines engines = new FakeCxEngines();
+	private final TaskManager taskManager = new TaskManager();
+	private final CxConfig config = new CxConfig();
+	private final ScanFinishEstimator finishEstimator = 
+			new ScanFinishEstimator(ScanFinishEstimator.DEFAULT_SMOOTHING_FACTOR);
+	private final List<String> notifications = Lists.newCopyOnWriteArrayList();
+	private EnginePool pool;
+	private ScanArrivalForecaster arrivalForecaster;
+	private ScanQueueMonitor monitor;
+	private EngineManager manager;
+	private EngineManager.ScanLauncher launcher;
+
+	@Before
+	public void setUp() {
+		config.setConcurrentScanLimit(10);
+		config.setLaunchBatchWindowMillis(0);
+	}
+
+	@After
+	public void tearDown() {
+		if (manager != null) manager.stop();
+	}
+
+	private void start(int engineCount) {
+		start(new EnginePoolEntry(SMALL, engineCount));
+	}
+
+	private void start(EnginePoolEntry... entries) {
+		create(entries);
+		manager.run();
+		launcher = manager.new ScanLauncher();
+	}
+
+	private void create(EnginePoolEntry... entries) {
+		final DefaultEnginePoolBuilder builder = new DefaultEnginePoolBuilder(new EnginePoolConfig());
+		final List<String> sizes = Lists.newArrayList();
+		for (EnginePoolEntry entry : entries) {
+			builder.addEntry(entry);
+			sizes.add(entry.getScanSize().getName());
+		}
+		pool = builder.build();
+		arrivalForecaster = new ScanArrivalForecaster(sizes, 0.5);
+		final ScanDurationModel durationModel = 
+				new ScanDurationModel(ScanDurationModel.DEFAULT_MAX_PROJECTS, ScanDurationModel.DEFAULT_SMOOTHING_FACTOR);
+		monitor = new ScanQueueMonitor(scansQueued, scansFinished, pool, arrivalForecaster, 
+				finishEstimator, durationModel, cxClient, config);
+		manager = new EngineManager(config, pool, cxClient, engines, arrivalForecaster, finishEstimator, 
+				durationModel, taskManager, monitor, scansQueued, scansFinished, 
+				(subject, message, t) -> notifications.add(message));
+	}
+
+	@Test
+	public void testCancelLaunch() throws Exception {
+		log.trace("testCancelLaunch()");
+
+		start(2);
+		launcher.onScanQueued(createRequest(1, ScanStatus.Queued, 1000));
+		assertThat(engines.launchCalls.size(), is(1));
+		final String name = engines.launchCalls.get(0);
+
+		// scan is cancelled while its engine launches
+		scansFinished.add(createRequest(1, ScanStatus.Canceled, 1000));
+		waitFor(() -> engines.launches.get(name).isCancelled());
+		waitFor(() -> pool.getEngineCount(SMALL, State.UNPROVISIONED) == 2);
+		assertThat(manager.isLaunching(1), is(false));
+		assertThat(cxClient.engines.isEmpty(), is(true));
+	}
+
+	@Test
+	public void testReassignLaunch() throws Exception {
+		log.trace("testReassignLaunch()");
+
+		start(1);
+		launcher.onScanQueued(createRequest(1, ScanStatus.Queued, 1000));
+		final String name = engines.launchCalls.get(0);
+		// no engine left, so the second scan is blocked
+		launcher.onScanQueued(createRequest(2, ScanStatus.Queued, 2000));
+		assertThat(engines.launchCalls.size(), is(1));
+
+		// the launching engine is handed to the blocked scan
+		scansFinished.add(createRequest(1, ScanStatus.Canceled, 1000));
+		waitFor(() -> manager.isLaunching(2));
+		assertThat(manager.isLaunching(1), is(false));
+		assertThat(engines.launches.get(name).isCancelled(), is(false));
+
+		engines.complete(name);
+		waitFor(() -> cxClient.engines.size() == 1);
+		final DynamicEngine engine = pool.getEngineByName(name);
+		assertThat(engine.getScanId(), is("2"));
+		assertThat(engine.getState(), is(State.SCANNING));
+		assertThat(cxClient.getEngines().get(0).getMinLoc(), is(2000));
+	}
+
+	@Test
+	public void testHedgedEngineWins() throws Exception {
+		log.trace("testHedgedEngineWins()");
+
+		final List<String> names = startHedgedLaunch();
+		engines.complete(names.get(1));
+		waitFor(() -> cxClient.engines.size() == 1);
+		assertThat(pool.getEngineByName(names.get(1)).getScanId(), is("1"));
+		
+		// the slow engine is not needed by its scan
+		engines.complete(names.get(0));
+		waitFor(() -> State.IDLE.equals(pool.getEngineByName(names.get(0)).getState()));
+		assertThat(cxClient.engines.size(), is(1));
+		assertThat(manager.isLaunching(1), is(false));
+	}
+
+	@Test
+	public void testPrimaryEngineWins() throws Exception {
+		log.trace("testPrimaryEngineWins()");
+
+		final List<String> names = startHedgedLaunch();
+		engines.complete(names.get(0));
+		waitFor(() -> cxClient.engines.size() == 1);
+		assertThat(pool.getEngineByName(names.get(0)).getScanId(), is("1"));
+		
+		engines.complete(names.get(1));
+		waitFor(() -> State.IDLE.equals(pool.getEngineByName(names.get(1)).getState()));
+		assertThat(cxClient.engines.size(), is(1));
+		assertThat(manager.isLaunching(1), is(false));
+	}
+
+	@Test
+	public void testHedgedLaunchFailure() throws Exception {
+		log.trace("testHedgedLaunchFailure()");
+
+		final List<String> names = startHedgedLaunch();
+		// the scan waits for its other launch
+		engines.fail(names.get(0));
+		waitFor(() -> State.UNPROVISIONED.equals(pool.getEngineByName(names.get(0)).getState()));
+		assertThat(manager.isLaunching(1), is(true));
+		
+		engines.complete(names.get(1));
+		waitFor(() -> cxClient.engines.size() == 1);
+		assertThat(pool.getEngineByName(names.get(1)).getScanId(), is("1"));
+		assertThat(notifications.isEmpty(), is(true));
+	}
+
+	@Test
+	public void testHedgedLaunchesFail() throws Exception {
+		log.trace("testHedgedLaunchesFail()");
+
+		final List<String> names = startHedgedLaunch();
+		engines.fail(names.get(1));
+		engines.fail(names.get(0));
+		waitFor(() -> !manager.isLaunching(1));
+		waitFor(() -> pool.getEngineCount(SMALL, State.UNPROVISIONED) == 2);
+		// the scan only fails once
+		assertThat(notifications.size(), is(1));
+		assertThat(cxClient.engines.isEmpty(), is(true));
+	}
+
+	@Test
+	public void testPackScan() throws Exception {
+		log.trace("testPackScan()");
+
+		start(new EnginePoolEntry(SMALL, 1, 0, 2));
+		launcher.onScanQueued(createRequest(1, ScanStatus.Queued, 1000));
+		final String name = engines.launchCalls.get(0);
+		engines.complete(name);
+		waitFor(() -> cxClient.engines.size() == 1);
+		
+		// the engine is registered for the packed scan only, not the range of both scans
+		launcher.onScanQueued(createRequest(2, ScanStatus.Queued, 5000));
+		final DynamicEngine engine = pool.getEngineByName(name);
+		assertThat(pool.getOccupiedSlots(engine), is(2));
+		assertThat(engines.launchCalls.size(), is(1));
+		final EngineServer cxEngine = cxClient.getEngines().get(0);
+		assertThat(cxEngine.getMinLoc(), is(5000));
+		assertThat(cxEngine.getMaxLoc(), is(5000));
+		assertThat(cxEngine.isBlocked(), is(false));
+	}
+
+	@Test
+	public void testRecoverPackedEngine() throws Exception {
+		log.trace("testRecoverPackedEngine()");
+
+		create(new EnginePoolEntry(SMALL, 1, 0, 3));
+		final String name = "cx-engine-S-001";
+		final long engineId = cxClient.registerEngine(
+				new EngineServer(config.getCxEnginePrefix() + name, "http://" + name, 0, 99999, 3, false)).getId();
+		final DynamicEngine provisioned = DynamicEngine.fromProvisionedInstance(
+				name, SMALL.getName(), 3600, DateTime.now(), true, "1", null);
+		provisioned.setHost(new Host(name, "10.0.0.1", "http://" + name, DateTime.now()));
+		engines.provisioned.add(provisioned);
+		// the tagged scan finished before the restart, two packed scans still run
+		cxClient.scansQueue.add(FakeCxEngineApi.assignEngine(createRequest(2, ScanStatus.Scanning, 1000), engineId));
+		cxClient.scansQueue.add(FakeCxEngineApi.assignEngine(createRequest(3, ScanStatus.Scanning, 2000), engineId));
+		
+		manager.initialize();
+		manager.run();
+		final DynamicEngine engine = pool.getEngineByName(name);
+		assertThat(engine.getState(), is(State.SCANNING));
+		assertThat(pool.getOccupiedSlots(engine), is(2));
+		assertThat(cxClient.unregisterCalls.isEmpty(), is(true));
+		
+		scansFinished.add(FakeCxEngineApi.assignEngine(createRequest(2, ScanStatus.Finished, 1000), engineId));
+		waitFor(() -> pool.getOccupiedSlots(engine) == 1);
+		assertThat(engine.getState(), is(State.SCANNING));
+		assertThat(cxClient.unregisterCalls.isEmpty(), is(true));
+		
+		scansFinished.add(FakeCxEngineApi.assignEngine(createRequest(3, ScanStatus.Finished, 2000), engineId));
+		waitFor(() -> State.IDLE.equals(engine.getState()));
+		assertThat(cxClient.unregisterCalls, is(Lists.newArrayList(engineId)));
+	}
+
+	@Test
+	public void testPrewarmEngine() throws Exception {
+		log.trace("testPrewarmEngine()");
+
+		config.setPrewarmLookaheadMins(60);
+		start(2);
+		// two scans arrived in this hour and the next one last week
+		final DateTime lastWeek = DateTime.now().minusWeeks(1);
+		for (int i = 0; i < 2; i++) arrivalForecaster.recordArrival(SMALL.getName(), lastWeek);
+		for (int i = 0; i < 2; i++) arrivalForecaster.recordArrival(SMALL.getName(), lastWeek.plusHours(1));
+		final EngineManager.EnginePrewarmer prewarmer = manager.new EnginePrewarmer();
+		prewarmer.run();
+		assertThat(engines.launchCalls.size(), is(2));
+		
+		// engines still launching are neither idle nor launched again
+		prewarmer.run();
+		assertThat(engines.launchCalls.size(), is(2));
+		assertThat(pool.getEngineCount(SMALL, State.IDLE), is(0));
+		
+		// a scan arriving while the engines boot waits for one
+		launcher.onScanQueued(createRequest(1, ScanStatus.Queued, 1000));
+		assertThat(cxClient.engines.isEmpty(), is(true));
+		assertThat(notifications.isEmpty(), is(true));
+		
+		final String name = engines.launchCalls.get(0);
+		engines.complete(name);
+		waitFor(() -> cxClient.engines.size() == 1);
+		assertThat(pool.getEngineByName(name).getScanId(), is("1"));
+		
+		engines.complete(engines.launchCalls.get(1));
+		waitFor(() -> pool.getEngineCount(SMALL, State.IDLE) == 1);
+		assertThat(notifications.isEmpty(), is(true));
+	}
+
+	@Test
+	public void testPreRegisteredEngine() throws Exception {
+		log.trace("testPreRegisteredEngine()");
+
+		config.setPreRegisteredEnginesEnabled(true);
+		start(1);
+		launcher.onScanQueued(createRequest(1, ScanStatus.Queued, 1000));
+		final String name = engines.launchCalls.get(0);
+		engines.complete(name);
+		waitFor(() -> cxClient.engines.size() == 1);
+		final long engineId = cxClient.getEngines().get(0).getId();
+		final DynamicEngine engine = pool.getEngineByName(name);
+
+		// the finished scan's engine stays registered over its engine size
+		scansFinished.add(FakeCxEngineApi.assignEngine(createRequest(1, ScanStatus.Finished, 1000), engineId));
+		waitFor(() -> State.IDLE.equals(engine.getState()));
+		final EngineServer cxEngine = cxClient.getEngine(engineId);
+		assertThat(cxEngine.getMinLoc(), is(0));
+		assertThat(cxEngine.getMaxLoc(), is(99999));
+		assertThat(cxEngine.isBlocked(), is(false));
+		assertThat(cxClient.unregisterCalls.isEmpty(), is(true));
+
+		// the next scan is left for CxManager, and one more is blocked
+		launcher.onScanQueued(createRequest(2, ScanStatus.Queued, 2000));
+		launcher.onScanQueued(createRequest(3, ScanStatus.Queued, 3000));
+		assertThat(engines.launchCalls.size(), is(1));
+
+		// CxManager dispatches the scan to the engine, which is blocked once full
+		monitor.onScansQueue(Lists.newArrayList(
+				FakeCxEngineApi.assignEngine(createRequest(2, ScanStatus.Scanning, 2000), engineId)));
+		waitFor(() -> "2".equals(engine.getScanId()));
+		assertThat(engine.getState(), is(State.SCANNING));
+		assertThat(cxClient.blockCalls, is(Lists.newArrayList(engineId)));
+		assertThat(cxClient.getEngine(engineId).isBlocked(), is(true));
+	}
+
+	@Test
+	public void testUnregisteredIdleEngine() throws Exception {
+		log.trace("testUnregisteredIdleEngine()");
+
+		config.setPreRegisteredEnginesEnabled(true);
+		start(1);
+		launcher.onScanQueued(createRequest(1, ScanStatus.Queued, 1000));
+		final String name = engines.launchCalls.get(0);
+		// registration fails, so the engine is idle without being pre-registered
+		cxClient.registerFailures = 1;
+		engines.complete(name);
+		final DynamicEngine engine = pool.getEngineByName(name);
+		// the failure is reported once the engine is idle
+		waitFor(() -> notifications.size() == 1);
+		assertThat(engine.getState(), is(State.IDLE));
+		assertThat(cxClient.engines.isEmpty(), is(true));
+		
+		// the next scan is registered on the idle engine rather than blocked
+		launcher.onScanQueued(createRequest(2, ScanStatus.Queued, 2000));
+		assertThat(engine.getState(), is(State.SCANNING));
+		assertThat(engine.getScanId(), is("2"));
+		assertThat(cxClient.getEngines().get(0).getMinLoc(), is(2000));
+		assertThat(engines.launchCalls.size(), is(1));
+	}
+
+	@Test
+	public void testHandOffEngine() throws Exception {
+		log.trace("testHandOffEngine()");
+
+		final long engineId = startHandOff();
+		final DynamicEngine engine = pool.getEngineByName(engines.launchCalls.get(0));
+
+		// the engine stays registered and is handed to the blocked scan
+		scansFinished.add(FakeCxEngineApi.assignEngine(createRequest(1, ScanStatus.Finished, 1000), engineId));
+		waitFor(() -> "2".equals(engine.getScanId()));
+		assertThat(engine.getState(), is(State.SCANNING));
+		final EngineServer cxEngine = cxClient.getEngine(engineId);
+		assertThat(cxEngine.getMinLoc(), is(2000));
+		assertThat(cxEngine.isBlocked(), is(false));
+		assertThat(cxClient.unregisterCalls.isEmpty(), is(true));
+		assertThat(engines.launchCalls.size(), is(1));
+	}
+
+	@Test
+	public void testHandOffFailure() throws Exception {
+		log.trace("testHandOffFailure()");
+
+		final long engineId = startHandOff();
+		final DynamicEngine engine = pool.getEngineByName(engines.launchCalls.get(0));
+
+		// the engine is released as usual, then placed on the re-queued scan
+		cxClient.updateFailures = 1;
+		scansFinished.add(FakeCxEngineApi.assignEngine(createRequest(1, ScanStatus.Finished, 1000), engineId));
+		waitFor(() -> "2".equals(engine.getScanId()));
+		assertThat(cxClient.unregisterCalls, is(Lists.newArrayList(engineId)));
+		waitFor(() -> cxClient.engines.size() == 1);
+		final EngineServer cxEngine = cxClient.getEngines().get(0);
+		assertThat(cxEngine.getId() == engineId, is(false));
+		assertThat(cxEngine.getMinLoc(), is(2000));
+		assertThat(engines.launchCalls.size(), is(1));
+	}
+
+	@Test
+	public void testReRegisterFailure() throws Exception {
+		log.trace("testReRegisterFailure()");
+
+		config.setPreRegisteredEnginesEnabled(true);
+		start(1);
+		launcher.onScanQueued(createRequest(1, ScanStatus.Queued, 1000));
+		final String name = engines.launchCalls.get(0);
+		engines.complete(name);
+		waitFor(() -> cxClient.engines.size() == 1);
+		final long engineId = cxClient.getEngines().get(0).getId();
+
+		// the engine is unregistered and idled as usual
+		cxClient.updateFailures = 1;
+		scansFinished.add(FakeCxEngineApi.assignEngine(createRequest(1, ScanStatus.Finished, 1000), engineId));
+		waitFor(() -> State.IDLE.equals(pool.getEngineByName(name).getState()));
+		assertThat(cxClient.unregisterCalls, is(Lists.newArrayList(engineId)));
+		assertThat(pool.getEngineByName(name).getScanId(), is((String) null));
+	}
+
+	@Test
+	public void testEngineInterrupted() throws Exception {
+		log.trace("testEngineInterrupted()");
+
+		start(2);
+		monitor.onScansQueue(Lists.newArrayList(createRequest(1, ScanStatus.Queued, 1000)));
+		waitFor(() -> engines.launchCalls.size() == 1);
+		final String name = engines.launchCalls.get(0);
+		engines.complete(name);
+		waitFor(() -> cxClient.engines.size() == 1);
+		final long engineId = cxClient.getEngines().get(0).getId();
+		monitor.onScansQueue(Lists.newArrayList(
+				FakeCxEngineApi.assignEngine(createRequest(1, ScanStatus.Scanning, 1000), engineId)));
+
+		// the scanning engine takes no new scans until it goes away
+		engines.interruptionListener.onEngineInterrupted(name);
+		assertThat(cxClient.blockCalls, is(Lists.newArrayList(engineId, engineId)));
+
+		// CxManager postpones the scan, which is queued again for another engine
+		final ScanRequest postponed = createRequest(1, ScanStatus.Queued, 1000, "Postpone");
+		monitor.onScansQueue(Lists.newArrayList(postponed));
+		waitFor(() -> engines.terminateCalls.contains(name));
+		assertThat(cxClient.unregisterCalls, is(Lists.newArrayList(engineId)));
+
+		monitor.onScansQueue(Lists.newArrayList(postponed));
+		waitFor(() -> engines.launchCalls.size() == 2);
+		assertThat(notifications.isEmpty(), is(true));
+	}
+
+	@Test
+	public void testClaimSpeculativeEngine() throws Exception {
+		log.trace("testClaimSpeculativeEngine()");
+
+		start(2);
+		// the scan is queued before its speculative launch starts
+		launcher.onScanPreparing(createRequest(1, ScanStatus.SourcePullingAndDeployment, 1000), SMALL);
+		launcher.onScanQueued(createRequest(1, ScanStatus.Queued, 1000));
+		waitFor(() -> engines.launchCalls.size() == 1);
+		final String name = engines.launchCalls.get(0);
+
+		engines.complete(name);
+		waitFor(() -> cxClient.engines.size() == 1);
+		final DynamicEngine engine = pool.getEngineByName(name);
+		assertThat(engine.getScanId(), is("1"));
+		assertThat(engine.getState(), is(State.SCANNING));
+		assertThat(engines.launchCalls.size(), is(1));
+	}
+
+	@Test
+	public void testAbandonSpeculativeEngine() throws Exception {
+		log.trace("testAbandonSpeculativeEngine()");
+
+		start(2);
+		// the scan is abandoned before its speculative launch starts
+		final ScanRequest scan = createRequest(1, ScanStatus.SourcePullingAndDeployment, 1000);
+		launcher.onScanPreparing(scan, SMALL);
+		launcher.onScanAbandoned(scan);
+		waitFor(() -> engines.launchCalls.size() == 1);
+		final String name = engines.launchCalls.get(0);
+
+		// the engine is kept for other scans
+		engines.complete(name);
+		waitFor(() -> State.IDLE.equals(pool.getEngineByName(name).getState()));
+		assertThat(cxClient.engines.isEmpty(), is(true));
+	}
+
+	@Test
+	public void testSpeculativeEngineTooSmall() throws Exception {
+		log.trace("testSpeculativeEngineTooSmall()");
+
+		start(new EnginePoolEntry(SMALL, 1), new EnginePoolEntry(MEDIUM, 1));
+		launcher.onScanPreparing(createRequest(1, ScanStatus.SourcePullingAndDeployment, 1000), SMALL);
+		waitFor(() -> engines.launchCalls.size() == 1);
+		final String small = engines.launchCalls.get(0);
+
+		// the scan grew, so a larger engine is launched and the speculative engine is released
+		launcher.onScanQueued(createRequest(1, ScanStatus.Queued, 200000));
+		assertThat(engines.launchCalls.size(), is(2));
+		final String medium = engines.launchCalls.get(1);
+		assertThat(engines.engines.get(medium).getSize(), is(MEDIUM.getName()));
+
+		engines.complete(small);
+		waitFor(() -> State.IDLE.equals(pool.getEngineByName(small).getState()));
+		engines.complete(medium);
+		waitFor(() -> cxClient.engines.size() == 1);
+		assertThat(pool.getEngineByName(medium).getScanId(), is("1"));
+		assertThat(pool.getEngineByName(small).getScanId(), is((String) null));
+	}
+
+	/**
+	 * Places a scan on the only engine, and blocks a second scan waiting for it.
+	 * 
+	 * @return the cx engine id of the first scan
+	 */
+	private long startHandOff() throws InterruptedException {
+		config.setEngineHandoffEnabled(true);
+		start(1);
+		launcher.onScanQueued(createRequest(1, ScanStatus.Queued, 1000));
+		engines.complete(engines.launchCalls.get(0));
+		waitFor(() -> cxClient.engines.size() == 1);
+		launcher.onScanQueued(createRequest(2, ScanStatus.Queued, 2000));
+		return cxClient.getEngines().get(0).getId();
+	}
+
+	/**
+	 * Launches an engine for a scan, and waits for the launch to be hedged.
+	 * 
+	 * @return the names of the first and the hedged engine
+	 */
+	private List<String> startHedgedLaunch() throws InterruptedException {
+		config.setHedgeLaunchPercentile(90);
+		for (int i = 0; i < ScanFinishEstimator.MIN_LAUNCH_SAMPLES; i++) {
+			finishEstimator.recordLaunch(SMALL.getName(), Duration.millis(50));
+		}
+		start(2);
+		
+		launcher.onScanQueued(createRequest(1, ScanStatus.Queued, 1000));
+		waitFor(() -> engines.launchCalls.size() == 2);
+		assertThat(pool.getEngineCount(SMALL, State.UNPROVISIONED), is(0));
+		return engines.launchCalls;
+	}
+
+	private ScanRequest createRequest(int num, ScanStatus status, int loc) {
+		return createRequest(num, status, loc, "");
+	}
+
+	private ScanRequest createRequest(int num, ScanStatus status, int loc, String stageDetails) {
+		final Project project = new Project(num, "Project" + num);
+		final ProgramLanguage[] languages = new ProgramLanguage[0];
+
+		return new ScanRequest(num, "runId" + num, "team" + num, project, ScanStatus.to(status), stageDetails, "", 0, 0, 
+				loc, false, true, "Portal", num, "initiator", languages, null, null, null, null);
+	}
+
+	private void waitFor(BooleanSupplier condition) throws InterruptedException {
+		final Stopwatch timer = Stopwatch.createStarted();
+		while (!condition.getAsBoolean()) {
+			assertThat("timed out", timer.elapsed(TimeUnit.SECONDS) < 10, is(true));
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+	}
+
+}
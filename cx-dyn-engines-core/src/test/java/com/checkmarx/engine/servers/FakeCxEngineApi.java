@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.servers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.checkmarx.engine.rest.CxEngineApi;
+import com.checkmarx.engine.rest.model.EngineServer;
+import com.checkmarx.engine.rest.model.Login;
+import com.checkmarx.engine.rest.model.ScanRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.joda.JodaModule;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Keeps registered engines in memory, records block requests, and fails them and 
+ * registration changes on demand.
+ */
+class FakeCxEngineApi implements CxEngineApi {
+
+	private static final ObjectMapper mapper = new ObjectMapper().registerModule(new JodaModule());
+
+	final Map<Long, EngineServer> engines = Maps.newConcurrentMap();
+	final List<Long> blockCalls = Lists.newCopyOnWriteArrayList();
+	final List<Long> unregisterCalls = Lists.newCopyOnWriteArrayList();
+	final List<ScanRequest> scansQueue = Lists.newCopyOnWriteArrayList();
+	final AtomicLong nextId = new AtomicLong(100);
+	volatile int blockFailures = 0;
+	volatile int registerFailures = 0;
+	volatile int updateFailures = 0;
+
+	@Override
+	public boolean login() {
+		return true;
+	}
+
+	@Override
+	public boolean login(Login login) {
+		return true;
+	}
+
+	@Override
+	public String getCxVersion() {
+		return "8.9";
+	}
+
+	@Override
+	public List<EngineServer> getEngines() {
+		return Lists.newArrayList(engines.values());
+	}
+
+	@Override
+	public EngineServer getEngine(long id) {
+		return engines.get(id);
+	}
+
+	@Override
+	public EngineServer getEngine(String name) {
+		return engines.values().stream()
+				.filter((engine) -> name.equals(engine.getName()))
+				.findFirst().orElse(null);
+	}
+
+	@Override
+	public synchronized EngineServer registerEngine(EngineServer engine) {
+		if (registerFailures > 0) {
+			registerFailures--;
+			throw new RuntimeException("Failed to register engine");
+		}
+		final EngineServer registered = update(engine, String.format("{\"id\":%d}", nextId.incrementAndGet()));
+		engines.put(registered.getId(), registered);
+		return registered;
+	}
+
+	@Override
+	public void unregisterEngine(long id) {
+		unregisterCalls.add(id);
+		engines.remove(id);
+	}
+
+	@Override
+	public synchronized EngineServer updateEngine(EngineServer engine) {
+		if (updateFailures > 0) {
+			updateFailures--;
+			throw new RuntimeException("Failed to update engine");
+		}
+		engines.put(engine.getId(), engine);
+		return engine;
+	}
+
+	@Override
+	public synchronized EngineServer blockEngine(long engineId) {
+		if (blockFailures > 0) {
+			blockFailures--;
+			throw new RuntimeException("Failed to block engine");
+		}
+		blockCalls.add(engineId);
+		final EngineServer engine = engines.get(engineId);
+		if (engine != null) engine.setBlocked(true);
+		return engine;
+	}
+
+	@Override
+	public EngineServer blockEngine(String engineName) {
+		final EngineServer engine = getEngine(engineName);
+		return engine == null ? null : blockEngine(engine.getId());
+	}
+
+	@Override
+	public EngineServer unblockEngine(long engineId) {
+		final EngineServer engine = engines.get(engineId);
+		if (engine != null) engine.setBlocked(false);
+		return engine;
+	}
+
+	@Override
+	public List<ScanRequest> getScansQueue() {
+		return Lists.newArrayList(scansQueue);
+	}
+
+	/**
+	 * Assigns the scan to a cx engine, as the scans queue reports it once working.
+	 */
+	static ScanRequest assignEngine(ScanRequest scan, long engineId) {
+		return update(scan, String.format("{\"engine\":{\"id\":%d}}", engineId));
+	}
+
+	/**
+	 * Sets read-only fields the way the REST client populates them.
+	 */
+	private static <T> T update(T value, String json) {
+		try {
+			return mapper.readerForUpdating(value).readValue(json);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.servers;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.joda.time.DateTime;
+
+import com.checkmarx.engine.domain.DynamicEngine;
+import com.checkmarx.engine.domain.EngineSize;
+import com.checkmarx.engine.domain.Host;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Records launch and stop requests; launches complete only when the test completes them.
+ */
+class FakeCxEngines implements CxEngines {
+
+	final List<String> launchCalls = Lists.newCopyOnWriteArrayList();
+	final List<String> stopCalls = Lists.newCopyOnWriteArrayList();
+	final List<String> terminateCalls = Lists.newCopyOnWriteArrayList();
+	final Map<String, DynamicEngine> engines = Maps.newConcurrentMap();
+	final Map<String, CompletableFuture<DynamicEngine>> launches = Maps.newConcurrentMap();
+	final List<DynamicEngine> provisioned = Lists.newCopyOnWriteArrayList();
+	volatile EngineInterruptionListener interruptionListener;
+
+	/**
+	 * Completes the engine's launch, as if the engine responded.
+	 */
+	void complete(String name) {
+		final DynamicEngine engine = engines.get(name);
+		engine.setHost(new Host(name, "10.0.0.1", "http://" + name, DateTime.now()));
+		launches.get(name).complete(engine);
+	}
+
+	void fail(String name) {
+		launches.get(name).completeExceptionally(new RuntimeException("Failed to launch engine"));
+	}
+
+	@Override
+	public List<DynamicEngine> listEngines() {
+		return Lists.newArrayList(provisioned);
+	}
+
+	@Override
+	public void launch(DynamicEngine engine, EngineSize size, boolean waitForSpinup) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public CompletableFuture<DynamicEngine> launchAsync(DynamicEngine engine, EngineSize size, boolean waitForSpinup) {
+		final CompletableFuture<DynamicEngine> future = new CompletableFuture<>();
+		engines.put(engine.getName(), engine);
+		launches.put(engine.getName(), future);
+		launchCalls.add(engine.getName());
+		return future;
+	}
+
+	@Override
+	public void stop(DynamicEngine engine) {
+		stopCalls.add(engine.getName());
+	}
+
+	@Override
+	public void stop(DynamicEngine engine, boolean forceTerminate) {
+		stopCalls.add(engine.getName());
+		if (forceTerminate) terminateCalls.add(engine.getName());
+	}
+
+	@Override
+	public void setInterruptionListener(EngineInterruptionListener listener) {
+		this.interruptionListener = listener;
+	}
+
+	@Override
+	public void onScanAssigned(DynamicEngine toEngine) {
+		// not tracked
+	}
+
+	@Override
+	public void onScanRemoved(DynamicEngine fromEngine) {
+		// not tracked
+	}
+
+}
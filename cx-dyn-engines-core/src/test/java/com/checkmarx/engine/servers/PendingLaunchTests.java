@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.servers;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.checkmarx.engine.domain.DynamicEngine;
+import com.checkmarx.engine.rest.model.ProgramLanguage;
+import com.checkmarx.engine.rest.model.Project;
+import com.checkmarx.engine.rest.model.ScanRequest;
+import com.checkmarx.engine.rest.model.ScanRequest.ScanStatus;
+import com.checkmarx.engine.servers.EngineManager.PendingLaunch;
+
+public class PendingLaunchTests {
+
+	private static final Logger log = LoggerFactory.getLogger(PendingLaunchTests.class);
+
+	private final DynamicEngine engine = new DynamicEngine("cx-engine-S-001", "S", 300);
+	private final ScanRequest scan = createRequest(1);
+	private final ScanRequest blocked = createRequest(2);
+
+	@Test
+	public void testClaim() {
+		log.trace("testClaim()");
+
+		final PendingLaunch launch = new PendingLaunch(engine, scan);
+		assertThat(launch.isPending(), is(true));
+		assertThat(launch.claim(), is(scan));
+		assertThat(launch.isPending(), is(false));
+		assertThat(launch.register(), is(true));
+		// a registered engine is finished as usual
+		assertThat(launch.cancel(), is(false));
+	}
+
+	@Test
+	public void testHedge() {
+		log.trace("testHedge()");
+
+		final PendingLaunch launch = new PendingLaunch(engine, scan);
+		assertThat(launch.hedge(), is(true));
+		
+		// the first engine to launch wins, the other is not needed
+		assertThat(launch.claim(), is(scan));
+		assertThat(launch.claim(), is(nullValue()));
+		assertThat(launch.hedge(), is(false));
+	}
+
+	@Test
+	public void testFail() {
+		log.trace("testFail()");
+
+		final PendingLaunch launch = new PendingLaunch(engine, scan);
+		assertThat(launch.hedge(), is(true));
+		
+		// the scan only fails once none of its launches remain
+		assertThat(launch.fail(), is(nullValue()));
+		assertThat(launch.isPending(), is(true));
+		assertThat(launch.fail(), is(scan));
+		assertThat(launch.isPending(), is(false));
+	}
+
+	@Test
+	public void testReassign() {
+		log.trace("testReassign()");
+
+		final PendingLaunch launch = new PendingLaunch(engine, scan);
+		assertThat(launch.reassign(blocked), is(true));
+		assertThat(launch.getScan(), is(blocked));
+		assertThat(launch.claim(), is(blocked));
+		assertThat(launch.reassign(scan), is(false));
+	}
+
+	@Test
+	public void testCancel() {
+		log.trace("testCancel()");
+
+		final PendingLaunch launch = new PendingLaunch(engine, scan);
+		final CompletableFuture<DynamicEngine> future = new CompletableFuture<>();
+		launch.addFuture(future);
+		
+		assertThat(launch.cancel(), is(true));
+		assertThat(future.isCancelled(), is(true));
+		assertThat(launch.isCancelled(), is(true));
+		assertThat(launch.claim(), is(nullValue()));
+		assertThat(launch.fail(), is(nullValue()));
+		assertThat(launch.reassign(blocked), is(false));
+
+		// launches added after the cancel are cancelled at once
+		final CompletableFuture<DynamicEngine> hedged = new CompletableFuture<>();
+		launch.addFuture(hedged);
+		assertThat(hedged.isCancelled(), is(true));
+	}
+
+	@Test
+	public void testCancelWhileRegistering() {
+		log.trace("testCancelWhileRegistering()");
+
+		final PendingLaunch launch = new PendingLaunch(engine, scan);
+		assertThat(launch.claim(), is(scan));
+		assertThat(launch.cancel(), is(true));
+		// the caller finishes the scan, as its engine registered after the cancel
+		assertThat(launch.register(), is(false));
+	}
+
+	private ScanRequest createRequest(int num) {
+		final Project project = new Project(num, "Project" + num);
+		final ProgramLanguage[] languages = new ProgramLanguage[0];
+
+		return new ScanRequest(num, "runId" + num, "team" + num, project, ScanStatus.to(ScanStatus.Queued), "", "", 0, 0, 
+				1000, false, true, "Portal", num, "initiator", languages, null, null, null, null);
+	}
+
+}
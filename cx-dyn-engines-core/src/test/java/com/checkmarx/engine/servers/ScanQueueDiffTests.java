@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.servers;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.checkmarx.engine.rest.model.ProgramLanguage;
+import com.checkmarx.engine.rest.model.Project;
+import com.checkmarx.engine.rest.model.ScanRequest;
+import com.checkmarx.engine.rest.model.ScanRequest.ScanStatus;
+import com.google.common.collect.Lists;
+
+public class ScanQueueDiffTests {
+
+	private static final Logger log = LoggerFactory.getLogger(ScanQueueDiffTests.class);
+
+	@Test
+	public void testDiff() {
+		log.trace("testDiff()");
+
+		final ScanQueueDiff diff = new ScanQueueDiff();
+
+		// all scans are new on the first snapshot
+		List<ScanRequest> changed = diff.diff(Lists.newArrayList(
+				createRequest(1, ScanStatus.Queued, 1000), 
+				createRequest(2, ScanStatus.Queued, 2000)));
+		assertThat(changed.size(), is(2));
+
+		// unchanged snapshot emits nothing
+		changed = diff.diff(Lists.newArrayList(
+				createRequest(1, ScanStatus.Queued, 1000), 
+				createRequest(2, ScanStatus.Queued, 2000)));
+		assertThat(changed.isEmpty(), is(true));
+
+		// Queued->Scanning and a LOC change are both transitions
+		changed = diff.diff(Lists.newArrayList(
+				createRequest(1, ScanStatus.Scanning, 1000), 
+				createRequest(2, ScanStatus.Queued, 2500)));
+		assertThat(changed.size(), is(2));
+
+		// missing scans are forgotten
+		changed = diff.diff(Lists.newArrayList(createRequest(1, ScanStatus.Scanning, 1000)));
+		assertThat(changed.isEmpty(), is(true));
+		assertThat(diff.getScanIds().contains(2L), is(false));
+
+		assertThat(diff.update(createRequest(1, ScanStatus.Scanning, 1000)), is(false));
+		assertThat(diff.update(createRequest(1, ScanStatus.Finished, 1000)), is(true));
+	}
+
+	private ScanRequest createRequest(int num, ScanStatus status, int loc) {
+		final Project project = new Project(num, "Project" + num);
+		final ProgramLanguage[] languages = new ProgramLanguage[0];
+
+		return new ScanRequest(num, "runId" + num, "team" + num, project, ScanStatus.to(status), "", "", 0, 0, 
+				loc, false, true, "Portal", num, "initiator", languages, null, null, null, null);
+	}
+
+}
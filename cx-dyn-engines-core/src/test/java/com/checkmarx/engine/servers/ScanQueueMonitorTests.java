@@ -71,7 +71,7 @@ public class ScanQueueMonitorTests extends CoreSpringTest {
 		log.trace("test()");
 		
 		final ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor();
-		service.scheduleAtFixedRate(monitor, 0L, 5, TimeUnit.SECONDS);
+		service.scheduleAtFixedRate(() -> monitor.onScansQueue(cxClient.getScansQueue()), 0L, 5, TimeUnit.SECONDS);
 		
 		TimeUnit.MINUTES.sleep(1);
 		
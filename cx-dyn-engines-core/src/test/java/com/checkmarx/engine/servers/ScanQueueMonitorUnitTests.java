@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.servers;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.checkmarx.engine.CxConfig;
+import com.checkmarx.engine.domain.DefaultEnginePoolBuilder;
+import com.checkmarx.engine.domain.EnginePool;
+import com.checkmarx.engine.domain.EnginePool.EnginePoolEntry;
+import com.checkmarx.engine.domain.EnginePoolConfig;
+import com.checkmarx.engine.domain.EngineSize;
+import com.checkmarx.engine.domain.ScanArrivalForecaster;
+import com.checkmarx.engine.domain.ScanDurationModel;
+import com.checkmarx.engine.domain.ScanFinishEstimator;
+import com.checkmarx.engine.rest.model.ProgramLanguage;
+import com.checkmarx.engine.rest.model.Project;
+import com.checkmarx.engine.rest.model.ScanRequest;
+import com.checkmarx.engine.rest.model.ScanRequest.ScanStatus;
+import com.google.common.collect.Lists;
+
+/**
+ * Drives the monitor with queue snapshots, without a CxManager.
+ */
+public class ScanQueueMonitorUnitTests {
+
+	private static final Logger log = LoggerFactory.getLogger(ScanQueueMonitorUnitTests.class);
+
+	private static final EngineSize SMALL = new EngineSize("S", 0, 99999);
+	private static final long ENGINE_ID = 10;
+
+	private final BlockingQueue<ScanRequest> scanQueued = new LinkedBlockingQueue<>();
+	private final BlockingQueue<ScanRequest> scanFinished = new LinkedBlockingQueue<>();
+	private final FakeCxEngineApi cxClient = new FakeCxEngineApi();
+	private ScanQueueMonitor monitor;
+
+	@Before
+	public void setUp() throws Exception {
+		log.trace("setUp()");
+
+		monitor = createMonitor(1, 3);
+	}
+
+	@Test
+	public void testRetryFailedScan() {
+		log.trace("testRetryFailedScan()");
+
+		monitor.onScansQueue(Lists.newArrayList(createRequest(1, ScanStatus.Queued)));
+		assertThat(scanQueued.size(), is(1));
+
+		// blocking the engine fails, so the scan is retried on the next snapshot
+		cxClient.blockFailures = 1;
+		final ScanRequest scanning = FakeCxEngineApi.assignEngine(createRequest(1, ScanStatus.Scanning), ENGINE_ID);
+		monitor.onScansQueue(Lists.newArrayList(scanning));
+		assertThat(cxClient.blockCalls.isEmpty(), is(true));
+
+		monitor.onScansQueue(Lists.newArrayList(scanning));
+		assertThat(cxClient.blockCalls, is(Lists.newArrayList(ENGINE_ID)));
+
+		// a working scan is only processed once
+		monitor.onScansQueue(Lists.newArrayList(scanning));
+		assertThat(cxClient.blockCalls.size(), is(1));
+
+		final ScanRequest finished = FakeCxEngineApi.assignEngine(createRequest(1, ScanStatus.Finished), ENGINE_ID);
+		monitor.onScansQueue(Lists.newArrayList(finished));
+		assertThat(scanFinished.size(), is(1));
+	}
+
+	@Test
+	public void testBlockFullEngine() {
+		log.trace("testBlockFullEngine()");
+
+		monitor = createMonitor(2, 3);
+		monitor.onScansQueue(Lists.newArrayList(
+				createRequest(1, ScanStatus.Queued), createRequest(2, ScanStatus.Queued)));
+
+		// the first scan leaves a free slot, so the engine stays unblocked
+		final ScanRequest scanning1 = FakeCxEngineApi.assignEngine(createRequest(1, ScanStatus.Scanning), ENGINE_ID);
+		monitor.onScansQueue(Lists.newArrayList(scanning1, createRequest(2, ScanStatus.Queued)));
+		assertThat(cxClient.blockCalls.isEmpty(), is(true));
+
+		// the second scan fills the engine
+		final ScanRequest scanning2 = FakeCxEngineApi.assignEngine(createRequest(2, ScanStatus.Scanning), ENGINE_ID);
+		monitor.onScansQueue(Lists.newArrayList(scanning1, scanning2));
+		assertThat(cxClient.blockCalls, is(Lists.newArrayList(ENGINE_ID)));
+	}
+
+	@Test
+	public void testDispatchedScanOverLimit() {
+		log.trace("testDispatchedScanOverLimit()");
+
+		monitor = createMonitor(1, 1);
+		final List<ScanRequest> dispatched = Lists.newArrayList();
+		monitor.setDispatchedScanListener((scan, size) -> dispatched.add(scan));
+
+		monitor.onScansQueue(Lists.newArrayList(createRequest(1, ScanStatus.Queued)));
+		final ScanRequest scanning1 = FakeCxEngineApi.assignEngine(createRequest(1, ScanStatus.Scanning), ENGINE_ID + 1);
+		monitor.onScansQueue(Lists.newArrayList(scanning1));
+		assertThat(dispatched, is(Lists.newArrayList(scanning1)));
+
+		// the second scan is deferred by the concurrent scan limit
+		monitor.onScansQueue(Lists.newArrayList(scanning1, createRequest(2, ScanStatus.Queued)));
+		assertThat(scanQueued.size(), is(1));
+
+		// CxManager assigns the deferred scan to a pre-registered engine, so it is counted anyway
+		final ScanRequest scanning2 = FakeCxEngineApi.assignEngine(createRequest(2, ScanStatus.Scanning), ENGINE_ID);
+		monitor.onScansQueue(Lists.newArrayList(scanning1, scanning2));
+		assertThat(dispatched, is(Lists.newArrayList(scanning1, scanning2)));
+		assertThat(cxClient.blockCalls, is(Lists.newArrayList(ENGINE_ID + 1, ENGINE_ID)));
+
+		// both scans count toward the limit
+		final ScanRequest finished1 = FakeCxEngineApi.assignEngine(createRequest(1, ScanStatus.Finished), ENGINE_ID + 1);
+		monitor.onScansQueue(Lists.newArrayList(finished1, scanning2, createRequest(3, ScanStatus.Queued)));
+		assertThat(scanFinished.size(), is(1));
+		assertThat(scanQueued.size(), is(1));
+
+		final ScanRequest finished2 = FakeCxEngineApi.assignEngine(createRequest(2, ScanStatus.Finished), ENGINE_ID);
+		monitor.onScansQueue(Lists.newArrayList(finished2, createRequest(3, ScanStatus.Queued)));
+		assertThat(scanFinished.size(), is(2));
+
+		// deferred scans are retried on the next snapshot
+		monitor.onScansQueue(Lists.newArrayList(createRequest(3, ScanStatus.Queued)));
+		assertThat(scanQueued.size(), is(2));
+	}
+
+	private ScanQueueMonitor createMonitor(int slots, int concurrentScanLimit) {
+		final EnginePool pool = new DefaultEnginePoolBuilder(new EnginePoolConfig())
+				.addEntry(new EnginePoolEntry(SMALL, 2, 0, slots))
+				.build();
+		final CxConfig config = new CxConfig();
+		config.setConcurrentScanLimit(concurrentScanLimit);
+
+		return new ScanQueueMonitor(scanQueued, scanFinished, pool, 
+				new ScanArrivalForecaster(Lists.newArrayList("S"), 0.5), 
+				new ScanFinishEstimator(ScanFinishEstimator.DEFAULT_SMOOTHING_FACTOR), 
+				new ScanDurationModel(ScanDurationModel.DEFAULT_MAX_PROJECTS, ScanDurationModel.DEFAULT_SMOOTHING_FACTOR), 
+				cxClient, config);
+	}
+
+	private ScanRequest createRequest(int num, ScanStatus status) {
+		final Project project = new Project(num, "Project" + num);
+		final ProgramLanguage[] languages = new ProgramLanguage[0];
+
+		return new ScanRequest(num, "runId" + num, "team" + num, project, ScanStatus.to(status), "", "", 0, 0, 
+				1000, false, true, "Portal", num, "initiator", languages, null, null, null, null);
+	}
+
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.utils;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.checkmarx.engine.utils.ApiRateLimiter.Priority;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+
+public class ApiRateLimiterTests {
+
+	private static final Logger log = LoggerFactory.getLogger(ApiRateLimiterTests.class);
+
+	@Test
+	public void testBurst() {
+		log.trace("testBurst()");
+
+		final ApiRateLimiter limiter = new ApiRateLimiter("test", 10, 5, t -> false);
+		final Stopwatch timer = Stopwatch.createStarted();
+		for (int i = 0; i < 5; i++) {
+			limiter.acquire(Priority.DEFAULT);
+		}
+		assertTrue(timer.elapsed(TimeUnit.MILLISECONDS) < 50);
+		
+		// bucket is empty, next permit is refilled at the request rate
+		limiter.acquire(Priority.DEFAULT);
+		assertTrue(timer.elapsed(TimeUnit.MILLISECONDS) >= 90);
+	}
+
+	@Test
+	public void testPriority() throws InterruptedException {
+		log.trace("testPriority()");
+
+		final ApiRateLimiter limiter = new ApiRateLimiter("test", 10, 1, t -> false);
+		limiter.acquire(Priority.DEFAULT);
+		
+		final List<Priority> admitted = Lists.newCopyOnWriteArrayList();
+		final Thread tag = new Thread(() -> {
+			limiter.acquire(Priority.TAG);
+			admitted.add(Priority.TAG);
+		});
+		tag.start();
+		Thread.sleep(20);
+		final Thread launch = new Thread(() -> {
+			limiter.acquire(Priority.LAUNCH);
+			admitted.add(Priority.LAUNCH);
+		});
+		launch.start();
+		
+		tag.join(2000);
+		launch.join(2000);
+		// the launch queued last is admitted first
+		assertThat(admitted, is(Lists.newArrayList(Priority.LAUNCH, Priority.TAG)));
+	}
+
+	@Test
+	public void testThrottledBackoff() {
+		log.trace("testThrottledBackoff()");
+
+		final ApiRateLimiter limiter = new ApiRateLimiter("test", 100, 10, 
+				t -> "throttled".equals(t.getMessage()), 200);
+		try {
+			limiter.call(Priority.DEFAULT, () -> {
+				throw new IllegalStateException("throttled");
+			});
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertThat(limiter.getThrottledCount(), is(1L));
+		assertThat(limiter.getRate(), is(50.0));
+		
+		// every caller waits out the jittered backoff
+		final Stopwatch timer = Stopwatch.createStarted();
+		assertThat(limiter.call(Priority.LAUNCH, () -> "launched"), is("launched"));
+		assertTrue(timer.elapsed(TimeUnit.MILLISECONDS) >= 90);
+		
+		// successful requests restore the rate
+		assertThat(limiter.getRate(), is(60.0));
+		for (int i = 0; i < 5; i++) {
+			limiter.run(Priority.TAG, () -> {});
+		}
+		assertThat(limiter.getRate(), is(100.0));
+		assertThat(limiter.getThrottledCount(), is(1L));
+	}
+
+	@Test
+	public void testInterruptedWait() throws InterruptedException {
+		log.trace("testInterruptedWait()");
+
+		final ApiRateLimiter limiter = new ApiRateLimiter("test", 100, 10, t -> true, 
+				ApiRateLimiter.MAX_BACKOFF_MILLIS);
+		try {
+			limiter.run(Priority.DEFAULT, () -> {
+				throw new IllegalStateException("throttled");
+			});
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		
+		// a caller paused by the backoff stops waiting once interrupted
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		final AtomicReference<Boolean> interrupted = new AtomicReference<>();
+		final Thread launch = new Thread(() -> {
+			try {
+				limiter.acquire(Priority.LAUNCH);
+			} catch (Throwable t) {
+				error.set(t);
+				interrupted.set(Thread.currentThread().isInterrupted());
+			}
+		});
+		launch.start();
+		Thread.sleep(20);
+		final Stopwatch timer = Stopwatch.createStarted();
+		launch.interrupt();
+		launch.join(2000);
+		
+		assertTrue(timer.elapsed(TimeUnit.MILLISECONDS) < 1000);
+		assertTrue(error.get() instanceof CancellationException);
+		assertThat(interrupted.get(), is(true));
+	}
+
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2019 Checkmarx
+ *
+ * This software is licensed for customer's internal use only.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.checkmarx.engine.utils;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class CompletableFutureUtilsTests {
+
+	private static final Logger log = LoggerFactory.getLogger(CompletableFutureUtilsTests.class);
+
+	private final ScheduledExecutorService scheduler = 
+			ExecutorServiceUtils.buildScheduledExecutorService(2, "test-%d", true);
+
+	@After
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void testPoll() throws Exception {
+		log.trace("testPoll()");
+
+		final AtomicInteger checks = new AtomicInteger();
+		final CompletableFuture<String> future = CompletableFutureUtils.poll("test", scheduler, 
+				() -> checks.incrementAndGet() < 3 ? null : "ready", 0, 10, 5000, TimeUnit.MILLISECONDS);
+
+		assertThat(CompletableFutureUtils.join(future), is("ready"));
+		assertThat(checks.get(), is(3));
+	}
+
+	@Test
+	public void testPollTimeout() throws Exception {
+		log.trace("testPollTimeout()");
+
+		final CompletableFuture<String> future = CompletableFutureUtils.poll("test", scheduler, 
+				() -> null, 0, 10, 50, TimeUnit.MILLISECONDS);
+		try {
+			CompletableFutureUtils.join(future);
+		} catch (RuntimeException e) {
+			assertThat(e.getCause(), instanceOf(TimeoutException.class));
+			return;
+		}
+		throw new AssertionError("Expected timeout");
+	}
+
+	@Test
+	public void testRetry() throws Exception {
+		log.trace("testRetry()");
+
+		final AtomicInteger attempts = new AtomicInteger();
+		final CompletableFuture<Integer> future = CompletableFutureUtils.retry("test", () -> {
+			final int attempt = attempts.incrementAndGet();
+			return attempt < 2 
+					? CompletableFutureUtils.failed(new IllegalStateException("attempt " + attempt))
+					: CompletableFuture.completedFuture(attempt);
+		}, 3, scheduler, 10, TimeUnit.MILLISECONDS);
+
+		assertThat(CompletableFutureUtils.join(future), is(2));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRetryExhausted() throws Exception {
+		log.trace("testRetryExhausted()");
+
+		final AtomicInteger attempts = new AtomicInteger();
+		final CompletableFuture<Integer> future = CompletableFutureUtils.retry("test", 
+				() -> CompletableFutureUtils.failed(new IllegalStateException("attempt " + attempts.incrementAndGet())), 
+				2, scheduler, 10, TimeUnit.MILLISECONDS);
+		try {
+			CompletableFutureUtils.join(future);
+		} finally {
+			assertThat(attempts.get(), is(2));
+		}
+	}
+
+}
@@ -15,11 +15,14 @@ package com.checkmarx.engine.vmware;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.Profile;
 
+import com.checkmarx.engine.CxConfig;
 import com.checkmarx.engine.spring.CoreApplicationConfig;
+import com.checkmarx.engine.utils.ApiRateLimiter;
 
 /**
  * Spring Boot configuration
@@ -36,5 +39,13 @@ public class VmwareApplicationConfig {
 	public VmwareApplicationConfig() {
 		log.info("ctor()");
 	}
+	
+	/**
+	 * vSphere reports no distinct throttling fault, so requests are paced but never backed off
+	 */
+	@Bean
+	public ApiRateLimiter vsphereRateLimiter(CxConfig config) {
+		return new ApiRateLimiter("vmware", config.getCloudApiRequestsPerSecond(), config.getCloudApiBurst(), t -> false);
+	}
 
 }
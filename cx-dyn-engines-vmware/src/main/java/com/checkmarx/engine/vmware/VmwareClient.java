@@ -14,6 +14,8 @@ import org.springframework.stereotype.Component;
 import com.checkmarx.engine.domain.EngineSize;
 import com.checkmarx.engine.servers.CxEngines;
 import com.checkmarx.engine.servers.CxEngines.CxServerRole;
+import com.checkmarx.engine.utils.ApiRateLimiter;
+import com.checkmarx.engine.utils.ApiRateLimiter.Priority;
 import com.google.common.collect.Lists;
 import com.google.common.net.InetAddresses;
 import com.vmware.vim25.TaskInfoState;
@@ -38,12 +40,14 @@ public class VmwareClient{
     private ServiceInstance si;
 	
 	private final VmwareEngineConfig config;
+	private final ApiRateLimiter rateLimiter;
 	
 	//private final Folder vmsFolder = null;
 
-	public VmwareClient(VmwareEngineConfig config) throws RemoteException, MalformedURLException {
+	public VmwareClient(VmwareEngineConfig config, ApiRateLimiter rateLimiter) throws RemoteException, MalformedURLException {
 		
 		this.config = config;
+		this.rateLimiter = rateLimiter;
 		this.si = new ServiceInstance(new URL(config.getUrlStr()), config.getUsername(), config.getPassword(), config.getBypassSSLVerification());
 
 		log.info("ctor(): {}", this);
@@ -55,7 +59,8 @@ public class VmwareClient{
 
         InventoryNavigator inventoryNavigator = new InventoryNavigator(this.si.getRootFolder());
 
-        VirtualMachine vm = (VirtualMachine) inventoryNavigator.searchManagedEntity("VirtualMachine",this.config.getTemplateVMName());
+        VirtualMachine vm = rateLimiter.call(Priority.LAUNCH, () -> (VirtualMachine) inventoryNavigator
+                .searchManagedEntity("VirtualMachine", this.config.getTemplateVMName()));
 
         if (vm == null) {
             throw new NullPointerException();
@@ -74,7 +79,8 @@ public class VmwareClient{
         cloneSpec.setPowerOn(false);
         cloneSpec.setTemplate(false);
 
-        Task task = vm.cloneVM_Task(vmsFolder, name, cloneSpec);
+        final VirtualMachine template = vm;
+        Task task = rateLimiter.call(Priority.LAUNCH, () -> template.cloneVM_Task(vmsFolder, name, cloneSpec));
 
         TaskInfoState state;
         do {
@@ -83,13 +89,14 @@ public class VmwareClient{
             } catch (InterruptedException e) {
                 log.error(e.getMessage());
             }
-            state = task.getTaskInfo().getState();
+            state = rateLimiter.call(Priority.DEFAULT, task::getTaskInfo).getState();
         }
         while (state != TaskInfoState.error && state != TaskInfoState.success);
 
         if (state == TaskInfoState.success) {
 
-            vm = (VirtualMachine) inventoryNavigator.searchManagedEntity("VirtualMachine",name);
+            vm = rateLimiter.call(Priority.LAUNCH, 
+                    () -> (VirtualMachine) inventoryNavigator.searchManagedEntity("VirtualMachine", name));
 
             if (vm == null) {
                 throw new NullPointerException();
@@ -147,7 +154,8 @@ public class VmwareClient{
 
 		Folder vmsFolder = getVmsFolder();
 
-        return new InventoryNavigator(vmsFolder).searchManagedEntities("VirtualMachine");
+        return rateLimiter.call(Priority.DEFAULT, 
+                () -> new InventoryNavigator(vmsFolder).searchManagedEntities("VirtualMachine"));
 	}
 	
 	private Folder getVmsFolder() throws RemoteException{
@@ -155,7 +163,8 @@ public class VmwareClient{
 		
 		Folder rootFolder = this.si.getRootFolder();
 
-        VirtualMachine vmTemp = (VirtualMachine) new InventoryNavigator(rootFolder).searchManagedEntity("VirtualMachine", this.config.getTemplateVMName());
+        VirtualMachine vmTemp = rateLimiter.call(Priority.DEFAULT, () -> (VirtualMachine) new InventoryNavigator(rootFolder)
+                .searchManagedEntity("VirtualMachine", this.config.getTemplateVMName()));
 
 		if(vmTemp==null){
             throw new NullPointerException();
@@ -178,7 +187,7 @@ public class VmwareClient{
             throw new NullPointerException();
         }
 
-		Task task = vm.powerOnVM_Task(null);
+		Task task = rateLimiter.call(Priority.LAUNCH, () -> vm.powerOnVM_Task(null));
         do {
             try {
                 //TODO enable timeout config
@@ -186,7 +195,7 @@ public class VmwareClient{
             } catch (InterruptedException e) {
                 log.error("powerOn(): RemoteException {}",e.getMessage());
             }
-            state = task.getTaskInfo().getState();
+            state = rateLimiter.call(Priority.DEFAULT, task::getTaskInfo).getState();
         }
         while (state != TaskInfoState.error && state != TaskInfoState.success);
 
@@ -200,14 +209,15 @@ public class VmwareClient{
 	public void stop(String vmName) throws RemoteException {
 		log.trace("stop():");
 		InventoryNavigator inventoryNavigator = new InventoryNavigator(this.si.getRootFolder());
-        VirtualMachine vm = (VirtualMachine) inventoryNavigator.searchManagedEntity("VirtualMachine", vmName);
+        VirtualMachine vm = rateLimiter.call(Priority.DEFAULT, 
+                () -> (VirtualMachine) inventoryNavigator.searchManagedEntity("VirtualMachine", vmName));
 
         if(vm==null){
             throw new NullPointerException();
         }
 
         try {
-            vm.shutdownGuest();
+            rateLimiter.run(Priority.DEFAULT, vm::shutdownGuest);
         }catch (Throwable t){
             log.warn("Failed to stop Virtual Machine; vm={}; cause={}; message={}", vm.toString(), t, t.getMessage());
             throw new RuntimeException("Failed to stop virtual machine", t);
@@ -219,7 +229,8 @@ public class VmwareClient{
 	public void stop(String vmName, boolean isToTerminate) throws RemoteException {
 		log.trace("powerOn(): vmName {} terminate {}",vmName,isToTerminate);
 		InventoryNavigator inventoryNavigator = new InventoryNavigator(this.si.getRootFolder());
-        VirtualMachine vm = (VirtualMachine) inventoryNavigator.searchManagedEntity("VirtualMachine", vmName);
+        VirtualMachine vm = rateLimiter.call(Priority.DEFAULT, 
+                () -> (VirtualMachine) inventoryNavigator.searchManagedEntity("VirtualMachine", vmName));
 
         if(vm==null){
             throw new NullPointerException();
@@ -228,9 +239,9 @@ public class VmwareClient{
         try {
             if (isToTerminate) {
                 log.warn("VirtualMachine {} termination", vm.getName());
-                vm.destroy_Task();
+                rateLimiter.call(Priority.DEFAULT, vm::destroy_Task);
             } else {
-                vm.shutdownGuest();
+                rateLimiter.run(Priority.DEFAULT, vm::shutdownGuest);
             }
         }catch (Throwable t){
             log.warn("Failed to stop Virtual Machine; vm={}; cause={}; message={}", vm.toString(), t, t.getMessage());
@@ -17,6 +17,8 @@ import java.rmi.RemoteException;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.joda.time.DateTime;
@@ -31,6 +33,7 @@ import com.checkmarx.engine.domain.EngineSize;
 import com.checkmarx.engine.domain.Host;
 import com.checkmarx.engine.rest.CxEngineClient;
 import com.checkmarx.engine.servers.CxEngines;
+import com.checkmarx.engine.utils.TaskManager;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -59,13 +62,16 @@ public class VmwareEngines implements CxEngines {
 	private final EnginePoolConfig poolConfig;
 	private final VmwareClient client;
 	private final CxEngineClient engineClient;
+	private final ExecutorService launchExecutor;
 
-	public VmwareEngines(EnginePoolConfig poolConfig,VmwareClient client,CxEngineClient engineClient) {
+	public VmwareEngines(EnginePoolConfig poolConfig,VmwareClient client,CxEngineClient engineClient,
+			TaskManager taskManager) {
 		
 		this.poolConfig = poolConfig;
 		this.engineClient = engineClient;
 		this.client = client;
 		this.vmwareConfig = client.getConfig();
+		this.launchExecutor = taskManager.getExecutor("EngineLaunch", "eng-launch-%d", true);
 		
 		log.info("{}", this);
 	}
@@ -130,6 +136,23 @@ public class VmwareEngines implements CxEngines {
 		}
 	}
 	
+	/**
+	 * The vSphere clone, power on and IP wait tasks are blocking, so the launch runs on 
+	 * the launch executor rather than the caller's thread.
+	 */
+	@Override
+	public CompletableFuture<DynamicEngine> launchAsync(DynamicEngine engine, EngineSize size, boolean waitForSpinup) {
+		log.debug("launchAsync() : {}; size={}; waitForSpinup={}", engine, size, waitForSpinup);
+		
+		return CompletableFuture.supplyAsync(() -> {
+			launch(engine, size, waitForSpinup);
+			if (engine.getHost() == null) {
+				throw new RuntimeException("Error launching engine, host not available: " + engine.getName());
+			}
+			return engine;
+		}, launchExecutor);
+	}
+	
 	private VirtualMachine launchEngine(final String name, final EngineSize size) {
 		log.info("launchEngine(): name={}; size={}", name, size);
         VirtualMachine vm=null;